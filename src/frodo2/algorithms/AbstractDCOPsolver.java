@@ -25,6 +25,8 @@ package frodo2.algorithms;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.TreeMap;
@@ -32,6 +34,8 @@ import java.util.TreeSet;
 
 import org.jdom2.Document;
 import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.xml.sax.SAXException;
 
 import frodo2.algorithms.reformulation.ProblemRescaler;
 import frodo2.algorithms.varOrdering.election.VariableElection;
@@ -53,6 +57,7 @@ public abstract class AbstractDCOPsolver < V extends Addable<V>, U extends Addab
 	 * @param args 	[algoName, solverClassName, agentConfigFile, problemFile, timeout in seconds, outputFile]
 	 * @throws Exception if an error occurs
 	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public static void main (String[] args) throws Exception {
 		
 		// Parse the input arguments
@@ -60,7 +65,15 @@ public abstract class AbstractDCOPsolver < V extends Addable<V>, U extends Addab
 		String solverClassName = args[1];
 		Document agentConfig = XCSPparser.parse(args[2], false);
 		String probFilename = args[3];
-		Document problemFile = XCSPparser.parse(probFilename, false);
+		
+		// The problem file may be a ProblemSnapshot, whose presentation is then rebuilt for the statistics
+		Document problemFile;
+		ProblemSnapshot<?, ?> snapshot = null;
+		if (ProblemSnapshot.isSnapshot(new File (probFilename))) {
+			snapshot = ProblemSnapshot.load(new File (probFilename));
+			problemFile = new Document (new Element ("instance").addContent(snapshot.getPresentation()));
+		} else 
+			problemFile = XCSPparser.parse(probFilename, false);
 		Long timeout = 1000 * Long.parseLong(args[4]); // *1000 to get it in ms
 		String outputFilePath = args[5];
 		
@@ -81,7 +94,7 @@ public abstract class AbstractDCOPsolver < V extends Addable<V>, U extends Addab
 		writer.append(solver.getTimeoutLine(algoName, problemFile, probFilename)).append("\n").flush();
 		
 		// Solve and record the stats
-		Solution<?, ?> sol = solver.solve(problemFile, false, timeout);
+		Solution<?, ?> sol = (snapshot == null ? solver.solve(problemFile, false, timeout) : solver.solve((DCOPProblemInterface) snapshot.getProblem(), false, timeout));
 		
 		if (sol != null) {
 			writer.append(algoName);
@@ -460,4 +473,106 @@ public abstract class AbstractDCOPsolver < V extends Addable<V>, U extends Addab
 		this.overrideMsgTypes();
 		return super.solve(problem, cleanAfterwards, timeout);
 	}
+
+	/** Solves the input problem, parsing it without building a JDOM Document
+	 * @param problem 	the problem, as a stream in XCSP format
+	 * @return 			an optimal solution, or \c null if the problem could not be parsed
+	 * @see AbstractDCOPsolver#solve(InputStream, boolean, boolean, Long)
+	 */
+	public S solve (InputStream problem) {
+		return this.solve(problem, false, true, null);
+	}
+
+	/** Solves the input problem, parsing it without building a JDOM Document
+	 * @param problem 	the problem, as a stream in XCSP format
+	 * @param timeout 	timeout in ms, if \c null, no timeout is used
+	 * @return 			an optimal solution, or \c null if the problem could not be parsed
+	 * @see AbstractDCOPsolver#solve(InputStream, boolean, boolean, Long)
+	 */
+	public S solve (InputStream problem, Long timeout) {
+		return this.solve(problem, false, true, timeout);
+	}
+
+	/** Solves the input problem, parsing it without building a JDOM Document
+	 * @param problem 			the problem, as a stream in XCSP format
+	 * @param checkXCSP 		if \c true, checks the problem against the XCSP schema while it is being parsed
+	 * @param cleanAfterwards 	if \c true, cleans all the agents and the queue when they're done
+	 * @param timeout 			timeout in ms, if \c null, no timeout is used
+	 * @return 					an optimal solution, or \c null if the problem could not be parsed
+	 * @note The problem is parsed by an XCSPstreamParser. If the solver uses a parser class other than XCSPparser 
+	 * (for instance to support intensional constraints), a JDOM Document must be built and passed to this parser. 
+	 */
+	public S solve (InputStream problem, boolean checkXCSP, boolean cleanAfterwards, Long timeout) {
+		return this.solve(problem, null, checkXCSP, cleanAfterwards, timeout);
+	}
+
+	/** Solves the problem in the input file, parsing it without building a JDOM Document
+	 * @param path 		the path to the problem file in XCSP format
+	 * @return 			an optimal solution, or \c null if the problem could not be parsed
+	 * @see AbstractDCOPsolver#solve(String, boolean, boolean, Long)
+	 */
+	public S solve (String path) {
+		return this.solve(path, false, true, null);
+	}
+
+	/** Solves the problem in the input file, parsing it without building a JDOM Document
+	 * @param path 		the path to the problem file in XCSP format
+	 * @param timeout 	timeout in ms, if \c null, no timeout is used
+	 * @return 			an optimal solution, or \c null if the problem could not be parsed
+	 * @see AbstractDCOPsolver#solve(String, boolean, boolean, Long)
+	 */
+	public S solve (String path, Long timeout) {
+		return this.solve(path, false, true, timeout);
+	}
+
+	/** Solves the problem in the input file, parsing it without building a JDOM Document
+	 * @param path 				the path to the problem file in XCSP format
+	 * @param checkXCSP 		if \c true, checks the problem against the XCSP schema while it is being parsed
+	 * @param cleanAfterwards 	if \c true, cleans all the agents and the queue when they're done
+	 * @param timeout 			timeout in ms, if \c null, no timeout is used
+	 * @return 					an optimal solution, or \c null if the problem could not be parsed
+	 * @note The problem is parsed by an XCSPstreamParser. If the solver uses a parser class other than XCSPparser 
+	 * (for instance to support intensional constraints), a JDOM Document must be built and passed to this parser. 
+	 * The file may also be a ProblemSnapshot, which is then loaded without any parsing. 
+	 */
+	public S solve (String path, boolean checkXCSP, boolean cleanAfterwards, Long timeout) {
+		return this.solve(null, new File (path), checkXCSP, cleanAfterwards, timeout);
+	}
+
+	/** Parses the input problem with an XCSPstreamParser (or loads it if it is a ProblemSnapshot), and solves it
+	 * @param stream 			the problem, as a stream in XCSP format; ignored if \a file is not \c null
+	 * @param file 				the problem file in XCSP format or ProblemSnapshot format, or \c null to read the problem from \a stream
+	 * @param checkXCSP 		if \c true, checks the problem against the XCSP schema while it is being parsed
+	 * @param cleanAfterwards 	if \c true, cleans all the agents and the queue when they're done
+	 * @param timeout 			timeout in ms, if \c null, no timeout is used
+	 * @return 					an optimal solution, or \c null if the problem could not be parsed
+	 */
+	private S solve (InputStream stream, File file, boolean checkXCSP, boolean cleanAfterwards, Long timeout) {
+		
+		Element parserElmt = this.agentDesc.getRootElement().getChild("parser");
+		
+		DCOPProblemInterface<V, U> problem;
+		try {
+			if (file != null && ProblemSnapshot.isSnapshot(file)) 
+				problem = ProblemSnapshot.<V, U>load(file).getProblem();
+				
+			else if (XCSPparser.class.equals(this.parserClass)) {
+				XCSPstreamParser<V, U> parser = (parserElmt == null ? new XCSPstreamParser<V, U> () : new XCSPstreamParser<V, U> (parserElmt));
+				problem = (file != null ? parser.parse(file, checkXCSP) : parser.parse(stream, checkXCSP));
+				
+			} else // the parser needs the JDOM Document
+				return this.solve(file != null ? XCSPparser.parse(file, checkXCSP) : XCSPparser.parse(stream, checkXCSP), cleanAfterwards, timeout);
+			
+		} catch (SAXException | JDOMException e) {
+			System.err.println("Failed to parse the problem");
+			e.printStackTrace();
+			return null;
+		} catch (IOException e) {
+			System.err.println("Failed to read the problem");
+			e.printStackTrace();
+			return null;
+		}
+		
+		return this.solve(problem, cleanAfterwards, timeout);
+	}
 }
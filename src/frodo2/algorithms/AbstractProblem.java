@@ -451,6 +451,17 @@ public abstract class AbstractProblem < V extends Addable<V>, U extends Addable<
 		return Collections.unmodifiableSet(this.agents);
 	}
 
+	/** Builds the subproblems by calling getSubProblem() for each agent
+	 * @see DCOPProblemInterface#getSubProblems()
+	 */
+	public Map< String, ? extends DCOPProblemInterface<V, U> > getSubProblems () {
+
+		HashMap< String, DCOPProblemInterface<V, U> > out = new HashMap< String, DCOPProblemInterface<V, U> > ();
+		for (String agent : this.agents)
+			out.put(agent, this.getSubProblem(agent));
+		return out;
+	}
+
 	/** @return -INF if we are maximizing, +INF if we are minimizing */
 	protected U getInfeasibleUtil () {
 		
@@ -32,6 +32,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -202,6 +203,7 @@ public class AgentFactory < V extends Addable<V>, U extends Addable<U> > impleme
 		Document problem = null;
 		Document agent = null;
 		String outputFilePath = null;
+		String queueMode = null;
 		for (int i = 0; i < args.length; i++) {
 			String arg = args[i];
 
@@ -234,6 +236,21 @@ public class AgentFactory < V extends Addable<V>, U extends Addable<U> > impleme
 				continue;
 			}
 
+			// Parse the queue execution mode
+			if ("-queueMode".equals(args[i])) {
+				if (i + 1 >= args.length) 
+					System.err.println("Option `-queueMode' must be followed by one of " + Arrays.toString(Queue.ExecutionMode.values()));
+				else {
+					try {
+						queueMode = Queue.ExecutionMode.valueOf(args[++i]).toString();
+					} catch (IllegalArgumentException e) {
+						System.err.println("Ignoring the option -queueMode, which is followed by `" + args[i] + "' instead of one of " 
+								+ Arrays.toString(Queue.ExecutionMode.values()));
+					}
+				}
+				continue;
+			}
+
 			// Parse the output file name
 			if ("-o".equals(args[i])) {
 				if (i + 1 >= args.length) 
@@ -286,6 +303,9 @@ public class AgentFactory < V extends Addable<V>, U extends Addable<U> > impleme
 			System.out.println("Using the following agent:\n" + XCSPparser.toString(agent));
 		}
 
+		if (queueMode != null) // only applies when not measuring simulated time
+			agent.getRootElement().setAttribute("queueMode", queueMode);
+
 		System.out.println("Setting up the agents...");
 
 		if (timeout == null) {
@@ -616,8 +636,10 @@ public class AgentFactory < V extends Addable<V>, U extends Addable<U> > impleme
 		try {
 
 			// Create the queue
-			if (! this.measureTime) 
-				this.queue = new Queue(false);
+			if (! this.measureTime) {
+				String queueMode = agentDesc.getRootElement().getAttributeValue("queueMode");
+				this.queue = new Queue(false, (queueMode == null ? Queue.ExecutionMode.THREAD : Queue.ExecutionMode.valueOf(queueMode)));
+			}
 
 			else { // use the CentralMailer
 				Element mailmanElmt = agentDesc.getRootElement().getChild("mailman");
@@ -649,9 +671,10 @@ public class AgentFactory < V extends Addable<V>, U extends Addable<U> > impleme
 			nbrAgents = agentNames.size();
 			agents = new HashMap< String, AgentInterface<V> > (nbrAgents);
 			subProbs = new HashMap< String, ProblemInterface<V, U> > ();
+			Map< String, ? extends ProblemInterface<V, U> > allSubProbs = problem.getSubProblems();
 			synchronized (agents) {
 				for (String agent : agentNames) {
-					ProblemInterface<V, U> subProb = problem.getSubProblem(agent);
+					ProblemInterface<V, U> subProb = allSubProbs.get(agent);
 					if (this.useTCP) 
 						agents.put(agent, (AgentInterface<V>) AgentFactory.createAgent(pipe, pipe, subProb, agentDesc, statsToController, ++port));
 					else 
@@ -843,17 +866,18 @@ public class AgentFactory < V extends Addable<V>, U extends Addable<U> > impleme
 		}
 
 		// Instantiate the new agents and restarts the old ones
+		Map< String, ? extends ProblemInterface<V, U> > allSubProbs = problem.getSubProblems();
 		synchronized (agents) {
 			for (String agentName : agentNames) {
 
 				// Check if this agent is old or new
 				AgentInterface<V> agent = this.agents.get(agentName);
 				if (agent != null) {// old agent
-					this.subProbs.get(agentName).reset((ProblemInterface) problem.getSubProblem(agentName));
+					this.subProbs.get(agentName).reset((ProblemInterface) allSubProbs.get(agentName));
 					agent.report();
 
 				} else { // new agent
-					ProblemInterface<V, U> subProb = problem.getSubProblem(agentName);
+					ProblemInterface<V, U> subProb = allSubProbs.get(agentName);
 					if (this.useTCP) 
 						agents.put(agentName, (AgentInterface<V>) AgentFactory.createAgent(pipe, pipe, subProb, agentDesc, statsToController, ++port));
 					else 
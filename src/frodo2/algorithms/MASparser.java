@@ -26,6 +26,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -299,6 +301,17 @@ public class MASparser <V extends Addable<V>, U extends Addable<U>> implements M
 		return new MASparser<V, U>(agent, agentType, masProblem, this.countNCCCs, this.spacesToIgnoreNcccs);
 	}
 
+	/** 
+	 * @see frodo2.solutionSpaces.ProblemInterface#getSubProblems()
+	 */
+	public HashMap< String, MASparser<V, U> > getSubProblems() {
+		
+		HashMap< String, MASparser<V, U> > out = new HashMap< String, MASparser<V, U> > ();
+		for (String agent : new ArrayList<String> (this.getAgents())) 
+			out.put(agent, this.getSubProblem(agent));
+		return out;
+	}
+
 	/** 
 	 * @see frodo2.solutionSpaces.ProblemInterface#multipleTypes()
 	 */
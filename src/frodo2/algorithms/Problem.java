@@ -130,6 +130,16 @@ public class Problem < V extends Addable<V>, U extends Addable<U> > extends Abst
 		return builder.toString();
 	}
 	
+	/** Serializes the problem in the compact binary format of ProblemSnapshot
+	 * 
+	 * This applies to every Java serialization of a Problem, but not of its subclasses, for which this private method is not called. 
+	 * The snapshot records all the fields of the problem, and deserializes back to a Problem. 
+	 * @return a snapshot of this problem
+	 */
+	private Object writeReplace () {
+		return new ProblemSnapshot<V, U> (this);
+	}
+	
 	/** @see DCOPProblemInterface#reset(ProblemInterface) */
 	public void reset(ProblemInterface<V, U> newProblem) {
 		
@@ -692,6 +702,309 @@ public class Problem < V extends Addable<V>, U extends Addable<U> > extends Abst
 		return out;
 	}
 
+	/** Builds the subproblems of all agents in a single pass over an index of the spaces by the variables in their scopes
+	 *
+	 * Each subproblem is the same as the one returned by getSubProblem(), but is built in time linear in its own size
+	 * rather than in the size of the overall problem.
+	 * @see DCOPProblemInterface#getSubProblems()
+	 */
+	@Override
+	public Map< String, Problem<V, U> > getSubProblems () {
+
+		Partition partition = new Partition ();
+
+		HashMap< String, Problem<V, U> > out = new HashMap< String, Problem<V, U> > ();
+		for (String agent : this.agents)
+			out.put(agent, partition.getSubProblem(agent));
+
+		return out;
+	}
+
+	/** An index of the solution and probability spaces by the variables in their scopes and by their owners, used to extract subproblems
+	 * @author Thomas Leaute
+	 */
+	private class Partition {
+
+		/** The solution spaces */
+		private final List< UtilitySolutionSpace<V, U> > sols;
+
+		/** The probability spaces */
+		private final List< UtilitySolutionSpace<V, U> > probs;
+
+		/** For each variable, the increasing indexes in \a sols of the solution spaces involving it */
+		private final HashMap< String, ArrayList<Integer> > solsByVar = new HashMap< String, ArrayList<Integer> > ();
+
+		/** For each variable, the increasing indexes in \a probs of the probability spaces involving it */
+		private final HashMap< String, ArrayList<Integer> > probsByVar = new HashMap< String, ArrayList<Integer> > ();
+
+		/** The indexes in \a sols of the solution spaces known to all agents or to their owner, for each owner ("PUBLIC" for public spaces) */
+		private final HashMap< String, ArrayList<Integer> > solsByOwner = new HashMap< String, ArrayList<Integer> > ();
+
+		/** The indexes in \a probs of the probability spaces known to all agents or to their owner, for each owner ("PUBLIC" for public spaces) */
+		private final HashMap< String, ArrayList<Integer> > probsByOwner = new HashMap< String, ArrayList<Integer> > ();
+
+		/** For each variable, the owners of the solution and probability spaces involving it */
+		private final HashMap< String, HashSet<String> > spaceOwners = new HashMap< String, HashSet<String> > ();
+
+		/** For each variable, the owners of the solution spaces involving it */
+		private final HashMap< String, HashSet<String> > solOwners = new HashMap< String, HashSet<String> > ();
+
+		/** For each solution space, the stamp of the last subproblem it was added to */
+		private final int[] solStamps;
+
+		/** For each probability space, the stamp of the last subproblem it was added to */
+		private final int[] probStamps;
+
+		/** The stamp of the subproblem currently being built */
+		private int stamp = 0;
+
+		/** Constructor */
+		Partition () {
+
+			this.sols = Problem.this.spaces;
+			this.probs = new ArrayList< UtilitySolutionSpace<V, U> > (Problem.this.probSpaces.values());
+			this.solStamps = new int [this.sols.size()];
+			this.probStamps = new int [this.probs.size()];
+
+			this.index(this.sols, this.solsByVar, this.solsByOwner, this.solOwners);
+			this.index(this.probs, this.probsByVar, this.probsByOwner, null);
+		}
+
+		/** Indexes a list of spaces
+		 * @param spaces 		the spaces
+		 * @param byVar 		for each variable, the increasing indexes of the spaces involving it
+		 * @param byOwner 		for each owner, the indexes of the spaces it owns
+		 * @param owners 		if not \c null, for each variable, the owners of the spaces involving it
+		 */
+		private void index (List< UtilitySolutionSpace<V, U> > spaces, HashMap< String, ArrayList<Integer> > byVar,
+				HashMap< String, ArrayList<Integer> > byOwner, HashMap< String, HashSet<String> > owners) {
+
+			for (int i = 0; i < spaces.size(); i++) {
+				UtilitySolutionSpace<V, U> space = spaces.get(i);
+				String owner = space.getOwner();
+
+				if (owner != null) {
+					ArrayList<Integer> owned = byOwner.get(owner);
+					if (owned == null)
+						byOwner.put(owner, owned = new ArrayList<Integer> ());
+					owned.add(i);
+				}
+
+				for (String var : space.getVariables()) {
+
+					ArrayList<Integer> indexes = byVar.get(var);
+					if (indexes == null)
+						byVar.put(var, indexes = new ArrayList<Integer> ());
+					if (indexes.isEmpty() || indexes.get(indexes.size() - 1) != i) // the variable may appear more than once in the scope
+						indexes.add(i);
+
+					if (owner != null && ! "PUBLIC".equals(owner)) {
+						addOwner(this.spaceOwners, var, owner);
+						if (owners != null)
+							addOwner(owners, var, owner);
+					}
+				}
+			}
+		}
+
+		/** Records the owner of a space involving a given variable
+		 * @param owners 	for each variable, the owners of the spaces involving it
+		 * @param var 		the variable
+		 * @param owner 	the owner of the space
+		 */
+		private void addOwner (HashMap< String, HashSet<String> > owners, String var, String owner) {
+			HashSet<String> set = owners.get(var);
+			if (set == null)
+				owners.put(var, set = new HashSet<String> ());
+			set.add(owner);
+		}
+
+		/** Builds the subproblem of a given agent
+		 * @param agent 	the agent
+		 * @return the subproblem, identical to the one returned by Problem#getSubProblem(String)
+		 */
+		Problem<V, U> getSubProblem (String agent) {
+
+			final int stamp = ++this.stamp;
+
+			Problem<V, U> out = new Problem<V, U> (maximize, publicAgents, mpc, extendedRandNeighborhoods);
+			out.setDomClass(domClass);
+			out.setUtilClass(utilClass);
+			out.setAgent(agent);
+
+			// Create the list of agents
+			HashSet<String> knownAgents = new HashSet<String> ();
+			knownAgents.add(agent);
+			if (mpc || publicAgents) // the agent is supposed to know all the agents
+				knownAgents.addAll(agents);
+
+			// Start from the variables owned by the agent, and in MPC mode from all variables
+			HashSet<String> vars = new HashSet<String> (getVariables(agent));
+			if (mpc)
+				vars.addAll(getVariables());
+			ArrayList<String> queue = new ArrayList<String> (vars);
+
+			// The spaces added to the subproblem, and the variable through which each probability space was reached
+			ArrayList<Integer> outSols = new ArrayList<Integer> ();
+			HashMap<Integer, String> outProbs = new HashMap<Integer, String> ();
+
+			// Add the public spaces and the spaces owned by the agent that involve relevant variables
+			for (String owner : new String[] { "PUBLIC", agent }) {
+
+				ArrayList<Integer> owned = this.solsByOwner.get(owner);
+				if (owned != null) {
+					for (int i : owned) {
+						for (String var : this.sols.get(i).getVariables()) {
+							if (extendedRandNeighborhoods || ! isRandom(var)) {
+								this.addSol(i, stamp, outSols, vars, queue);
+								break;
+							}
+						}
+					}
+				}
+
+				owned = this.probsByOwner.get(owner);
+				if (owned != null) {
+					for (int i : owned) {
+						for (String var : this.probs.get(i).getVariables()) {
+							if (isRandom(var)) {
+								this.addProb(i, var, stamp, outProbs, vars, queue);
+								break;
+							}
+						}
+					}
+				}
+			}
+
+			// Go through the spaces involving known variables, until no more variable becomes known
+			for (int next = 0; next < queue.size(); next++) {
+				String var = queue.get(next);
+				final boolean random = isRandom(var);
+
+				ArrayList<Integer> indexes = this.solsByVar.get(var);
+				if (indexes != null && (extendedRandNeighborhoods || ! random))
+					for (int i : indexes)
+						if (this.solStamps[i] != stamp && this.isVisible(this.sols.get(i), agent))
+							this.addSol(i, stamp, outSols, vars, queue);
+
+				indexes = this.probsByVar.get(var);
+				if (indexes != null && random)
+					for (int i : indexes)
+						if (this.probStamps[i] != stamp && this.isVisible(this.probs.get(i), agent))
+							this.addProb(i, var, stamp, outProbs, vars, queue);
+			}
+
+			// Clone the spaces, in the order in which they appear in the overall problem
+			Collections.sort(outSols);
+			for (int i : outSols) {
+				UtilitySolutionSpace<V, U> space = this.sols.get(i);
+				UtilitySolutionSpace<V, U> clone = space.clone();
+				if (space.countsCCs())
+					clone.setProblem(out);
+				out.addSolutionSpace(clone);
+				this.addScope(out, space);
+			}
+			for (Map.Entry<Integer, String> entry : outProbs.entrySet()) {
+				UtilitySolutionSpace<V, U> space = this.probs.get(entry.getKey());
+				out.probSpaces.put(entry.getValue(), space.clone());
+				this.addScope(out, space);
+			}
+
+			// Add all variables known to this agent
+			for (String var : vars) {
+
+				if (isRandom(var)) {
+					out.addRandomVar(var, getDomain(var));
+					continue;
+				}
+
+				String owner = getOwner(var);
+				out.addVariable(var, owner, getDomain(var));
+
+				if (owner == null || owner.equals(agent)) { // the owners of constraints over this variable should be known to the agent
+					HashSet<String> constOwners = this.solOwners.get(var);
+					if (constOwners != null)
+						knownAgents.addAll(constOwners);
+				}
+
+				// Check the owner of this variable
+				if (owner != null)
+					knownAgents.add(owner);
+				else if (! mpc) { // shared variable; set its agent scope
+					HashSet<String> varScope = this.spaceOwners.get(var);
+					if (varScope != null) {
+						varScope = new HashSet<String> (varScope);
+						varScope.remove(agent);
+						if (! varScope.isEmpty())
+							out.varScopes.put(var, varScope);
+					}
+				}
+			}
+
+			// Fill in the list of agents
+			out.agents.addAll(knownAgents);
+
+			return out;
+		}
+
+		/** Checks whether a space is visible to an agent
+		 * @param space 	the space
+		 * @param agent 	the agent
+		 * @return whether the space is public, has no owner, or is owned by the agent
+		 */
+		private boolean isVisible (UtilitySolutionSpace<V, U> space, String agent) {
+			String owner = space.getOwner();
+			return owner == null || "PUBLIC".equals(owner) || owner.equals(agent);
+		}
+
+		/** Adds a solution space to the subproblem currently being built
+		 * @param i 		the index of the space in \a sols
+		 * @param stamp 	the stamp of the subproblem
+		 * @param outSols 	the indexes of the solution spaces in the subproblem
+		 * @param vars 		the variables known to the agent
+		 * @param queue 	the variables whose spaces remain to be looked at
+		 */
+		private void addSol (int i, int stamp, ArrayList<Integer> outSols, HashSet<String> vars, ArrayList<String> queue) {
+			this.solStamps[i] = stamp;
+			outSols.add(i);
+			this.addVars(this.sols.get(i), vars, queue);
+		}
+
+		/** Adds a probability space to the subproblem currently being built
+		 * @param i 		the index of the space in \a probs
+		 * @param var 		the random variable through which the space was reached
+		 * @param stamp 	the stamp of the subproblem
+		 * @param outProbs 	the indexes of the probability spaces in the subproblem, and the variables through which they were reached
+		 * @param vars 		the variables known to the agent
+		 * @param queue 	the variables whose spaces remain to be looked at
+		 */
+		private void addProb (int i, String var, int stamp, HashMap<Integer, String> outProbs, HashSet<String> vars, ArrayList<String> queue) {
+			this.probStamps[i] = stamp;
+			outProbs.put(i, var);
+			this.addVars(this.probs.get(i), vars, queue);
+		}
+
+		/** Adds the unowned variables in the scope of a space to the known variables
+		 * @param space 	the space
+		 * @param vars 		the variables known to the agent
+		 * @param queue 	the variables whose spaces remain to be looked at
+		 */
+		private void addVars (UtilitySolutionSpace<V, U> space, HashSet<String> vars, ArrayList<String> queue) {
+			for (String var : space.getVariables())
+				if (getOwner(var) == null && vars.add(var))
+					queue.add(var);
+		}
+
+		/** Adds the variables in the scope of a space to a subproblem
+		 * @param out 		the subproblem
+		 * @param space 	the space
+		 */
+		private void addScope (Problem<V, U> out, UtilitySolutionSpace<V, U> space) {
+			for (String var : space.getVariables())
+				out.addVariable(var, getOwner(var), space.getDomain(var));
+		}
+	}
+
 	/** 
 	 * @see frodo2.solutionSpaces.ProblemInterface#multipleTypes()
 	 */
@@ -0,0 +1,492 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+ */
+
+package frodo2.algorithms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.UtilitySolutionSpace;
+
+/** A compact, versioned binary snapshot of a DCOP problem or subproblem
+ *
+ * A snapshot file starts with a magic number and a format version, followed by the description of the problem:
+ * its agents, its variables with their owners and a table of their distinct domains, its agent scopes, and its spaces,
+ * which are serialized through their own Externalizable implementations. Loading a snapshot deserializes the whole problem to the heap; 
+ * it saves parsing the XCSP text, but the utility arrays are not read in place. 
+ *
+ * A ProblemSnapshot is also the serialized form of a Problem (but not of its subclasses, nor of other problem classes such as XCSPparser), 
+ * such that Problem subproblems sent to daemons are shipped in this format.
+ * @author Thomas Leaute
+ * @param <V> the type used for variable values
+ * @param <U> the type used for utility values
+ */
+public class ProblemSnapshot < V extends Addable<V>, U extends Addable<U> > implements Externalizable {
+
+	/** Used for serialization */
+	private static final long serialVersionUID = 2953371640522658297L;
+
+	/** The magic number at the beginning of a snapshot file ("FRSN") */
+	public static final int MAGIC = 0x4652534E;
+
+	/** The version of the snapshot format */
+	public static final short VERSION = 1;
+
+	/** The problem */
+	private Problem<V, U> problem;
+
+	/** The name of the problem instance, or \c null if unknown */
+	private String name;
+
+	/** The statistics about the problem instance written by the problem generator, indexed by their names */
+	private LinkedHashMap<String, String> stats = new LinkedHashMap<String, String> ();
+
+	/** Empty constructor used for externalization */
+	public ProblemSnapshot () { }
+
+	/** Constructor
+	 * @param problem 	the problem
+	 */
+	public ProblemSnapshot (Problem<V, U> problem) {
+		this.problem = problem;
+	}
+
+	/** Constructor
+	 * @param problem 	the problem
+	 * @param name 		the name of the problem instance, or \c null if unknown
+	 * @param stats 	the statistics about the problem instance written by the problem generator, indexed by their names
+	 */
+	public ProblemSnapshot (Problem<V, U> problem, String name, Map<String, String> stats) {
+		this.problem = problem;
+		this.name = name;
+		this.stats.putAll(stats);
+	}
+
+	/** Converts an XCSP file into a snapshot file
+	 * @param args 			[XCSP input file, snapshot output file, optional class of utility values]
+	 * @throws Exception 	if an error occurs
+	 */
+	@SuppressWarnings("unchecked")
+	public static void main (String[] args) throws Exception {
+
+		if (args.length < 2) {
+			System.err.println("Usage: ProblemSnapshot XCSPinputFile snapshotOutputFile [utilClass]");
+			return;
+		}
+
+		Document doc = XCSPparser.parse(args[0], false);
+		XCSPparser<AddableInteger, ?> parser = new XCSPparser<AddableInteger, AddableInteger> (doc, true); // count constraint checks, as the agent configurations do
+		if (args.length > 2)
+			parser.setUtilClass((Class) Class.forName(args[2]));
+
+		// Record the statistics about the problem instance
+		Element presElmt = doc.getRootElement().getChild("presentation");
+		LinkedHashMap<String, String> stats = new LinkedHashMap<String, String> ();
+		for (Element child : presElmt.getChildren())
+			stats.put(child.getAttributeValue("name"), child.getText());
+
+		long start = System.currentTimeMillis();
+		save((Problem) parser.parse(), presElmt.getAttributeValue("name"), stats, new File (args[1]));
+		System.out.println("Wrote the snapshot " + args[1] + " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/** @return the problem */
+	public Problem<V, U> getProblem () {
+		return this.problem;
+	}
+
+	/** @return the name of the problem instance, or \c null if unknown */
+	public String getName () {
+		return this.name;
+	}
+
+	/** @return the statistics about the problem instance written by the problem generator, indexed by their names */
+	public Map<String, String> getStats () {
+		return this.stats;
+	}
+
+	/** @return an XCSP presentation element containing the name of the problem instance, whether it is a maximization problem, and its statistics */
+	public Element getPresentation () {
+
+		Element presElmt = new Element ("presentation");
+		if (this.name != null)
+			presElmt.setAttribute("name", this.name);
+		presElmt.setAttribute("maximize", Boolean.toString(this.problem.maximize()));
+
+		for (Map.Entry<String, String> entry : this.stats.entrySet()) {
+			Element statsElmt = new Element ("stats");
+			statsElmt.setAttribute("name", entry.getKey());
+			statsElmt.setText(entry.getValue());
+			presElmt.addContent(statsElmt);
+		}
+
+		return presElmt;
+	}
+
+	/** Saves a problem to a snapshot file
+	 * @param <V> 			the type used for variable values
+	 * @param <U> 			the type used for utility values
+	 * @param problem 		the problem
+	 * @param file 			the snapshot file
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	public static < V extends Addable<V>, U extends Addable<U> > void save (Problem<V, U> problem, File file) throws IOException {
+		save(problem, null, new HashMap<String, String> (), file);
+	}
+
+	/** Saves a problem to a snapshot file
+	 * @param <V> 			the type used for variable values
+	 * @param <U> 			the type used for utility values
+	 * @param problem 		the problem
+	 * @param name 			the name of the problem instance, or \c null if unknown
+	 * @param stats 		the statistics about the problem instance written by the problem generator, indexed by their names
+	 * @param file 			the snapshot file
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	public static < V extends Addable<V>, U extends Addable<U> > void save (Problem<V, U> problem, String name, Map<String, String> stats, File file)
+	throws IOException {
+
+		try (OutputStream out = new BufferedOutputStream (new FileOutputStream (file), 1 << 16)) {
+			write(new ProblemSnapshot<V, U> (problem, name, stats), out);
+		}
+	}
+
+	/** Writes a snapshot to a stream
+	 * @param snapshot 		the snapshot
+	 * @param stream 		the output stream; is not closed
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	public static void write (ProblemSnapshot<?, ?> snapshot, OutputStream stream) throws IOException {
+
+		new DataOutputStream (stream).writeInt(MAGIC);
+		ObjectOutputStream out = new ObjectOutputStream (stream);
+		snapshot.writeExternal(out);
+		out.flush();
+	}
+
+	/** Loads a snapshot file
+	 * @param <V> 			the type used for variable values
+	 * @param <U> 			the type used for utility values
+	 * @param file 			the snapshot file
+	 * @return the snapshot
+	 * @throws IOException 	if an I/O error occurs, or if the file is not a snapshot in a supported version
+	 */
+	public static < V extends Addable<V>, U extends Addable<U> > ProblemSnapshot<V, U> load (File file) throws IOException {
+
+		try (InputStream in = new BufferedInputStream (new FileInputStream (file), 1 << 16)) {
+			return read(in);
+		}
+	}
+
+	/** Reads a snapshot from a stream
+	 * @param <V> 			the type used for variable values
+	 * @param <U> 			the type used for utility values
+	 * @param stream 		the input stream
+	 * @return the snapshot
+	 * @throws IOException 	if an I/O error occurs, or if the stream does not contain a snapshot in a supported version
+	 */
+	public static < V extends Addable<V>, U extends Addable<U> > ProblemSnapshot<V, U> read (InputStream stream) throws IOException {
+
+		if (new DataInputStream (stream).readInt() != MAGIC)
+			throw new IOException ("Not a problem snapshot");
+		ObjectInputStream in = new ObjectInputStream (stream);
+
+		ProblemSnapshot<V, U> snapshot = new ProblemSnapshot<V, U> ();
+		try {
+			snapshot.readExternal(in);
+		} catch (ClassNotFoundException e) {
+			throw new IOException ("Unknown class in the problem snapshot", e);
+		}
+		return snapshot;
+	}
+
+	/** Checks whether a file is a snapshot file
+	 * @param file 	the file
+	 * @return \c true if the file starts with the header of a snapshot file
+	 */
+	public static boolean isSnapshot (File file) {
+
+		try (DataInputStream in = new DataInputStream (new FileInputStream (file))) {
+			return in.readInt() == MAGIC;
+
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/** @see java.io.Externalizable#writeExternal(java.io.ObjectOutput) */
+	public void writeExternal(ObjectOutput out) throws IOException {
+
+		Problem<V, U> problem = this.problem;
+		out.writeShort(VERSION);
+
+		// Write the description of the instance
+		writeString(out, this.name);
+		out.writeInt(this.stats.size());
+		for (Map.Entry<String, String> entry : this.stats.entrySet()) {
+			out.writeUTF(entry.getKey());
+			writeString(out, entry.getValue());
+		}
+
+		// Write the settings
+		out.writeBoolean(problem.maximize);
+		out.writeBoolean(problem.publicAgents);
+		out.writeBoolean(problem.mpc);
+		out.writeBoolean(problem.extendedRandNeighborhoods);
+		writeString(out, problem.agentName);
+		Class<V> domClass = problem.getDomClass();
+		out.writeUTF(domClass.getName());
+		out.writeUTF(problem.getUtilClass().getName());
+		out.writeLong(problem.getNCCCs());
+
+		// Write the agents
+		out.writeInt(problem.agents.size());
+		for (String agent : problem.agents)
+			out.writeUTF(agent);
+
+		// Write the table of distinct domains
+		Set<String> vars = problem.domains.keySet();
+		HashMap< List<V>, Integer > domIndexes = new HashMap< List<V>, Integer > ();
+		ArrayList<V[]> doms = new ArrayList<V[]> ();
+		for (String var : vars) {
+			V[] dom = problem.domains.get(var);
+			if (domIndexes.putIfAbsent(Arrays.asList(dom), doms.size()) == null)
+				doms.add(dom);
+		}
+		final boolean intValues = AddableInteger.class.equals(domClass);
+		out.writeInt(doms.size());
+		for (V[] dom : doms) {
+			out.writeInt(dom.length);
+			for (V val : dom) {
+				if (intValues)
+					out.writeInt(val.intValue());
+				else
+					out.writeObject(val);
+			}
+		}
+
+		// Write the variables, with the indexes of their domains
+		out.writeInt(vars.size());
+		for (String var : vars) {
+			out.writeUTF(var);
+			final boolean random = problem.randVars.contains(var);
+			out.writeBoolean(random);
+			if (! random)
+				writeString(out, problem.owners.get(var));
+			out.writeInt(domIndexes.get(Arrays.asList(problem.domains.get(var))));
+		}
+
+		// Write the agent scopes
+		Map< String, Set<String> > varScopes = problem.varScopes;
+		out.writeInt(varScopes.size());
+		for (Map.Entry< String, Set<String> > entry : varScopes.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (String agent : entry.getValue())
+				out.writeUTF(agent);
+		}
+
+		// Write the solution spaces, with their owners, which are not part of their serialized forms
+		out.writeInt(problem.spaces.size());
+		for (UtilitySolutionSpace<V, U> space : problem.spaces)
+			writeSpace(out, space);
+
+		// Write the probability spaces, each only once even if it is shared by several random variables
+		Map< String, ? extends UtilitySolutionSpace<V, U> > probSpaces = problem.getProbabilitySpacePerRandVar();
+		IdentityHashMap< UtilitySolutionSpace<V, U>, Integer > probIndexes = new IdentityHashMap< UtilitySolutionSpace<V, U>, Integer > ();
+		out.writeInt(probSpaces.size());
+		for (Map.Entry< String, ? extends UtilitySolutionSpace<V, U> > entry : probSpaces.entrySet()) {
+			out.writeUTF(entry.getKey());
+			Integer index = probIndexes.get(entry.getValue());
+			if (index != null)
+				out.writeInt(index);
+			else {
+				out.writeInt(-1);
+				probIndexes.put(entry.getValue(), probIndexes.size());
+				writeSpace(out, entry.getValue());
+			}
+		}
+	}
+
+	/** @see java.io.Externalizable#readExternal(java.io.ObjectInput) */
+	@SuppressWarnings("unchecked")
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+
+		final short version = in.readShort();
+		if (version != VERSION)
+			throw new IOException ("Unsupported problem snapshot version: " + version);
+
+		// Read the description of the instance
+		this.name = readString(in);
+		for (int i = in.readInt(); i > 0; i--)
+			this.stats.put(in.readUTF(), readString(in));
+
+		// Read the settings
+		final boolean maximize = in.readBoolean();
+		final boolean publicAgents = in.readBoolean();
+		final boolean mpc = in.readBoolean();
+		final boolean extendedRandNeighborhoods = in.readBoolean();
+		Problem<V, U> problem = new Problem<V, U> (maximize, publicAgents, mpc, extendedRandNeighborhoods);
+		this.problem = problem;
+		problem.setAgent(readString(in));
+		Class<V> domClass = (Class<V>) Class.forName(in.readUTF());
+		problem.setDomClass(domClass);
+		problem.setUtilClass((Class<U>) Class.forName(in.readUTF()));
+		problem.setNCCCs(in.readLong());
+
+		// Read the agents
+		for (int i = in.readInt(); i > 0; i--)
+			problem.addAgent(in.readUTF());
+
+		// Read the table of distinct domains
+		final boolean intValues = AddableInteger.class.equals(domClass);
+		V[][] doms = (V[][]) Array.newInstance(domClass, in.readInt(), 0);
+		for (int i = 0; i < doms.length; i++) {
+			V[] dom = (V[]) Array.newInstance(domClass, in.readInt());
+			for (int j = 0; j < dom.length; j++)
+				dom[j] = (intValues ? (V) new AddableInteger (in.readInt()) : (V) in.readObject());
+			doms[i] = dom;
+		}
+
+		// Read the variables
+		for (int i = in.readInt(); i > 0; i--) {
+			String var = in.readUTF();
+			if (in.readBoolean()) { // random variable
+				problem.addRandomVar(var, doms[in.readInt()]);
+			} else {
+				String owner = readString(in);
+				problem.addVariable(var, owner, doms[in.readInt()]);
+			}
+		}
+
+		// Read the agent scopes
+		for (int i = in.readInt(); i > 0; i--) {
+			String var = in.readUTF();
+			Set<String> scope = new HashSet<String> ();
+			for (int j = in.readInt(); j > 0; j--)
+				scope.add(in.readUTF());
+			problem.varScopes.put(var, scope);
+		}
+
+		// Read the solution spaces
+		for (int i = in.readInt(); i > 0; i--)
+			problem.addSolutionSpace(readSpace(in, problem));
+
+		// Read the probability spaces
+		ArrayList< UtilitySolutionSpace<V, U> > probSpaces = new ArrayList< UtilitySolutionSpace<V, U> > ();
+		for (int i = in.readInt(); i > 0; i--) {
+			String var = in.readUTF();
+			int index = in.readInt();
+			if (index < 0) {
+				index = probSpaces.size();
+				probSpaces.add(readSpace(in, problem));
+			}
+			problem.addProbabilitySpace(var, probSpaces.get(index));
+		}
+	}
+
+	/** Writes a space, with its owner and whether it counts constraint checks
+	 * @param out 			the output
+	 * @param space 		the space
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	private static void writeSpace (ObjectOutput out, UtilitySolutionSpace<?, ?> space) throws IOException {
+		writeString(out, space.getOwner());
+		out.writeBoolean(space.countsCCs());
+		out.writeObject(space);
+	}
+
+	/** Reads a space
+	 * @param <V> 						the type used for variable values
+	 * @param <U> 						the type used for utility values
+	 * @param in 						the input
+	 * @param problem 					the problem that should be notified of constraint checks, if the space counts them
+	 * @return the space
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	if the class of the space is unknown
+	 */
+	@SuppressWarnings("unchecked")
+	private static < V extends Addable<V>, U extends Addable<U> > UtilitySolutionSpace<V, U> readSpace (ObjectInput in, Problem<V, U> problem)
+	throws IOException, ClassNotFoundException {
+
+		String owner = readString(in);
+		final boolean countsCCs = in.readBoolean();
+		UtilitySolutionSpace<V, U> space = (UtilitySolutionSpace<V, U>) in.readObject();
+		space.setOwner(owner);
+		if (countsCCs)
+			space.setProblem(problem);
+		return space;
+	}
+
+	/** Writes a String that may be \c null
+	 * @param out 			the output
+	 * @param str 			the String
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	private static void writeString (ObjectOutput out, String str) throws IOException {
+		out.writeBoolean(str != null);
+		if (str != null)
+			out.writeUTF(str);
+	}
+
+	/** Reads a String that may be \c null
+	 * @param in 			the input
+	 * @return the String
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	private static String readString (ObjectInput in) throws IOException {
+		return (in.readBoolean() ? in.readUTF() : null);
+	}
+
+	/** @return the problem, when a ProblemSnapshot is deserialized as the serialized form of a Problem */
+	private Object readResolve () {
+		return this.problem;
+	}
+}
@@ -37,6 +37,7 @@ import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
 
+import frodo2.communication.InboxScheduler;
 import frodo2.communication.IncomingMsgPolicyInterface;
 import frodo2.communication.Message;
 import frodo2.communication.MessageListener;
@@ -162,8 +163,27 @@ public class SingleQueueAgent < Val extends Addable<Val> > implements AgentInter
 		// Create the queue
 		if (useCentralMailer) 
 			this.queue = mailman.newQueue(agentID);
-		else 
-			this.queue = new Queue(this.measureMsgs);
+		else {
+			String queueMode = agentDesc.getRootElement().getAttributeValue("queueMode");
+			this.queue = new Queue(this.measureMsgs, (queueMode == null ? Queue.ExecutionMode.THREAD : Queue.ExecutionMode.valueOf(queueMode)));
+			
+			// Check whether outgoing messages should be sent in batches
+			String maxBatchSize = agentDesc.getRootElement().getAttributeValue("maxBatchSize");
+			if (maxBatchSize != null) {
+				String maxBatchDelay = agentDesc.getRootElement().getAttributeValue("maxBatchDelay");
+				this.queue.setBatching(Integer.parseInt(maxBatchSize), (maxBatchDelay == null ? 0 : Long.parseLong(maxBatchDelay)));
+			}
+			
+			// Check whether some messages should be processed before others
+			Element inboxElmt = agentDesc.getRootElement().getChild("inbox");
+			if (inboxElmt != null) 
+				this.queue.setInboxScheduler(new InboxScheduler (inboxElmt));
+		}
+		
+		// Check whether message sizes should only be measured on a sample of the messages
+		String msgSizeSampling = agentDesc.getRootElement().getAttributeValue("msgSizeSampling");
+		if (this.measureMsgs && msgSizeSampling != null) 
+			this.queue.setMsgSizeSampling(Integer.parseInt(msgSizeSampling));
 		
 		// Count NCCCs
 		this.queue.setProblem(probDesc);
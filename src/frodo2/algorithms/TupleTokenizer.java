@@ -0,0 +1,318 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+ */
+
+package frodo2.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** A char-level tokenizer for the list of tuples of an XCSP relation, of the form "u1: v v|v v|u2: v v"
+ *
+ * The values in the tuples are written into a single flat \c int array, \a arity entries per tuple. If the values are integers,
+ * they are parsed directly from the characters; otherwise, each entry is the index of the value in the table of distinct value tokens.
+ * For each tuple, the index of its utility in the table of distinct utility tokens is written into another \c int array,
+ * such that each distinct utility only needs to be parsed once.
+ *
+ * The text can be fed in several chunks, as is the case when it is read by a SAX parser.
+ * @author Thomas Leaute
+ */
+public class TupleTokenizer {
+
+	/** The arity of the relation */
+	private final int arity;
+
+	/** Whether the values are parsed as integers */
+	private final boolean intValues;
+
+	/** The values in the tuples, flattened; or their indexes in \a valueTokens if they are not parsed as integers */
+	private int[] values;
+
+	/** The number of entries in \a values */
+	private int nbrValues;
+
+	/** The index in \a values of the first value of the current tuple */
+	private int tupleStart;
+
+	/** For each tuple, the index of its utility in \a utilTokens, or -1 if no utility was specified */
+	private int[] utils;
+
+	/** The number of tuples */
+	private int nbrTuples;
+
+	/** The index of the current utility in \a utilTokens */
+	private int currentUtil = -1;
+
+	/** The distinct utility tokens */
+	private final ArrayList<String> utilTokens = new ArrayList<String> ();
+
+	/** For each distinct utility token, its index in \a utilTokens */
+	private final HashMap<String, Integer> utilIndexes = new HashMap<String, Integer> ();
+
+	/** The distinct value tokens, or \c null if the values are parsed as integers */
+	private final ArrayList<String> valueTokens;
+
+	/** For each distinct value token, its index in \a valueTokens */
+	private final HashMap<String, Integer> valueIndexes;
+
+	/** The characters of the current token */
+	private char[] token = new char [16];
+
+	/** The number of characters in the current token */
+	private int tokenLength;
+
+	/** Whether the current token has been followed by whitespace, such that the next character decides whether it was a utility */
+	private boolean tokenEnded;
+
+	/** Constructor
+	 * @param arity 		the arity of the relation
+	 * @param nbrTuples 	the expected number of tuples
+	 * @param intValues 	whether the values should be parsed as integers
+	 */
+	public TupleTokenizer (int arity, int nbrTuples, boolean intValues) {
+		this.arity = arity;
+		this.intValues = intValues;
+		this.values = new int [Math.max(arity * nbrTuples, 1)];
+		this.utils = new int [Math.max(nbrTuples, 1)];
+
+		if (intValues) {
+			this.valueTokens = null;
+			this.valueIndexes = null;
+		} else {
+			this.valueTokens = new ArrayList<String> ();
+			this.valueIndexes = new HashMap<String, Integer> ();
+		}
+	}
+
+	/** Tokenizes the whole list of tuples
+	 * @param arity 		the arity of the relation
+	 * @param nbrTuples 	the expected number of tuples
+	 * @param intValues 	whether the values should be parsed as integers
+	 * @param text 			the list of tuples
+	 * @return the tokenizer, on which end() has been called
+	 * @throws IllegalArgumentException 	if the list of tuples is malformed
+	 */
+	public static TupleTokenizer tokenize (int arity, int nbrTuples, boolean intValues, CharSequence text) {
+		TupleTokenizer tokenizer = new TupleTokenizer (arity, nbrTuples, intValues);
+		tokenizer.parse(text);
+		tokenizer.end();
+		return tokenizer;
+	}
+
+	/** Tokenizes a chunk of the list of tuples
+	 * @param text 	the chunk
+	 * @throws IllegalArgumentException 	if the list of tuples is malformed
+	 */
+	public void parse (CharSequence text) {
+		for (int i = 0, length = text.length(); i < length; i++)
+			this.next(text.charAt(i));
+	}
+
+	/** Tokenizes a chunk of the list of tuples
+	 * @param ch 		the characters
+	 * @param start 	the start position in \a ch
+	 * @param length 	the number of characters to read from \a ch
+	 * @throws IllegalArgumentException 	if the list of tuples is malformed
+	 */
+	public void parse (char[] ch, int start, int length) {
+		for (int i = start, end = start + length; i < end; i++)
+			this.next(ch[i]);
+	}
+
+	/** Ends the list of tuples
+	 * @throws IllegalArgumentException 	if the last tuple is malformed
+	 */
+	public void end () {
+		this.endValue();
+		this.endTuple();
+	}
+
+	/** Processes one character
+	 * @param c 	the character
+	 * @throws IllegalArgumentException 	if the list of tuples is malformed
+	 */
+	private void next (final char c) {
+
+		if (c == '|') {
+			this.endValue();
+			this.endTuple();
+
+		} else if (c == ':') { // the current token is the utility of the current tuple
+			if (this.tokenLength == 0 || this.nbrValues != this.tupleStart)
+				throw new IllegalArgumentException ("Misplaced utility separator `:' in a list of tuples");
+			this.currentUtil = this.internUtil();
+
+		} else if (Character.isWhitespace(c))
+			this.tokenEnded = this.tokenLength > 0;
+
+		else {
+			if (this.tokenEnded)
+				this.endValue();
+			if (this.tokenLength == this.token.length)
+				this.token = Arrays.copyOf(this.token, 2 * this.tokenLength);
+			this.token[this.tokenLength++] = c;
+		}
+	}
+
+	/** Records the current token, if any, as a value of the current tuple */
+	private void endValue () {
+
+		if (this.tokenLength == 0)
+			return;
+
+		if (this.nbrValues == this.values.length)
+			this.values = Arrays.copyOf(this.values, 2 * this.nbrValues);
+		this.values[this.nbrValues++] = (this.intValues ? this.parseInt() : this.internValue());
+
+		this.tokenLength = 0;
+		this.tokenEnded = false;
+	}
+
+	/** Ends the current tuple, if it is not empty
+	 * @throws IllegalArgumentException 	if the tuple does not have the arity of the relation
+	 */
+	private void endTuple () {
+
+		final int nbrVals = this.nbrValues - this.tupleStart;
+		if (nbrVals == 0)
+			return;
+		if (nbrVals != this.arity)
+			throw new IllegalArgumentException ("The tuple " + this.tupleString() + " does not have " + this.arity + " values");
+
+		if (this.nbrTuples == this.utils.length)
+			this.utils = Arrays.copyOf(this.utils, 2 * this.nbrTuples);
+		this.utils[this.nbrTuples++] = this.currentUtil;
+		this.tupleStart = this.nbrValues;
+	}
+
+	/** @return the current tuple, for error messages */
+	private String tupleString () {
+
+		StringBuilder builder = new StringBuilder ("[");
+		for (int i = this.tupleStart; i < this.nbrValues; i++) {
+			builder.append(this.intValues ? Integer.toString(this.values[i]) : this.valueTokens.get(this.values[i]));
+			if (i < this.nbrValues - 1)
+				builder.append(' ');
+		}
+		return builder.append(']').toString();
+	}
+
+	/** @return the integer value of the current token
+	 * @throws NumberFormatException 	if the token is not an integer
+	 */
+	private int parseInt () {
+
+		final char[] chars = this.token;
+		final int length = this.tokenLength;
+
+		int i = 0;
+		final boolean negative = (chars[0] == '-');
+		if (negative || chars[0] == '+')
+			i++;
+		if (i == length)
+			throw new NumberFormatException ("For input string: \"" + new String (chars, 0, length) + "\"");
+
+		long out = 0;
+		for ( ; i < length; i++) {
+			final int digit = chars[i] - '0';
+			if (digit < 0 || digit > 9 || out > Integer.MAX_VALUE)
+				throw new NumberFormatException ("For input string: \"" + new String (chars, 0, length) + "\"");
+			out = 10 * out + digit;
+		}
+
+		out = (negative ? -out : out);
+		if (out < Integer.MIN_VALUE || out > Integer.MAX_VALUE)
+			throw new NumberFormatException ("For input string: \"" + new String (chars, 0, length) + "\"");
+		return (int) out;
+	}
+
+	/** @return the index of the current token in \a valueTokens */
+	private int internValue () {
+		return intern(new String (this.token, 0, this.tokenLength), this.valueTokens, this.valueIndexes);
+	}
+
+	/** Consumes the current token as a utility
+	 * @return the index of the current token in \a utilTokens
+	 */
+	private int internUtil () {
+		int out = intern(new String (this.token, 0, this.tokenLength), this.utilTokens, this.utilIndexes);
+		this.tokenLength = 0;
+		this.tokenEnded = false;
+		return out;
+	}
+
+	/** Looks up a token in a table of distinct tokens, adding it if necessary
+	 * @param token 	the token
+	 * @param tokens 	the distinct tokens
+	 * @param indexes 	for each distinct token, its index in \a tokens
+	 * @return the index of the token in \a tokens
+	 */
+	private static int intern (String token, ArrayList<String> tokens, HashMap<String, Integer> indexes) {
+
+		Integer index = indexes.get(token);
+		if (index == null) {
+			index = tokens.size();
+			tokens.add(token);
+			indexes.put(token, index);
+		}
+		return index;
+	}
+
+	/** @return the arity of the relation */
+	public int getArity () {
+		return this.arity;
+	}
+
+	/** @return the number of tuples read so far */
+	public int getNbrTuples () {
+		return this.nbrTuples;
+	}
+
+	/** @return whether the values are parsed as integers */
+	public boolean intValues () {
+		return this.intValues;
+	}
+
+	/** @return the values in the tuples, flattened, or their indexes in the table of distinct value tokens if they are not parsed as integers
+	 * @note The array may be longer than getArity() * getNbrTuples().
+	 */
+	public int[] getValues () {
+		return this.values;
+	}
+
+	/** @return the distinct value tokens, or \c null if the values are parsed as integers */
+	public String[] getValueTokens () {
+		return (this.valueTokens == null ? null : this.valueTokens.toArray(new String [this.valueTokens.size()]));
+	}
+
+	/** @return for each tuple, the index of its utility in the table of distinct utility tokens, or -1 if no utility was specified
+	 * @note The array may be longer than getNbrTuples().
+	 */
+	public int[] getUtilIndexes () {
+		return this.utils;
+	}
+
+	/** @return the distinct utility tokens */
+	public String[] getUtilTokens () {
+		return this.utilTokens.toArray(new String [this.utilTokens.size()]);
+	}
+}
@@ -43,8 +43,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
+import org.jdom2.Attribute;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
@@ -62,6 +64,7 @@ import frodo2.solutionSpaces.ProblemInterface;
 import frodo2.solutionSpaces.UtilitySolutionSpace;
 import frodo2.solutionSpaces.hypercube.Hypercube;
 import frodo2.solutionSpaces.hypercube.ScalarHypercube;
+import frodo2.solutionSpaces.hypercube.SparseHypercube;
 
 /** An XCSP parser that provides convenient methods to extract information from XCSP files
  * @author Thomas Leaute
@@ -342,6 +345,21 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	
 	/** The NCCC count */
 	private long ncccCount;
+
+	/** The compiled view of the problem, or \c null if it must be rebuilt from \a root */
+	private volatile Model<V, U> model;
+	
+	/** The relations parsed so far by this subproblem and the subproblems extracted together with it, indexed by their names; 
+	 * \c null if this is not such a subproblem, or if it has been modified since it was extracted */
+	private volatile ConcurrentHashMap< String, Relation<V, U> > sharedRelations;
+	
+	/** The probability laws parsed so far by this subproblem and the subproblems extracted together with it, indexed by their names; 
+	 * \c null if this is not such a subproblem, or if it has been modified since it was extracted */
+	private volatile ConcurrentHashMap< String, Relation<V, U> > sharedProbs;
+	
+	/** The tuple density (number of tuples divided by the size of the Cartesian product of the domains) below which 
+	 * a constraint with a default utility is represented by a SparseHypercube; 0 to always use dense hypercubes */
+	protected double sparseThreshold = 0;
 	
 	/** Empty constructor */
 	public XCSPparser () {
@@ -547,6 +565,11 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 		else 
 			this.countNCCCs = Boolean.parseBoolean(ncccString);
 		
+		// Parse the tuple density below which sparse hypercubes should be used
+		String sparseString = params.getAttributeValue("sparseThreshold");
+		if (sparseString != null) 
+			this.sparseThreshold = Double.parseDouble(sparseString);
+		
 		// Parse which spaces should be ignored
 		spacesToIgnoreNcccs = new HashSet<String>();
 		Element spacesToIgnore = params.getChild("ignoreNCCCs");
@@ -559,10 +582,18 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 		assert this.checkUniqueConstraintNames() : "Non-unique constraint names";
 	}
 
+	/** Sets the tuple density below which constraints with a default utility are represented by SparseHypercubes
+	 * @param sparseThreshold 	the number of tuples divided by the size of the Cartesian product of the domains; 0 to always use dense hypercubes
+	 */
+	public void setSparseThreshold (double sparseThreshold) {
+		this.sparseThreshold = sparseThreshold;
+	}
+	
 	/** Sets the class to be used for variable values
 	 * @param domClass 	the class for variable values
 	 */
 	public void setDomClass (Class<V> domClass) {
+		this.invalidateModel();
 		this.domClass = domClass;
 		try {
 			this.valInstance = domClass.getConstructor().newInstance();
@@ -591,6 +622,7 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	 * @param utilClass 	the class for utility values
 	 */
 	public void setUtilClass (Class<U> utilClass) {
+		this.invalidateModel();
 		this.utilClass = utilClass;
 	}
 
@@ -778,13 +810,341 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	protected static class Relation < V extends Addable<V>, U extends Addable<U> > {
 
 		/** The tuples */
-		public V[][] tuples;
+		public TupleTokenizer tuples;
+
+		/** The values corresponding to the distinct value tokens, or \c null if the values are integers */
+		public V[] values;
 
-		/** The utilities */
+		/** The utilities corresponding to the distinct utility tokens */
 		public U[] utilities;
 
 		/** The default utility */
 		public U defaultUtil;
+		
+		/** Sets the tuples, parsing each distinct value and utility token only once
+		 * @param tuples 		the tokenized tuples
+		 * @param valInstance 	an instance of V used to parse values
+		 * @param utilInstance 	an instance of U used to parse utilities
+		 */
+		@SuppressWarnings("unchecked")
+		public void setTuples (TupleTokenizer tuples, V valInstance, U utilInstance) {
+			
+			this.tuples = tuples;
+			
+			String[] tokens = tuples.getUtilTokens();
+			this.utilities = (U[]) new Addable<?> [tokens.length];
+			for (int i = 0; i < tokens.length; i++) 
+				this.utilities[i] = utilInstance.fromString(tokens[i]);
+			
+			if ((tokens = tuples.getValueTokens()) != null) {
+				this.values = (V[]) new Addable<?> [tokens.length];
+				for (int i = 0; i < tokens.length; i++) 
+					this.values[i] = valInstance.fromString(tokens[i]);
+			}
+		}
+		
+		/** @return the number of tuples */
+		public int getNbrTuples () {
+			return this.tuples.getNbrTuples();
+		}
+		
+		/** Sets the utilities of the tuples in a space
+		 * 
+		 * The position of each tuple in the utility array of the space is computed directly from the flat arrays of the tokenizer, 
+		 * without instantiating the values in the tuple. Tuples containing values outside of the domains of the space are ignored. 
+		 * @param space 	the space, whose variables are in the order of the scope of the constraint
+		 */
+		public void fill (Hypercube<V, U> space) {
+			
+			final int arity = this.tuples.getArity();
+			V[][] doms = space.getDomains();
+			
+			// For each variable, compute the offset in the utility array corresponding to each value
+			int[][] offsets = new int [arity][];
+			int[] mins = new int [arity];
+			@SuppressWarnings("unchecked")
+			HashMap<Integer, Integer>[] sparseOffsets = (HashMap<Integer, Integer>[]) new HashMap<?, ?> [arity];
+			int step = 1;
+			for (int j = arity - 1; j >= 0; j--) {
+				V[] dom = doms[j];
+				
+				if (this.values != null) { // the offset is indexed by the index of the value token
+					HashMap<V, Integer> positions = new HashMap<V, Integer> (dom.length);
+					for (int k = 0; k < dom.length; k++) 
+						positions.put(dom[k], k);
+					int[] offset = offsets[j] = new int [this.values.length];
+					for (int t = 0; t < offset.length; t++) {
+						Integer pos = positions.get(this.values[t]);
+						offset[t] = (pos == null ? -1 : pos * step);
+					}
+					
+				} else { // the offset is indexed by the integer value, if the domain is dense enough
+					int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+					for (V val : dom) {
+						min = Math.min(min, val.intValue());
+						max = Math.max(max, val.intValue());
+					}
+					
+					if (dom.length > 0 && (long) max - min < 2L * dom.length + 64) {
+						int[] offset = offsets[j] = new int [max - min + 1];
+						Arrays.fill(offset, -1);
+						for (int k = 0; k < dom.length; k++) 
+							offset[dom[k].intValue() - min] = k * step;
+						mins[j] = min;
+					} else {
+						HashMap<Integer, Integer> offset = sparseOffsets[j] = new HashMap<Integer, Integer> (dom.length);
+						for (int k = 0; k < dom.length; k++) 
+							offset.put(dom[k].intValue(), k * step);
+					}
+				}
+				
+				step *= dom.length;
+			}
+			
+			final int[] vals = this.tuples.getValues();
+			final int[] utils = this.tuples.getUtilIndexes();
+			tuples: for (int i = 0, nbrTuples = this.tuples.getNbrTuples(), v = 0; i < nbrTuples; i++) {
+				
+				int index = 0;
+				for (int j = 0; j < arity; j++, v++) {
+					
+					int offset;
+					int[] offsetArray = offsets[j];
+					if (offsetArray != null) {
+						final int pos = vals[v] - mins[j];
+						offset = (pos < 0 || pos >= offsetArray.length ? -1 : offsetArray[pos]);
+					} else {
+						Integer off = sparseOffsets[j].get(vals[v]);
+						offset = (off == null ? -1 : off);
+					}
+					
+					if (offset < 0) { // the value is not in the domain
+						v += arity - j;
+						continue tuples;
+					}
+					index += offset;
+				}
+				
+				space.setUtility(index, (utils[i] < 0 ? null : this.utilities[utils[i]]));
+			}
+		}
+	}
+
+	/** A compiled view of the problem, built from the JDOM tree once and shared by all queries until the problem is modified
+	 * 
+	 * All methods of XCSPparser that modify the problem discard the model by calling invalidateModel(). As a cheap safeguard, the model 
+	 * is also rebuilt whenever the identity or the number of children of one of the sections of the JDOM tree it was compiled from has changed. 
+	 * Any other direct modification of the JDOM tree must be followed by a call to invalidateModel(). 
+	 * @author Thomas Leaute
+	 * @param <V> 	the type used for variable values
+	 * @param <U> 	the type used for utility values
+	 */
+	protected static class Model < V extends Addable<V>, U extends Addable<U> > {
+		
+		/** The sections of the JDOM tree the model is compiled from */
+		private static final String[] SECTIONS = { "domains", "variables", "relations", "probabilities", "constraints" };
+		
+		/** The compiled description of a variable
+		 * @param <V> 	the type used for variable values
+		 */
+		protected static class Variable < V extends Addable<V> > {
+			
+			/** The owner agent, or \c null if it is not specified */
+			public final String owner;
+			
+			/** The name of the domain, or \c null if it is not specified */
+			public final String domName;
+			
+			/** The JDOM Element describing the domain, or \c null if the domain is not defined */
+			public final Element domElmt;
+			
+			/** Whether the variable is random */
+			public final boolean random;
+			
+			/** The agent scope, or \c null if it is not specified */
+			public final String[] scope;
+			
+			/** Constructor
+			 * @param owner 	the owner agent, or \c null if it is not specified
+			 * @param domName 	the name of the domain, or \c null if it is not specified
+			 * @param domElmt 	the JDOM Element describing the domain, or \c null if the domain is not defined
+			 * @param random 	whether the variable is random
+			 * @param scope 	the agent scope, or \c null if it is not specified
+			 */
+			Variable (String owner, String domName, Element domElmt, boolean random, String[] scope) {
+				this.owner = owner;
+				this.domName = domName;
+				this.domElmt = domElmt;
+				this.random = random;
+				this.scope = scope;
+			}
+		}
+		
+		/** The parser whose problem is compiled */
+		private final XCSPparser<V, U> parser;
+		
+		/** The root Element the model was compiled from */
+		private final Element root;
+		
+		/** The sections of the tree the model was compiled from, in the order of SECTIONS */
+		private final Element[] sections = new Element [SECTIONS.length];
+		
+		/** The number of children of each section when the model was compiled */
+		private final int[] sizes = new int [SECTIONS.length];
+		
+		/** The variables, indexed by their names */
+		public final HashMap< String, Variable<V> > variables = new HashMap< String, Variable<V> > ();
+		
+		/** The domains parsed so far, indexed by their names */
+		private final HashMap<String, V[]> parsedDoms = new HashMap<String, V[]> ();
+		
+		/** The domain of each variable, or \c null if it has not been needed yet */
+		private HashMap<String, V[]> domains;
+		
+		/** Whether some variable has no specified domain */
+		public final boolean missingDomain;
+		
+		/** The constraints, in the order in which they appear in the problem */
+		public final Element[] constraints;
+		
+		/** The scope of each constraint in \a constraints */
+		public final String[][] scopes;
+		
+		/** For each variable, the increasing indexes in \a constraints of the constraints whose scopes contain it */
+		public final HashMap<String, int[]> constraintsByVar;
+		
+		/** The relations, parsed when first needed */
+		private volatile HashMap< String, Relation<V, U> > relations;
+		
+		/** The probability laws, parsed when first needed */
+		private volatile HashMap< String, Relation<V, U> > probabilities;
+		
+		/** Compiles the problem
+		 * @param parser 	the parser whose problem is to be compiled
+		 */
+		Model (XCSPparser<V, U> parser) {
+			
+			this.parser = parser;
+			this.root = parser.root;
+			for (int i = 0; i < SECTIONS.length; i++) {
+				this.sections[i] = this.root.getChild(SECTIONS[i]);
+				this.sizes[i] = (this.sections[i] == null ? 0 : this.sections[i].getContentSize());
+			}
+			
+			// Index the domains by their names
+			HashMap<String, Element> domElmts = new HashMap<String, Element> ();
+			for (Element domElmt : this.root.getChild("domains").getChildren()) 
+				domElmts.putIfAbsent(domElmt.getAttributeValue("name"), domElmt);
+			
+			// Compile the variables; their domains are only parsed when needed
+			boolean missingDomain = false;
+			for (Element varElmt : this.root.getChild("variables").getChildren()) {
+				
+				String name = varElmt.getAttributeValue("name");
+				String domName = varElmt.getAttributeValue("domain");
+				missingDomain = missingDomain || domName == null;
+				if (this.variables.containsKey(name)) 
+					continue;
+				
+				String scope = varElmt.getAttributeValue("scope");
+				this.variables.put(name, new Variable<V> (varElmt.getAttributeValue("agent"), domName, 
+						(domName == null ? null : domElmts.get(domName)), "random".equals(varElmt.getAttributeValue("type")), 
+						(scope == null ? null : scope.split("\\s+"))));
+			}
+			this.missingDomain = missingDomain;
+			
+			// Compile the constraints, and index them by the variables in their scopes
+			List<Element> consElmts = this.root.getChild("constraints").getChildren();
+			final int nbrConstraints = consElmts.size();
+			this.constraints = consElmts.toArray(new Element [nbrConstraints]);
+			this.scopes = new String [nbrConstraints][];
+			HashMap< String, ArrayList<Integer> > index = new HashMap< String, ArrayList<Integer> > ();
+			for (int i = 0; i < nbrConstraints; i++) {
+				String[] scope = this.constraints[i].getAttributeValue("scope").trim().split("\\s+");
+				this.scopes[i] = scope;
+				for (String var : scope) {
+					ArrayList<Integer> cons = index.get(var);
+					if (cons == null) 
+						index.put(var, cons = new ArrayList<Integer> ());
+					if (cons.isEmpty() || cons.get(cons.size() - 1) != i) // the variable may appear more than once in the scope
+						cons.add(i);
+				}
+			}
+			this.constraintsByVar = new HashMap<String, int[]> (index.size());
+			for (Map.Entry< String, ArrayList<Integer> > entry : index.entrySet()) {
+				ArrayList<Integer> cons = entry.getValue();
+				int[] array = new int [cons.size()];
+				for (int i = 0; i < array.length; i++) 
+					array[i] = cons.get(i);
+				this.constraintsByVar.put(entry.getKey(), array);
+			}
+		}
+		
+		/** Checks whether the sections of the JDOM tree are still the same as when the model was compiled
+		 * 
+		 * This only takes time linear in the number of sections, and does not detect modifications deeper inside the sections. 
+		 * @param root 	the current root Element of the problem
+		 * @return \c false if the model must be rebuilt
+		 */
+		boolean isUpToDate (Element root) {
+			
+			if (root != this.root) 
+				return false;
+			
+			for (int i = 0; i < SECTIONS.length; i++) {
+				Element section = root.getChild(SECTIONS[i]);
+				if (section != this.sections[i] || (section == null ? 0 : section.getContentSize()) != this.sizes[i]) 
+					return false;
+			}
+			
+			return true;
+		}
+		
+		/** Returns the description of a variable
+		 * @param var 	the name of the variable
+		 * @return the description of the variable, or \c null if it is unknown
+		 */
+		public Variable<V> getVariable (String var) {
+			return this.variables.get(var);
+		}
+		
+		/** Returns the domain of a variable, parsing it if this has not been done yet
+		 * @param varInfo 	the description of the variable
+		 * @return the domain, or \c null if it is not defined; must not be modified
+		 */
+		public synchronized V[] getDomain (Variable<V> varInfo) {
+			
+			if (varInfo.domElmt == null) 
+				return null;
+			
+			V[] dom = this.parsedDoms.get(varInfo.domName);
+			if (dom == null) {
+				dom = this.parser.getDomain(varInfo.domElmt, false);
+				this.parsedDoms.put(varInfo.domName, dom);
+			}
+			return dom;
+		}
+		
+		/** @return the domain of each variable; must not be modified */
+		public synchronized HashMap<String, V[]> getDomains () {
+			
+			if (this.domains == null) {
+				HashMap<String, V[]> domains = new HashMap<String, V[]> (this.variables.size());
+				for (Map.Entry< String, Variable<V> > entry : this.variables.entrySet()) 
+					domains.put(entry.getKey(), this.getDomain(entry.getValue()));
+				this.domains = domains;
+			}
+			return this.domains;
+		}
+		
+		/** Returns the constraints whose scopes contain a given variable
+		 * @param var 	the variable
+		 * @return the increasing indexes in \a constraints of the constraints involving \a var
+		 */
+		public int[] getConstraints (String var) {
+			int[] out = this.constraintsByVar.get(var);
+			return (out == null ? new int [0] : out);
+		}
 	}
 
 	/** @return -INF if we are maximizing, +INF if we are minimizing */
@@ -808,170 +1168,181 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	 * @param getProbs 			if \c true, returns the probability spaces (ignoring \a withAnonymVars); else, returns the solution spaces
 	 * @param forbiddenVars 	any space involving any of these variables will be ignored
 	 * @param problem 			the problem instance that should be notified of constraint checks
-	 * @todo The implementation can be improved so as to only parse things that are needed (wrt \a var). 
 	 */
 	protected List< ? extends UtilitySolutionSpace<V, U> > getSpaces (Set<String> vars, final boolean withAnonymVars, final boolean getProbs, 
 			Set<String> forbiddenVars, DCOPProblemInterface<V, U> problem) {
 		
 		assert vars == null || !vars.isEmpty(): "The set of variables is empty";
 
-		// Create an instance of U used to parse a utility value from a String
-		U utilInstance = this.getZeroUtility();
-
 		// The hypercubes are stored in the result array.
 		ArrayList< UtilitySolutionSpace<V, U> > result = new ArrayList< UtilitySolutionSpace<V, U> >();
 
-		final boolean debugLoad = false;
-
-		// First important element of XCSP format is the specification of the domains.		
-		org.jdom2.Element domains = root.getChild("domains");
-
-		// domain is represented as a list of integers. Potentially a problem 
-		// if a domain is large. However, the hypercubes will have problems too
-		// so it is unlikely for variables to have large domains.
-		HashMap<String, V[]> domainsHashMap = new HashMap<String, V[]>();
+		Model<V, U> model = this.getModel();
+		if (!getProbs && model.missingDomain) // we don't know the domain of some variable
+			return null;
 
-		// Reads information about variables domains.
-		for (org.jdom2.Element domain : (List<org.jdom2.Element>) domains.getChildren()) {
+		// Relations or probabilities (depending on the getProbs flag), parsed only once per model
+		HashMap< String, Relation<V, U> > relationInfos = this.getRelations(model, getProbs);
 
-			String name = domain.getAttributeValue("name");
+		U infeasibleUtil = this.getInfeasibleUtil();
 
-			// Hashmap to associate domain names with the list of elements in that domain.
-			domainsHashMap.put(name, (V[]) this.getDomain(domain, debugLoad));
+		HashMap<String, V[]> domains = model.getDomains();
+		if (vars == null) {
+			for (Element constraint : model.constraints) 
+				this.parseConstraint(result, constraint, domains, relationInfos, vars, getProbs, withAnonymVars, infeasibleUtil, forbiddenVars, problem);
+			
+		} else { // only go through the constraints involving the variables of interest, in the order in which they appear in the problem
+			
+			HashSet<Integer> indexes = new HashSet<Integer> ();
+			for (String var : vars) 
+				for (int i : model.getConstraints(var)) 
+					indexes.add(i);
+			Integer[] sorted = indexes.toArray(new Integer [indexes.size()]);
+			Arrays.sort(sorted);
+			
+			for (int i : sorted) 
+				this.parseConstraint(result, model.constraints[i], domains, relationInfos, vars, getProbs, withAnonymVars, infeasibleUtil, forbiddenVars, problem);
 		}
 
-		if (debugLoad)
-			System.out.println(domainsHashMap);
-
-		// Second important element in XCSP format is describing variables.
-		org.jdom2.Element variables = root.getChild("variables");
-
-		// Each variable has its list of values in their domain. 
-		HashMap<String, V[]> variablesHashMap = new HashMap<String, V[]>();
+		return result;		
+	}
 
-		for (org.jdom2.Element variable : (List<org.jdom2.Element>) variables.getChildren()) {
+	/** Returns the compiled view of the problem, building it if the problem has changed since it was last built
+	 * @return the compiled view of the problem
+	 */
+	protected Model<V, U> getModel () {
+		
+		Model<V, U> model = this.model;
+		if (model != null && model.isUpToDate(this.root)) 
+			return model;
+		
+		synchronized (this) {
+			model = this.model;
+			if (model == null || ! model.isUpToDate(this.root)) {
+				if (model != null) { // the problem has been modified
+					this.sharedRelations = null;
+					this.sharedProbs = null;
+				}
+				this.model = model = new Model<V, U> (this);
+			}
+			return model;
+		}
+	}
+	
+	/** Discards the compiled view of the problem
+	 * 
+	 * Must be called by any method that modifies the JDOM tree of the problem, or changes how it is parsed. 
+	 * Code that modifies the JDOM Document of the problem directly, rather than through the methods of this class, 
+	 * must also call this method before querying the parser again. 
+	 */
+	public synchronized void invalidateModel () {
+		this.model = null;
+		this.sharedRelations = null;
+		this.sharedProbs = null;
+	}
+	
+	/** Returns the relations or the probability laws, parsing them if they have not been parsed yet for the given model
+	 * @param model 	the compiled view of the problem
+	 * @param getProbs 	if \c true, returns the probability laws; else, returns the relations
+	 * @return the relations or probability laws, indexed by their names
+	 */
+	private HashMap< String, Relation<V, U> > getRelations (Model<V, U> model, final boolean getProbs) {
+		
+		HashMap< String, Relation<V, U> > out = (getProbs ? model.probabilities : model.relations);
+		if (out != null) 
+			return out;
+		
+		synchronized (model) {
+			out = (getProbs ? model.probabilities : model.relations);
+			if (out == null) {
+				out = this.parseRelations(model.root.getChild(getProbs ? "probabilities" : "relations"), getProbs, 
+						(getProbs ? this.sharedProbs : this.sharedRelations));
+				if (getProbs) 
+					model.probabilities = out;
+				else 
+					model.relations = out;
+			}
+		}
+		return out;
+	}
+	
+	/** Parses the relations or the probability laws
+	 * @param relations 	the JDOM Element containing the relations or probability laws; may be \c null
+	 * @param getProbs 		if \c true, \a relations contains probability laws; else, it contains relations
+	 * @param shared 		the relations or probability laws already parsed by other subproblems, indexed by their names, 
+	 * 						to which the newly parsed ones are added; may be \c null
+	 * @return the relations or probability laws, indexed by their names
+	 */
+	private HashMap< String, Relation<V, U> > parseRelations (Element relations, final boolean getProbs, 
+			ConcurrentHashMap< String, Relation<V, U> > shared) {
+		
+		// Create an instance of U used to parse a utility value from a String
+		final U utilInstance = this.getZeroUtility();
 
-			String name = variable.getAttributeValue("name");
-			String domName = variable.getAttributeValue("domain");
+		HashMap< String, Relation<V, U> > relationInfos = new HashMap< String, Relation<V, U> > ();
 
-			if (!getProbs && domName == null) // we don't know the domain of this variable
-				return null;
+		if (relations == null) 
+			return relationInfos;
 
-			// Variables domain is specified by the name so the actual domain is obtained
-			// from the hashmap describing the domains.
-			variablesHashMap.put(name, domainsHashMap.get(domName));
+		for (Element relation : (List<Element>) relations.getChildren()) {
+			String name = relation.getAttributeValue("name");
+			if (shared == null) 
+				relationInfos.put(name, this.parseRelation(relation, getProbs, utilInstance));
+			else 
+				relationInfos.put(name, shared.computeIfAbsent(name, n -> this.parseRelation(relation, getProbs, utilInstance)));
 		}
 
-		if (debugLoad)
-			System.out.println(variablesHashMap);
-
-		// Part responsible for reading the specification of relations or probabilities (depending on the getProbs flag)
-
-		org.jdom2.Element relations;
+		return relationInfos;
+	}
+	
+	/** Parses a relation or a probability law
+	 * @param relation 		the JDOM Element describing the relation or probability law
+	 * @param getProbs 		if \c true, \a relation is a probability law; else, it is a relation
+	 * @param utilInstance 	an instance of U used to parse utilities
+	 * @return the relation or probability law
+	 */
+	private Relation<V, U> parseRelation (Element relation, final boolean getProbs, U utilInstance) {
+
+		String name = relation.getAttributeValue("name");
+		Relation<V, U> relationInfo = new Relation<V, U> ();
+
+		int arity = Integer.valueOf(relation.getAttributeValue("arity"));
+		String semantics = relation.getAttributeValue("semantics");
+		int nbTuples = Integer.valueOf(relation
+				.getAttributeValue("nbTuples"));
+		String defaultCost;
 		if (!getProbs) {
-			relations = root.getChild("relations");
+			defaultCost = relation.getAttributeValue("defaultCost");
 		} else 
-			relations = root.getChild("probabilities");
-		HashMap< String, Relation<V, U> > relationInfos = new HashMap< String, Relation<V, U> > ();
-
-		if (relations != null) {
-
-			for (org.jdom2.Element relation : (List<org.jdom2.Element>) relations.getChildren()) {
-
-				String name = relation.getAttributeValue("name");
-				Relation<V, U> relationInfo = new Relation<V, U> ();
-				relationInfos.put(name, relationInfo);
-
-				int arity = Integer.valueOf(relation.getAttributeValue("arity"));
-				String semantics = relation.getAttributeValue("semantics");
-				int nbTuples = Integer.valueOf(relation
-						.getAttributeValue("nbTuples"));
-				String defaultCost;
-				if (!getProbs) {
-					defaultCost = relation.getAttributeValue("defaultCost");
-				} else 
-					defaultCost = relation.getAttributeValue("defaultProb");
-
-				if (defaultCost != null) 
-					relationInfo.defaultUtil = utilInstance.fromString(defaultCost);
-
-				// XCSP can have support and conflicts semantics too, these are of no 
-				// use in Hypercubes/DPOP context so they are ignored.
-				if (!semantics.equals("soft")) {
-					System.err.println("Warning! The relation `" + name + "' is of semantics `" + semantics + 
-							"', which is not supported by the parser " + this.getClass());
-					continue;
-				}
-
-				if (nbTuples == 0 && defaultCost == null) {
-					System.err.println("Relation `" + name + "' has nbTuples == 0 and no default cost");
-					continue;
-				}
-
-				String tuplesString = relation.getText();
-
-				V[][] relationTuples = (V[][]) new Addable[nbTuples][arity];
-				U[] utility = (U[]) Array.newInstance(utilClass, nbTuples);
-
-				// Get current utility of 
-				Pattern pattern = Pattern.compile("\\|");
-				String[] tuples = pattern.split(tuplesString);
-				if (tuplesString.length() == 0) 
-					tuples = new String [0];
-
-				if (tuples.length != nbTuples) 
-					System.err.println("Relation `" + name + "' has nbTuples == " + nbTuples + 
-							" but its description actually contains " + tuples.length + " tuples: " + Arrays.toString(tuples));
-
-				Pattern patternColon = Pattern.compile(":");
-				pattern = Pattern.compile("\\s+");
+			defaultCost = relation.getAttributeValue("defaultProb");
 
-				U currentUtility = null;
-
-				for (int i = 0; i < nbTuples; i++) {
-
-					if (tuples[i].contains(":")) {
-						String[] pair = patternColon.split(tuples[i]);
-						tuples[i] = pair[1];
-						currentUtility = utilInstance.fromString(pair[0].trim());
-					}
-
-					String[] vals = pattern.split(tuples[i].trim());
-
-					int position = -1;
-
-					for (String value : vals) {
-
-						position++;
-
-						relationTuples[i][position] = valInstance.fromString(value);
-
-					}
-
-					utility[i] = currentUtility;
-
-				}
-
-				// stores for each relation name its list of tuples and utility for
-				// each tuple.
-				relationInfo.tuples = relationTuples;
-				relationInfo.utilities = utility;
-			}
-
-			if (debugLoad)
-				System.out.println(relationInfos);
+		if (defaultCost != null) 
+			relationInfo.defaultUtil = utilInstance.fromString(defaultCost);
 
+		// XCSP can have support and conflicts semantics too, these are of no 
+		// use in Hypercubes/DPOP context so they are ignored.
+		if (!semantics.equals("soft")) {
+			System.err.println("Warning! The relation `" + name + "' is of semantics `" + semantics + 
+					"', which is not supported by the parser " + this.getClass());
+			return relationInfo;
 		}
 
-		// This element actually describes all the constraints.
-		org.jdom2.Element constraints = root.getChild("constraints");
+		if (nbTuples == 0 && defaultCost == null) {
+			System.err.println("Relation `" + name + "' has nbTuples == 0 and no default cost");
+			return relationInfo;
+		}
 
-		U infeasibleUtil = this.getInfeasibleUtil();
+		TupleTokenizer tuples = TupleTokenizer.tokenize(arity, nbTuples, AddableInteger.class.equals(this.domClass), relation.getText());
 
-		for (org.jdom2.Element constraint : (List<org.jdom2.Element>) constraints.getChildren()) 
-			this.parseConstraint(result, constraint, variablesHashMap, relationInfos, vars, getProbs, withAnonymVars, infeasibleUtil, forbiddenVars, problem);
+		if (tuples.getNbrTuples() != nbTuples) 
+			System.err.println("Relation `" + name + "' has nbTuples == " + nbTuples + 
+					" but its description actually contains " + tuples.getNbrTuples() + " tuples");
 
-		return result;		
+		// stores for each relation name its list of tuples and utility for
+		// each tuple.
+		relationInfo.setTuples(tuples, this.valInstance, utilInstance);
+		
+		return relationInfo;
 	}
 
 	/** Parses a constraint
@@ -1035,24 +1406,19 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 			if (!getProbs && !withAnonymVars && hasAnonymVar) 
 				return;
 
-			// All information to create a hypercube is available.
-			U[] utilArray = (U[]) Array.newInstance(utilClass, size);
-			Hypercube<V, U> current = new Hypercube<V, U> (varNames, variables_domain, utilArray, infeasibleUtil, 
-					(this.countNCCCs && !this.ignore(Hypercube.class.getName()) ? problem : null));
+			// All information to create a hypercube is available; pre-fill the utilities with the default value, if any
+			Hypercube<V, U> current;
+			if (relationInfo.defaultUtil != null && relationInfo.getNbrTuples() < this.sparseThreshold * size) 
+				current = new SparseHypercube<V, U> (varNames, variables_domain, size, utilClass, relationInfo.defaultUtil, infeasibleUtil);
+			else 
+				current = Hypercube.newHypercube(varNames, variables_domain, utilClass, size, relationInfo.defaultUtil, infeasibleUtil);
+			current.setProblem(this.countNCCCs && !this.ignore(Hypercube.class.getName()) ? problem : null);
 			current.setName(name);
 			current.setRelationName(reference);
 			current.setOwner(owner);
 
-			if (relationInfo.defaultUtil != null) { // pre-fill the utility array with the default value
-				Arrays.fill(utilArray, relationInfo.defaultUtil);
-			}
-
-			for (int i = 0; i < relationInfo.tuples.length; i++) {
-
-				// adding one tuple by one with appropriate utility.
-				current.setUtility(relationInfo.tuples[i], relationInfo.utilities[i]);
-
-			}
+			// adding all tuples with their appropriate utilities.
+			relationInfo.fill(current);
 
 			spaces.add(current);
 		}
@@ -1070,6 +1436,7 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 			if (iter.next().getAttributeValue("name").equals(name)) {
 				iter.remove();
 				consElmt.setAttribute("nbConstraints", Integer.toString(consElmt.getContentSize()));
+				this.invalidateModel();
 				return true;
 			}
 		}
@@ -1114,6 +1481,7 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 		elmt2 = this.root.getChild("constraints");
 		elmt2.addContent(elmt);
 		elmt2.setAttribute("nbConstraints", Integer.toString(elmt2.getContentSize()));
+		this.invalidateModel();
 		
 		return true;
 	}
@@ -1135,9 +1503,9 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	 */
 	public String getOwner (String var) {
 
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) 
-			if (varElmt.getAttributeValue("name").equals(var)) 
-				return varElmt.getAttributeValue("agent");
+		Model.Variable<V> varInfo = this.getModel().getVariable(var);
+		if (varInfo != null) 
+			return varInfo.owner;
 
 		// The variable was not found
 		assert false : "Unknown variable '" + var + "'";
@@ -1154,6 +1522,7 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) {
 			if (varElmt.getAttributeValue("name").equals(var)) {
 				varElmt.setAttribute("agent", owner);
+				this.invalidateModel();
 				assert this.getAgents().contains(owner) : "Unknown agent " + owner;
 				return true;
 			}
@@ -1167,10 +1536,10 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 
 		Map<String, String> out = new HashMap<String, String> (this.getNbrVars());
 
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) {
-			String owner = varElmt.getAttributeValue("agent");
+		for (Map.Entry< String, Model.Variable<V> > entry : this.getModel().variables.entrySet()) {
+			String owner = entry.getValue().owner;
 			if (owner != null) 
-				out.put(varElmt.getAttributeValue("name"), owner);
+				out.put(entry.getKey(), owner);
 		}
 
 		return out;
@@ -1191,8 +1560,8 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	public int getNbrVars (String owner) {
 
 		int nbrVars = 0;
-		for (Element var : (List<Element>) root.getChild("variables").getChildren()) 
-			if (owner.equals(var.getAttributeValue("agent"))) 
+		for (Model.Variable<V> varInfo : this.getModel().variables.values()) 
+			if (owner.equals(varInfo.owner)) 
 				nbrVars++;
 		return nbrVars;
 	}
@@ -1217,9 +1586,9 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 
 		Set<String> out = new HashSet<String> ();
 
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) 
-			if (! "random".equals(varElmt.getAttributeValue("type"))) // ignore random variables
-				out.add(varElmt.getAttributeValue("name"));
+		for (Map.Entry< String, Model.Variable<V> > entry : this.getModel().variables.entrySet()) 
+			if (! entry.getValue().random) // ignore random variables
+				out.add(entry.getKey());
 
 		return out;
 	}
@@ -1232,15 +1601,11 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 
 		Set<String> out = new HashSet<String> ();
 
-		if (owner != null) {
-			for (Element var : (List<Element>) root.getChild("variables").getChildren()) 
-				if (owner.equals(var.getAttributeValue("agent"))) 
-					out.add(var.getAttributeValue("name"));
-
-		} else 
-			for (Element var : (List<Element>) root.getChild("variables").getChildren()) 
-				if (var.getAttributeValue("agent") == null) 
-					out.add(var.getAttributeValue("name"));
+		for (Map.Entry< String, Model.Variable<V> > entry : this.getModel().variables.entrySet()) {
+			String varOwner = entry.getValue().owner;
+			if (owner == null ? varOwner == null : owner.equals(varOwner)) 
+				out.add(entry.getKey());
+		}
 
 		return out;
 	}
@@ -1263,10 +1628,10 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 		if (agentName == null) 
 			return out;
 
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) {
-			String owner = varElmt.getAttributeValue("agent");
+		for (Map.Entry< String, Model.Variable<V> > entry : this.getModel().variables.entrySet()) {
+			String owner = entry.getValue().owner;
 			if (owner != null && !owner.equals(agentName)) 
-				out.add(varElmt.getAttributeValue("name"));
+				out.add(entry.getKey());
 		}
 
 		return out;
@@ -1306,6 +1671,7 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 				Element varsElmt = this.root.getChild("variables");
 				varsElmt.addContent(varElmt);
 				varsElmt.setAttribute("nbVariables", Integer.toString(varsElmt.getContentSize()));
+				this.invalidateModel();
 				
 				return true;
 			}
@@ -1341,6 +1707,7 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 		Element domsElmt = this.root.getChild("domains");
 		domsElmt.addContent(domElmt);
 		domsElmt.setAttribute("nbDomains", Integer.toString(domsElmt.getContentSize()));
+		this.invalidateModel();
 		
 		// Add the variable
 		return this.addVariable(name, owner, domName);
@@ -1351,268 +1718,446 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	 * @return 				the subproblem corresponding to \a agent, or \c null if \a agent owns no variable
 	 */
 	public XCSPparser<V, U> getSubProblem (String agent) {
+		return new SubProblemExtractor ().extract(agent);
+	}
 
-		// Extract the set of variables owned by the agent
-		HashSet<Element> varElmts = new HashSet<Element> ();
-		for (Element var : (List<Element>) root.getChild("variables").getChildren()) 
-			if (agent.equals(var.getAttributeValue("agent"))) 
-				varElmts.add(var);
-
-		// Create the XCSP instance element
-		Element instance = new Element ("instance");
-
-		// Create the "presentation" element
-		Element presentation = new Element ("presentation");
-		instance.addContent(presentation);
-		presentation.setAttribute("name", agent);
-		presentation.setAttribute("maximize", Boolean.toString(this.maximize()));
-		presentation.setAttribute("format", "XCSP 2.1_FRODO");
+	/** Builds the subproblem descriptions of all agents, indexing the overall problem only once
+	 * 
+	 * The subproblems share the relations and probability laws parsed by any of them, such that each of them is parsed at most once for all agents. 
+	 * @return for each agent, its subproblem
+	 */
+	public Map< String, ? extends XCSPparser<V, U> > getSubProblems () {
 		
-		// Create the agents
-		Element agents = new Element ("agents");
-		agents.setAttribute("self", agent);
-		instance.addContent(agents);
-		HashSet<String> knownAgents = new HashSet<String> ();
-		knownAgents.add(agent);
-		if (this.mpc || this.publicAgents) // the agent is supposed to know all the agents
-			knownAgents.addAll(this.getAgents());
-
-		// Create the domains
-		Element domains = new Element ("domains");
-		instance.addContent(domains);
-
-		// Create the variables
-		Element variables = new Element ("variables");
-		instance.addContent(variables);
-		HashSet<String> varNames = new HashSet<String> (varElmts.size()); // internal variables and relevant external variables
-		for (Element varElmt : varElmts) {
-			varNames.add(varElmt.getAttributeValue("name"));
-		}
+		SubProblemExtractor extractor = new SubProblemExtractor ();
+		HashMap< String, XCSPparser<V, U> > out = new HashMap< String, XCSPparser<V, U> > ();
+		for (String agent : this.getAgents()) 
+			out.put(agent, extractor.extract(agent));
+		return out;
+	}
+	
+	/** Extracts subproblems from the compiled view of the problem
+	 * 
+	 * The problem is indexed once when the extractor is created, after which each subproblem is built in time linear in its own size, 
+	 * using the index of the constraints by the variables in their scopes. The subproblems built by the same extractor share a cache 
+	 * of the relations and probability laws parsed by the overall problem or by any of them, but keep no reference to the overall problem. 
+	 * Because a JDOM Element can only belong to one tree, each subproblem gets its own Elements for the relations and probability laws, 
+	 * but these only copy their attributes, and share with the overall problem the text describing their tuples. 
+	 * @author Thomas Leaute
+	 */
+	private class SubProblemExtractor {
 		
-		// In MPC mode, all variables are public
-		if (this.mpc) 
-			varElmts.addAll((List<Element>) root.getChild("variables").getChildren());
-
-		// Create the constraints
-		Element constraints = new Element ("constraints");
-		HashSet<String> relationNames = new HashSet<String> ();
-		HashSet<String> probNames = new HashSet<String> ();
-		HashSet<String> constNames = new HashSet<String> ();
-
-		// Go through the list of constraints several times until we are sure we have identified all variables that should be known to this agent
-		HashMap< String, HashSet<String> > varScopes = new HashMap< String, HashSet<String> > ();
-		int nbrVars;
-		do {
-			nbrVars = varNames.size();
-
-			// Go through the list of all constraints in the overall problem
-			for (Element constraint : (List<Element>) root.getChild("constraints").getChildren()) {
-
-				// Skip this constraint if it has already been added
-				String constName = constraint.getAttributeValue("name");
-				if (constNames.contains(constName)) 
+		/** The compiled view of the overall problem */
+		private final Model<V, U> model;
+		
+		/** The owned variables of each agent */
+		private final HashMap< String, ArrayList<String> > varsByOwner = new HashMap< String, ArrayList<String> > ();
+		
+		/** The description of each variable */
+		private final HashMap<String, Element> varElmts = new HashMap<String, Element> ();
+		
+		/** All variables, in the order in which they appear in the problem */
+		private final ArrayList<String> allVars = new ArrayList<String> ();
+		
+		/** For each agent name, the position of the agent in the problem */
+		private final HashMap<String, Integer> agentIndexes;
+		
+		/** For each relation name, the position of the relation in the problem */
+		private final HashMap<String, Integer> relIndexes;
+		
+		/** For each probability law name, the position of the law in the problem */
+		private final HashMap<String, Integer> probIndexes;
+		
+		/** The relation or probability law referred to by each constraint */
+		private final String[] refs;
+		
+		/** For each constraint, whether it refers to a probability law */
+		private final boolean[] isProb;
+		
+		/** The owner of each constraint, or \c null if it has none */
+		private final String[] consOwners;
+		
+		/** The constraints owned by each agent, including "PUBLIC" */
+		private final HashMap< String, ArrayList<Integer> > consByOwner = new HashMap< String, ArrayList<Integer> > ();
+		
+		/** For each variable, the owners of the constraints over it, excluding "PUBLIC" */
+		private final HashMap< String, HashSet<String> > spaceOwners = new HashMap< String, HashSet<String> > ();
+		
+		/** Same as \a spaceOwners, ignoring probability laws */
+		private final HashMap< String, HashSet<String> > solOwners = new HashMap< String, HashSet<String> > ();
+		
+		/** For each constraint, the last extraction in which it was added to the subproblem */
+		private final int[] stamps;
+		
+		/** The number of extractions so far */
+		private int stamp = 0;
+		
+		/** The relations parsed so far by the subproblems, indexed by their names */
+		private final ConcurrentHashMap< String, Relation<V, U> > sharedRelations = new ConcurrentHashMap< String, Relation<V, U> > ();
+		
+		/** The probability laws parsed so far by the subproblems, indexed by their names */
+		private final ConcurrentHashMap< String, Relation<V, U> > sharedProbs = new ConcurrentHashMap< String, Relation<V, U> > ();
+		
+		/** For each relation or probability law included in a subproblem so far, the text describing its tuples */
+		private final HashMap<Element, String> tuples = new HashMap<Element, String> ();
+		
+		/** Constructor that indexes the overall problem */
+		SubProblemExtractor () {
+			
+			this.model = getModel();
+			final int nbrConstraints = model.constraints.length;
+			
+			// Reuse the relations and probability laws already parsed by the overall problem, if any
+			HashMap< String, Relation<V, U> > parsed = model.relations;
+			if (parsed != null) 
+				this.sharedRelations.putAll(parsed);
+			if ((parsed = model.probabilities) != null) 
+				this.sharedProbs.putAll(parsed);
+			
+			// Index the variables by their owners, and their descriptions by their names
+			for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) {
+				String name = varElmt.getAttributeValue("name");
+				if (this.varElmts.putIfAbsent(name, varElmt) != null) 
 					continue;
-
-				// Get the list of variables in the scope of the constraint
-				HashSet<String> scope = new HashSet<String> (Arrays.asList(constraint.getAttributeValue("scope").split("\\s+")));
-
-				// Check if this constraint is a probability space
-				String refName = constraint.getAttributeValue("reference");
-				Element probElmt = null;
-				Element probsElmt = root.getChild("probabilities");
-				if (probsElmt != null) {
-					for (Element prob : (List<Element>) probsElmt.getChildren()) {
-						if (prob.getAttributeValue("name").equals(refName)) {
-							probElmt = prob;
-							break;
-						}
-					}
+				this.allVars.add(name);
+				String owner = varElmt.getAttributeValue("agent");
+				if (owner != null) {
+					ArrayList<String> owned = this.varsByOwner.get(owner);
+					if (owned == null) 
+						this.varsByOwner.put(owner, owned = new ArrayList<String> ());
+					owned.add(name);
 				}
+			}
+			
+			// Index the agents, relations and probability laws by their names, keeping track of their positions in the problem
+			this.agentIndexes = indexByName(root.getChild("agents"));
+			this.relIndexes = indexByName(root.getChild("relations"));
+			this.probIndexes = indexByName(root.getChild("probabilities"));
+			
+			// Go through the constraints, recording their owners
+			this.refs = new String [nbrConstraints];
+			this.isProb = new boolean [nbrConstraints];
+			this.consOwners = new String [nbrConstraints];
+			this.stamps = new int [nbrConstraints];
+			for (int i = 0; i < nbrConstraints; i++) {
+				Element constraint = model.constraints[i];
+				this.refs[i] = constraint.getAttributeValue("reference");
+				this.isProb[i] = this.probIndexes.containsKey(this.refs[i]);
 				
-				// Check if the agent is not supposed to know the constraint
-				String constOwner = constraint.getAttributeValue("agent");
-				if (! "PUBLIC".equals(constOwner) && constOwner != null && ! constOwner.equals(agent)) {
-					
-					if (! this.mpc) { // record the variable scopes
-						for (String var : scope) {
-							HashSet<String> varScope = varScopes.get(var);
-							if (varScope == null) {
-								varScope = new HashSet<String> ();
-								varScopes.put(var, varScope);
-							}
-							varScope.add(constOwner);
-						}
-					}
-					
+				String owner = this.consOwners[i] = constraint.getAttributeValue("agent");
+				if (owner == null) 
 					continue;
+				ArrayList<Integer> owned = this.consByOwner.get(owner);
+				if (owned == null) 
+					this.consByOwner.put(owner, owned = new ArrayList<Integer> ());
+				owned.add(i);
+				
+				if (! "PUBLIC".equals(owner)) {
+					for (String var : model.scopes[i]) {
+						addToSet(this.spaceOwners, var, owner);
+						if (! this.isProb[i]) 
+							addToSet(this.solOwners, var, owner);
+					}
 				}
-
-				// If any of the variables in the scope is owned by this agent or the constraint is a probability law that must be known to the agent, 
-				// add the constraint to the list of constraints
-				final boolean knownConst = "PUBLIC".equals(constOwner) || agent.equals(constOwner);
-				for (String var : scope) {
-					if (knownConst || varNames.contains(var)) {
-
-						// Skip this variable if it is apparently not necessary for the agent to know this constraint
-						if (probElmt != null) { // probability space
-							if (! this.isRandom(var)) 
-								continue;
-							probNames.add(refName);
-						}
-						else { // solution space
-							if (!this.extendedRandNeighborhoods && this.isRandom(var))
-								continue;
-							relationNames.add(refName);
-						}
-
-						constraints.addContent((Element) constraint.clone());
-						constNames.add(constName);
-
-						// Add all variables in the scope to the list of variables known to this agent
-						for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) {
-							String varName = varElmt.getAttributeValue("name");
-							if (scope.contains(varName)) {
-								varElmts.add(varElmt);
-								if (varElmt.getAttributeValue("agent") == null) 
-									varNames.add(varName);
+			}
+		}
+		
+		/** Builds the subproblem of a given agent
+		 * @param agent 	the agent
+		 * @return the subproblem of \a agent
+		 */
+		XCSPparser<V, U> extract (String agent) {
+			
+			final Model<V, U> model = this.model;
+			final int stamp = ++this.stamp;
+			
+			// Start from the variables owned by the agent, and in MPC mode from all variables
+			HashSet<String> varNames = new HashSet<String> (); // internal variables and relevant external variables
+			ArrayList<String> queue = new ArrayList<String> ();
+			ArrayList<String> owned = this.varsByOwner.get(agent);
+			if (owned != null) {
+				varNames.addAll(owned);
+				queue.addAll(owned);
+			}
+			HashSet<String> outVars = new HashSet<String> (varNames);
+			if (mpc) 
+				outVars.addAll(this.allVars);
+			
+			// Add the public constraints and the constraints owned by the agent that involve relevant variables
+			ArrayList<Integer> outCons = new ArrayList<Integer> ();
+			for (String owner : new String[] { "PUBLIC", agent }) {
+				ArrayList<Integer> ownedCons = this.consByOwner.get(owner);
+				if (ownedCons != null) {
+					for (int i : ownedCons) {
+						if (this.stamps[i] == stamp) 
+							continue;
+						for (String var : model.scopes[i]) {
+							if (this.isProb[i] ? isRandom(model, var) : (extendedRandNeighborhoods || ! isRandom(model, var))) {
+								this.stamps[i] = stamp;
+								outCons.add(i);
+								addScope(model, model.scopes[i], varNames, outVars, queue);
+								break;
 							}
 						}
-
-						break;
 					}
 				}
 			}
-		} while (nbrVars != varNames.size()); // loop as long as another variable has been added to the list of known variables
-
-		// Set the number of constraints
-		constraints.setAttribute("nbConstraints", Integer.toString(constraints.getContentSize()));
-		
-		// Add the agents that own constraints over shared variables and my own variables
-		constLoop: for (Element constraint : (List<Element>) root.getChild("constraints").getChildren()) {
 			
-			// Get the list of variables in the scope of the constraint
-			HashSet<String> scope = new HashSet<String> (Arrays.asList(constraint.getAttributeValue("scope").split("\\s+")));
+			// Go through the constraints involving known variables, until no more variable becomes known
+			for (int next = 0; next < queue.size(); next++) {
+				String var = queue.get(next);
+				final boolean random = isRandom(model, var);
+				
+				for (int i : model.getConstraints(var)) {
+					if (this.stamps[i] == stamp || (this.isProb[i] ? ! random : (random && ! extendedRandNeighborhoods))) 
+						continue;
+					String owner = this.consOwners[i];
+					if (owner != null && ! "PUBLIC".equals(owner) && ! owner.equals(agent)) // the agent is not supposed to know the constraint
+						continue;
+					this.stamps[i] = stamp;
+					outCons.add(i);
+					addScope(model, model.scopes[i], varNames, outVars, queue);
+				}
+			}
+			Collections.sort(outCons);
 			
-			// Skip this constraint if it is a probability space
-			String refName = constraint.getAttributeValue("reference");
-			Element probsElmt = root.getChild("probabilities");
-			if (probsElmt != null) 
-				for (Element prob : (List<Element>) probsElmt.getChildren()) 
-					if (prob.getAttributeValue("name").equals(refName)) 
-						continue constLoop;
+			// Create the XCSP instance element
+			Element instance = new Element ("instance");
 			
-			// Check whether the constraint owner should be known to the agent because the constraint scope involves a variable they share
-			String constOwner = constraint.getAttributeValue("agent");
-			if (! "PUBLIC".equals(constOwner) && constOwner != null && ! constOwner.equals(agent)) {
-				for (String var : scope) {
-					if (! this.isRandom(var) && varNames.contains(var)) { // skip random variables and unknown variables
-						String varOwner = this.getOwner(var);
-						if (varOwner == null || varOwner.equals(agent)) { // the variable is shared or owned by this agent
-							knownAgents.add(constOwner);
-							break;
-						}
+			Element presentation = new Element ("presentation");
+			instance.addContent(presentation);
+			presentation.setAttribute("name", agent);
+			presentation.setAttribute("maximize", Boolean.toString(maximize()));
+			presentation.setAttribute("format", "XCSP 2.1_FRODO");
+			
+			// Add the agents that own constraints over shared variables and my own variables
+			HashSet<String> knownAgents = new HashSet<String> ();
+			knownAgents.add(agent);
+			if (mpc || publicAgents) // the agent is supposed to know all the agents
+				knownAgents.addAll(getAgents());
+			for (String var : varNames) {
+				if (! isRandom(model, var)) { // skip random variables
+					String varOwner = model.getVariable(var).owner;
+					HashSet<String> constOwners = this.solOwners.get(var);
+					if (constOwners != null && (varOwner == null || varOwner.equals(agent))) // the variable is shared or owned by this agent
+						knownAgents.addAll(constOwners);
+				}
+			}
+			
+			// Create the domains and the variables
+			Element agents = new Element ("agents");
+			agents.setAttribute("self", agent);
+			instance.addContent(agents);
+			Element domains = new Element ("domains");
+			instance.addContent(domains);
+			Element variables = new Element ("variables");
+			instance.addContent(variables);
+			variables.setAttribute("nbVariables", Integer.toString(outVars.size()));
+			HashSet<String> domNames = new HashSet<String> ();
+			for (String var : outVars) {
+				Model.Variable<V> varInfo = model.getVariable(var);
+				
+				if (domNames.add(varInfo.domName) && varInfo.domElmt != null) 
+					domains.addContent((Element) varInfo.domElmt.clone());
+				
+				Element newVarElmt = (Element) this.varElmts.get(var).clone();
+				variables.addContent(newVarElmt);
+				
+				// Check the owner of this variable
+				if (varInfo.owner != null) 
+					knownAgents.add(varInfo.owner);
+				else if (! varInfo.random && ! mpc) { // shared variable; set its agent scope
+					HashSet<String> varScope = this.spaceOwners.get(var);
+					if (varScope != null) {
+						StringBuilder scope = new StringBuilder ();
+						for (String neigh : varScope) 
+							if (! neigh.equals(agent)) 
+								scope.append(neigh).append(' ');
+						if (scope.length() > 0) 
+							newVarElmt.setAttribute("scope", scope.toString());
 					}
 				}
 			}
-		}
-
-		// Add the domains of the variables
-		HashSet<String> domNames = new HashSet<String> ();
-		for (Element varElmt : varElmts) {
-
-			String domName = varElmt.getAttributeValue("domain");
-			if (! domNames.add(domName)) // domain already added to the list of domains
-				continue;
-			for (Element domain : (List<Element>) root.getChild("domains").getChildren()) {
-				if (domName.equals(domain.getAttributeValue("name"))) {
-					domains.addContent((Element) domain.clone());
-					break;
+			domains.setAttribute("nbDomains", Integer.toString(domNames.size()));
+			
+			// Fill in the list of agents
+			agents.setAttribute("nbAgents", Integer.toString(knownAgents.size()));
+			for (Element agentElmt : cloneByName(root.getChild("agents"), this.agentIndexes, knownAgents)) 
+				agents.addContent(agentElmt);
+			
+			// Create the relations and probability laws (if the original problem contained any)
+			HashSet<String> relationNames = new HashSet<String> ();
+			HashSet<String> probNames = new HashSet<String> ();
+			for (int i : outCons) 
+				(this.isProb[i] ? probNames : relationNames).add(this.refs[i]);
+			
+			int maxConstraintArity = 0;
+			if (root.getChild("relations") != null) {
+				Element elmt = new Element ("relations");
+				instance.addContent(elmt);
+				for (Element relation : this.shareByName(root.getChild("relations"), this.relIndexes, relationNames)) {
+					elmt.addContent(relation);
+					relationNames.remove(relation.getAttributeValue("name"));
+					maxConstraintArity = Math.max(maxConstraintArity, Integer.parseInt(relation.getAttributeValue("arity")));
 				}
+				elmt.setAttribute("nbRelations", Integer.toString(elmt.getContentSize()));
 			}
-		}
-
-		// Set the number of domains
-		domains.setAttribute("nbDomains", Integer.toString(domNames.size()));
-
-		// Add all variables known to this agent
-		variables.setAttribute("nbVariables", Integer.toString(varElmts.size()));
-		for (Element varElmt : varElmts) {
-			Element newVarElmt = (Element) varElmt.clone();
-			variables.addContent(newVarElmt);
 			
-			// Check the owner of this variable
-			String owner = varElmt.getAttributeValue("agent");
-			if (owner != null) 
-				knownAgents.add(owner);
-			else if (! "random".equals(varElmt.getAttributeValue("type"))) { // shared variable; set its agent scope
-				HashSet<String> varScope = varScopes.get(varElmt.getAttributeValue("name"));
-				if (varScope != null) {
-					String scope = "";
-					for (String neigh : varScope) 
-						scope += neigh + " ";
-					newVarElmt.setAttribute("scope", scope);
+			if (! relationNames.isEmpty()) 
+				foundUndefinedRelations(relationNames);
+
+			if (root.getChild("probabilities") != null) {
+				Element elmt = new Element ("probabilities");
+				instance.addContent(elmt);
+				elmt.setAttribute("nbProbabilities", Integer.toString(probNames.size()));
+				for (Element probability : this.shareByName(root.getChild("probabilities"), this.probIndexes, probNames)) {
+					elmt.addContent(probability);
+					probNames.remove(probability.getAttributeValue("name"));
+					maxConstraintArity = Math.max(maxConstraintArity, Integer.parseInt(probability.getAttributeValue("arity")));
 				}
 			}
+			
+			if (! probNames.isEmpty()) 
+				System.err.println("Undefined probabilities: " + probNames);
+			
+			presentation.setAttribute("maxConstraintArity", Integer.toString(maxConstraintArity));
+			
+			// Add the "constraints" element after the "relations" and "probabilities" element
+			Element constraints = new Element ("constraints");
+			instance.addContent(constraints);
+			constraints.setAttribute("nbConstraints", Integer.toString(outCons.size()));
+			for (int i : outCons) 
+				constraints.addContent((Element) model.constraints[i].clone());
+			
+			XCSPparser<V, U> subProb = newInstance (instance);
+			subProb.setUtilClass(utilClass);
+			subProb.setDomClass(domClass);
+			subProb.setSparseThreshold(sparseThreshold);
+			subProb.sharedRelations = this.sharedRelations;
+			subProb.sharedProbs = this.sharedProbs;
+			return subProb;
 		}
 		
-		// Fill in the list of agents
-		agents.setAttribute("nbAgents", Integer.toString(knownAgents.size()));
-		for (Element agentElmt : (List<Element>) this.root.getChild("agents").getChildren()) 
-			if (knownAgents.contains(agentElmt.getAttributeValue("name"))) 
-				agents.addContent((Element) agentElmt.clone());
-
-		// Create the relations (if the original problem contained any)
-		int maxConstraintArity = 0;
-		if (this.root.getChild("relations") != null) {
-			Element elmt = new Element ("relations");
-			instance.addContent(elmt);
+		/** Copies the relations or probability laws with the given names, sharing the text describing their tuples
+		 * @param parent 	the "relations" or "probabilities" Element
+		 * @param indexes 	for each name, the position of the first child with this name
+		 * @param names 	the names of the children to be copied; unknown names are ignored
+		 * @return the copies, in the order in which the children appear in \a parent
+		 */
+		private List<Element> shareByName (Element parent, HashMap<String, Integer> indexes, Set<String> names) {
 			
-			// Go through the list of all relations in the overall problem
-			for (Element relation : (List<Element>) root.getChild("relations").getChildren()) {
+			List<Element> children = parent.getChildren();
+			ArrayList<Element> out = new ArrayList<Element> (names.size());
+			for (int pos : positions(indexes, names)) {
+				Element relation = children.get(pos);
 				
-				// Add the relation to the list of relations if it is referred to by any of this agent's constraints
-				if (relationNames.remove(relation.getAttributeValue("name"))) {
-					elmt.addContent((Element) relation.clone());
-					maxConstraintArity = Math.max(maxConstraintArity, Integer.parseInt(relation.getAttributeValue("arity")));
+				if (! relation.getChildren().isEmpty()) { // not a plain list of tuples
+					out.add(relation.clone());
+					continue;
 				}
+				
+				Element copy = new Element (relation.getName(), relation.getNamespace());
+				for (Attribute attr : relation.getAttributes()) 
+					copy.setAttribute(attr.getName(), attr.getValue(), attr.getNamespace());
+				
+				String text = this.tuples.get(relation);
+				if (text == null) 
+					this.tuples.put(relation, text = relation.getText());
+				if (! text.isEmpty()) 
+					copy.setText(text);
+				out.add(copy);
 			}
-			elmt.setAttribute("nbRelations", Integer.toString(elmt.getContentSize()));
+			return out;
 		}
-
-		if (! relationNames.isEmpty()) 
-			this.foundUndefinedRelations(relationNames);
-
-		// Create the probabilities (if the original problem contained any)
-		if (root.getChild("probabilities") != null) {
-			Element elmt = new Element ("probabilities");
-			instance.addContent(elmt);
-			elmt.setAttribute("nbProbabilities", Integer.toString(probNames.size()));
-
-			// Go through the list of all probabilities in the overall problem
-			for (Element probability : (List<Element>) root.getChild("probabilities").getChildren()) {
-
-				// Add the probability to the list of probabilities if it is referred to by any of this agent's constraints
-				if (probNames.remove(probability.getAttributeValue("name"))) {
-					elmt.addContent((Element) probability.clone());
-					maxConstraintArity = Math.max(maxConstraintArity, Integer.parseInt(probability.getAttributeValue("arity")));
-				}
+	}
+	
+	/** Checks whether a variable is random
+	 * @param model 	the compiled view of the problem
+	 * @param var 		the variable
+	 * @return \c true if the variable is random, \c false if not or if the variable is unknown
+	 */
+	private boolean isRandom (Model<V, U> model, String var) {
+		Model.Variable<V> varInfo = model.getVariable(var);
+		return varInfo != null && varInfo.random;
+	}
+	
+	/** Adds the variables in the scope of a constraint to the variables known to an agent
+	 * @param model 	the compiled view of the problem
+	 * @param scope 	the scope of the constraint
+	 * @param varNames 	the internal variables and relevant external variables
+	 * @param outVars 	the variables in the subproblem
+	 * @param queue 	the variables whose constraints remain to be looked at
+	 */
+	private static < V extends Addable<V>, U extends Addable<U> > void addScope (Model<V, U> model, String[] scope, 
+			HashSet<String> varNames, HashSet<String> outVars, ArrayList<String> queue) {
+		
+		for (String var : scope) {
+			Model.Variable<V> varInfo = model.getVariable(var);
+			if (varInfo != null) {
+				outVars.add(var);
+				if (varInfo.owner == null && varNames.add(var)) 
+					queue.add(var);
 			}
 		}
-
-		if (! probNames.isEmpty()) 
-			System.err.println("Undefined probabilities: " + probNames);
-
-		// Set the maxConstraintArity
-		presentation.setAttribute("maxConstraintArity", Integer.toString(maxConstraintArity));
-
-		// Add the "constraints" element after the "relations" and "probabilities" element
-		instance.addContent(constraints);
-
-		XCSPparser<V, U> out = newInstance (instance);
-		out.setUtilClass(utilClass);
-		out.setDomClass(domClass);
+	}
+	
+	/** Adds an element to the set associated with a key
+	 * @param map 		the map
+	 * @param key 		the key
+	 * @param value 	the element
+	 */
+	private static void addToSet (HashMap< String, HashSet<String> > map, String key, String value) {
+		HashSet<String> set = map.get(key);
+		if (set == null) 
+			map.put(key, set = new HashSet<String> ());
+		set.add(value);
+	}
+	
+	/** Indexes the children of an Element by their names
+	 * @param parent 	the parent Element; may be \c null
+	 * @return for each name, the position of the first child with this name
+	 */
+	private static HashMap<String, Integer> indexByName (Element parent) {
+		
+		HashMap<String, Integer> out = new HashMap<String, Integer> ();
+		if (parent != null) {
+			List<Element> children = parent.getChildren();
+			for (int i = 0; i < children.size(); i++) 
+				out.putIfAbsent(children.get(i).getAttributeValue("name"), i);
+		}
+		return out;
+	}
+	
+	/** Clones the children of an Element with the given names
+	 * @param parent 	the parent Element
+	 * @param indexes 	for each name, the position of the first child with this name
+	 * @param names 	the names of the children to be cloned; unknown names are ignored
+	 * @return the clones, in the order in which the children appear in \a parent
+	 */
+	private List<Element> cloneByName (Element parent, HashMap<String, Integer> indexes, Set<String> names) {
+		
+		List<Element> children = parent.getChildren();
+		ArrayList<Element> out = new ArrayList<Element> (names.size());
+		for (int pos : positions(indexes, names)) 
+			out.add((Element) children.get(pos).clone());
 		return out;
 	}
+	
+	/** Looks up the positions of the children of an Element with the given names
+	 * @param indexes 	for each name, the position of the first child with this name
+	 * @param names 	the names of the children; unknown names are ignored
+	 * @return the positions, in increasing order
+	 */
+	private static ArrayList<Integer> positions (HashMap<String, Integer> indexes, Set<String> names) {
+		
+		ArrayList<Integer> positions = new ArrayList<Integer> (names.size());
+		for (String name : names) {
+			Integer pos = indexes.get(name);
+			if (pos != null) 
+				positions.add(pos);
+		}
+		Collections.sort(positions);
+		return positions;
+	}
 
 	/** Prints out an error message
 	 * @param relationNames 	names of the undefined relations
@@ -1661,6 +2206,8 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	public HashSet<String> getNeighborVars (String var, final boolean withAnonymVars) {
 
 		HashSet<String> out = new HashSet<String> ();
+		
+		Model<V, U> model = this.getModel();
 
 		LinkedList<String> pending = new LinkedList<String> (); // variable(s) whose direct neighbors will be returned
 		pending.add(var);
@@ -1671,31 +2218,26 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 			if (! done.add(var2)) // we have already processed this variable
 				continue;
 
-			// Go through the list of constraint scopes
-			for (Element constraint : (List<Element>) root.getChild("constraints").getChildren()) {
-
-				// Check if var2 is in the scope
-				String[] scope = constraint.getAttributeValue("scope").trim().split("\\s+");
-				Arrays.sort(scope);
-				if (Arrays.binarySearch(scope, var2) >= 0) {
+			// Go through the list of constraints involving var2
+			for (int i : model.getConstraints(var2)) {
 
-					// Go through the list of variables in the scope
-					for (String neighbor : scope) {
+				// Go through the list of variables in the scope
+				for (String neighbor : model.scopes[i]) {
 
-						// Check if the neighbor is random
-						if (! this.isRandom(neighbor)) // not random
-							out.add(neighbor);
+					// Check if the neighbor is random
+					Model.Variable<V> varInfo = model.getVariable(neighbor);
+					if (varInfo == null || ! varInfo.random) // not random
+						out.add(neighbor);
 
-						else { // the neighbor is random
+					else { // the neighbor is random
 
-							// Add it to the list of neighbors if we are interested in random neighbors
-							if (withAnonymVars) 
-								out.add(neighbor);
+						// Add it to the list of neighbors if we are interested in random neighbors
+						if (withAnonymVars) 
+							out.add(neighbor);
 
-							// Later look for its own neighbors if we want extended neighborhoods
-							if (this.extendedRandNeighborhoods) 
-								pending.add(neighbor);
-						}
+						// Later look for its own neighbors if we want extended neighborhoods
+						if (this.extendedRandNeighborhoods) 
+							pending.add(neighbor);
 					}
 				}
 			}
@@ -1816,6 +2358,8 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	private HashSet<String> getAgentNeighbors (String var) {
 		
 		HashSet<String> out = new HashSet<String> ();
+		
+		Model<V, U> model = this.getModel();
 
 		LinkedList<String> pending = new LinkedList<String> (); // variable(s) whose direct agent neighbors will be returned
 		pending.add(var);
@@ -1826,32 +2370,27 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 			if (! done.add(var2)) // we have already processed this variable
 				continue;
 			
-			// Go through the list of constraint scopes
-			for (Element constraint : (List<Element>) root.getChild("constraints").getChildren()) {
-
-				// Check if var2 is in the scope
-				String[] scope = constraint.getAttributeValue("scope").trim().split("\\s+");
-				Arrays.sort(scope);
-				if (Arrays.binarySearch(scope, var2) >= 0) {
-
-					// If the constraint has a specific owner, add it to the set of agents
-					String consOwner = constraint.getAttributeValue("agent");
-					if ("PUBLIC".equals(consOwner)) 
-						consOwner = null;
-					if (consOwner != null) 
-						out.add(consOwner);
-					
-					// Go through the list of variables in the scope
-					for (String neighbor : scope) {
-
-						// Check if the neighbor is random
-						if (! this.isRandom(neighbor)) { // not random
-							String varOwner = this.getOwner(neighbor);
-							if (varOwner != null) 
-								out.add(varOwner);
-						} else if (this.extendedRandNeighborhoods)
-							pending.add(neighbor); // later look for this random neighbor's own neighbors
-					}
+			// Go through the list of constraints involving var2
+			for (int i : model.getConstraints(var2)) {
+
+				// If the constraint has a specific owner, add it to the set of agents
+				String consOwner = model.constraints[i].getAttributeValue("agent");
+				if ("PUBLIC".equals(consOwner)) 
+					consOwner = null;
+				if (consOwner != null) 
+					out.add(consOwner);
+				
+				// Go through the list of variables in the scope
+				for (String neighbor : model.scopes[i]) {
+
+					// Check if the neighbor is random
+					Model.Variable<V> varInfo = model.getVariable(neighbor);
+					if (varInfo == null || ! varInfo.random) { // not random
+						String varOwner = this.getOwner(neighbor);
+						if (varOwner != null) 
+							out.add(varOwner);
+					} else if (this.extendedRandNeighborhoods)
+						pending.add(neighbor); // later look for this random neighbor's own neighbors
 				}
 			}
 		} while (! pending.isEmpty());
@@ -1873,16 +2412,10 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	 */
 	private HashSet<String> getScope(String var) {
 		
-		for (Element varElmt : (List<Element>) this.root.getChild("variables").getChildren()) {
-			if (varElmt.getAttributeValue("name").equals(var)) {
-				String scope = varElmt.getAttributeValue("scope");
-				if (scope == null) 
-					return null;
-				return new HashSet<String> (Arrays.asList(scope.split("\\s+")));
-			}
-		}
-		
-		return null;
+		Model.Variable<V> varInfo = this.getModel().getVariable(var);
+		if (varInfo == null || varInfo.scope == null) 
+			return null;
+		return new HashSet<String> (Arrays.asList(varInfo.scope));
 	}
 
 	/** Gets the agent neighborhoods
@@ -1921,24 +2454,17 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	 */
 	public int getDomainSize (String var) {
 
-		// Parse the name of the domain
-		String domName = null;
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) {
-			if (varElmt.getAttributeValue("name").equals(var)) {
-				domName = varElmt.getAttributeValue("domain");
-				break;
-			}
-		}
-		if (domName == null) 
+		// Look up the domain
+		Model.Variable<V> varInfo = this.getModel().getVariable(var);
+		if (varInfo == null || varInfo.domName == null) 
 			return -1;
 
 		// Parse the domain size
-		for (Element domElmt : (List<Element>) root.getChild("domains").getChildren()) 
-			if (domElmt.getAttributeValue("name").equals(domName)) 
-				return Integer.parseInt(domElmt.getAttributeValue("nbValues"));
+		if (varInfo.domElmt != null) 
+			return Integer.parseInt(varInfo.domElmt.getAttributeValue("nbValues"));
 
 		// The domain is not defined
-		System.err.println("The domain " + domName + " for variable " + var + " is not defined");
+		System.err.println("The domain " + varInfo.domName + " for variable " + var + " is not defined");
 		return -1;
 	}
 
@@ -1948,24 +2474,20 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	 */
 	public V[] getDomain (String var) {
 
-		// Parse the name of the domain
-		String domName = null;
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) {
-			if (varElmt.getAttributeValue("name").equals(var)) {
-				domName = varElmt.getAttributeValue("domain");
-				break;
-			}
-		}
-		if (domName == null) 
+		// Look up the domain
+		Model<V, U> model = this.getModel();
+		Model.Variable<V> varInfo = model.getVariable(var);
+		if (varInfo == null || varInfo.domName == null) 
 			return null;
 
-		// Parse the domain
-		for (Element domElmt : (List<Element>) root.getChild("domains").getChildren()) 
-			if (domElmt.getAttributeValue("name").equals(domName)) 
-				return this.getDomain(domElmt, false);
+		// Return a copy of the compiled domain, which is shared
+		if (varInfo.domElmt != null) {
+			V[] dom = model.getDomain(varInfo);
+			return (dom == null ? null : dom.clone());
+		}
 
 		// The domain is not defined
-		System.err.println("The domain " + domName + " for variable " + var + " is not defined");
+		System.err.println("The domain " + varInfo.domName + " for variable " + var + " is not defined");
 		return null;
 	}
 
@@ -2179,7 +2701,8 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 				break;
 			}
 		}
-
+		
+		this.invalidateModel();
 	}
 
 	/** @see java.lang.Object#toString() */
@@ -2198,12 +2721,8 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	 */
 	public boolean isRandom (String var) {
 
-		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) 
-			if (var.equals(varElmt.getAttributeValue("name"))) 
-				return new String ("random").equals(varElmt.getAttributeValue("type"));
-
-		// Variable not found
-		return false;
+		Model.Variable<V> varInfo = this.getModel().getVariable(var);
+		return varInfo != null && varInfo.random; // false if the variable is unknown
 	}
 
 	/** Transforms the problem into one where some variables' values have been fixed
@@ -2467,6 +2986,8 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 	 */
 	public void rescale(U multiply, U add) {
 		
+		this.invalidateModel();
+		
 		// Modify each relation
 		for (Element relElmt : (List<Element>) this.root.getChild("relations").getChildren()) {
 			
@@ -2507,6 +3028,7 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 		String maximize = root.getChild("presentation").getAttributeValue("maximize");
 		assert maximize.equals("true");
 		root.getChild("presentation").setAttribute("maximize", "false");
+		this.invalidateModel();
 
 		// Create the method to parse a utility from a String
 		Method utilFromString;
@@ -2642,6 +3164,7 @@ public class XCSPparser < V extends Addable<V>, U extends Addable<U> > implement
 		this.root = prob.root;
 		this.utilClass = prob.utilClass;
 		this.valInstance = prob.valInstance;
+		this.invalidateModel();
 	}
 
 	/**
@@ -0,0 +1,572 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+ */
+
+package frodo2.algorithms;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.jdom2.Element;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.hypercube.Hypercube;
+import frodo2.solutionSpaces.hypercube.SparseHypercube;
+
+/** A streaming XCSP parser that builds a Problem directly from the XML events, without ever building a JDOM Document
+ *
+ * The parser only keeps in memory the domains, the variables and the parsed relations and probability laws,
+ * whose tuples are tokenized as the characters are read. Each constraint is turned into a hypercube as soon as it is read, 
+ * or at the end of the document if it refers to a relation that comes after it.
+ * Like XCSPparser, it only supports extensional soft constraints; constraints that refer to predicates, functions or undefined relations are rejected.
+ * @author Thomas Leaute
+ * @param <V> the type used for variable values
+ * @param <U> the type used for utility values
+ */
+@SuppressWarnings("unchecked")
+public class XCSPstreamParser < V extends Addable<V>, U extends Addable<U> > {
+
+	/** The class to be used for variable values */
+	private Class<V> domClass = (Class<V>) AddableInteger.class;
+
+	/** The class to be used for utility values */
+	private Class<U> utilClass = (Class<U>) AddableInteger.class;
+
+	/** Whether neighborhood relationships between decision variables are extended through random variables */
+	private final boolean extendedRandNeighborhoods;
+
+	/** Whether each agent knows the identities of all agents */
+	private final boolean publicAgents;
+
+	/** Whether to behave in MPC mode */
+	private final boolean mpc;
+
+	/** Whether to count constraint checks */
+	private final boolean countNCCCs;
+
+	/** The classes of spaces whose constraint checks should not be counted */
+	private final HashSet<String> spacesToIgnoreNcccs = new HashSet<String> ();
+
+	/** The tuple density below which a constraint with a default utility is represented by a SparseHypercube */
+	private double sparseThreshold = 0;
+
+	/** Constructor with default parameters */
+	public XCSPstreamParser () {
+		this.extendedRandNeighborhoods = false;
+		this.publicAgents = false;
+		this.mpc = false;
+		this.countNCCCs = false;
+	}
+
+	/** Constructor
+	 * @param params 	the parameters of the solver, in the same format as for XCSPparser#XCSPparser(org.jdom2.Document, Element)
+	 */
+	public XCSPstreamParser (Element params) {
+
+		this.extendedRandNeighborhoods = Boolean.parseBoolean(params.getAttributeValue("extendedRandNeighborhoods"));
+		this.publicAgents = Boolean.parseBoolean(params.getAttributeValue("publicAgents"));
+		this.mpc = Boolean.parseBoolean(params.getAttributeValue("mpc"));
+		this.countNCCCs = Boolean.parseBoolean(params.getAttributeValue("countNCCCs"));
+
+		// Parse the classes of V and U
+		try {
+			String valClassName = params.getAttributeValue("domClass");
+			if (valClassName != null)
+				this.domClass = (Class<V>) Class.forName(valClassName);
+			String utilClassName = params.getAttributeValue("utilClass");
+			if (utilClassName != null)
+				this.utilClass = (Class<U>) Class.forName(utilClassName);
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+		}
+
+		// Parse the tuple density below which sparse hypercubes should be used
+		String sparseString = params.getAttributeValue("sparseThreshold");
+		if (sparseString != null)
+			this.sparseThreshold = Double.parseDouble(sparseString);
+
+		// Parse which spaces should be ignored
+		Element spacesToIgnore = params.getChild("ignoreNCCCs");
+		if (spacesToIgnore != null)
+			for (Element classElmt : spacesToIgnore.getChildren())
+				this.spacesToIgnoreNcccs.add(classElmt.getText());
+	}
+
+	/** Sets the class to be used for variable values
+	 * @param domClass 	the class for variable values
+	 */
+	public void setDomClass (Class<V> domClass) {
+		this.domClass = domClass;
+	}
+
+	/** Sets the class to be used for utility values
+	 * @param utilClass 	the class for utility values
+	 */
+	public void setUtilClass (Class<U> utilClass) {
+		this.utilClass = utilClass;
+	}
+
+	/** Sets the tuple density below which constraints with a default utility are represented by SparseHypercubes
+	 * @param sparseThreshold 	the number of tuples divided by the size of the Cartesian product of the domains; 0 to always use dense hypercubes
+	 */
+	public void setSparseThreshold (double sparseThreshold) {
+		this.sparseThreshold = sparseThreshold;
+	}
+
+	/** Parses an XCSP file
+	 * @param file 			the XCSP file
+	 * @param checkXCSP 	if \c true, checks the file against the XCSP schema while it is being parsed
+	 * @return the parsed problem
+	 * @throws SAXException if a parsing or validation error occurs
+	 * @throws IOException 	if an I/O error occurs while reading the file
+	 */
+	public Problem<V, U> parse (File file, boolean checkXCSP) throws SAXException, IOException {
+
+		// Set the system ID, such that the location of the schema can be resolved relatively to the file
+		InputSource source = new InputSource (file.toURI().toString());
+		return this.parse(source, checkXCSP);
+	}
+
+	/** Parses an XCSP stream
+	 * @param stream 		the XCSP stream
+	 * @param checkXCSP 	if \c true, checks the stream against the XCSP schema while it is being parsed
+	 * @return the parsed problem
+	 * @throws SAXException if a parsing or validation error occurs
+	 * @throws IOException 	if an I/O error occurs while reading the stream
+	 */
+	public Problem<V, U> parse (InputStream stream, boolean checkXCSP) throws SAXException, IOException {
+		return this.parse(new InputSource (stream), checkXCSP);
+	}
+
+	/** Parses an XCSP input source
+	 * @param source 		the input source
+	 * @param checkXCSP 	if \c true, checks the input against the XCSP schema while it is being parsed
+	 * @return the parsed problem
+	 * @throws SAXException if a parsing or validation error occurs
+	 * @throws IOException 	if an I/O error occurs while reading the input
+	 */
+	private Problem<V, U> parse (InputSource source, boolean checkXCSP) throws SAXException, IOException {
+
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		factory.setValidating(checkXCSP);
+
+		Handler handler = new Handler ();
+		try {
+			SAXParser parser = factory.newSAXParser();
+			if (checkXCSP)
+				parser.setProperty("http://java.sun.com/xml/jaxp/properties/schemaLanguage", XMLConstants.W3C_XML_SCHEMA_NS_URI);
+			parser.parse(source, handler);
+
+		} catch (ParserConfigurationException e) {
+			throw new SAXException ("Unable to configure the SAX parser", e);
+		}
+
+		return handler.getProblem();
+	}
+
+	/** The SAX handler that builds the problem as the XML events are received
+	 * @author Thomas Leaute
+	 */
+	private class Handler extends DefaultHandler {
+
+		/** The problem being built, or \c null if the presentation has not been read yet */
+		private Problem<V, U> problem;
+
+		/** An instance of V used to parse values */
+		private final V valInstance;
+
+		/** An instance of U used to parse utilities */
+		private final U utilInstance;
+
+		/** The infeasible utility */
+		private U infeasibleUtil;
+
+		/** The domains, indexed by their names */
+		private final HashMap<String, V[]> domains = new HashMap<String, V[]> ();
+
+		/** The domain of each variable */
+		private final HashMap<String, V[]> varDoms = new HashMap<String, V[]> ();
+
+		/** The random variables */
+		private final HashSet<String> randVars = new HashSet<String> ();
+
+		/** The relations, indexed by their names */
+		private final HashMap< String, XCSPparser.Relation<V, U> > relations = new HashMap< String, XCSPparser.Relation<V, U> > ();
+
+		/** The probability laws, indexed by their names */
+		private final HashMap< String, XCSPparser.Relation<V, U> > probabilities = new HashMap< String, XCSPparser.Relation<V, U> > ();
+
+		/** The constraints referring to relations or probability laws that had not been read yet */
+		private final ArrayList<String[]> pending = new ArrayList<String[]> ();
+
+		/** The relations and probability laws that are not supported, and whose constraints are ignored */
+		private final HashSet<String> ignoredRelations = new HashSet<String> ();
+
+		/** The names of the predicates and functions, which are not supported */
+		private final HashSet<String> predicates = new HashSet<String> ();
+
+		/** The text of the current domain, or \c null if we are not reading a domain */
+		private StringBuilder domText;
+
+		/** The name of the current domain */
+		private String domName;
+
+		/** The expected number of values in the current domain */
+		private int nbValues;
+
+		/** The current relation or probability law, or \c null if we are not reading one */
+		private XCSPparser.Relation<V, U> relation;
+
+		/** The name of the current relation or probability law */
+		private String relName;
+
+		/** The expected number of tuples in the current relation */
+		private int nbTuples;
+
+		/** Constructor */
+		Handler () {
+			try {
+				this.valInstance = domClass.getConstructor().newInstance();
+				this.utilInstance = utilClass.getConstructor().newInstance().getZero();
+			} catch (InvocationTargetException | NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+				throw new IllegalArgumentException ("Failed calling the nullary constructors of the classes " + domClass.getName() +
+						" and " + utilClass.getName() + " used for variable and utility values", e);
+			}
+		}
+
+		/** @return the parsed problem */
+		Problem<V, U> getProblem () {
+			return this.getProblem(false);
+		}
+
+		/** Returns the problem being built, creating it if necessary
+		 * @param maximize 	whether this is a maximization problem, used if the problem is created
+		 * @return the problem
+		 */
+		private Problem<V, U> getProblem (boolean maximize) {
+
+			if (this.problem == null) {
+				this.problem = new Problem<V, U> (maximize, publicAgents, mpc, extendedRandNeighborhoods);
+				this.problem.setDomClass(domClass);
+				this.problem.setUtilClass(utilClass);
+				this.infeasibleUtil = (maximize ? this.utilInstance.getMinInfinity() : this.utilInstance.getPlusInfinity());
+			}
+			return this.problem;
+		}
+
+		/** @see DefaultHandler#startElement(String, String, String, Attributes) */
+		@Override
+		public void startElement (String uri, String localName, String qName, Attributes attributes) throws SAXException {
+
+			String name = (localName == null || localName.isEmpty() ? qName : localName);
+
+			if (name.equals("presentation"))
+				this.getProblem(Boolean.parseBoolean(attributes.getValue("maximize")));
+
+			else if (name.equals("agents"))
+				this.getProblem().setAgent(attributes.getValue("self"));
+
+			else if (name.equals("agent"))
+				this.getProblem().addAgent(attributes.getValue("name"));
+
+			else if (name.equals("domain")) {
+				this.domName = attributes.getValue("name");
+				String nbValues = attributes.getValue("nbValues");
+				this.nbValues = (nbValues == null ? -1 : Integer.parseInt(nbValues));
+				this.domText = new StringBuilder ();
+
+			} else if (name.equals("variable"))
+				this.addVariable(attributes);
+
+			else if (name.equals("relation"))
+				this.startRelation(attributes, false);
+
+			else if (name.equals("probability"))
+				this.startRelation(attributes, true);
+
+			else if (name.equals("predicate") || name.equals("function"))
+				this.predicates.add(attributes.getValue("name"));
+
+			else if (name.equals("constraint"))
+				this.addConstraint(attributes);
+		}
+
+		/** @see DefaultHandler#characters(char[], int, int) */
+		@Override
+		public void characters (char[] ch, int start, int length) throws SAXException {
+
+			if (this.domText != null)
+				this.domText.append(ch, start, length);
+
+			else if (this.relation != null) { // tokenize the tuples as they are read
+				try {
+					this.relation.tuples.parse(ch, start, length);
+				} catch (IllegalArgumentException e) {
+					throw new SAXException ("Failed to parse the tuples of the relation `" + this.relName + "'", e);
+				}
+			}
+		}
+
+		/** @see DefaultHandler#endElement(String, String, String) */
+		@Override
+		public void endElement (String uri, String localName, String qName) throws SAXException {
+
+			String name = (localName == null || localName.isEmpty() ? qName : localName);
+
+			if (name.equals("domain")) {
+				this.domains.put(this.domName, this.parseDomain(this.domText.toString()));
+				this.domText = null;
+
+			} else if (this.relation != null && (name.equals("relation") || name.equals("probability"))) {
+				try {
+					this.endRelation();
+				} catch (IllegalArgumentException e) {
+					throw new SAXException ("Failed to parse the tuples of the relation `" + this.relName + "'", e);
+				}
+			}
+		}
+
+		/** @see DefaultHandler#error(SAXParseException) */
+		@Override
+		public void error (SAXParseException e) throws SAXException {
+			throw e;
+		}
+
+		/** Parses a domain
+		 * @param values 	the text description of the domain
+		 * @return the domain
+		 */
+		private V[] parseDomain (String values) {
+
+			ArrayList<V> dom = new ArrayList<V> ();
+			for (String interval : values.trim().split("\\s+")) {
+
+				if (interval.isEmpty())
+					continue;
+
+				int dots = interval.indexOf("..");
+				if (dots < 0) // domain element specified as a number
+					dom.add(this.valInstance.fromString(interval));
+
+				else { // domain elements specified as an interval
+					int min = Integer.parseInt(interval.substring(0, dots).trim());
+					int max = Integer.parseInt(interval.substring(dots + 2).trim());
+					for (int i = min; i <= max; i++)
+						dom.add(this.valInstance.fromInt(i));
+				}
+			}
+
+			assert this.nbValues < 0 || dom.size() == this.nbValues :
+				"Incorrect number of values in the domain " + this.domName + ": " + dom.size() + " != " + this.nbValues;
+
+			return dom.toArray((V[]) Array.newInstance(domClass, dom.size()));
+		}
+
+		/** Adds a variable to the problem
+		 * @param attributes 	the attributes of the variable
+		 * @throws SAXException if the domain of the variable is unknown
+		 */
+		private void addVariable (Attributes attributes) throws SAXException {
+
+			String name = attributes.getValue("name");
+			String domName = attributes.getValue("domain");
+			V[] dom = this.domains.get(domName);
+			if (dom == null)
+				throw new SAXException ("Unknown domain `" + domName + "' for variable `" + name + "'");
+
+			if (this.varDoms.containsKey(name))
+				return;
+			this.varDoms.put(name, dom);
+
+			String owner = attributes.getValue("agent");
+			if ("random".equals(attributes.getValue("type"))) {
+				if (owner != null) // a Problem has no owners for random variables
+					System.err.println("Ignoring the owner `" + owner + "' of the random variable `" + name + "'");
+				this.randVars.add(name);
+				this.getProblem().addRandomVar(name, dom);
+			} else
+				this.getProblem().addVariable(name, owner, dom);
+		}
+
+		/** Starts reading a relation or a probability law
+		 * @param attributes 	the attributes of the relation
+		 * @param isProb 		whether this is a probability law
+		 */
+		private void startRelation (Attributes attributes, final boolean isProb) {
+
+			this.relName = attributes.getValue("name");
+			String semantics = attributes.getValue("semantics");
+			int nbTuples = Integer.parseInt(attributes.getValue("nbTuples"));
+			String defaultCost = attributes.getValue(isProb ? "defaultProb" : "defaultCost");
+
+			// XCSP can have support and conflicts semantics too, these are of no use in Hypercubes/DPOP context so they are ignored.
+			if (! "soft".equals(semantics)) {
+				System.err.println("Warning! The relation `" + this.relName + "' is of semantics `" + semantics +
+						"', which is not supported by the parser " + XCSPstreamParser.this.getClass());
+				this.ignoredRelations.add(this.relName);
+				return;
+			}
+
+			if (nbTuples == 0 && defaultCost == null) {
+				System.err.println("Relation `" + this.relName + "' has nbTuples == 0 and no default cost");
+				this.ignoredRelations.add(this.relName);
+				return;
+			}
+
+			this.relation = new XCSPparser.Relation<V, U> ();
+			if (defaultCost != null)
+				this.relation.defaultUtil = this.utilInstance.fromString(defaultCost);
+			this.relation.tuples = new TupleTokenizer (Integer.parseInt(attributes.getValue("arity")), nbTuples, AddableInteger.class.equals(domClass));
+			(isProb ? this.probabilities : this.relations).put(this.relName, this.relation);
+			this.nbTuples = nbTuples;
+		}
+
+		/** Ends the current relation or probability law */
+		private void endRelation () {
+
+			XCSPparser.Relation<V, U> rel = this.relation;
+			TupleTokenizer tuples = rel.tuples;
+			tuples.end();
+			if (tuples.getNbrTuples() != this.nbTuples)
+				System.err.println("Relation `" + this.relName + "' has nbTuples == " + this.nbTuples +
+						" but its description actually contains " + tuples.getNbrTuples() + " tuples");
+			rel.setTuples(tuples, this.valInstance, this.utilInstance);
+
+			this.relation = null;
+		}
+
+		/** Turns a constraint into a hypercube and adds it to the problem
+		 * 
+		 * If the constraint refers to a relation or probability law that has not been read yet, it is only processed at the end of the document. 
+		 * @param attributes 	the attributes of the constraint
+		 * @throws SAXException if the scope of the constraint contains an unknown variable
+		 */
+		private void addConstraint (Attributes attributes) throws SAXException {
+			
+			String[] constraint = new String[] { attributes.getValue("name"), attributes.getValue("reference"), 
+					attributes.getValue("scope"), attributes.getValue("agent") };
+			
+			if (! this.addConstraint(constraint)) 
+				this.pending.add(constraint);
+		}
+		
+		/** @see DefaultHandler#endDocument() 
+		 * @throws SAXException if a constraint refers to an undefined relation or probability law, or to a predicate or function
+		 */
+		@Override
+		public void endDocument () throws SAXException {
+			
+			for (String[] constraint : this.pending) {
+				if (this.addConstraint(constraint) || this.ignoredRelations.contains(constraint[1])) // unsupported relations have already been reported
+					continue;
+				
+				if (this.predicates.contains(constraint[1])) 
+					throw new SAXException ("The constraint `" + constraint[0] + "' refers to the predicate or function `" + constraint[1] + 
+							"', which is not supported by the parser " + XCSPstreamParser.this.getClass() + ". You should be using the XCSP parser based on JaCoP. ");
+				else 
+					throw new SAXException ("The constraint `" + constraint[0] + "' refers to the undefined relation `" + constraint[1] + "'");
+			}
+			this.pending.clear();
+		}
+		
+		/** Turns a constraint into a hypercube and adds it to the problem
+		 * @param constraint 	the name, reference, scope and owner of the constraint
+		 * @return \c false if the relation or probability law the constraint refers to is unknown
+		 * @throws SAXException if the scope of the constraint contains an unknown variable
+		 */
+		private boolean addConstraint (String[] constraint) throws SAXException {
+
+			String name = constraint[0];
+			String reference = constraint[1];
+
+			// Look up the relation or probability law
+			final boolean isProb;
+			XCSPparser.Relation<V, U> relationInfo = this.relations.get(reference);
+			if (relationInfo != null)
+				isProb = false;
+			else if ((relationInfo = this.probabilities.get(reference)) != null)
+				isProb = true;
+			else
+				return false;
+
+			String[] varNames = constraint[2].trim().split("\\s+");
+
+			V[][] doms = null;
+			int size = 1;
+			for (int i = 0; i < varNames.length; i++) {
+
+				V[] dom = this.varDoms.get(varNames[i]);
+				if (dom == null)
+					throw new SAXException ("Unknown variable `" + varNames[i] + "' in the scope of the constraint `" + name + "'");
+				if (doms == null)
+					doms = (V[][]) Array.newInstance(dom.getClass(), varNames.length);
+				doms[i] = dom;
+
+				if (Math.log((double) size) + Math.log((double) dom.length) >= Math.log(Integer.MAX_VALUE))
+					throw new OutOfMemoryError ("Size of utility array too big for an int");
+				size *= dom.length;
+			}
+
+			// Pre-fill the utilities with the default value, if any
+			Problem<V, U> problem = this.getProblem();
+			Hypercube<V, U> space;
+			if (relationInfo.defaultUtil != null && relationInfo.getNbrTuples() < sparseThreshold * size)
+				space = new SparseHypercube<V, U> (varNames, doms, size, utilClass, relationInfo.defaultUtil, this.infeasibleUtil);
+			else
+				space = Hypercube.newHypercube(varNames, doms, utilClass, size, relationInfo.defaultUtil, this.infeasibleUtil);
+			space.setProblem(! isProb && countNCCCs && ! spacesToIgnoreNcccs.contains(Hypercube.class.getName()) ? problem : null);
+			space.setName(name);
+			space.setRelationName(reference);
+			space.setOwner(constraint[3]);
+
+			relationInfo.fill(space);
+
+			if (! isProb)
+				problem.addSolutionSpace(space);
+			else {
+				for (String var : varNames)
+					if (this.randVars.contains(var))
+						problem.addProbabilitySpace(var, space);
+			}
+			
+			return true;
+		}
+	}
+
+}
@@ -28,6 +28,7 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 
 import frodo2.communication.Message;
+import frodo2.communication.MessageRegistry;
 import frodo2.solutionSpaces.Addable;
 import frodo2.solutionSpaces.UtilitySolutionSpace;
 
@@ -41,6 +42,10 @@ extends Message implements Externalizable {
 	/** Used for serialization */
 	private static final long serialVersionUID = -3118623960541912831L;
 
+	static {
+		MessageRegistry.register(UTILmsg.class, UTILmsg::new);
+	}
+
 	/** The sender variable */
 	private String sender;
 	
@@ -53,6 +58,12 @@ extends Message implements Externalizable {
 	/** The utility solution space */
 	private UtilitySolutionSpace<Val, U> space;
 	
+	/** Whether fakeSerialize() should leave the space unresolved if it is virtual (for instance, the output of a join) 
+	 * 
+	 * The space is still resolved when the message is actually serialized. 
+	 */
+	private boolean keepVirtual;
+	
 	/** Empty constructor */
 	public UTILmsg () {
 		super.type = UTILpropagation.UTIL_MSG_TYPE;
@@ -71,6 +82,18 @@ extends Message implements Externalizable {
 		this.dest = dest;
 		this.space = space;
 	}
+	
+	/** Constructor
+	 * @param senderVar 	the sender variable
+	 * @param senderAgent 	the sender agent
+	 * @param dest 			the destination variable
+	 * @param space		 	the space
+	 * @param keepVirtual 	whether the space should be left virtual until the message is actually serialized
+	 */
+	public UTILmsg(String senderVar, String senderAgent, String dest, UtilitySolutionSpace<Val, U> space, boolean keepVirtual) {
+		this(senderVar, senderAgent, dest, space);
+		this.keepVirtual = keepVirtual;
+	}
 
 	/** @see java.io.Externalizable#writeExternal(java.io.ObjectOutput) */
 	public void writeExternal(ObjectOutput out) throws IOException {
@@ -136,7 +159,8 @@ extends Message implements Externalizable {
 	/** @see Message#fakeSerialize() */
 	@Override
 	public void fakeSerialize () {
-		this.space = this.space.resolve(false);
+		if (! this.keepVirtual) 
+			this.space = this.space.resolve(false);
 	}
 	
 }
\ No newline at end of file
@@ -47,6 +47,7 @@ import frodo2.solutionSpaces.BasicUtilitySolutionSpace;
 import frodo2.solutionSpaces.DCOPProblemInterface;
 import frodo2.solutionSpaces.UtilitySolutionSpace;
 import frodo2.solutionSpaces.UtilitySolutionSpace.ProjOutput;
+import frodo2.solutionSpaces.hypercube.Hypercube;
 import frodo2.solutionSpaces.hypercube.ScalarBasicHypercube;
 import frodo2.solutionSpaces.hypercube.ScalarHypercube;
 
@@ -128,6 +129,26 @@ implements StatsReporter {
 	/** Whether to minimize the NCCC count, at the expense of an increase in runtime */
 	private final boolean minNCCCs;
 	
+	/** The minimum number of utilities in a join above which this module computes joins and projections in parallel; \c null to use the JVM-wide setting 
+	 * @see Hypercube#setLocalParallelThreshold(Long)
+	 */
+	protected Long parallelThreshold;
+	
+	/** The minimum number of AddableInteger utilities above which the hypercubes created by this module are stored off the heap; 
+	 * \c null to use the JVM-wide setting 
+	 * @see Hypercube#setLocalOffHeapThreshold(Long)
+	 */
+	protected Long offHeapThreshold;
+	
+	/** Whether outgoing UTIL messages should be virtual blind projections of virtual joins, only resolved when they are actually serialized 
+	 * 
+	 * The optimal assignments are then only computed upon reception of the VALUE message, by slicing the join. 
+	 */
+	protected boolean virtualJoins = false;
+	
+	/** For each cluster whose join has been kept virtual, its information, until the VALUE message is received */
+	private HashMap<String, ClusterInfo> virtualInfos;
+	
 	/** Default constructor */
 	public UTILpropagation () {
 		this.minNCCCs = false;
@@ -149,11 +170,21 @@ implements StatsReporter {
 		this.problem = problem;
 		this.minNCCCs = Boolean.parseBoolean(parameters.getAttributeValue("minNCCCs"));
 		this.reportStats = Boolean.parseBoolean(parameters.getAttributeValue("reportStats"));
+		this.virtualJoins = Boolean.parseBoolean(parameters.getAttributeValue("virtualJoins"));
+		
+		String parallelThreshold = parameters.getAttributeValue("parallelThreshold");
+		if (parallelThreshold != null) 
+			this.parallelThreshold = Long.parseLong(parallelThreshold);
+		
+		String offHeapThreshold = parameters.getAttributeValue("offHeapThreshold");
+		if (offHeapThreshold != null) 
+			this.offHeapThreshold = Long.parseLong(offHeapThreshold);
 	}
 	
 	/** Parses the problem */
 	protected void init () {
 		this.infos = new HashMap<String, ClusterInfo> ();
+		this.virtualInfos = new HashMap<String, ClusterInfo> ();
 		this.maximize = problem.maximize();
 		this.myID = problem.getAgent();
 		this.started = true;
@@ -162,6 +193,7 @@ implements StatsReporter {
 	/** @see StatsReporter#reset() */
 	public void reset () {
 		this.infos = new HashMap<String, ClusterInfo> ();
+		this.virtualInfos = null;
 		this.optUtil = null;
 		this.myID = null;
 		this.started = false;
@@ -322,17 +354,35 @@ implements StatsReporter {
 		types.add(this.getDFSMsgType());
 		types.add(UTIL_MSG_TYPE);
 		types.add(FINISH_MSG_TYPE);
+		if (this.virtualJoins) 
+			types.add(VALUEpropagation.VALUE_MSG_TYPE);
 		return types;
 	}
 
 	/** The algorithm
 	 * 
 	 * For each variable that it owns, the agent waits for the reception of all UTIL messages from all child variables. 
+	 * The hypercube operations are performed with this module's parallel and off-heap thresholds, if any. 
 	 * @param msg the message received
 	 */
-	@SuppressWarnings("unchecked")
 	public void notifyIn(Message msg) {
 		
+		Long previousParallel = Hypercube.setLocalParallelThreshold(this.parallelThreshold);
+		Long previousOffHeap = Hypercube.setLocalOffHeapThreshold(this.offHeapThreshold);
+		try {
+			this.handle(msg);
+		} finally {
+			Hypercube.setLocalParallelThreshold(previousParallel);
+			Hypercube.setLocalOffHeapThreshold(previousOffHeap);
+		}
+	}
+	
+	/** Processes a message received
+	 * @param msg 	the message received
+	 */
+	@SuppressWarnings("unchecked")
+	private void handle (Message msg) {
+		
 		MessageType type = msg.getType();
 		
 		if (type.equals(OPT_UTIL_MSG_TYPE)) { // we are in stats gatherer mode
@@ -449,6 +499,19 @@ implements StatsReporter {
 				projectAndSend(info);
 		}
 		
+		else if (type.equals(VALUEpropagation.VALUE_MSG_TYPE)) { // VALUE message for a cluster whose join has been kept virtual
+			
+			VALUEmsg<Val> msgCast = (VALUEmsg<Val>) msg;
+			ClusterInfo info = this.virtualInfos.remove(msgCast.getDest());
+			if (info == null) // this cluster's join has not been kept virtual
+				return;
+			
+			// Compute the optimal assignments to the cluster's variables given the assignments to its separator
+			ProjOutput<Val, U> projOutput = this.project(info.join.slice(msgCast.getVariables(), msgCast.getValues()), info.vars);
+			info.join = null;
+			queue.sendMessageToSelf(new SolutionMessage<Val> (info.id, projOutput.varsOut, projOutput.getAssignments()));
+		}
+		
 	}
 
 	/** @return a new ClusterInfo */
@@ -513,6 +576,9 @@ implements StatsReporter {
 		/** A list of spaces received for this cluster so far */
 		public LinkedList< UtilitySolutionSpace<Val, U> > spaces = new LinkedList< UtilitySolutionSpace<Val, U> > ();
 		
+		/** The join of all spaces, if it is kept virtual until the VALUE message is received */
+		public UtilitySolutionSpace<Val, U> join = null;
+		
 		/** Constructor */
 		public ClusterInfo () { }
 		
@@ -577,24 +643,27 @@ implements StatsReporter {
 			return;
 		}
 		
-		// Join all spaces
-		UtilitySolutionSpace<Val, U> join = info.spaces.removeFirst();
+		// Join all spaces and project out the variable, without materializing the join
+		// If using the minNCCCs option, all local spaces have already been minNCCC-joined, so we can use the (more efficient) normal join for the received UTIL messages, whose constraint checks don't count
+		UtilitySolutionSpace<Val, U> first = info.spaces.removeFirst();
 		UtilitySolutionSpace<Val, U>[] others = (UtilitySolutionSpace<Val, U>[]) info.spaces.toArray(new UtilitySolutionSpace[0]);
-		if (this.minNCCCs) 
-			join = join.join(others); // all local spaces have already been minNCCC-joined, so we can use the (more efficient) normal join for the received UTIL messages, whose constraint checks don't count
-			
-		else // not using the minNCCCs option
-			join = join.join(others);
 		
 		// Garbage-collect the spaces
 		info.spaces = null;
-		others = null;
 		
-		// Project out the variable
-		ProjOutput<Val, U> projOutput = this.project(join, info.vars);
-
-		// Garbage-collect the join
-		join = null;
+		// If required, send a virtual blind projection of the virtual join, and delay the computation of the optimal assignments until the VALUE message
+		if (this.virtualJoins && info.parentAgent != null) {
+			info.join = (others.length == 0 ? first : first.join(others));
+			this.virtualInfos.put(info.id, info);
+			this.sendToParent (info.id, info.parent, info.parentAgent, info.join.blindProject(info.vars, this.maximize));
+			return;
+		}
+		
+		ProjOutput<Val, U> projOutput = this.joinAndProject(first, others, info.vars);
+		
+		// Garbage-collect the input spaces
+		first = null;
+		others = null;
 		
 		// Send resulting space to parent (if any)
 		if (info.parentAgent != null) {
@@ -606,6 +675,16 @@ implements StatsReporter {
 		queue.sendMessageToSelf(new SolutionMessage<Val> (info.id, projOutput.varsOut, projOutput.getAssignments()));
 	}
 	
+	/** Joins the input spaces and projects the input variables out of the join
+	 * @param space 	the first space
+	 * @param others 	the other spaces
+	 * @param vars 		the variables to project out
+	 * @return the result of the projection
+	 */
+	protected ProjOutput<Val, U> joinAndProject (UtilitySolutionSpace<Val, U> space, UtilitySolutionSpace<Val, U>[] others, String[] vars) {
+		return space.joinAndProject(others, vars, maximize);
+	}
+	
 	/** Projects the input variable from the input space
 	 * @param space 	the space
 	 * @param vars 		the variables to project out
@@ -623,7 +702,7 @@ implements StatsReporter {
 	 * @todo First try to prune variable domains, and notify other branches of the pseudo-tree of the pruning. 
 	 */
 	protected void sendToParent (String var, String parentVar, String parentAgent, UtilitySolutionSpace<Val, U> space) {
-		queue.sendMessage(parentAgent, new UTILmsg<Val, U> (var, this.myID, parentVar, space));
+		queue.sendMessage(parentAgent, new UTILmsg<Val, U> (var, this.myID, parentVar, space, this.virtualJoins));
 		if (this.reportStats && ! parentAgent.equals(this.myID)) 
 			queue.sendMessage(AgentInterface.STATS_MONITOR, new StatsMessage (space.getNumberOfVariables()));
 		infos.remove(var);
@@ -29,6 +29,7 @@ import java.io.ObjectOutput;
 import java.util.Arrays;
 
 import frodo2.communication.MessageWith3Payloads;
+import frodo2.communication.MessageRegistry;
 import frodo2.solutionSpaces.Addable;
 
 /** VALUE message
@@ -39,6 +40,10 @@ extends MessageWith3Payloads<String, String[], Val[]> implements Externalizable
 	
 	/** Used for serialization */
 	private static final long serialVersionUID = 5782176612732670626L;
+
+	static {
+		MessageRegistry.register(VALUEmsg.class, VALUEmsg::new);
+	}
 	
 	/** Empty constructor */
 	public VALUEmsg () {
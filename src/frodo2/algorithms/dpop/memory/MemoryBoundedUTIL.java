@@ -333,7 +333,7 @@ public class MemoryBoundedUTIL < V extends Addable<V>, U extends Addable<U> > ex
 			
 			if (! varInfo.lastUTIL) { // blindly project out my variable
 				join = join.blindProject(self, super.maximize);
-				this.queue.sendMessage(this.problem.getOwner(info.parent), new UTILmsg<V, U> (self, super.myID, info.parent, join));
+				this.queue.sendMessage(this.problem.getOwner(info.parent), new UTILmsg<V, U> (self, super.myID, info.parent, join, super.virtualJoins));
 				
 			} else { // last UTIL; compute optimal conditional assignments
 				
@@ -361,7 +361,7 @@ public class MemoryBoundedUTIL < V extends Addable<V>, U extends Addable<U> > ex
 					String owner = this.problem.getOwner(info.parent);
 					if (this.reportStats && ! owner.equals(this.myID)) 
 						queue.sendMessage(AgentInterface.STATS_MONITOR, new StatsMessage (join.getNumberOfVariables()));
-					queue.sendMessage(owner, new UTILmsg<V, U> (self, this.myID, info.parent, join));
+					queue.sendMessage(owner, new UTILmsg<V, U> (self, this.myID, info.parent, join, super.virtualJoins));
 					
 					// Construct the optimal assignment space
 					if (join.getNumberOfVariables() == 0) 
@@ -407,6 +407,12 @@ extends UTILpropagation<Val, U> {
 		return solution;
 	}
 
+	/** @see UTILpropagation#joinAndProject(UtilitySolutionSpace, UtilitySolutionSpace[], java.lang.String[]) */
+	@Override 
+	protected ProjOutput<Val, U> joinAndProject (UtilitySolutionSpace<Val, U> space, UtilitySolutionSpace<Val, U>[] others, String[] vars) {
+		return this.project(space.join(others), vars);
+	}
+
 	/** @see UTILpropagation#project(UtilitySolutionSpace, java.lang.String[]) */
 	@Override 
 	protected ProjOutput<Val, U> project (UtilitySolutionSpace<Val, U> space, String[] vars) {
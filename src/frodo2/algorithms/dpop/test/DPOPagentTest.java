@@ -190,6 +190,9 @@ public class DPOPagentTest< V extends Addable<V>, U extends Addable<U> > extends
 
 	/** Whether we should swap */
 	private boolean swap;
+	
+	/** Whether UTIL messages should remain virtual until they are serialized */
+	private boolean virtualJoins;
 
 	/** Creates a JUnit test case corresponding to the input method
 	 * @param useXCSP 			whether to use XCSP
@@ -216,6 +219,19 @@ public class DPOPagentTest< V extends Addable<V>, U extends Addable<U> > extends
 		this(useXCSP, false, false, false, (Class<V>) AddableInteger.class, (Class<U>) AddableInteger.class, null, (Class<? extends XCSPparser<V, U>>) new XCSPparser<V, U>().getClass(), swap, minNCCCs, countNCCCs, false, ignoreHypercubeNCCCs);
 	}
 	
+	/** Constructor
+	 * @param useXCSP 				whether to use XCSP
+	 * @param swap 					whether we should swap
+	 * @param minNCCCs 				whether to optimize runtime or NCCC count
+	 * @param countNCCCs 			whether to count NCCCs
+	 * @param ignoreHypercubeNCCCs 	Whether to ignore Hypercube NCCCs or not
+	 * @param virtualJoins 			whether UTIL messages should remain virtual until they are serialized
+	 */
+	public DPOPagentTest(boolean useXCSP, boolean swap, boolean minNCCCs, boolean countNCCCs, boolean ignoreHypercubeNCCCs, boolean virtualJoins) {
+		this(useXCSP, swap, minNCCCs, countNCCCs, ignoreHypercubeNCCCs);
+		this.virtualJoins = virtualJoins;
+	}
+	
 	/** Constructor
 	 * @param useXCSP 				whether to use XCSP
 	 * @param swap 					whether we should swap
@@ -398,6 +414,14 @@ public class DPOPagentTest< V extends Addable<V>, U extends Addable<U> > extends
 		tmp.addTest(new RepeatedTest (new DPOPagentTest<AddableInteger, AddableInteger> (true, false, true, true, false), 25));
 		suite.addTest(tmp);
 		
+		tmp = new TestSuite ("Tests using QueueIOPipes with virtual joins");
+		tmp.addTest(new RepeatedTest (new DPOPagentTest<AddableInteger, AddableInteger> (true, false, false, false, false, true), 25));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests using QueueIOPipes with virtual joins and swapping");
+		tmp.addTest(new RepeatedTest (new DPOPagentTest<AddableInteger, AddableInteger> (true, true, false, false, false, true), 25));
+		suite.addTest(tmp);
+		
 		return suite;
 	}
 	
@@ -410,6 +434,7 @@ public class DPOPagentTest< V extends Addable<V>, U extends Addable<U> > extends
 		for (Element module : (List<Element>) agentConfig.getRootElement().getChild("modules").getChildren()) {
 			if (module.getAttributeValue("className").equals(UTILpropagation.class.getName())) {
 				module.setAttribute("minNCCCs", Boolean.toString(minNCCCs));
+				module.setAttribute("virtualJoins", Boolean.toString(virtualJoins));
 			}
 		}
 		
@@ -114,6 +114,9 @@ public class UTILpropagationTest < U extends Addable<U> > extends TestCase {
 	/** Whether to optimize runtime or constraint checks */
 	private boolean minNCCCs;
 	
+	/** Whether UTIL messages should remain virtual until they are serialized */
+	private boolean virtualJoins;
+	
 	/** Whether we should maximize or minimize */
 	protected boolean maximize;
 	
@@ -143,6 +146,18 @@ public class UTILpropagationTest < U extends Addable<U> > extends TestCase {
 		// Decide whether we should maximize or minimize
 		maximize = (Math.random() < 0.5);
 	}
+	
+	/** Constructor 
+	 * @param useTCP 				whether to use TCP pipes or shared memory pipes
+	 * @param useXML 				whether to use the XML-based constructor
+	 * @param utilClass 			the class to use for utility values
+	 * @param minNCCCs 				whether to optimize runtime or constraint checks
+	 * @param virtualJoins 			whether UTIL messages should remain virtual until they are serialized
+	 */
+	public UTILpropagationTest(boolean useTCP, boolean useXML, Class<U> utilClass, boolean minNCCCs, boolean virtualJoins) {
+		this (useTCP, useXML, utilClass, minNCCCs);
+		this.virtualJoins = virtualJoins;
+	}
 
 	/** @return the test suite for this test */
 	static public TestSuite suite () {
@@ -188,6 +203,10 @@ public class UTILpropagationTest < U extends Addable<U> > extends TestCase {
 		testTmp.addTest(new RepeatedTest (new UTILpropagationTest<AddableInteger> (false, true, AddableInteger.class, true), 200));
 		testSuite.addTest(testTmp);
 		
+		testTmp = new TestSuite ("Tests for the UTIL propagation protocol with XML support using shared memory pipes and integer utilities and the virtualJoins option");
+		testTmp.addTest(new RepeatedTest (new UTILpropagationTest<AddableInteger> (false, true, AddableInteger.class, false, true), 200));
+		testSuite.addTest(testTmp);
+		
 		return testSuite;
 	}
 
@@ -199,6 +218,7 @@ public class UTILpropagationTest < U extends Addable<U> > extends TestCase {
 		
 		assertTrue (useXML || !minNCCCs); // the alternative constructor currently does not support the minNCCCs feature
 		parameters.setAttribute("minNCCCs", Boolean.toString(minNCCCs));
+		parameters.setAttribute("virtualJoins", Boolean.toString(virtualJoins));
 		
 		graph = RandGraphFactory.getRandGraph(maxNbrVars, maxNbrEdges, maxNbrAgents);
 	}
@@ -274,6 +274,7 @@ implements StatsReporterWithConvergence<Val> {
 				}
 			}
 		}
+		queue.flush();
 
 		started = true;
 	}
@@ -395,6 +396,7 @@ implements StatsReporterWithConvergence<Val> {
 							varInfo.lastSentMsgs.put(neighbour, msg2);
 						}
 					}
+					queue.flush(); // end of the round
 					varInfo.processPendingMessages();
 				} else {
 					Val value = varInfo.currentValue;
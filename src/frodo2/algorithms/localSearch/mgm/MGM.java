@@ -258,6 +258,7 @@ public class MGM <V extends Addable<V>, U extends Addable<U>> implements StatsRe
 				}
 			}
 		}
+		queue.flush();
 	}
 
 	/** 
@@ -327,6 +328,7 @@ public class MGM <V extends Addable<V>, U extends Addable<U>> implements StatsRe
 			String neighbor = varInfo.neighbors[i];
 			queue.sendMessage(owners.get(neighbor), new OK<V>(varInfo.variableID, neighbor, varInfo.currentValue));
 		}
+		queue.flush(); // end of the round
 
 	}
 	
@@ -343,6 +345,7 @@ public class MGM <V extends Addable<V>, U extends Addable<U>> implements StatsRe
 			String neighbor = varInfo.neighbors[i];
 			queue.sendMessage(owners.get(neighbor), new IMPROVE<U>(varInfo.variableID, neighbor, varInfo.improve));
 		}
+		queue.flush(); // end of the round
 	}
 
 	
@@ -381,6 +381,7 @@ public class MaxSum < V extends Addable<V>, U extends Addable<U> > implements St
 				}
 			}
 		}
+		this.queue.flush();
 		
 		// Process pending messages
 		for (Message msg : this.pendingMsgs) 
@@ -553,9 +554,11 @@ public class MaxSum < V extends Addable<V>, U extends Addable<U> > implements St
 					this.queue.sendMessage(function.getAgent(), new VariableMsg<V, U> (function.getName(), marginalUtil));
 				}
 
-				// In synchronous mode, clear all the last messages received once I have responded to them
-				if (this.synchronous) 
+				// In synchronous mode, clear all the last messages received once I have responded to them, and end the round
+				if (this.synchronous) {
 					varInfo.lastMsgsIn.clear();
+					this.queue.flush();
+				}
 			}
 			
 			// Report the final solution if we have reached the last iteration
@@ -632,9 +635,11 @@ public class MaxSum < V extends Addable<V>, U extends Addable<U> > implements St
 				this.queue.sendMessage(destAgent, new FunctionMsg<V, U> (functionInfo.getName(), marginalUtil));
 			}
 			
-			// In synchronous mode, clear all the last messages received once I have responded to them
-			if (this.synchronous) 
+			// In synchronous mode, clear all the last messages received once I have responded to them, and end the round
+			if (this.synchronous) {
 				functionInfo.lastMsgsIn.clear();
+				this.queue.flush();
+			}
 			
 		} else if (msgType.equals(AgentInterface.ALL_AGENTS_IDLE)) {
 			
@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 
+import frodo2.communication.MessageRegistry;
 import frodo2.communication.MessageType;
 import frodo2.communication.MessageWith2Payloads;
 import frodo2.communication.MessageWithPayload;
@@ -41,6 +42,10 @@ import frodo2.solutionSpaces.UtilitySolutionSpace;
  */
 public class VariableMsg < V extends Addable<V>, U extends Addable<U> > extends MessageWith2Payloads< String, UtilitySolutionSpace<V, U> > {
 
+	static {
+		MessageRegistry.register(VariableMsg.class, VariableMsg::new);
+	}
+
 	/** The type of this message */
 	public static final MessageType VARIABLE_MSG_TYPE = new MessageType ("Max-Sum", "VarToFunction");
 
@@ -22,6 +22,11 @@ How to contact the authors:
 
 package frodo2.algorithms.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -37,14 +42,22 @@ import java.util.TreeSet;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.JDOMException;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.xml.sax.SAXException;
 
+import frodo2.algorithms.Problem;
+import frodo2.algorithms.ProblemSnapshot;
 import frodo2.algorithms.RandGraphFactory;
+import frodo2.algorithms.TupleTokenizer;
 import frodo2.algorithms.XCSPparser;
+import frodo2.algorithms.XCSPstreamParser;
 import frodo2.solutionSpaces.AddableInteger;
 import frodo2.solutionSpaces.AddableReal;
 import frodo2.solutionSpaces.DCOPProblemInterface;
 import frodo2.solutionSpaces.UtilitySolutionSpace;
 import frodo2.solutionSpaces.hypercube.Hypercube;
+import frodo2.solutionSpaces.hypercube.SparseHypercube;
 import junit.extensions.RepeatedTest;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -92,6 +105,9 @@ public class XCSPparserTest extends TestCase {
 
 	/** Whether each agent knows the identities of all agents */
 	private boolean publicAgents = false;
+	
+	/** Whether to behave in MPC mode */
+	private boolean mpc = false;
 
 	/** @return the test suite for this test */
 	public static TestSuite suite () {
@@ -196,6 +212,37 @@ public class XCSPparserTest extends TestCase {
 		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testGetSubProblem", false, true), 100));
 		suite.addTest(tmp);
 		
+		tmp = new TestSuite ("Tests for getSubProblems");
+		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testGetSubProblems", false, false), 100));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests for getSubProblems with extendedRandNeighborhoods");
+		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testGetSubProblems", true, false), 100));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests for getSubProblems with all agents knowing each other");
+		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testGetSubProblems", false, true), 100));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests for getSubProblems in MPC mode");
+		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testGetSubProblems", false, false, true), 100));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests for XCSPstreamParser");
+		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testStreamParser", false), 100));
+		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testStreamParser", true), 100));
+		tmp.addTest(new XCSPparserTest ("testStreamParserWithValidation"));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests for TupleTokenizer");
+		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testTupleTokenizer"), 100));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests for ProblemSnapshot");
+		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testSnapshot", false), 100));
+		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testSnapshot", true), 100));
+		suite.addTest(tmp);
+		
 		tmp = new TestSuite ("Tests for maximize");
 		tmp.addTest(new XCSPparserTest ("testMaximize", true));
 		tmp.addTest(new XCSPparserTest ("testMaximize", false));
@@ -230,9 +277,15 @@ public class XCSPparserTest extends TestCase {
 		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testGetProbabilitySpacesForVar"), 100));
 		suite.addTest(tmp);
 
+		suite.addTest(new XCSPparserTest ("testSparseThreshold"));
+		
 		tmp = new TestSuite ("Tests for getUtility on complete assignments");
 		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testGetUtility"), 500));
 		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests for the compiled model of the problem");
+		tmp.addTest(new RepeatedTest (new XCSPparserTest ("testCompiledModel"), 100));
+		suite.addTest(tmp);
 
 		return suite;
 	}
@@ -264,6 +317,17 @@ public class XCSPparserTest extends TestCase {
 		this.publicAgents = publicAgents;
 	}
 
+	/** Generates a test using the specified method
+	 * @param name 							name of the method
+	 * @param extendedRandNeighborhoods 	whether we want extended random neighborhoods
+	 * @param publicAgents 					Whether each agent knows the identities of all agents
+	 * @param mpc 							Whether to behave in MPC mode
+	 */
+	public XCSPparserTest(String name, boolean extendedRandNeighborhoods, boolean publicAgents, boolean mpc) {
+		this(name, extendedRandNeighborhoods, publicAgents);
+		this.mpc = mpc;
+	}
+
 	/** @see junit.framework.TestCase#setUp() */
 	protected void setUp() {
 		graph = RandGraphFactory.getRandGraph(maxNbrVars, maxNbrEdges, maxNbrAgents);
@@ -934,6 +998,214 @@ public class XCSPparserTest extends TestCase {
 		}
 	}
 
+	/** Test method for XCSPparser#getSubProblems() and Problem#getSubProblems() */
+	public void testGetSubProblems() {
+		
+		// Make some decision variables shared, and give owners to some constraints, some of them public
+		Element root = probDoc.getRootElement();
+		ArrayList<String> agents = new ArrayList<String> (parser.getAgents());
+		for (Element varElmt : (List<Element>) root.getChild("variables").getChildren()) 
+			if (! "random".equals(varElmt.getAttributeValue("type")) && Math.random() < 0.2) 
+				varElmt.removeAttribute("agent");
+		for (Element constraint : (List<Element>) root.getChild("constraints").getChildren()) {
+			double rand = Math.random();
+			if (rand < 0.1) 
+				constraint.setAttribute("agent", "PUBLIC");
+			else if (rand < 0.5) 
+				constraint.setAttribute("agent", agents.get((int) (Math.random() * agents.size())));
+		}
+		Element params = new Element ("parser");
+		params.setAttribute("extendedRandNeighborhoods", Boolean.toString(this.extendedRandNeighborhoods));
+		params.setAttribute("publicAgents", Boolean.toString(this.publicAgents));
+		params.setAttribute("mpc", Boolean.toString(this.mpc));
+		params.setAttribute("utilClass", AddableReal.class.getName());
+		parser = new XCSPparser<AddableInteger, AddableReal> (probDoc, params);
+		this.prob = this.parser.parse();
+		
+		// Check the subproblems of the parsed problem
+		Map< String, ? extends DCOPProblemInterface<AddableInteger, AddableReal> > subProbs = prob.getSubProblems();
+		assertEquals (prob.getAgents(), subProbs.keySet());
+		for (String agent : prob.getAgents()) 
+			this.checkSameSubProblem(prob.getSubProblem(agent), subProbs.get(agent));
+		
+		// Check the subproblems of the XCSP description, which share the relations parsed by any of them
+		Map< String, ? extends XCSPparser<AddableInteger, AddableReal> > subParsers = parser.getSubProblems();
+		assertEquals (parser.getAgents(), subParsers.keySet());
+		for (String agent : parser.getAgents()) {
+			XCSPparser<AddableInteger, AddableReal> subParser = subParsers.get(agent);
+			assertEquals (agent, subParser.getAgent());
+			this.checkSameSubProblem(parser.getSubProblem(agent).parse(), subParser.parse());
+		}
+	}
+	
+	/** Test method for XCSPstreamParser#parse(java.io.InputStream, boolean)
+	 * @throws Exception 	if an error occurs
+	 */
+	public void testStreamParser() throws Exception {
+		
+		// Write out the problem on a single line or pretty-printed
+		byte[] bytes = new XMLOutputter(Math.random() < 0.5 ? Format.getRawFormat() : Format.getPrettyFormat()).outputString(probDoc).getBytes("UTF-8");
+		
+		XCSPstreamParser<AddableInteger, AddableReal> streamParser = new XCSPstreamParser<AddableInteger, AddableReal> ();
+		streamParser.setUtilClass(AddableReal.class);
+		DCOPProblemInterface<AddableInteger, AddableReal> streamed = streamParser.parse(new ByteArrayInputStream (bytes), false);
+		
+		assertEquals (prob.maximize(), streamed.maximize());
+		this.checkSameSubProblem(prob, streamed);
+		for (String var : prob.getAllVars()) 
+			if (prob.isRandom(var)) 
+				assertEquals (prob.getProbabilitySpaces(var), streamed.getProbabilitySpaces(var));
+		
+		// A constraint that refers to an undefined relation must be rejected
+		Element relsElmt = probDoc.getRootElement().getChild("relations");
+		if (relsElmt.getContentSize() > 0) {
+			relsElmt.removeContent(relsElmt.getChildren().get(0));
+			bytes = new XMLOutputter(Format.getRawFormat()).outputString(probDoc).getBytes("UTF-8");
+			try {
+				streamParser.parse(new ByteArrayInputStream (bytes), false);
+				fail("A constraint that refers to an undefined relation was not rejected");
+			} catch (SAXException e) { }
+		}
+	}
+	
+	/** Test method for XCSPstreamParser#parse(java.io.File, boolean) on XCSP files that refer to the XCSP schema
+	 * @throws Exception 	if an error occurs
+	 */
+	public void testStreamParserWithValidation() throws Exception {
+		
+		for (File file : new File ("src/frodo2/solutionSpaces/JaCoP/tests/Instances/Ext").listFiles()) {
+			
+			XCSPparser<AddableInteger, AddableReal> domParser = new XCSPparser<AddableInteger, AddableReal> (XCSPparser.parse(file, true));
+			domParser.setUtilClass(AddableReal.class);
+			
+			XCSPstreamParser<AddableInteger, AddableReal> streamParser = new XCSPstreamParser<AddableInteger, AddableReal> ();
+			streamParser.setUtilClass(AddableReal.class);
+			
+			this.checkSameSubProblem(domParser.parse(), streamParser.parse(file, true));
+		}
+	}
+	
+	/** Test method for TupleTokenizer, feeding it with the relations in random chunks */
+	public void testTupleTokenizer() {
+		
+		for (Element relElmt : (List<Element>) probDoc.getRootElement().getChild("relations").getChildren()) {
+			
+			final int arity = Integer.parseInt(relElmt.getAttributeValue("arity"));
+			final int nbTuples = Integer.parseInt(relElmt.getAttributeValue("nbTuples"));
+			char[] text = relElmt.getText().toCharArray();
+			
+			// Tokenize the relation, in random chunks and with or without parsing the values as integers
+			final boolean intValues = Math.random() < 0.5;
+			TupleTokenizer tokenizer = new TupleTokenizer (arity, (int) (Math.random() * nbTuples), intValues);
+			for (int start = 0; start < text.length; ) {
+				int length = Math.min(text.length - start, (int) (Math.random() * 10));
+				tokenizer.parse(text, start, length);
+				start += length;
+			}
+			tokenizer.end();
+			
+			// Compare with the tuples obtained by splitting the text
+			String[] tuples = (text.length == 0 ? new String [0] : new String (text).split("\\|"));
+			assertEquals (tuples.length, tokenizer.getNbrTuples());
+			String[] valueTokens = tokenizer.getValueTokens();
+			String[] utilTokens = tokenizer.getUtilTokens();
+			String util = null;
+			for (int i = 0; i < tuples.length; i++) {
+				
+				String tuple = tuples[i];
+				if (tuple.contains(":")) {
+					util = tuple.split(":")[0].trim();
+					tuple = tuple.split(":")[1];
+				}
+				int utilIndex = tokenizer.getUtilIndexes()[i];
+				assertEquals (util, utilIndex < 0 ? null : utilTokens[utilIndex]);
+				
+				String[] vals = tuple.trim().split("\\s+");
+				assertEquals (arity, vals.length);
+				for (int j = 0; j < arity; j++) {
+					int val = tokenizer.getValues()[i * arity + j];
+					assertEquals (vals[j], intValues ? Integer.toString(val) : valueTokens[val]);
+				}
+			}
+		}
+	}
+	
+	/** Test method for ProblemSnapshot, both as a file format and as the serialized form of a Problem
+	 * @throws Exception 	if an error occurs
+	 */
+	@SuppressWarnings("unchecked")
+	public void testSnapshot() throws Exception {
+		
+		// Save the problem to a snapshot file and load it back
+		File file = File.createTempFile("frodo", ".snapshot");
+		file.deleteOnExit();
+		HashMap<String, String> stats = new HashMap<String, String> ();
+		stats.put("number of variables", Integer.toString(prob.getNbrVars()));
+		ProblemSnapshot.save((Problem<AddableInteger, AddableReal>) prob, "test", stats, file);
+		assertTrue (ProblemSnapshot.isSnapshot(file));
+		ProblemSnapshot<AddableInteger, AddableReal> snapshot = ProblemSnapshot.load(file);
+		file.delete();
+		
+		assertEquals ("test", snapshot.getName());
+		assertEquals (stats, snapshot.getStats());
+		Problem<AddableInteger, AddableReal> loaded = snapshot.getProblem();
+		assertEquals (prob.maximize(), loaded.maximize());
+		assertEquals (prob.getUtilClass(), loaded.getUtilClass());
+		this.checkSameSubProblem(prob, loaded);
+		for (String var : prob.getAllVars()) 
+			if (prob.isRandom(var)) 
+				assertEquals (prob.getProbabilitySpaces(var), loaded.getProbabilitySpaces(var));
+		
+		// Check that the loaded spaces still count constraint checks, and have kept their owners
+		List< ? extends UtilitySolutionSpace<AddableInteger, AddableReal> > spaces = prob.getSolutionSpaces(true);
+		List< ? extends UtilitySolutionSpace<AddableInteger, AddableReal> > loadedSpaces = loaded.getSolutionSpaces(true);
+		for (int i = 0; i < spaces.size(); i++) {
+			assertEquals (spaces.get(i).countsCCs(), loadedSpaces.get(i).countsCCs());
+			assertEquals (spaces.get(i).getOwner(), loadedSpaces.get(i).getOwner());
+		}
+		
+		// Check that the subproblems survive Java serialization, whose serialized form is a ProblemSnapshot
+		for (Map.Entry< String, ? extends DCOPProblemInterface<AddableInteger, AddableReal> > entry : prob.getSubProblems().entrySet()) {
+			
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+			ObjectOutputStream out = new ObjectOutputStream (bytes);
+			out.writeObject(entry.getValue());
+			out.close();
+			
+			ObjectInputStream in = new ObjectInputStream (new ByteArrayInputStream (bytes.toByteArray()));
+			Object subProb = in.readObject();
+			in.close();
+			
+			assertTrue (subProb instanceof Problem);
+			this.checkSameSubProblem(entry.getValue(), (Problem<AddableInteger, AddableReal>) subProb);
+		}
+	}
+	
+	/** Checks that two subproblems are the same
+	 * @param expected 	the expected subproblem
+	 * @param actual 	the actual subproblem
+	 */
+	private void checkSameSubProblem (DCOPProblemInterface<AddableInteger, AddableReal> expected, DCOPProblemInterface<AddableInteger, AddableReal> actual) {
+		
+		assertEquals (expected.getAgent(), actual.getAgent());
+		assertEquals (expected.getAgents(), actual.getAgents());
+		assertEquals (expected.getAllVars(), actual.getAllVars());
+		assertEquals (expected.getVarScopes(), actual.getVarScopes());
+		
+		for (String var : expected.getAllVars()) {
+			assertEquals (expected.getOwner(var), actual.getOwner(var));
+			assertEquals (expected.isRandom(var), actual.isRandom(var));
+			assertEquals (Arrays.asList(expected.getDomain(var)), Arrays.asList(actual.getDomain(var)));
+		}
+		
+		assertEquals (new HashSet< UtilitySolutionSpace<AddableInteger, AddableReal> > (expected.getSolutionSpaces(true)), 
+				new HashSet< UtilitySolutionSpace<AddableInteger, AddableReal> > (actual.getSolutionSpaces(true)));
+		assertEquals (expected.getSolutionSpaces(true).size(), actual.getSolutionSpaces(true).size());
+		assertEquals (new HashSet< UtilitySolutionSpace<AddableInteger, AddableReal> > (expected.getProbabilitySpaces()), 
+				new HashSet< UtilitySolutionSpace<AddableInteger, AddableReal> > (actual.getProbabilitySpaces()));
+		assertEquals (expected.getProbabilitySpaces().size(), actual.getProbabilitySpaces().size());
+	}
+
 	/** Test method for frodo2.algorithms.XCSPparser#isRandom(java.lang.String).
 	 * @throws JDOMException 	if an error occurred when reading the problem description
 	 */
@@ -1132,6 +1404,121 @@ public class XCSPparserTest extends TestCase {
 		assertEquals (trueUtil, util);
 	}
 	
+	/** Tests that constraints with few tuples and a default cost are parsed into SparseHypercubes when requested
+	 * @throws Exception 	if an error occurs while reading the problem file
+	 */
+	public void testSparseThreshold () throws Exception {
+		
+		Document doc = XCSPparser.parse("src/frodo2/controller/testFiles/3colors.xml", false);
+		
+		XCSPparser<AddableInteger, AddableInteger> denseParser = new XCSPparser<AddableInteger, AddableInteger> (doc);
+		List< ? extends UtilitySolutionSpace<AddableInteger, AddableInteger> > denseSpaces = denseParser.parse().getSolutionSpaces();
+		
+		XCSPparser<AddableInteger, AddableInteger> sparseParser = new XCSPparser<AddableInteger, AddableInteger> (doc);
+		sparseParser.setSparseThreshold(0.5); // each constraint has 3 tuples out of 9
+		List< ? extends UtilitySolutionSpace<AddableInteger, AddableInteger> > sparseSpaces = sparseParser.parse().getSolutionSpaces();
+		
+		assertEquals (denseSpaces.size(), sparseSpaces.size());
+		for (int i = denseSpaces.size() - 1; i >= 0; i--) {
+			assertFalse (denseSpaces.get(i) instanceof SparseHypercube);
+			assertTrue (sparseSpaces.get(i) instanceof SparseHypercube);
+			assertEquals (3, ((SparseHypercube<AddableInteger, AddableInteger>) sparseSpaces.get(i)).getNbrStoredUtils());
+			assertEquals (denseSpaces.get(i), sparseSpaces.get(i));
+		}
+		
+		// The threshold is passed on to subproblems
+		String var = sparseParser.getVariables().iterator().next();
+		for (UtilitySolutionSpace<AddableInteger, AddableInteger> space : sparseParser.getSubProblem(sparseParser.getOwner(var)).getSolutionSpaces()) 
+			assertTrue (space instanceof SparseHypercube);
+		
+		// Constraints that are not sparse enough remain dense
+		sparseParser.setSparseThreshold(1.0 / 3);
+		for (UtilitySolutionSpace<AddableInteger, AddableInteger> space : sparseParser.parse().getSolutionSpaces()) 
+			assertFalse (space instanceof SparseHypercube);
+	}
+	
+	/** Tests that the compiled model of the problem is consistent with the problem, and follows its modifications */
+	public void testCompiledModel () {
+		
+		// The parser must agree with the parsed problem, also when queried again
+		for (int i = 0; i < 2; i++) {
+			assertEquals (prob.getOwners(), parser.getOwners());
+			assertEquals (prob.getVariables(), parser.getVariables());
+			assertEquals (prob.getAnonymVars(), parser.getAnonymVars());
+			
+			for (String var : parser.getAllVars()) {
+				assertEquals (prob.isRandom(var), parser.isRandom(var));
+				assertEquals (prob.getDomainSize(var), parser.getDomainSize(var));
+				assertTrue (Arrays.equals(prob.getDomain(var), parser.getDomain(var)));
+				assertEquals (prob.getNeighborVars(var, true), parser.getNeighborVars(var, true));
+				
+				List< ? extends UtilitySolutionSpace<AddableInteger, AddableReal> > spaces = parser.getSolutionSpaces(var, true, null);
+				List< ? extends UtilitySolutionSpace<AddableInteger, AddableReal> > refSpaces = prob.getSolutionSpaces(var, true, null);
+				assertEquals (refSpaces.size(), spaces.size());
+				for (UtilitySolutionSpace<AddableInteger, AddableReal> space : spaces) 
+					assertTrue (refSpaces.contains(space));
+			}
+		}
+		
+		// Modifying a returned domain must not modify the problem
+		String var = parser.getVariables().iterator().next();
+		AddableInteger[] dom = parser.getDomain(var);
+		dom[0] = new AddableInteger (Integer.MIN_VALUE);
+		assertTrue (Arrays.equals(prob.getDomain(var), parser.getDomain(var)));
+		
+		// Change the owner of the variable
+		String agent = "newAgent";
+		Element agentElmt = new Element ("agent");
+		agentElmt.setAttribute("name", agent);
+		probDoc.getRootElement().getChild("agents").addContent(agentElmt);
+		assertTrue (parser.setOwner(var, agent));
+		assertEquals (agent, parser.getOwner(var));
+		assertEquals (Collections.singleton(var), parser.getVariables(agent));
+		
+		// Add a variable and a constraint
+		AddableInteger[] newDom = new AddableInteger[] { new AddableInteger (0), new AddableInteger (1) };
+		assertTrue (parser.addVariable("newVar", agent, newDom));
+		assertEquals (agent, parser.getOwner("newVar"));
+		assertTrue (Arrays.equals(newDom, parser.getDomain("newVar")));
+		assertTrue (parser.getNeighborVars("newVar").isEmpty());
+		
+		AddableInteger[][] doms = new AddableInteger[][] { parser.getDomain(var), newDom };
+		AddableReal[] utils = new AddableReal [doms[0].length * doms[1].length];
+		Arrays.fill(utils, new AddableReal (1.0));
+		Hypercube<AddableInteger, AddableReal> newSpace = new Hypercube<AddableInteger, AddableReal> (new String[] { var, "newVar" }, doms, utils, null);
+		newSpace.setName("newSpace");
+		assertTrue (parser.addSolutionSpace(newSpace));
+		assertEquals (Collections.singleton(var), parser.getNeighborVars("newVar"));
+		assertEquals (1, parser.getSolutionSpaces("newVar").size());
+		assertEquals (newSpace, parser.getSolutionSpaces("newVar").get(0));
+		
+		// Remove the constraint
+		assertTrue (parser.removeSpace("newSpace"));
+		assertTrue (parser.getNeighborVars("newVar").isEmpty());
+		assertTrue (parser.getSolutionSpaces("newVar").isEmpty());
+		
+		// Modify the JDOM tree directly, by duplicating a constraint
+		Element consElmt = probDoc.getRootElement().getChild("constraints");
+		if (consElmt.getContentSize() > 0) {
+			Element copy = consElmt.getChildren().get(0).clone();
+			copy.setAttribute("name", "copy");
+			consElmt.addContent(copy);
+			String var2 = copy.getAttributeValue("scope").trim().split("\\s+")[0];
+			assertEquals (prob.getSolutionSpaces(var2, true, null).size() + prob.getProbabilitySpaces(var2).size() + 1, 
+					parser.getSolutionSpaces(var2, true, null).size() + parser.getProbabilitySpaces(var2).size());
+		}
+		
+		// Modify the JDOM tree directly, by changing the owner of a variable, which requires discarding the compiled model
+		for (Element varElmt : probDoc.getRootElement().getChild("variables").getChildren()) {
+			if (var.equals(varElmt.getAttributeValue("name"))) {
+				varElmt.setAttribute("agent", "otherAgent");
+				parser.invalidateModel();
+				assertEquals ("otherAgent", parser.getOwner(var));
+				assertFalse (parser.getVariables(agent).contains(var));
+			}
+		}
+	}
+	
 	/** Test for the method maximize() */
 	public void testMaximize () {
 		
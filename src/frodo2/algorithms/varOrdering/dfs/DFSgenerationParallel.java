@@ -200,14 +200,8 @@ public class DFSgenerationParallel < S extends Comparable <S> & Serializable > i
 			}
 			
 			// Notify the listeners for this message type and its ancestors
-			for (MessageType type = msg.getType(); type != null; type = type.getParent()) {
-				ArrayList< IncomingMsgPolicyInterface<MessageType> > modules = inPolicies.get(type);
-				if (modules != null) {
-					ArrayList< IncomingMsgPolicyInterface<MessageType> > policies = new ArrayList< IncomingMsgPolicyInterface<MessageType> > (modules);
-					for (IncomingMsgPolicyInterface<MessageType> module : policies) // iterate over a copy in case a listener wants to add more listeners
-						module.notifyIn(msg);
-				}
-			}
+			for (IncomingMsgPolicyInterface<MessageType> module : this.getInListeners(msg.getType())) 
+				module.notifyIn(msg);
 		}
 		
 		/** Releases the DFSoutput message for the input variable, and tell its children to do the same
@@ -23,8 +23,10 @@ How to contact the authors:
 package frodo2.communication;
 
 import frodo2.communication.mailer.tests.testCentralMailer;
+import frodo2.communication.mmap.QueueOutputPipeMMapTest;
 import frodo2.communication.sharedMemory.QueueIOPipeTest;
 import frodo2.communication.tcp.QueueInputPipeTCPTest;
+import frodo2.communication.tcp.QueueOutputPipeNIOTest;
 import frodo2.communication.tcp.QueueOutputPipeTCPTest;
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -43,11 +45,15 @@ public class AllTests {
 				"Test for frodo2.communication");
 		//$JUnit-BEGIN$
 		suite.addTest(QueueTest.suite());
+		suite.addTest(InboxTest.suite());
 		suite.addTest(QueueIOPipeTest.suite());
 		suite.addTest(QueueInputPipeTCPTest.suite());
 		suite.addTest(QueueOutputPipeTCPTest.suite());
+		suite.addTest(QueueOutputPipeNIOTest.suite());
+		suite.addTest(QueueOutputPipeMMapTest.suite());
 		suite.addTest(testCentralMailer.suite());
 		suite.addTest(MsgSizeMonitorTest.suite());
+		suite.addTest(MessageRegistryTest.suite());
 		//$JUnit-END$
 		return suite;
 	}
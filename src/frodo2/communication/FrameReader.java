@@ -0,0 +1,226 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** Reassembles the length-prefixed frames of messages sent through a connection, and deserializes them off the I/O thread
+ * 
+ * Each frame starts with its length (excluding these first 4 bytes), followed by the number of messages it contains, 
+ * and by the messages, serialized one after the other into a single ObjectOutputStream for the whole connection. 
+ * The I/O thread only copies the bytes of each frame; once a frame has been fully received, it is passed to an executor, 
+ * which deserializes the frames of the connection one at a time, in order, and passes the messages to the queue. 
+ * @author Thomas Leaute
+ */
+public class FrameReader {
+	
+	/** The maximum length of a frame, in bytes */
+	public static final int MAX_FRAME_LENGTH = 1 << 30;
+	
+	/** A non-blocking source of bytes */
+	public interface Source {
+		
+		/** Reads as many bytes as available, without blocking
+		 * @param dst 			the buffer into which the bytes are read
+		 * @return the number of bytes read, possibly 0, or -1 if the end of the stream has been reached
+		 * @throws IOException 	if an I/O error occurs
+		 */
+		int read (ByteBuffer dst) throws IOException;
+	}
+	
+	/** An InputStream that reads from the frame currently being deserialized */
+	private static class FrameInputStream extends InputStream {
+
+		/** The current frame */
+		private ByteBuffer frame;
+
+		/** @see java.io.InputStream#read() */
+		@Override
+		public int read() {
+			return (this.frame.hasRemaining() ? this.frame.get() & 0xFF : -1);
+		}
+
+		/** @see java.io.InputStream#read(byte[], int, int) */
+		@Override
+		public int read(byte[] b, int off, int len) {
+
+			if (len == 0)
+				return 0;
+
+			final int remaining = this.frame.remaining();
+			if (remaining == 0)
+				return -1;
+
+			len = Math.min(len, remaining);
+			this.frame.get(b, off, len);
+			return len;
+		}
+
+		/** @see java.io.InputStream#available() */
+		@Override
+		public int available() {
+			return this.frame.remaining();
+		}
+	}
+	
+	/** The queue the messages are passed to */
+	private final Queue queue;
+	
+	/** The executor that deserializes the frames */
+	private final Executor executor;
+	
+	/** The buffer into which the length of the next frame is read; only accessed by the I/O thread */
+	private final ByteBuffer header = ByteBuffer.allocate(4);
+
+	/** The buffer into which the current frame is read, or \c null if its length has not been read yet; only accessed by the I/O thread */
+	private ByteBuffer body;
+	
+	/** The frames that have been fully received, and remain to be deserialized */
+	private final ConcurrentLinkedQueue<ByteBuffer> frames = new ConcurrentLinkedQueue<ByteBuffer> ();
+	
+	/** Whether a task has been passed to the executor to deserialize the pending frames */
+	private final AtomicBoolean decoding = new AtomicBoolean (false);
+
+	/** The stream from which the ObjectInputStream reads; only accessed by the decoding task */
+	private final FrameInputStream stream = new FrameInputStream ();
+
+	/** The stream from which messages are deserialized, created when the first frame is deserialized */
+	private ObjectInputStream input;
+
+	/** Used to deserialize the messages from \a input */
+	private final MessageRegistry.Decoder decoder = new MessageRegistry.Decoder ();
+	
+	/** The error that prevented a previous frame from being deserialized, if any */
+	private volatile IOException error;
+	
+	/** Constructor
+	 * @param queue 	the queue the messages should be passed to
+	 * @param executor 	the executor that should deserialize the frames
+	 */
+	public FrameReader (Queue queue, Executor executor) {
+		this.queue = queue;
+		this.executor = executor;
+	}
+	
+	/** Reads as many bytes as available from the source, and passes each fully received frame to the executor
+	 * @param source 		the source
+	 * @return whether any bytes were read
+	 * @throws EOFException if the end of the stream has been reached
+	 * @throws IOException 	if an I/O error occurs, if the length of a frame is invalid, 
+	 * 						or if a previous frame could not be deserialized, in which case the connection should be closed
+	 */
+	public boolean read (Source source) throws IOException {
+		
+		boolean read = false;
+		while (true) {
+			
+			if (this.error != null) 
+				throw new IOException ("Unable to deserialize a previous frame", this.error);
+
+			// Read the length of the next frame if we don't know it yet
+			if (this.body == null) {
+				final int nbrBytes = source.read(this.header);
+				if (nbrBytes < 0)
+					throw new EOFException ();
+				read |= nbrBytes > 0;
+				if (this.header.hasRemaining()) // wait for more bytes
+					return read;
+
+				this.header.flip();
+				final int length = this.header.getInt();
+				this.header.clear();
+				if (length < 4 || length > MAX_FRAME_LENGTH) 
+					throw new IOException ("Invalid frame length: " + length);
+				this.body = ByteBuffer.allocate(length);
+			}
+
+			// Read the frame
+			final int nbrBytes = source.read(this.body);
+			if (nbrBytes < 0)
+				throw new EOFException ();
+			read |= nbrBytes > 0;
+			if (this.body.hasRemaining()) // wait for more bytes
+				return read;
+
+			// Pass the frame to the executor, unless it is already deserializing previous frames
+			this.body.flip();
+			this.frames.add(this.body);
+			this.body = null;
+			if (this.decoding.compareAndSet(false, true)) 
+				this.executor.execute(this::decode);
+		}
+	}
+	
+	/** Deserializes the pending frames, in order; only called by one task at a time */
+	private void decode () {
+		
+		while (true) {
+			
+			for (ByteBuffer frame = this.frames.poll(); frame != null; frame = this.frames.poll()) {
+				if (this.error != null) // the stream is corrupted; discard the frame
+					continue;
+				
+				try {
+					this.decode(frame);
+				} catch (IOException e) {
+					System.err.println("Unable to deserialize a frame of messages; the connection will be closed");
+					e.printStackTrace();
+					this.error = e;
+				}
+			}
+			
+			// Check whether a frame has been added in the meantime, and we are responsible for deserializing it
+			this.decoding.set(false);
+			if (this.frames.isEmpty() || ! this.decoding.compareAndSet(false, true))
+				return;
+		}
+	}
+	
+	/** Deserializes the messages in a frame and passes them to the queue
+	 * @param frame 		the frame
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	private void decode (ByteBuffer frame) throws IOException {
+		
+		final int nbrMsgs = frame.getInt();
+		this.stream.frame = frame;
+		if (this.input == null) // the first frame starts with the stream header
+			this.input = new ObjectInputStream (this.stream);
+		
+		for (int i = 0; i < nbrMsgs; i++) {
+			try {
+				this.queue.addToInbox(new MessageWrapper(this.decoder.read(this.input)));
+			} catch (ClassNotFoundException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,282 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** The inbox of a Queue, in which messages wait to be processed
+ * 
+ * Without an InboxScheduler, the inbox is a plain FIFO queue. Otherwise, messages are stored in one FIFO queue per priority, 
+ * and collapsible messages are recorded by key, so that they can be discarded when superseded by newer messages. 
+ * @author Thomas Leaute
+ */
+final class Inbox {
+	
+	/** A collapsible message waiting in the inbox */
+	private static class Entry {
+		
+		/** The message, or \c null if it has been superseded by a newer message */
+		MessageWrapper msg;
+		
+		/** The key of the message */
+		final Object key;
+
+		/** Constructor
+		 * @param msg 	the message
+		 * @param key 	the key of the message
+		 */
+		Entry (MessageWrapper msg, Object key) {
+			this.msg = msg;
+			this.key = key;
+		}
+	}
+	
+	/** The messages of a given priority */
+	private static class Level {
+		
+		/** The priority */
+		final int priority;
+		
+		/** The messages, either as MessageWrappers or, for collapsible messages, as Entries */
+		final ArrayDeque<Object> items = new ArrayDeque<Object> ();
+
+		/** Constructor
+		 * @param priority 	the priority
+		 */
+		Level (int priority) {
+			this.priority = priority;
+		}
+	}
+	
+	/** Lock protecting all fields but \a scheduler */
+	private final ReentrantLock lock = new ReentrantLock ();
+	
+	/** Condition used to signal that the inbox is not empty */
+	private final Condition notEmpty = lock.newCondition();
+	
+	/** The scheduler, or \c null if messages are processed in FIFO order */
+	private volatile InboxScheduler scheduler;
+	
+	/** The levels of priority encountered so far, in decreasing order of priority */
+	private final ArrayList<Level> levels = new ArrayList<Level> ();
+	
+	/** The level of priority 0 */
+	private final Level defaultLevel = new Level (0);
+	
+	/** For each key, the collapsible message with that key currently waiting in the inbox */
+	private final HashMap<Object, Entry> collapsible = new HashMap<Object, Entry> ();
+	
+	/** The number of messages waiting in the inbox, not counting superseded messages */
+	private int count = 0;
+	
+	/** The number of messages discarded because they were superseded by newer messages */
+	private long nbrCollapsed = 0;
+	
+	/** Constructor */
+	Inbox () {
+		this.levels.add(this.defaultLevel);
+	}
+	
+	/** Sets the scheduler
+	 * 
+	 * The messages already in the inbox remain in the order in which they are, and are not collapsed with new messages. 
+	 * @param scheduler 	the scheduler, or \c null to process messages in FIFO order
+	 */
+	void setScheduler (InboxScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+	
+	/** @return the scheduler, or \c null if messages are processed in FIFO order */
+	InboxScheduler getScheduler () {
+		return this.scheduler;
+	}
+	
+	/** Adds a message to the inbox
+	 * @param msgWrap 	the message
+	 */
+	void put (MessageWrapper msgWrap) {
+		
+		// Compute the priority and the key of the message before taking the lock
+		InboxScheduler scheduler = this.scheduler;
+		int priority = 0;
+		Object key = null;
+		if (scheduler != null) {
+			Message msg = msgWrap.getMessage();
+			priority = scheduler.getPriority(msg);
+			key = scheduler.getCollapsingKey(msg);
+		}
+		
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			Object item = msgWrap;
+			if (key != null) {
+				Entry entry = new Entry (msgWrap, key);
+				Entry old = this.collapsible.put(key, entry);
+				if (old != null) { // discard the superseded message
+					old.msg = null;
+					this.count--;
+					this.nbrCollapsed++;
+				}
+				item = entry;
+			}
+			
+			this.getLevel(priority).items.add(item);
+			this.count++;
+			this.notEmpty.signal();
+			
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/** Returns the level of a given priority, creating it if necessary
+	 * @param priority 	the priority
+	 * @return the level
+	 */
+	private Level getLevel (int priority) {
+		
+		if (priority == 0) 
+			return this.defaultLevel;
+		
+		final int nbrLevels = this.levels.size();
+		int i = 0;
+		for ( ; i < nbrLevels; i++) {
+			Level level = this.levels.get(i);
+			if (level.priority == priority) 
+				return level;
+			else if (level.priority < priority) 
+				break;
+		}
+		
+		Level level = new Level (priority);
+		this.levels.add(i, level);
+		return level;
+	}
+	
+	/** Removes the next message to be processed
+	 * @return the message, or \c null if the inbox is empty
+	 * @note The lock must be held by the caller. 
+	 */
+	private MessageWrapper dequeue () {
+		
+		if (this.count == 0) 
+			return null;
+		
+		for (int i = 0; ; i++) {
+			Level level = this.levels.get(i);
+			
+			for (Object item; (item = level.items.poll()) != null; ) {
+				
+				if (item instanceof Entry) {
+					Entry entry = (Entry) item;
+					if (entry.msg == null) // superseded
+						continue;
+					this.collapsible.remove(entry.key);
+					item = entry.msg;
+				}
+				
+				this.count--;
+				return (MessageWrapper) item;
+			}
+		}
+	}
+	
+	/** @return the next message to be processed, or \c null if the inbox is empty */
+	MessageWrapper poll () {
+		
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return this.dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/** Waits until the inbox is not empty, and removes the next message to be processed
+	 * @return the message
+	 * @throws InterruptedException 	if the thread is interrupted while waiting
+	 */
+	MessageWrapper take () throws InterruptedException {
+		
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		try {
+			while (this.count == 0) 
+				this.notEmpty.await();
+			return this.dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/** @return the number of messages waiting to be processed */
+	int size () {
+		
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return this.count;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/** @return whether there are no messages waiting to be processed */
+	boolean isEmpty () {
+		return this.size() == 0;
+	}
+	
+	/** @return the number of messages discarded because they were superseded by newer messages */
+	long getNbrCollapsed () {
+		
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			return this.nbrCollapsed;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/** Removes all messages */
+	void clear () {
+		
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			for (Level level : this.levels) 
+				level.items.clear();
+			this.collapsible.clear();
+			this.count = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+}
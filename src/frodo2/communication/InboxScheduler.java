@@ -0,0 +1,152 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication;
+
+import java.util.HashMap;
+import java.util.function.Function;
+
+import org.jdom2.Element;
+
+/** Decides in which order a Queue processes the messages in its inbox
+ * 
+ * Each message type can be given a priority; messages of higher priority are processed before messages of lower priority, 
+ * and messages of equal priority are processed in the order in which they were received. A message type inherits 
+ * the priority of its closest ancestor that has been given one, and the default priority is 0. 
+ * 
+ * A message type can also be declared collapsible, by providing a function that maps each message of that type to a key: 
+ * when a message is added to the inbox while a message of the same type with an equal key is still waiting to be processed, 
+ * the older message is discarded, and the newer one is added at the end of the inbox. This is typically used to only 
+ * process the latest message from each sender, in algorithms in which newer messages supersede older ones. 
+ * @warning Only make message types collapsible if the listeners do not rely on receiving every message, for instance 
+ * to count messages in synchronous rounds. 
+ * @author Thomas Leaute
+ * @see Queue#setInboxScheduler(InboxScheduler)
+ */
+public class InboxScheduler {
+	
+	/** The priority of each message type for which one has been set */
+	private final HashMap<MessageType, Integer> priorities = new HashMap<MessageType, Integer> ();
+	
+	/** For each collapsible message type, the function that computes the keys of its messages */
+	private final HashMap< MessageType, Function<? super Message, ?> > collapsing = new HashMap< MessageType, Function<? super Message, ?> > ();
+	
+	/** Constructor */
+	public InboxScheduler () { }
+	
+	/** Constructor from an XML description
+	 * 
+	 * The description contains one \c priority element per message type, with a \c value attribute and a \c type child element:
+	 * \verbatim
+	 <inbox>
+	 	<priority value="1">
+	 		<type name="AgentFinished" />
+	 	</priority>
+	 </inbox>
+	 \endverbatim
+	 * @param params 	the description
+	 */
+	public InboxScheduler (Element params) {
+		for (Element priorityElmt : params.getChildren("priority")) 
+			this.setPriority(MessageType.fromXML(priorityElmt.getChild("type")), Integer.parseInt(priorityElmt.getAttributeValue("value")));
+	}
+	
+	/** Sets the priority of a message type and of all its descendants that have not been given a priority of their own
+	 * @param type 		the message type
+	 * @param priority 	the priority; messages of higher priority are processed first
+	 */
+	public synchronized void setPriority (MessageType type, int priority) {
+		this.priorities.put(type.intern(), priority);
+	}
+	
+	/** Declares a message type collapsible
+	 * @param type 	the message type; its descendants are not affected
+	 * @param key 	the function that computes the key of each message of this type, or \c null to make it non-collapsible again
+	 */
+	public synchronized void setCollapsing (MessageType type, Function<? super Message, ?> key) {
+		if (key == null) 
+			this.collapsing.remove(type.intern());
+		else 
+			this.collapsing.put(type.intern(), key);
+	}
+	
+	/** Computes the priority of a message
+	 * @param msg 	the message
+	 * @return the priority of the closest ancestor of the message's type (including itself) that has been given one, or 0 
+	 */
+	public synchronized int getPriority (Message msg) {
+		
+		for (MessageType type = msg.getType(); type != null; type = type.getParent()) {
+			Integer priority = this.priorities.get(type);
+			if (priority != null) 
+				return priority;
+		}
+		return 0;
+	}
+	
+	/** Computes the key used to find the pending message superseded by the input message
+	 * @param msg 	the message
+	 * @return the key, or \c null if the message does not supersede any other message
+	 */
+	public synchronized Object getCollapsingKey (Message msg) {
+		
+		final MessageType type = msg.getType();
+		Function<? super Message, ?> key = this.collapsing.get(type);
+		return (key == null ? null : new CollapsingKey (type, key.apply(msg)));
+	}
+	
+	/** The key of a collapsible message, made of its type and its type-specific key */
+	private static class CollapsingKey {
+		
+		/** The type of the message */
+		private final MessageType type;
+		
+		/** The type-specific key */
+		private final Object key;
+
+		/** Constructor
+		 * @param type 	the type of the message
+		 * @param key 	the type-specific key
+		 */
+		CollapsingKey (MessageType type, Object key) {
+			this.type = type;
+			this.key = key;
+		}
+
+		/** @see java.lang.Object#equals(java.lang.Object) */
+		@Override
+		public boolean equals (Object o) {
+			
+			if (! (o instanceof CollapsingKey)) 
+				return false;
+			CollapsingKey o2 = (CollapsingKey) o;
+			return this.type.equals(o2.type) && (this.key == null ? o2.key == null : this.key.equals(o2.key));
+		}
+
+		/** @see java.lang.Object#hashCode() */
+		@Override
+		public int hashCode () {
+			return 31 * this.type.hashCode() + (this.key == null ? 0 : this.key.hashCode());
+		}
+	}
+	
+}
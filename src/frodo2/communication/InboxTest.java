@@ -0,0 +1,289 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+
+import org.jdom2.Element;
+
+import junit.extensions.RepeatedTest;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/** Unit tests for the Inbox and the InboxScheduler
+ * @author Thomas Leaute
+ */
+public class InboxTest extends TestCase {
+	
+	/** The parent type of the test messages */
+	private static final MessageType TEST = new MessageType ("InboxTest");
+	
+	/** The inbox under test */
+	private Inbox inbox;
+	
+	/** The random number generator */
+	private final Random rand = new Random ();
+
+	/** @return a suite of unit tests */
+	public static TestSuite suite () {
+		
+		TestSuite suite = new TestSuite ("Tests for the Inbox");
+		
+		TestSuite tmp = new TestSuite ("Tests the FIFO order in the absence of a scheduler");
+		tmp.addTest(new RepeatedTest (new InboxTest ("testFIFO"), 100));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests the priorities");
+		tmp.addTest(new RepeatedTest (new InboxTest ("testPriorities"), 100));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests the collapsing of superseded messages");
+		tmp.addTest(new RepeatedTest (new InboxTest ("testCollapsing"), 100));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests the XML description of priorities");
+		tmp.addTest(new InboxTest ("testXML"));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests that a Queue processes high-priority messages first");
+		tmp.addTest(new RepeatedTest (new InboxTest ("testQueue"), 100));
+		suite.addTest(tmp);
+		
+		return suite;
+	}
+	
+	/** Constructor
+	 * @param method 	the test method
+	 */
+	public InboxTest (String method) {
+		super(method);
+	}
+
+	/** @see junit.framework.TestCase#setUp() */
+	@Override
+	protected void setUp() {
+		this.inbox = new Inbox ();
+	}
+
+	/** @see junit.framework.TestCase#tearDown() */
+	@Override
+	protected void tearDown() {
+		this.inbox = null;
+	}
+	
+	/** Creates a test message
+	 * @param type 		the leaf type
+	 * @param sender 	the sender
+	 * @param id 		the ID of the message
+	 * @return a new message
+	 */
+	private static MessageWrapper newMsg (String type, String sender, int id) {
+		return new MessageWrapper (new MessageWith2Payloads<String, Integer> (TEST.newChild(type), sender, id));
+	}
+	
+	/** @param msgWrap 	a test message
+	 * @return the ID of the message
+	 */
+	@SuppressWarnings("unchecked")
+	private static int getID (MessageWrapper msgWrap) {
+		return ((MessageWith2Payloads<String, Integer>) msgWrap.getMessage()).getPayload2();
+	}
+	
+	/** Checks that messages come out in the order in which they were added if there is no scheduler */
+	public void testFIFO () {
+		
+		final int nbrMsgs = 1 + rand.nextInt(1000);
+		for (int i = 0; i < nbrMsgs; i++) 
+			this.inbox.put(newMsg("type" + rand.nextInt(3), "sender", i));
+		assertEquals (nbrMsgs, this.inbox.size());
+		
+		for (int i = 0; i < nbrMsgs; i++) 
+			assertEquals (i, getID(this.inbox.poll()));
+		assertTrue (this.inbox.isEmpty());
+		assertNull (this.inbox.poll());
+	}
+	
+	/** Checks that messages come out in decreasing order of priority, and in FIFO order within each priority */
+	public void testPriorities () {
+		
+		// Give random priorities to the parent type and to some of its descendants
+		InboxScheduler scheduler = new InboxScheduler ();
+		final int nbrTypes = 5;
+		int[] priorities = new int [nbrTypes];
+		final int parentPriority = rand.nextInt(5) - 2;
+		scheduler.setPriority(TEST, parentPriority);
+		for (int i = 0; i < nbrTypes; i++) {
+			if (rand.nextBoolean()) 
+				scheduler.setPriority(TEST.newChild("type" + i), priorities[i] = rand.nextInt(5) - 2);
+			else 
+				priorities[i] = parentPriority;
+		}
+		this.inbox.setScheduler(scheduler);
+		
+		final int nbrMsgs = 1 + rand.nextInt(1000);
+		int[] types = new int [nbrMsgs];
+		for (int i = 0; i < nbrMsgs; i++) 
+			this.inbox.put(newMsg("type" + (types[i] = rand.nextInt(nbrTypes)), "sender", i));
+		assertEquals (nbrMsgs, this.inbox.size());
+		
+		// Messages of other types get the default priority
+		this.inbox.put(new MessageWrapper (new MessageWith2Payloads<String, Integer> (new MessageType ("other"), "sender", nbrMsgs)));
+		
+		int lastPriority = Integer.MAX_VALUE;
+		int lastID = -1;
+		for (int i = 0; i <= nbrMsgs; i++) {
+			final int id = getID(this.inbox.poll());
+			final int priority = (id == nbrMsgs ? 0 : priorities[types[id]]);
+			assertTrue (priority <= lastPriority);
+			if (priority == lastPriority) 
+				assertTrue (id > lastID);
+			lastPriority = priority;
+			lastID = id;
+		}
+		assertTrue (this.inbox.isEmpty());
+	}
+	
+	/** Checks that only the latest collapsible message from each sender is kept */
+	@SuppressWarnings("unchecked")
+	public void testCollapsing () {
+		
+		// Collapse messages of type0 by sender
+		InboxScheduler scheduler = new InboxScheduler ();
+		scheduler.setCollapsing(TEST.newChild("type0"), msg -> ((MessageWith2Payloads<String, Integer>) msg).getPayload1());
+		this.inbox.setScheduler(scheduler);
+		
+		// Send messages of type0 and type1 from random senders
+		final int nbrMsgs = 1 + rand.nextInt(1000);
+		final int nbrSenders = 1 + rand.nextInt(10);
+		ArrayList<Integer> expected = new ArrayList<Integer> ();
+		String[] senders = new String [nbrMsgs];
+		int[] types = new int [nbrMsgs];
+		for (int i = 0; i < nbrMsgs; i++) {
+			senders[i] = "sender" + rand.nextInt(nbrSenders);
+			this.inbox.put(newMsg("type" + (types[i] = rand.nextInt(2)), senders[i], i));
+			
+			// A message of type0 supersedes the previous message of type0 from the same sender
+			if (types[i] == 0) 
+				for (int j = expected.size() - 1; j >= 0; j--) {
+					final int id = expected.get(j);
+					if (types[id] == 0 && senders[id].equals(senders[i])) {
+						expected.remove(j);
+						break;
+					}
+				}
+			expected.add(i);
+		}
+		assertEquals (expected.size(), this.inbox.size());
+		assertEquals (nbrMsgs - expected.size(), this.inbox.getNbrCollapsed());
+		
+		for (Integer id : expected) 
+			assertEquals (id.intValue(), getID(this.inbox.poll()));
+		assertTrue (this.inbox.isEmpty());
+		
+		// A message that is no longer in the inbox is no longer collapsed
+		this.inbox.put(newMsg("type0", "sender0", 0));
+		assertEquals (1, this.inbox.size());
+	}
+	
+	/** Tests the XML constructor of the InboxScheduler */
+	public void testXML () {
+		
+		Element inboxElmt = new Element ("inbox");
+		Element priorityElmt = new Element ("priority");
+		priorityElmt.setAttribute("value", "3");
+		priorityElmt.addContent(TEST.newChild("type1").toXML());
+		inboxElmt.addContent(priorityElmt);
+		
+		InboxScheduler scheduler = new InboxScheduler (inboxElmt);
+		assertEquals (3, scheduler.getPriority(newMsg("type1", "sender", 0).getMessage()));
+		assertEquals (0, scheduler.getPriority(newMsg("type0", "sender", 0).getMessage()));
+	}
+	
+	/** Blocks a Queue while messages accumulate in its inbox, and checks that the high-priority messages are processed first
+	 * @throws InterruptedException 	if interrupted
+	 */
+	public void testQueue () throws InterruptedException {
+		
+		Queue queue = new Queue (false);
+		InboxScheduler scheduler = new InboxScheduler ();
+		scheduler.setPriority(TEST.newChild("type1"), 1);
+		queue.setInboxScheduler(scheduler);
+		
+		final Object lock = new Object ();
+		final ArrayList<Integer> received = new ArrayList<Integer> ();
+		queue.addIncomingMessagePolicy(TEST, new IncomingMsgPolicyInterface<MessageType> () {
+			
+			public Collection<MessageType> getMsgTypes() {
+				return null;
+			}
+
+			@SuppressWarnings("unchecked")
+			public void notifyIn(Message msg) {
+				synchronized (lock) {
+					received.add(((MessageWith2Payloads<String, Integer>) msg).getPayload2());
+					lock.notifyAll();
+					
+					// Block on the first message until all messages are in the inbox
+					while (received.size() == 1) {
+						try {
+							lock.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+				}
+			}
+
+			public void setQueue(Queue queue) { }
+		});
+		
+		// Wait until the first message is being processed
+		queue.addToInbox(newMsg("type0", "sender", 0));
+		synchronized (lock) {
+			while (received.isEmpty()) 
+				lock.wait();
+		}
+		
+		final int nbrMsgs = 1 + rand.nextInt(100);
+		for (int i = 1; i <= nbrMsgs; i++) 
+			queue.addToInbox(newMsg("type" + (i % 2), "sender", i));
+		
+		synchronized (lock) {
+			received.add(-1); // unblocks the first message
+			lock.notifyAll();
+			while (received.size() < nbrMsgs + 2) 
+				lock.wait();
+		}
+		queue.end();
+		
+		// First the odd IDs (type1), then the even IDs (type0), in increasing order
+		int pos = 2;
+		for (int i = 1; i <= nbrMsgs; i += 2) 
+			assertEquals (i, received.get(pos++).intValue());
+		for (int i = 2; i <= nbrMsgs; i += 2) 
+			assertEquals (i, received.get(pos++).intValue());
+	}
+	
+}
@@ -0,0 +1,207 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication;
+
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/** A registry of factories for Message subclasses, used to serialize messages with compact numeric class tags
+ *
+ * When a message is sent through a stream, its class is identified by a 2-byte tag instead of a class descriptor.
+ * The tags are assigned by each Encoder to the message classes in the order in which they are first sent through its stream;
+ * the first message of a given class is followed by the class itself, so that the Decoder at the other end of the stream
+ * can learn the tag. This way, sender and receiver do not need to agree beforehand on a global numbering of the message classes.
+ *
+ * On the receiving side, messages are instantiated using factories that are bound once per class: either a factory registered
+ * by the message class (typically in a static initializer), or a factory calling the class's public empty constructor.
+ * @author Thomas Leaute
+ */
+public final class MessageRegistry {
+
+	/** The tag that indicates that the class of the message follows, for classes that could not be given a tag
+	 * 
+	 * Message tags are never lower than this value. 
+	 */
+	public static final short UNTAGGED = -1;
+
+	/** The factories, indexed by message class */
+	private static final ConcurrentHashMap< Class<?>, Supplier<? extends Message> > factories = new ConcurrentHashMap< Class<?>, Supplier<? extends Message> > ();
+
+	static {
+		register(Message.class, Message::new);
+		register(MessageWithPayload.class, MessageWithPayload::new);
+		register(MessageWith2Payloads.class, MessageWith2Payloads::new);
+		register(MessageWith3Payloads.class, MessageWith3Payloads::new);
+		register(MessageWith4Payloads.class, MessageWith4Payloads::new);
+		register(MessageWith5Payloads.class, MessageWith5Payloads::new);
+		register(MessageSerializedSimple.class, MessageSerializedSimple::new);
+	}
+
+	/** Private constructor to prevent instantiation */
+	private MessageRegistry () { }
+
+	/** Registers the factory for a given message class
+	 * @param msgClass 	the message class
+	 * @param factory 	a factory that returns new, empty instances of the class, to be filled in by Message#readExternal(ObjectInput)
+	 */
+	public static void register (Class<? extends Message> msgClass, Supplier<? extends Message> factory) {
+		factories.put(msgClass, factory);
+	}
+
+	/** Returns the factory for a given message class, creating it the first time it is requested
+	 * @param msgClass 					the message class
+	 * @return the factory for this class
+	 * @throws InvalidClassException 	if the class has not registered any factory and has no public empty constructor
+	 */
+	public static Supplier<? extends Message> getFactory (Class<? extends Message> msgClass) throws InvalidClassException {
+
+		Supplier<? extends Message> factory = factories.get(msgClass);
+		if (factory != null)
+			return factory;
+
+		// Initialize the class, in case its static initializer registers a factory
+		try {
+			Class.forName(msgClass.getName(), true, msgClass.getClassLoader());
+		} catch (ClassNotFoundException e) { }
+		if ((factory = factories.get(msgClass)) != null)
+			return factory;
+
+		// Bind a factory to the empty constructor
+		final MethodHandle constructor;
+		try {
+			constructor = MethodHandles.publicLookup().findConstructor(msgClass, MethodType.methodType(void.class)).asType(MethodType.methodType(Message.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			throw new InvalidClassException (msgClass.getName(), "No public empty constructor");
+		}
+		factory = () -> {
+			try {
+				return (Message) constructor.invokeExact();
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new RuntimeException (e);
+			}
+		};
+
+		Supplier<? extends Message> previous = factories.putIfAbsent(msgClass, factory);
+		return (previous != null ? previous : factory);
+	}
+
+	/** Serializes messages to a given stream
+	 *
+	 * An Encoder keeps track of the tags it has assigned, and must therefore always be used with the same stream,
+	 * by one thread at a time. Its stream must be read by a single Decoder.
+	 */
+	public static class Encoder {
+
+		/** The tags assigned so far, indexed by message class */
+		private final HashMap< Class<? extends Message>, Short > tags = new HashMap< Class<? extends Message>, Short > ();
+
+		/** Serializes a message
+		 * @param out 			the stream
+		 * @param msg 			the message
+		 * @throws IOException 	if an I/O error occurs
+		 */
+		public void write (ObjectOutput out, Message msg) throws IOException {
+
+			Class<? extends Message> msgClass = msg.getClass();
+			Short tag = this.tags.get(msgClass);
+
+			if (tag != null) // we have already sent this class
+				out.writeShort(tag);
+
+			else if (this.tags.size() < Short.MAX_VALUE) { // assign the next tag
+				tag = (short) this.tags.size();
+				this.tags.put(msgClass, tag);
+				out.writeShort(tag);
+				out.writeObject(msgClass);
+
+			} else { // ran out of tags
+				out.writeShort(UNTAGGED);
+				out.writeObject(msgClass);
+			}
+
+			msg.writeExternal(out);
+		}
+	}
+
+	/** Deserializes messages serialized by an Encoder */
+	public static class Decoder {
+
+		/** The factories, indexed by tag */
+		private final ArrayList< Supplier<? extends Message> > factories = new ArrayList< Supplier<? extends Message> > ();
+
+		/** Deserializes a message
+		 * @param in 						the stream
+		 * @return the message
+		 * @throws IOException 				if an I/O error occurs
+		 * @throws ClassNotFoundException 	if the class of the message cannot be found
+		 */
+		public Message read (ObjectInput in) throws IOException, ClassNotFoundException {
+			return this.read(in, in.readShort());
+		}
+
+		/** Deserializes a message whose tag has already been read
+		 * 
+		 * This allows pipes to interleave their own records with the messages in the stream, using tags lower than any message tag. 
+		 * @param in 						the stream
+		 * @param tag 						the tag of the message, previously read from the stream
+		 * @return the message
+		 * @throws IOException 				if an I/O error occurs
+		 * @throws ClassNotFoundException 	if the class of the message cannot be found
+		 */
+		public Message read (ObjectInput in, short tag) throws IOException, ClassNotFoundException {
+
+			final int nbrTags = this.factories.size();
+
+			Supplier<? extends Message> factory;
+			if (tag >= 0 && tag < nbrTags) // known tag
+				factory = this.factories.get(tag);
+
+			else if (tag == nbrTags || tag == UNTAGGED) { // the class follows
+				@SuppressWarnings("unchecked")
+				Class<? extends Message> msgClass = (Class<? extends Message>) in.readObject();
+				factory = getFactory(msgClass);
+				if (tag != UNTAGGED)
+					this.factories.add(factory);
+
+			} else
+				throw new StreamCorruptedException ("Unexpected message class tag: " + tag);
+
+			Message msg = factory.get();
+			msg.readExternal(in);
+			return msg;
+		}
+	}
+
+}
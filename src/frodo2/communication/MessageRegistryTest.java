@@ -0,0 +1,168 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+import frodo2.algorithms.dpop.UTILmsg;
+import frodo2.algorithms.dpop.VALUEmsg;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.hypercube.tests.HypercubeTest;
+import junit.extensions.RepeatedTest;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/** Unit tests for the MessageRegistry
+ * @author Thomas Leaute
+ */
+public class MessageRegistryTest extends TestCase {
+
+	/** @return a suite of unit tests */
+	public static TestSuite suite () {
+
+		TestSuite suite = new TestSuite ("Tests for MessageRegistry");
+
+		TestSuite tmp = new TestSuite ("Tests for the encoding and decoding of random sequences of messages");
+		tmp.addTest(new RepeatedTest (new MessageRegistryTest ("testRandomSequence"), 1000));
+		suite.addTest(tmp);
+
+		tmp = new TestSuite ("Tests that the class of a message is only sent once");
+		tmp.addTest(new MessageRegistryTest ("testCompactTags"));
+		suite.addTest(tmp);
+
+		tmp = new TestSuite ("Tests the detection of message classes that cannot be instantiated");
+		tmp.addTest(new MessageRegistryTest ("testNoEmptyConstructor"));
+		suite.addTest(tmp);
+
+		return suite;
+	}
+
+	/** Constructor
+	 * @param method 	the test method
+	 */
+	public MessageRegistryTest (String method) {
+		super (method);
+	}
+
+	/** A message class that has no empty constructor */
+	public static class MessageWithoutEmptyConstructor extends Message {
+
+		/** Used for serialization */
+		private static final long serialVersionUID = -3209357474383719270L;
+
+		/** Constructor
+		 * @param type 	the type of the message
+		 */
+		public MessageWithoutEmptyConstructor (MessageType type) {
+			super (type);
+		}
+	}
+
+	/** @return a random message, of a random class */
+	private static Message randomMessage () {
+
+		MessageType type = new MessageType ("test" + (int) (Math.random() * 10));
+		final int rand = (int) (Math.random() * 5);
+
+		switch (rand) {
+		case 0:
+			return new Message (type);
+		case 1:
+			return new MessageWithPayload<Integer> (type, (int) (Math.random() * 100));
+		case 2:
+			return new MessageWith2Payloads<String, Integer> (type, "payload", (int) (Math.random() * 100));
+		case 3:
+			return new VALUEmsg<AddableInteger> ("x", new String[] {"y", "z"}, new AddableInteger[] {new AddableInteger (1), new AddableInteger (2)});
+		default:
+			return new UTILmsg<AddableInteger, AddableInteger> ("x", "agent", "y", HypercubeTest.random_hypercube(0.5, AddableInteger.class));
+		}
+	}
+
+	/** Encodes a random sequence of messages, decodes it, and checks that the decoded messages are equal to the original ones
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	if a message class cannot be found
+	 */
+	public void testRandomSequence () throws IOException, ClassNotFoundException {
+
+		ArrayList<Message> msgs = new ArrayList<Message> ();
+		for (int i = (int) (Math.random() * 50); i >= 0; i--)
+			msgs.add(randomMessage());
+
+		// Encode the messages
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+		ObjectOutputStream out = new ObjectOutputStream (bytes);
+		MessageRegistry.Encoder encoder = new MessageRegistry.Encoder ();
+		for (Message msg : msgs)
+			encoder.write(out, msg);
+		out.close();
+
+		// Decode the messages
+		ObjectInputStream in = new ObjectInputStream (new ByteArrayInputStream (bytes.toByteArray()));
+		MessageRegistry.Decoder decoder = new MessageRegistry.Decoder ();
+		for (Message msg : msgs) {
+			Message msg2 = decoder.read(in);
+			assertEquals (msg.getClass(), msg2.getClass());
+			assertEquals (msg.toString(), msg2.toString());
+		}
+		in.close();
+	}
+
+	/** Checks that a message class is only written once to a given stream
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	public void testCompactTags () throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+		ObjectOutputStream out = new ObjectOutputStream (bytes);
+		MessageRegistry.Encoder encoder = new MessageRegistry.Encoder ();
+		MessageWithPayload<Integer> msg = new MessageWithPayload<Integer> (new MessageType ("test"), 42);
+
+		// The first message contains the class descriptor
+		encoder.write(out, msg);
+		out.flush();
+		final int size1 = bytes.size();
+
+		// The second message is written using the tag, and back references to the message type and payload
+		encoder.write(out, msg);
+		out.flush();
+		final int size2 = bytes.size() - size1;
+		assertTrue (size2 < size1);
+		assertFalse (new String (bytes.toByteArray(), size1, size2).contains(MessageWithPayload.class.getName()));
+	}
+
+	/** Checks that a proper exception is thrown when attempting to get the factory for a class without empty constructor */
+	public void testNoEmptyConstructor () {
+
+		try {
+			MessageRegistry.getFactory(MessageWithoutEmptyConstructor.class);
+			fail("No InvalidClassException thrown");
+		} catch (InvalidClassException e) { }
+	}
+
+}
@@ -23,12 +23,18 @@ How to contact the authors:
 package frodo2.communication;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.WeakHashMap;
 
 import org.jdom2.Element;
 
 /** The (hierarchical) type of a message
+ * 
+ * Message types can be interned, so that equal types share a single canonical instance. Canonical instances are only weakly 
+ * referenced by the interning table, so that message types created on the fly do not accumulate once they are no longer used. 
+ * Each instance caches its hash code and its (interned) parent, so that walking up the type hierarchy does not allocate. 
  * @author Thomas Leaute
  */
 public class MessageType implements Serializable, Comparable<MessageType> {
@@ -39,14 +45,23 @@ public class MessageType implements Serializable, Comparable<MessageType> {
 	/** The type of the root of the type hierarchy */
 	private static final transient String ROOT_TYPE = "ALL";
 	
+	/** The canonical instances of all interned message types that are still referenced elsewhere */
+	private static final WeakHashMap< MessageType, WeakReference<MessageType> > interned = new WeakHashMap< MessageType, WeakReference<MessageType> > ();
+	
 	/** The root of the type hierarchy */
-	public static final transient MessageType ROOT = new MessageType ();
+	public static final transient MessageType ROOT = new MessageType ().intern();
 	
 	/** The type of system messages */
-	public static final transient MessageType SYSTEM = new MessageType ("SYSTEM");
+	public static final transient MessageType SYSTEM = new MessageType ("SYSTEM").intern();
 	
 	/** The path in the type hierarchy */
 	final private String[] path;
+	
+	/** The hash code, or 0 if it has not been computed yet */
+	private transient int hash;
+	
+	/** The interned parent, or \c null if it has not been computed yet */
+	private transient MessageType parent;
 
 	/** Constructor
 	 * @param path the type(s) of the message
@@ -66,11 +81,15 @@ public class MessageType implements Serializable, Comparable<MessageType> {
 	@Override
 	public boolean equals (Object o) {
 		
+		if (o == this) 
+			return true;
+		
 		if (o == null) 
 			return false;
 		
 		try {
-			return Arrays.equals(this.path, ((MessageType) o).path);
+			MessageType type = (MessageType) o;
+			return this.hashCode() == type.hashCode() && Arrays.equals(this.path, type.path);
 		} catch (ClassCastException e) {
 			return false;
 		}
@@ -79,17 +98,45 @@ public class MessageType implements Serializable, Comparable<MessageType> {
 	/** @see java.lang.Object#hashCode() */
 	@Override
 	public int hashCode() {
-		return Arrays.hashCode(this.path);
+		
+		int hash = this.hash;
+		if (hash == 0) 
+			this.hash = hash = Arrays.hashCode(this.path);
+		return hash;
+	}
+	
+	/** @return the canonical instance of this message type, which is the same for all equal message types */
+	public MessageType intern () {
+		
+		synchronized (interned) {
+			WeakReference<MessageType> ref = interned.get(this);
+			MessageType out = (ref == null ? null : ref.get());
+			if (out == null) {
+				interned.put(this, new WeakReference<MessageType> (this));
+				out = this;
+			}
+			return out;
+		}
+	}
+	
+	/** Replaces deserialized message types with their canonical instances
+	 * @return the canonical instance of this message type
+	 */
+	private Object readResolve () {
+		return this.intern();
 	}
 	
-	/** @return the parent of this message type in the hierarchy */
+	/** @return the (interned) parent of this message type in the hierarchy */
 	public MessageType getParent () {
 		
 		// The root has no parent
 		if (this.path.length == 1) 
 			return null;
 		
-		return new MessageType (Arrays.copyOfRange(this.path, 1, path.length - 1)); // Starting at 1 to skip the ROOT
+		MessageType parent = this.parent;
+		if (parent == null) 
+			this.parent = parent = new MessageType (Arrays.copyOfRange(this.path, 1, path.length - 1)).intern(); // Starting at 1 to skip the ROOT
+		return parent;
 	}
 	
 	/** @see java.lang.Object#toString() */
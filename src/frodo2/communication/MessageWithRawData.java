@@ -28,6 +28,8 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /** A message containing data that must be custom-serialized
  * @author Thomas Leaute
@@ -100,9 +102,55 @@ public abstract class MessageWithRawData extends Message {
 	 */
 	public abstract void serializeRawData (ObjectOutputStream stream);
 	
-	/** @return the stream from which the raw data can be read */
+	/** Requests the raw data from the handler, which blocks until the raw data is available */
+	private static class RawDataRequest implements ForkJoinPool.ManagedBlocker {
+		
+		/** The handler */
+		private final RawDataHandler handler;
+		
+		/** Whether the request has been performed */
+		private boolean done = false;
+		
+		/** The stream from which the raw data can be read */
+		private ObjectInputStream stream;
+		
+		/** Constructor
+		 * @param handler 	the handler
+		 */
+		RawDataRequest (RawDataHandler handler) {
+			this.handler = handler;
+		}
+
+		/** @see java.util.concurrent.ForkJoinPool.ManagedBlocker#block() */
+		public boolean block() {
+			this.stream = this.handler.requestRawData();
+			this.done = true;
+			return true;
+		}
+
+		/** @see java.util.concurrent.ForkJoinPool.ManagedBlocker#isReleasable() */
+		public boolean isReleasable() {
+			return this.done;
+		}
+	}
+	
+	/** @return the stream from which the raw data can be read
+	 * 
+	 * When called from a thread of a ForkJoinPool (for instance, by a queue in SHARED_EXECUTOR mode), the pool is told that 
+	 * the thread is about to block, so that it can activate another thread to keep processing the other tasks in the meantime. 
+	 */
 	public ObjectInputStream getRawData () {
-		return handler.requestRawData();
+		
+		if (! (Thread.currentThread() instanceof ForkJoinWorkerThread)) 
+			return handler.requestRawData();
+		
+		RawDataRequest request = new RawDataRequest (handler);
+		try {
+			ForkJoinPool.managedBlock(request);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return request.stream;
 	}
 	
 	/** Deserializes the raw data by reading it from the output of MessageWithRawData#getRawData() */
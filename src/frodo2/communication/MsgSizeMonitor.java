@@ -24,118 +24,116 @@ package frodo2.communication;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
-import java.util.concurrent.SynchronousQueue;
+
+import frodo2.solutionSpaces.hypercube.UtilityCodec;
 
 /** Measures message sizes using serialization
+ *
+ * Messages are serialized on the caller's thread into a stream that only counts the bytes written to it. 
+ * One serialization stream is kept per destination, so that the reported sizes take into account the back-references 
+ * to objects previously sent to the same destination, exactly as if the messages had been sent through a real stream. 
+ * 
+ * Optionally, only a sample of the messages can be serialized: for each destination and message type, 
+ * the first two messages and then one message every \a samplingPeriod messages are serialized, and the other messages 
+ * are assumed to have the same size as the last serialized message of the same type sent to the same destination. 
+ * The second message is always serialized because the first one also carries one-time overheads, such as class descriptors. 
  * @author Thomas Leaute
  */
-public class MsgSizeMonitor implements Runnable {
-	
-	/** Destination of the current message */
-	private Object currentDest;
+public class MsgSizeMonitor {
 	
-	/** The output streams to which messages are written, classified by destination */
-	private HashMap<Object, ObjectOutputStream> out = new HashMap<Object, ObjectOutputStream> ();
+	/** An OutputStream that discards all bytes written to it, only counting them */
+	private static class CountingOutputStream extends OutputStream {
+		
+		/** The number of bytes written so far */
+		private long count = 0;
+
+		/** @see java.io.OutputStream#write(int) */
+		@Override
+		public void write(int b) {
+			this.count++;
+		}
+
+		/** @see java.io.OutputStream#write(byte[], int, int) */
+		@Override
+		public void write(byte[] b, int off, int len) {
+			this.count += len;
+		}
+	}
 	
-	/** The streams underlying \a out, classified by destination */
-	private HashMap<Object, PipedOutputStream> outRaw = new HashMap<Object, PipedOutputStream> ();
+	/** The serialization state for a given destination */
+	private static class Destination {
+		
+		/** The output stream to which messages are written */
+		private final ObjectOutputStream out;
+		
+		/** The encoder used to serialize messages to \a out */
+		private final MessageRegistry.Encoder encoder = new MessageRegistry.Encoder ();
+		
+		/** For each message type, the number of messages sent minus one, and the size and number of bytes saved of the last serialized message */
+		private final HashMap<MessageType, long[]> samples;
+		
+		/** Constructor
+		 * @param counter 		the stream underlying \a out
+		 * @param sampling 		whether messages are sampled
+		 * @throws IOException 	if an I/O error occurs while writing the stream header
+		 */
+		private Destination (CountingOutputStream counter, boolean sampling) throws IOException {
+			this.out = new ObjectOutputStream (counter);
+			this.out.flush();
+			this.samples = (sampling ? new HashMap<MessageType, long[]> () : null);
+		}
+	}
 	
-	/** The input streams from which bytes are read, classified by destination */
-	private HashMap<Object, PipedInputStream> in = new HashMap<Object, PipedInputStream> ();
+	/** The stream underlying all serialization streams, which counts the bytes written */
+	private final CountingOutputStream counter = new CountingOutputStream ();
 	
-	/** The writer thread */
-	private Thread writer;
+	/** The serialization states, classified by destination */
+	private HashMap<Object, Destination> dests = new HashMap<Object, Destination> ();
 	
-	/** Used by the reader to pass a message to the writer */
-	private SynchronousQueue<Message> queue = new SynchronousQueue<Message> ();
+	/** Only one message out of \a samplingPeriod of each type to each destination is serialized */
+	private final int samplingPeriod;
 	
-	/** Used by the writer to tell the reader that it is done writing the message */
-	private boolean doneWriting = false;
+	/** The number of bytes saved by the compact encoding of hypercubes in the last message */
+	private long lastBytesSaved = 0;
 	
-	/** Used by the writer to tell the reader that it has written the additional closing byte */
-	private boolean wroteLastByte = false;
+	/** The total number of bytes saved by the compact encoding of hypercubes in all messages */
+	private long bytesSaved = 0;
 	
-	/** Constructor
+	/** Constructor 
 	 * @throws IOException 	if the constructor failed to create the streams
 	 */
 	public MsgSizeMonitor () throws IOException {
-		
-		// Start the writer thread
-		this.writer = new Thread (this, "MsgSizeMonitor");
-		this.writer.setDaemon(true);
-		this.writer.start();
+		this (1);
 	}
 	
-	/** Creates a new message destination
-	 * @param dest 	message destination
-	 * @return the new input stream
-	 * @throws IOException if an I/O error occurs
+	/** Constructor
+	 * @param samplingPeriod 	only one message out of \a samplingPeriod of each type to each destination is serialized; 1 to serialize all messages
+	 * @throws IOException 	if the constructor failed to create the streams
 	 */
-	private PipedInputStream createNewDest (Object dest) throws IOException {
-		
-		// Create the streams
-		PipedInputStream inStream = new PipedInputStream ();
-		this.in.put(dest, inStream);
-		PipedOutputStream outRawStream = new PipedOutputStream (inStream);
-		this.outRaw.put(dest, outRawStream);
-		ObjectOutputStream outStream = new ObjectOutputStream (outRawStream);
-		this.out.put(dest, outStream);
-		
-		// Flush the serialization stream header
-		outStream.flush();
-		inStream.skip(4); // skip the magic number and the version 
-		
-		return inStream;
+	public MsgSizeMonitor (int samplingPeriod) throws IOException {
+		assert samplingPeriod >= 1 : "Invalid sampling period: " + samplingPeriod;
+		this.samplingPeriod = samplingPeriod;
 	}
 	
 	/** Closes the stream */
 	public void close () {
-		
-		// Attempt to close all input streams, which will kill the writer if it is currently writing
-		try {
-			for (PipedInputStream inStream : this.in.values()) 
-				inStream.close();
-		} catch (IOException e) { }
-		
-		// Keep interrupting the writer until it's dead
-		while (this.writer.getState() != Thread.State.TERMINATED) {
-			this.writer.interrupt();
-		}
+		this.dests = new HashMap<Object, Destination> ();
 	}
 
-	/** @see java.lang.Runnable#run() */
-	public void run() {
-		
-		while (true) {
-			try {
-				// Retrieve the message
-				Message msg = this.queue.take();
-				
-				// Get the output streams for the current destination
-				ObjectOutputStream outStream = this.out.get(this.currentDest);
-				PipedOutputStream outRawStream = this.outRaw.get(this.currentDest);
-				
-				// Write the message
-				outStream.writeObject(msg.getClass());
-				msg.writeExternal(outStream);
-				this.currentDest = null;
-				this.doneWriting = true;
-				
-				// Write one last byte
-				outRawStream.write(0);
-				outStream.flush();
-				this.wroteLastByte = true;
-
-			} catch (InterruptedException e) {
-				return;
-			} catch (Throwable e) {
-				e.printStackTrace();
-				return;
-			}
-		}
+	/** @return the number of bytes saved by the compact encoding of hypercubes in the last message passed to getMsgSize() 
+	 * @see UtilityCodec 
+	 */
+	public long getLastBytesSaved () {
+		return this.lastBytesSaved;
+	}
+	
+	/** @return the total number of bytes saved by the compact encoding of hypercubes in all messages passed to getMsgSize() 
+	 * @see UtilityCodec 
+	 */
+	public long getBytesSaved () {
+		return this.bytesSaved;
 	}
 	
 	/** Computes the size of the input message
@@ -147,39 +145,42 @@ public class MsgSizeMonitor implements Runnable {
 	public long getMsgSize (Object dest, Message msg) throws IOException {
 		
 		// Create new streams if we haven't seen this destination before
-		PipedInputStream inStream = this.in.get(dest);
-		if (inStream == null) 
-			inStream = this.createNewDest(dest);
-		
-		// Give the message to the writer
-		try {
-			this.currentDest = dest;
-			this.doneWriting = false;
-			this.wroteLastByte = false;
-			this.queue.put(msg);
-			
-		} catch (InterruptedException e) {
-			return -1;
+		Destination destination = this.dests.get(dest);
+		if (destination == null) {
+			destination = new Destination (this.counter, this.samplingPeriod > 1);
+			this.dests.put(dest, destination);
 		}
 		
-		// Read the message byte by byte until the writer is done writing
-		long size = 0;
-		while (! this.doneWriting) {
-			inStream.read();
-			size++;
+		// Check whether this message should be serialized
+		long[] sample = null;
+		if (destination.samples != null) {
+			MessageType type = msg.getType();
+			sample = destination.samples.get(type);
+			if (sample == null) {
+				sample = new long [3];
+				destination.samples.put(type, sample);
+			} else if (++sample[0] > 1 && sample[0] % this.samplingPeriod != 0) { // skip this message
+				this.lastBytesSaved = sample[2];
+				this.bytesSaved += this.lastBytesSaved;
+				return sample[1];
+			}
 		}
 		
-		// Finish reading the message
-		int bytes;
-		while (true) {
-			
-			// Read as many bytes as I can
-			bytes = inStream.available();
-			if (bytes > 0) 
-				size += inStream.skip(bytes);
-			else if (this.wroteLastByte && inStream.available() <= 0)
-				return size - 1;
+		// Write the message
+		final long start = this.counter.count;
+		UtilityCodec.takeBytesSaved();
+		destination.encoder.write(destination.out, msg);
+		destination.out.flush();
+		final long size = this.counter.count - start;
+		this.lastBytesSaved = UtilityCodec.takeBytesSaved();
+		this.bytesSaved += this.lastBytesSaved;
+		
+		if (sample != null) {
+			sample[1] = size;
+			sample[2] = this.lastBytesSaved;
 		}
+		
+		return size;
 	}
 	
 }
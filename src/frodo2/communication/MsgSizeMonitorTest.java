@@ -22,7 +22,14 @@ How to contact the authors:
 
 package frodo2.communication;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+
+import frodo2.algorithms.dpop.UTILmsg;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.hypercube.tests.HypercubeTest;
 
 import junit.extensions.RepeatedTest;
 import junit.framework.TestCase;
@@ -39,6 +46,14 @@ public class MsgSizeMonitorTest extends TestCase {
 		TestSuite suite = new TestSuite ("Tests for MsgSizeMonitor");
 		suite.addTest(new RepeatedTest (new MsgSizeMonitorTest (), 10000));
 		
+		TestSuite tmp = new TestSuite ("Tests that the measured sizes are the numbers of bytes sent through real streams");
+		tmp.addTest(new RepeatedTest (new MsgSizeMonitorTest ("testRandomSequence"), 1000));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests the sampling of messages");
+		tmp.addTest(new RepeatedTest (new MsgSizeMonitorTest ("testSampling"), 100));
+		suite.addTest(tmp);
+		
 		return suite;
 	}
 	
@@ -47,6 +62,13 @@ public class MsgSizeMonitorTest extends TestCase {
 		super("test");
 	}
 	
+	/** Constructor
+	 * @param method 	the test method
+	 */
+	public MsgSizeMonitorTest (String method) {
+		super(method);
+	}
+	
 	/** Creates a MsgSizeMonitor, and computes the sizes of a series of messages
 	 * @throws IOException 	if an error occurs
 	 */
@@ -60,13 +82,101 @@ public class MsgSizeMonitorTest extends TestCase {
 		// The first time we send the message, its size must be positive
 		assertTrue (monitor.getMsgSize(dest, msg) > 0);
 		
-		// The following times, the size must be 2 * (5 = 1 marker byte + an int reference): 1 for the message class, and 1 for the message itself
-		assertEquals (10, monitor.getMsgSize(dest, msg));
-		assertEquals (10, monitor.getMsgSize(dest, msg));
-		assertEquals (10, monitor.getMsgSize(dest, msg));
-		assertEquals (10, monitor.getMsgSize(dest, msg));
+		// The following times, the size must be 4 (= 2 block data header bytes + the 2-byte tag of the message class) 
+		// + 5 (= 1 marker byte + an int reference to the message itself)
+		assertEquals (9, monitor.getMsgSize(dest, msg));
+		assertEquals (9, monitor.getMsgSize(dest, msg));
+		assertEquals (9, monitor.getMsgSize(dest, msg));
+		assertEquals (9, monitor.getMsgSize(dest, msg));
+		
+		monitor.close();
+	}
+	
+	/** @return a random message */
+	private static Message randomMessage () {
+		
+		MessageType type = new MessageType ("test" + (int) (Math.random() * 5));
+		switch ((int) (Math.random() * 3)) {
+		case 0:
+			return new Message (type);
+		case 1:
+			return new MessageWithPayload<Integer> (type, (int) (Math.random() * 100));
+		default:
+			return new UTILmsg<AddableInteger, AddableInteger> ("x", "agent", "y", HypercubeTest.random_hypercube(0.5, AddableInteger.class));
+		}
+	}
+	
+	/** Sends a random sequence of messages to random destinations, and compares the measured sizes with the numbers of bytes written to real streams
+	 * @throws IOException 	if an error occurs
+	 */
+	public void testRandomSequence () throws IOException {
+		
+		MsgSizeMonitor monitor = new MsgSizeMonitor ();
+		HashMap<String, ByteArrayOutputStream> bytes = new HashMap<String, ByteArrayOutputStream> ();
+		HashMap<String, ObjectOutputStream> streams = new HashMap<String, ObjectOutputStream> ();
+		HashMap<String, MessageRegistry.Encoder> encoders = new HashMap<String, MessageRegistry.Encoder> ();
+		
+		for (int i = (int) (Math.random() * 100); i >= 0; i--) {
+			Message msg = randomMessage();
+			String dest = "dest" + (int) (Math.random() * 3);
+			
+			// Write the message to the real stream for this destination
+			ObjectOutputStream out = streams.get(dest);
+			if (out == null) {
+				ByteArrayOutputStream byteStream = new ByteArrayOutputStream ();
+				bytes.put(dest, byteStream);
+				streams.put(dest, out = new ObjectOutputStream (byteStream));
+				encoders.put(dest, new MessageRegistry.Encoder ());
+				out.flush();
+			}
+			ByteArrayOutputStream byteStream = bytes.get(dest);
+			final int before = byteStream.size();
+			encoders.get(dest).write(out, msg);
+			out.flush();
+			
+			assertEquals (byteStream.size() - before, monitor.getMsgSize(dest, msg));
+		}
+		
+		monitor.close();
+	}
+	
+	/** Tests that only a sample of the messages are serialized
+	 * @throws IOException 	if an error occurs
+	 */
+	public void testSampling () throws IOException {
+		
+		final int period = 2 + (int) (Math.random() * 5);
+		MsgSizeMonitor monitor = new MsgSizeMonitor (period);
+		MsgSizeMonitor exact = new MsgSizeMonitor ();
+		String dest = "dest";
+		
+		// Messages of the same type and size: the sampling must not make any difference
+		Message msg = new MessageWithPayload<Integer> (new MessageType ("Test"), 42);
+		for (int i = 0; i < 10 * period; i++) 
+			assertEquals (exact.getMsgSize(dest, msg), monitor.getMsgSize(dest, msg));
+		
+		// Messages of increasing sizes: only one message every period is serialized
+		MessageType type = new MessageType ("Test2");
+		long lastSize = -1;
+		for (int i = 0; i < 10 * period; i++) {
+			
+			StringBuilder payload = new StringBuilder ();
+			for (int j = 0; j < i; j++) 
+				payload.append('x');
+			msg = new MessageWithPayload<String> (type, payload.toString());
+			
+			final long size = monitor.getMsgSize(dest, msg);
+			if (i >= 2) { // the first two messages are always serialized
+				if (i % period != 0) 
+					assertEquals (lastSize, size);
+				else 
+					assertTrue (size > lastSize);
+			}
+			lastSize = size;
+		}
 		
 		monitor.close();
+		exact.close();
 	}
 	
 }
@@ -32,8 +32,13 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import frodo2.algorithms.AgentInterface;
@@ -49,8 +54,35 @@ import frodo2.solutionSpaces.ProblemInterface;
 
 public class Queue implements Runnable {
 	
+	/** The ways in which a queue can process its incoming messages */
+	public static enum ExecutionMode {
+		
+		/** The queue has its own (platform) thread */
+		THREAD, 
+		
+		/** The queue has its own virtual thread, if supported by the JVM (Java 21 and later); otherwise, behaves like THREAD */
+		VIRTUAL_THREAD, 
+		
+		/** The queue has no thread of its own; whenever its inbox is not empty, its messages are processed by a pool of threads 
+		 * shared by all queues in the JVM 
+		 * @warning Listeners should not block while processing a message, since this would also hold up the other queues. 
+		 * Listeners that must block should do so through ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker), so that 
+		 * the pool can activate another thread in the meantime; MessageWithRawData#getRawData() already does so. 
+		 */
+		SHARED_EXECUTOR
+	}
+	
+	/** The maximum number of messages processed in a row by a thread of the shared pool, before it moves on to the next queue */
+	private static final int MAX_NBR_MSGS_PER_TASK = 64;
+	
+	/** The factory used to create virtual threads, or \c null if virtual threads are not supported */
+	private static final ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+	
+	/** The pool of threads shared by all queues in SHARED_EXECUTOR mode, created when first needed */
+	private static ForkJoinPool sharedPool;
+	
 	/** The list of incoming messages waiting to be processed */
-	private BlockingQueue<MessageWrapper> inbox;
+	private Inbox inbox;
 	
 	/** List of input pipes */
 	protected Set <QueueInputPipeInterface> inputs;
@@ -61,6 +93,9 @@ public class Queue implements Runnable {
 	/** A monitor used to measure the sizes of the messages */
 	protected MsgSizeMonitor monitor;
 	
+	/** The MsgSizeMonitor only serializes one message out of \a msgSizeSampling of each type to each destination */
+	private int msgSizeSampling = 1;
+	
 	/** A list of listeners notified of incoming objects 
 	 * 
 	 * These listeners are called whenever there is a new incoming object, in order to decide what to do with it. 
@@ -75,15 +110,31 @@ public class Queue implements Runnable {
 	 */
 	protected HashMap<MessageType, ArrayList< OutgoingMsgPolicyInterface<MessageType> > > outPolicies;
 	
+	/** The dispatch table for incoming messages
+	 * 
+	 * For each message type, the array of the listeners in inPolicies registered for this type or any of its ancestors. 
+	 * The table is built lazily, and cleared whenever the listeners change; its arrays are never modified, 
+	 * so that they can be iterated over while listeners are being added or removed. 
+	 */
+	protected final HashMap< MessageType, IncomingMsgPolicyInterface<MessageType>[] > inDispatch = new HashMap< MessageType, IncomingMsgPolicyInterface<MessageType>[] > ();
+	
+	/** The dispatch table for outgoing messages, built from outPolicies
+	 * @see #inDispatch
+	 */
+	protected final HashMap< MessageType, OutgoingMsgPolicyInterface<MessageType>[] > outDispatch = new HashMap< MessageType, OutgoingMsgPolicyInterface<MessageType>[] > ();
+	
 	/** Lock for outPolicies field*/
 	private final ReentrantLock outPolicies_lock = new ReentrantLock();
 	
 	/** Used to tell the thread to stop */
-	private boolean keepGoing = true;
+	private volatile boolean keepGoing = true;
 	
-	/** The queue's thread */
+	/** The queue's thread, or \c null if it does not have one */
 	private Thread myThread;
 	
+	/** In SHARED_EXECUTOR mode, whether a task to process the inbox has been passed to the shared pool; \c null in other modes */
+	private AtomicBoolean scheduled;
+	
 	/** The problem used to obtain the current NCCC count */
 	protected ProblemInterface<?, ?> problem;
 	
@@ -105,6 +156,9 @@ public class Queue implements Runnable {
 	/** For each message type, the size (in bytes) of the largest message of that type */
 	protected HashMap<MessageType, Long> maxMsgSizes;
 	
+	/** For each message type, the number of bytes saved by the compact encoding of hypercubes */
+	protected HashMap<MessageType, Long> msgSizesSaved;
+	
 	/** lock for input field */
 	private final ReentrantLock input_lock = new ReentrantLock();
 	
@@ -117,6 +171,28 @@ public class Queue implements Runnable {
 	/** The last wrapped message to have been received */
 	protected MessageWrapper msgWrap;
 	
+	/** For each output pipe, the messages waiting to be sent as a batch; \c null if batching is disabled
+	 * 
+	 * The field is only assigned, and the map only accessed, while holding the output lock. It is volatile so that flush() 
+	 * can check whether batching is enabled without acquiring the lock. 
+	 */
+	private volatile HashMap< QueueOutputPipeInterface, ArrayList<MessageWrapper> > batches;
+	
+	/** The maximum number of messages in a batch */
+	private int maxBatchSize;
+	
+	/** The maximum time (in ms) a message can wait in a batch before it is sent */
+	private long maxBatchDelay;
+	
+	/** The task scheduled to send the pending batches, if any; only accessed while holding the output lock */
+	private ScheduledFuture<?> scheduledFlush;
+	
+	/** The timer used to send the batches whose time window has expired; if \c null, the timer shared by all queues is used */
+	private ScheduledExecutorService batchTimer;
+	
+	/** The timer shared by all queues to send the batches whose time window has expired */
+	private static ScheduledExecutorService sharedBatchTimer;
+	
 	/** Empty constructor that does absolutely \b nothing */
 	protected Queue () {
 		this.measureMsgs = true;
@@ -129,6 +205,15 @@ public class Queue implements Runnable {
 		this (measureMsgs, true);
 	}
 	
+	/** Constructor
+	 * @param measureMsgs 	whether to measure the number of messages and the total amount of information sent 
+	 * @param mode 			the way in which the queue should process its incoming messages
+	 */
+	public Queue (boolean measureMsgs, ExecutionMode mode) {
+		this (measureMsgs, false);
+		init(mode);
+	}
+	
 	/** Constructor
 	 * @param measureMsgs 	whether to measure the number of messages and the total amount of information sent 
 	 * @param init 			whether the init() method should be called
@@ -136,7 +221,7 @@ public class Queue implements Runnable {
 	public Queue (boolean measureMsgs, boolean init) {
 		
 		if (init) 
-			init();
+			init(ExecutionMode.THREAD);
 		
 		this.measureMsgs = measureMsgs;
 		if (this.measureMsgs) {
@@ -145,6 +230,7 @@ public class Queue implements Runnable {
 			this.msgSizes = new HashMap<MessageType, Long> ();
 			this.msgSizesSent = new HashMap<Object, Long> ();
 			this.maxMsgSizes = new HashMap<MessageType, Long> ();
+			this.msgSizesSaved = new HashMap<MessageType, Long> ();
 			try {
 				this.monitor = new MsgSizeMonitor ();
 			} catch (IOException e) {
@@ -153,9 +239,11 @@ public class Queue implements Runnable {
 		}
 	}
 	
-	/** Helper function called by the constructors to avoid code redundancy */
-	private void init () {
-		inbox = new LinkedBlockingQueue<MessageWrapper> ();
+	/** Helper function called by the constructors to avoid code redundancy 
+	 * @param mode 	the way in which the queue should process its incoming messages
+	 */
+	private void init (ExecutionMode mode) {
+		inbox = new Inbox ();
 		inputs = new HashSet <QueueInputPipeInterface> ();
 		outputs = new HashMap <Object, QueueOutputPipeInterface> ();
 		
@@ -167,11 +255,38 @@ public class Queue implements Runnable {
 		ArrayList< OutgoingMsgPolicyInterface<MessageType> > policiesOut = new ArrayList< OutgoingMsgPolicyInterface<MessageType> >();
 		outPolicies.put(MessageType.ROOT, policiesOut);
 		
-		myThread = new Thread (this, "Queue");
-		myThread.setDaemon(true);
+		if (mode == ExecutionMode.SHARED_EXECUTOR) {
+			this.scheduled = new AtomicBoolean (false);
+			synchronized (Queue.class) {
+				if (sharedPool == null) // asynchronous mode, i.e. FIFO scheduling of the tasks, which are never joined
+					sharedPool = new ForkJoinPool (Runtime.getRuntime().availableProcessors(), ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+			}
+			return;
+		}
+		
+		if (mode == ExecutionMode.VIRTUAL_THREAD && virtualThreadFactory != null) 
+			myThread = virtualThreadFactory.newThread(this);
+		else {
+			myThread = new Thread (this, "Queue");
+			myThread.setDaemon(true);
+		}
 		myThread.start();
 	}
 	
+	/** @return a factory of virtual threads, or \c null if the JVM does not support them */
+	private static ThreadFactory createVirtualThreadFactory () {
+		
+		// Use reflection, since the Thread.Builder API is only available in Java 21 and later
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class).invoke(builder, "Queue");
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) { // not supported, or preview feature not enabled
+			return null;
+		}
+	}
+	
 	/** Reminds the queue to close the given pipe when it is killed
 	 * @param input pipe to be closed
 	 */
@@ -233,7 +348,16 @@ public class Queue implements Runnable {
 	public void removeOutputPipe(Object recipient) {
 		try {
 			output_lock.lock();
-			outputs.remove(recipient);
+			QueueOutputPipeInterface outPipe = outputs.remove(recipient);
+			
+			// Send the pending batch of messages for this pipe, if any
+			if (this.batches != null && outPipe != null) {
+				ArrayList<MessageWrapper> batch = this.batches.remove(outPipe);
+				if (batch != null && ! batch.isEmpty()) {
+					outPipe.pushMessages(batch);
+					outPipe.flush();
+				}
+			}
 		} finally {
 			output_lock.unlock();
 		}
@@ -283,9 +407,12 @@ public class Queue implements Runnable {
 				policies = new ArrayList< IncomingMsgPolicyInterface<MessageType> >();
 				inPolicies.put(type, policies);
 				policies.add(policy);
+				inDispatch.clear();
 				
-			} else if (! policies.contains(policy)) 
+			} else if (! policies.contains(policy)) {
 				policies.add(policy); 
+				inDispatch.clear();
+			}
 		} finally {
 			inPolicies_lock.unlock();
 		}
@@ -324,9 +451,12 @@ public class Queue implements Runnable {
 				policies = new ArrayList< OutgoingMsgPolicyInterface<MessageType> >();
 				outPolicies.put(type, policies);
 				policies.add(policy);
+				outDispatch.clear();
 				
-			} else if (! policies.contains(policy)) 
+			} else if (! policies.contains(policy)) {
 				policies.add(policy); 
+				outDispatch.clear();
+			}
 		} finally {
 			outPolicies_lock.unlock();
 		}
@@ -337,11 +467,173 @@ public class Queue implements Runnable {
 	 * @param msg the message
 	 */
 	public void addToInbox (MessageWrapper msg) {
-		try {
-			inbox.put(msg);
-		} catch (InterruptedException e) { } // should never happen because the queue has infinite capacity
+		inbox.put(msg);
+		
+		if (this.scheduled != null) 
+			this.schedule();
+	}
+	
+	/** Sets the order in which the messages in the inbox are processed
+	 * 
+	 * By default, messages are processed in the order in which they were received. 
+	 * The messages already in the inbox are not reordered. 
+	 * @param scheduler 	the scheduler, or \c null to process messages in the order in which they were received
+	 */
+	public void setInboxScheduler (InboxScheduler scheduler) {
+		this.inbox.setScheduler(scheduler);
+	}
+	
+	/** @return the scheduler that decides the order in which the messages in the inbox are processed, if any */
+	public InboxScheduler getInboxScheduler () {
+		return this.inbox.getScheduler();
+	}
+	
+	/** @return the number of messages that were discarded from the inbox because they were superseded by newer messages */
+	public long getNbrCollapsedMsgs () {
+		return this.inbox.getNbrCollapsed();
+	}
+	
+	/** In SHARED_EXECUTOR mode, passes a task to the shared pool to process the inbox, unless such a task is already pending or running */
+	private void schedule () {
+		if (this.keepGoing && this.scheduled.compareAndSet(false, true)) 
+			sharedPool.execute(this::processInbox);
+	}
+	
+	/** In SHARED_EXECUTOR mode, processes the messages in the inbox
+	 * 
+	 * Only processes up to MAX_NBR_MSGS_PER_TASK messages, and then re-schedules itself, so that the other queues get a chance to run. 
+	 */
+	private void processInbox () {
+		
+		MessageWrapper next = null;
+		for (int i = 0; i < MAX_NBR_MSGS_PER_TASK && this.keepGoing && (next = this.inbox.poll()) != null; i++) 
+			this.process(next);
+		
+		if (next == null) // the inbox is empty
+			this.flush(); // send the pending batches before becoming idle
+		
+		// Check for messages that might have been added after we last polled the inbox
+		this.scheduled.set(false);
+		if (! this.inbox.isEmpty()) 
+			this.schedule();
 	}
 
+	/** Enables or disables the batching of outgoing messages
+	 * 
+	 * When batching is enabled, messages sent to the same output pipe are grouped into batches, which are passed to 
+	 * QueueOutputPipeInterface#pushMessages(List) when they reach \a maxBatchSize messages, when their oldest message 
+	 * has waited for \a maxBatchDelay ms, when flush() is called, or when the queue has no more incoming messages to process. 
+	 * @param maxBatchSize 	the maximum number of messages in a batch; batching is disabled if it is lower than 2
+	 * @param maxBatchDelay the maximum time (in ms) a message can wait in a batch before it is sent; if 0, messages only 
+	 * 						wait until the batch is full, flush() is called, or the queue becomes idle
+	 */
+	public void setBatching (int maxBatchSize, long maxBatchDelay) {
+		
+		this.flush();
+		
+		try {
+			output_lock.lock();
+			this.maxBatchSize = maxBatchSize;
+			this.maxBatchDelay = maxBatchDelay;
+			this.batches = (maxBatchSize < 2 ? null : new HashMap< QueueOutputPipeInterface, ArrayList<MessageWrapper> > ());
+		} finally {
+			output_lock.unlock();
+		}
+	}
+	
+	/** Sends all pending batches of messages, and flushes the corresponding output pipes
+	 * 
+	 * Algorithms should call this method at the end of a synchronous round, after sending all the messages of the round. 
+	 * It does nothing if batching is disabled. 
+	 * @see Queue#setBatching(int, long)
+	 */
+	public void flush () {
+		
+		if (this.batches == null) 
+			return;
+		
+		try {
+			output_lock.lock();
+			
+			if (this.batches == null) 
+				return;
+			
+			// The pipes become the owners of the batches, which are therefore not reused
+			for (Map.Entry< QueueOutputPipeInterface, ArrayList<MessageWrapper> > entry : this.batches.entrySet()) {
+				QueueOutputPipeInterface outPipe = entry.getKey();
+				outPipe.pushMessages(entry.getValue());
+				outPipe.flush();
+			}
+			this.batches.clear();
+			
+			// Cancel the scheduled flush, which would otherwise prematurely send the next batches
+			if (this.scheduledFlush != null) {
+				this.scheduledFlush.cancel(false);
+				this.scheduledFlush = null;
+			}
+			
+		} finally {
+			output_lock.unlock();
+		}
+	}
+	
+	/** Sets the timer used to send the batches whose time window has expired
+	 * @param timer 	the timer; if \c null, the timer shared by all queues is used
+	 */
+	void setBatchTimer (ScheduledExecutorService timer) {
+		try {
+			output_lock.lock();
+			this.batchTimer = timer;
+		} finally {
+			output_lock.unlock();
+		}
+	}
+	
+	/** Schedules a call to flush() after the maximum batch delay
+	 * @note The output lock must be held by the caller. 
+	 */
+	private void scheduleFlush () {
+		
+		ScheduledExecutorService timer = this.batchTimer;
+		if (timer == null) {
+			synchronized (Queue.class) {
+				if (sharedBatchTimer == null) {
+					sharedBatchTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+						Thread thread = new Thread (task, "QueueBatchTimer");
+						thread.setDaemon(true);
+						return thread;
+					});
+				}
+				timer = sharedBatchTimer;
+			}
+		}
+		
+		this.scheduledFlush = timer.schedule(this::flush, this.maxBatchDelay, TimeUnit.MILLISECONDS);
+	}
+	
+	/** Adds a message to the batch for a given output pipe, and sends the batch if it is full
+	 * @param outPipe 	the output pipe
+	 * @param msgWrap 	the message
+	 * @note The output lock must be held by the caller. 
+	 */
+	private void addToBatch (QueueOutputPipeInterface outPipe, MessageWrapper msgWrap) {
+		
+		ArrayList<MessageWrapper> batch = this.batches.get(outPipe);
+		if (batch == null) {
+			batch = new ArrayList<MessageWrapper> (this.maxBatchSize);
+			this.batches.put(outPipe, batch);
+		}
+		batch.add(msgWrap);
+		
+		if (batch.size() >= this.maxBatchSize) { // the batch is full
+			this.batches.remove(outPipe); // the pipe becomes the owner of the batch, and the next message starts a new one
+			outPipe.pushMessages(batch);
+			outPipe.flush();
+			
+		} else if (this.scheduledFlush == null && this.maxBatchDelay > 0) 
+			this.scheduleFlush();
+	}
+	
 	/** Sends a message to a specified recipient
 	 * @param to recipient of the message
 	 * @param msg message to be sent
@@ -371,20 +663,64 @@ public class Queue implements Runnable {
 			inPolicies_lock.lock();
 			
 			// Notify the listeners for this message type and its ancestors
-			for (MessageType type = msg.getType(); type != null; type = type.getParent()) {
-				ArrayList< IncomingMsgPolicyInterface<MessageType> > modules = inPolicies.get(type);
-				if (modules != null) {
-					ArrayList< IncomingMsgPolicyInterface<MessageType> > policies = new ArrayList< IncomingMsgPolicyInterface<MessageType> > (modules);
-					for (IncomingMsgPolicyInterface<MessageType> module : policies) // iterate over a copy in case a listener wants to add more listeners
-						module.notifyIn(msg, toAgent);
-				}
-			}
+			for (IncomingMsgPolicyInterface<MessageType> module : this.getInListeners(msg.getType())) 
+				module.notifyIn(msg, toAgent);
 			
 		} finally {
 			inPolicies_lock.unlock();
 		}
 	}
 	
+	/** Looks up the dispatch table for incoming messages
+	 * @param type 	a message type
+	 * @return the listeners registered for this message type and its ancestors, starting with the most specific type
+	 * @warning The caller must hold the lock on inPolicies, if any. 
+	 */
+	protected IncomingMsgPolicyInterface<MessageType>[] getInListeners (MessageType type) {
+		
+		IncomingMsgPolicyInterface<MessageType>[] listeners = this.inDispatch.get(type);
+		
+		if (listeners == null) { // first message of this type since the listeners last changed
+			ArrayList< IncomingMsgPolicyInterface<MessageType> > all = new ArrayList< IncomingMsgPolicyInterface<MessageType> > ();
+			for (MessageType ancestor = type; ancestor != null; ancestor = ancestor.getParent()) {
+				ArrayList< IncomingMsgPolicyInterface<MessageType> > modules = this.inPolicies.get(ancestor);
+				if (modules != null) 
+					all.addAll(modules);
+			}
+			
+			@SuppressWarnings("unchecked")
+			IncomingMsgPolicyInterface<MessageType>[] array = all.toArray((IncomingMsgPolicyInterface<MessageType>[]) new IncomingMsgPolicyInterface<?> [all.size()]);
+			this.inDispatch.put(type.intern(), listeners = array);
+		}
+		
+		return listeners;
+	}
+	
+	/** Looks up the dispatch table for outgoing messages
+	 * @param type 	a message type
+	 * @return the listeners registered for this message type and its ancestors, starting with the most specific type
+	 * @warning The caller must hold the lock on outPolicies, if any. 
+	 */
+	protected OutgoingMsgPolicyInterface<MessageType>[] getOutListeners (MessageType type) {
+		
+		OutgoingMsgPolicyInterface<MessageType>[] listeners = this.outDispatch.get(type);
+		
+		if (listeners == null) { // first message of this type since the listeners last changed
+			ArrayList< OutgoingMsgPolicyInterface<MessageType> > all = new ArrayList< OutgoingMsgPolicyInterface<MessageType> > ();
+			for (MessageType ancestor = type; ancestor != null; ancestor = ancestor.getParent()) {
+				ArrayList< OutgoingMsgPolicyInterface<MessageType> > modules = this.outPolicies.get(ancestor);
+				if (modules != null) 
+					all.addAll(modules);
+			}
+			
+			@SuppressWarnings("unchecked")
+			OutgoingMsgPolicyInterface<MessageType>[] array = all.toArray((OutgoingMsgPolicyInterface<MessageType>[]) new OutgoingMsgPolicyInterface<?> [all.size()]);
+			this.outDispatch.put(type.intern(), listeners = array);
+		}
+		
+		return listeners;
+	}
+	
 	/** Notifies the outgoing message listeners of a message
 	 * @param fromAgent 	the sender agent
 	 * @param msg 			the message
@@ -400,14 +736,12 @@ public class Queue implements Runnable {
 			// Notify the listeners registered for this message's type and its ancestors
 			assert msg != null;
 			assert this.outPolicies != null;
-			for (MessageType type = msg.getType(); type != null; type = type.getParent()) {
-				ArrayList< OutgoingMsgPolicyInterface<MessageType> > modules = this.outPolicies.get(type); /// @bug very rarely throws a NullPointerException
-				if (modules != null) 
-					for (java.util.Iterator< OutgoingMsgPolicyInterface<MessageType> > iter = modules.iterator(); !discard && iter.hasNext(); )
-						if (iter.next().notifyOut(fromAgent, msg, toAgents) == OutgoingMsgPolicyInterface.Decision.DISCARD) 
-							discard = true;
+			for (OutgoingMsgPolicyInterface<MessageType> module : this.getOutListeners(msg.getType())) {
+				if (module.notifyOut(fromAgent, msg, toAgents) == OutgoingMsgPolicyInterface.Decision.DISCARD) {
+					discard = true;
+					break;
+				}
 			}
-
 			
 		} finally {
 			this.outPolicies_lock.unlock();
@@ -437,7 +771,10 @@ public class Queue implements Runnable {
 					this.recordStats(to, msgWrap.getMessage());
 			
 			// Send the message
-			outPipe.pushMessage(msgWrap);
+			if (this.batches == null) 
+				outPipe.pushMessage(msgWrap);
+			else 
+				this.addToBatch(outPipe, msgWrap);
 		} finally {
 			output_lock.unlock();
 		}
@@ -487,6 +824,12 @@ public class Queue implements Runnable {
 			if (maxSize == null || size > maxSize) 
 				this.maxMsgSizes.put(type, size);
 			
+			final long saved = this.monitor.getLastBytesSaved();
+			if (saved != 0) {
+				Long totalSaved = this.msgSizesSaved.get(type);
+				this.msgSizesSaved.put(type, (totalSaved == null ? saved : totalSaved + saved));
+			}
+			
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -531,8 +874,10 @@ public class Queue implements Runnable {
 	
 	/** Kills the queue, making it unusable */
 	public void end () {
+		this.flush();
 		keepGoing = false;
-		myThread.interrupt();
+		if (myThread != null) 
+			myThread.interrupt();
 		try {
 			input_lock.lock();
 			for (QueueInputPipeInterface input : inputs) 
@@ -554,23 +899,36 @@ public class Queue implements Runnable {
 
 			// Retrieve the next message, blocking while there is no message
 			try {
-				msgWrap = this.inbox.take(); // blocks
+				MessageWrapper next = (this.batches == null ? null : this.inbox.poll());
+				if (next == null) {
+					this.flush(); // send the pending batches before becoming idle
+					next = this.inbox.take(); // blocks
+				}
+				this.process(next);
 				
 			} catch (InterruptedException e) { // the end() method has been called
 				return;
 			}
-			Message msg = msgWrap.getMessage();
-			
-//			System.out.println(msg);
-			
-			// make sure the nccc counter is consistent with the nccc stamp
-			// of this message
-			this.updateNCCCs(msgWrap.getNCCCs());
-			
-			// Notify the incoming object policies of the message
-			this.notifyInListeners(msg, this.problem != null ? this.problem.getAgent() : null);
 		}
 	}
+	
+	/** Processes an incoming message
+	 * @param msgWrap 	the wrapped message
+	 */
+	private void process (MessageWrapper msgWrap) {
+		
+		this.msgWrap = msgWrap;
+		Message msg = msgWrap.getMessage();
+		
+//		System.out.println(msg);
+		
+		// make sure the nccc counter is consistent with the nccc stamp
+		// of this message
+		this.updateNCCCs(msgWrap.getNCCCs());
+		
+		// Notify the incoming object policies of the message
+		this.notifyInListeners(msg, this.problem != null ? this.problem.getAgent() : null);
+	}
 
 	/** Completely removes the input policy from all lists of listeners
 	 * @param policy the policy to be removed
@@ -582,6 +940,7 @@ public class Queue implements Runnable {
 			// Go through the list of policies, regardless of the message type
 			for (ArrayList< IncomingMsgPolicyInterface<MessageType> > policies : inPolicies.values()) 
 				policies.remove(policy);
+			inDispatch.clear();
 
 		} finally {
 			inPolicies_lock.unlock();
@@ -598,6 +957,7 @@ public class Queue implements Runnable {
 				for (Iterator< IncomingMsgPolicyInterface<MessageType> > iter = policies.iterator(); iter.hasNext(); ) 
 					if (iter.next() instanceof StatsReporter) 
 						iter.remove();
+			this.inDispatch.clear();
 			
 		} finally {
 			this.inPolicies_lock.unlock();
@@ -614,6 +974,7 @@ public class Queue implements Runnable {
 			// Go through the list of policies, regardless of the message type
 			for (ArrayList< OutgoingMsgPolicyInterface<MessageType> > policies : outPolicies.values()) 
 				policies.remove(policy);
+			outDispatch.clear();
 
 		} finally {
 			outPolicies_lock.unlock();
@@ -725,6 +1086,11 @@ public class Queue implements Runnable {
 		return maxMsgSizes;
 	}
 	
+	/** @return for each message type, the number of bytes saved by the compact encoding of hypercubes in messages of that type */
+	public HashMap<MessageType, Long> getMsgSizesSaved() {
+		return msgSizesSaved;
+	}
+	
 	/** Resets the metrics statistics */
 	public void resetStats () {
 		
@@ -734,6 +1100,7 @@ public class Queue implements Runnable {
 			this.msgSizes = new HashMap<MessageType, Long> ();
 			this.msgSizesSent = new HashMap<Object, Long> ();			
 			this.maxMsgSizes = new HashMap<MessageType, Long> ();
+			this.msgSizesSaved = new HashMap<MessageType, Long> ();
 		}
 		if(this.problem != null) 
 			msgWrap.setNCCCs(-1);
@@ -748,11 +1115,29 @@ public class Queue implements Runnable {
 		if (this.measureMsgs) {
 			this.monitor.close();
 			try {
-				this.monitor = new MsgSizeMonitor ();
+				this.monitor = new MsgSizeMonitor (this.msgSizeSampling);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 	
+	/** Sets the sampling period used to measure message sizes, and resets the MsgSizeMonitor
+	 * 
+	 * For each message type and destination, only the first two messages and then one message every \a period messages 
+	 * are serialized to measure their sizes; the other messages are assumed to have the same size as the last measured one. 
+	 * @param period 	the sampling period; 1 to measure the sizes of all messages exactly
+	 * @see MsgSizeMonitor
+	 */
+	public void setMsgSizeSampling (int period) {
+		
+		try {
+			output_lock.lock();
+			this.msgSizeSampling = period;
+			this.resetMsgSizeMonitor();
+		} finally {
+			output_lock.unlock();
+		}
+	}
+	
 }
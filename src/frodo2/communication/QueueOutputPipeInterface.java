@@ -22,6 +22,8 @@ How to contact the authors:
 
 package frodo2.communication;
 
+import java.util.List;
+
 /** Interface for classes used as an output of a Queue object
  * @author Thomas Leaute
  *
@@ -35,6 +37,25 @@ public interface QueueOutputPipeInterface {
 	 * and do it from within the thread. If this method attempts to read directly from the thread, this could cause a race condition. 
 	 */
 	public void pushMessage (MessageWrapper msg);
+	
+	/** Pushes a batch of messages into the pipe
+	 * 
+	 * Pipes that can send several messages at once should override this method, which by default pushes the messages one by one. 
+	 * The pipe becomes the owner of the list, which the caller must not modify after this call; a pipe may therefore 
+	 * keep the list and send its messages later. 
+	 * @param msgs 	the messages to be pushed into the pipe, in order
+	 * @see Queue#setBatching(int, long)
+	 */
+	public default void pushMessages (List<MessageWrapper> msgs) {
+		for (MessageWrapper msg : msgs) 
+			this.pushMessage(msg);
+	}
+	
+	/** Sends the messages that the pipe may have buffered
+	 * 
+	 * Pipes that buffer messages should override this method, which by default does nothing. 
+	 */
+	public default void flush () { }
 
 	/** Closes the pipe (if relevant) */
 	public void close ();
@@ -25,6 +25,9 @@ package frodo2.communication;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import frodo2.communication.OutgoingMsgPolicyInterface.Decision;
 
@@ -293,12 +296,24 @@ public class QueueTest extends TestCase {
 	
 	/** The incoming object policy used for the tests */
 	protected ConstantMsgPolicy decider;
+	
+	/** The way in which the queues should process their incoming messages */
+	private final Queue.ExecutionMode mode;
 
 	/** Generates a test using only the input test method
 	 * @param method the test method
 	 */
 	public QueueTest(String method) {
+		this (method, Queue.ExecutionMode.THREAD);
+	}
+
+	/** Constructor
+	 * @param method 	the test method
+	 * @param mode 		the way in which the queues should process their incoming messages
+	 */
+	public QueueTest(String method, Queue.ExecutionMode mode) {
 		super (method);
+		this.mode = mode;
 	}
 
 	/** @return the test suite */
@@ -328,6 +343,26 @@ public class QueueTest extends TestCase {
 		testSuite.addTest(testTmp);
 		
 		testSuite.addTest(new QueueTest ("testOutgoingListener"));
+		testSuite.addTest(new QueueTest ("testListenerChanges"));
+		testSuite.addTest(new QueueTest ("testMessageTypeInterning"));
+		
+		testTmp = new TestSuite ("Tests the batching of outgoing messages");
+		testTmp.addTest(new RepeatedTest (new QueueTest ("testBatchSize", Queue.ExecutionMode.SHARED_EXECUTOR), 100));
+		testTmp.addTest(new RepeatedTest (new QueueTest ("testBatchDelay", Queue.ExecutionMode.SHARED_EXECUTOR), 100));
+		testTmp.addTest(new RepeatedTest (new QueueTest ("testBatchWhenIdle"), 100));
+		testSuite.addTest(testTmp);
+		
+		for (Queue.ExecutionMode mode : new Queue.ExecutionMode[] { Queue.ExecutionMode.VIRTUAL_THREAD, Queue.ExecutionMode.SHARED_EXECUTOR }) {
+			testTmp = new TestSuite ("Tests for Queue in " + mode + " mode");
+			testTmp.addTest(new QueueTest ("testForward", mode));
+			testTmp.addTest(new QueueTest ("testForwardByType", mode));
+			testTmp.addTest(new RepeatedTest (new QueueTest ("testMultipleForward", mode), 1000));
+			testTmp.addTest(new QueueTest ("testSendToSelf", mode));
+			testTmp.addTest(new QueueTest ("testSendToMultiple", mode));
+			testTmp.addTest(new RepeatedTest (new QueueTest ("testBatchWhenIdle", mode), 100));
+			testTmp.addTest(new RepeatedTest (new QueueTest ("testChain", mode), 3));
+			testSuite.addTest(testTmp);
+		}
 		
 		return testSuite;
 	}
@@ -336,7 +371,7 @@ public class QueueTest extends TestCase {
 	 * @see junit.framework.TestCase#setUp()
 	 */
 	public void setUp () {
-		queue = new Queue(true);	
+		queue = new Queue(true, this.mode);	
 		output = new QueueOutputPipeTrivial();
 		queue.addOutputPipe("tester", output);
 		input = new QueueInputPipeTrivial(queue);
@@ -526,4 +561,177 @@ public class QueueTest extends TestCase {
 		assertNull(output.getNextMsg());
 	}
 
+	/** Tests that listeners added or removed after messages have been dispatched are taken into account
+	 * @throws InterruptedException Necessary because it uses Thread.sleep()
+	 */
+	public void testListenerChanges() throws InterruptedException {
+		
+		MessageType parentType = new MessageType ("testListenerChanges");
+		MessageType childType = parentType.newChild("child");
+		this.decider.setForward(null);
+		
+		// No listener forwards the message yet
+		input.addMessage(new Message (childType));
+		Thread.sleep(500); // wait in case the queue has not yet forwarded the message
+		assertNull(output.getNextMsg());
+		
+		// Add a listener for the parent type
+		ConstantMsgPolicy decider2 = new ConstantMsgPolicy("tester", false, parentType);
+		queue.addIncomingMessagePolicy(decider2);
+		Message msg = new Message (childType);
+		input.addMessage(msg);
+		assertEquals(msg, output.getNextMsgTimed().getMessage());
+		
+		// Remove the listener
+		queue.deleteIncomingMessagePolicy(decider2);
+		input.addMessage(new Message (childType));
+		Thread.sleep(500); // wait in case the queue has not yet forwarded the message
+		assertNull(output.getNextMsg());
+	}
+	
+	/** Tests that the ancestors of a message type are interned */
+	public void testMessageTypeInterning () {
+		
+		MessageType type = new MessageType ("testMessageTypeInterning", "child", "grandchild");
+		MessageType parent = type.getParent();
+		assertEquals(new MessageType ("testMessageTypeInterning", "child"), parent);
+		assertSame(parent, type.getParent());
+		assertSame(parent, new MessageType ("testMessageTypeInterning", "child", "grandchild").getParent());
+		assertSame(parent, parent.intern());
+		assertSame(MessageType.ROOT, MessageType.SYSTEM.getParent());
+		assertSame(MessageType.ROOT, parent.getParent().getParent());
+		assertNull(MessageType.ROOT.getParent());
+	}
+
+	/** Tests the forwarding of a message along a long chain of queues 
+	 * @throws InterruptedException if interrupted while sleeping
+	 */
+	public void testChain () throws InterruptedException {
+		
+		final int nbrQueues = (this.mode == Queue.ExecutionMode.SHARED_EXECUTOR ? 10000 : 1000);
+		
+		// Create the chain of queues, each forwarding incoming messages to the next
+		Queue[] queues = new Queue [nbrQueues];
+		queues[nbrQueues - 1] = this.queue;
+		for (int i = nbrQueues - 2; i >= 0; i--) {
+			queues[i] = new Queue (false, this.mode);
+			queues[i].addIncomingMessagePolicy(new ConstantMsgPolicy ("next", false));
+			queues[i].addOutputQueue("next", queues[i + 1]);
+		}
+		
+		Message msg = new Message (new MessageType ("testChain"));
+		queues[0].sendMessageToSelf(msg);
+		
+		// Wait for the message to reach the end of the chain, without busy waiting so as to leave the CPU to the queues
+		MessageWrapper received = null;
+		for (long timeout = System.currentTimeMillis() + 60000; received == null && System.currentTimeMillis() < timeout; ) {
+			Thread.sleep(10);
+			received = output.getNextMsg();
+		}
+		assertNotNull("Timeout", received);
+		assertEquals(msg, received.getMessage());
+		
+		for (int i = nbrQueues - 2; i >= 0; i--) 
+			queues[i].end();
+	}
+	
+	/** A timer that never runs the tasks on its own, but records them so that they can be run on demand */
+	private static class ManualTimer extends ScheduledThreadPoolExecutor {
+		
+		/** The tasks scheduled so far */
+		private final ArrayList<Runnable> tasks = new ArrayList<Runnable> ();
+		
+		/** The delays of the tasks scheduled so far, in ms */
+		private final ArrayList<Long> delays = new ArrayList<Long> ();
+		
+		/** Constructor */
+		ManualTimer () {
+			super (1);
+		}
+
+		/** Records the task, and returns a future that can be cancelled but never completes
+		 * @see ScheduledThreadPoolExecutor#schedule(Runnable, long, TimeUnit)
+		 */
+		@Override
+		public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+			this.tasks.add(command);
+			this.delays.add(unit.toMillis(delay));
+			return super.schedule(() -> { }, 1, TimeUnit.DAYS);
+		}
+	}
+	
+	/** Tests that batches of messages are sent when they are full, or when the queue is flushed
+	 * 
+	 * This test must be run in SHARED_EXECUTOR mode, in which the queue has no thread of its own that could flush the batches when idle. 
+	 */
+	public void testBatchSize () {
+		
+		queue.setBatching(3, 0);
+		
+		Message msg1 = new Message (new MessageType ("testBatchSize1"));
+		Message msg2 = new Message (new MessageType ("testBatchSize2"));
+		Message msg3 = new Message (new MessageType ("testBatchSize3"));
+		Message msg4 = new Message (new MessageType ("testBatchSize4"));
+		
+		// The first two messages must wait for the batch to be full
+		queue.sendMessage("tester", msg1);
+		queue.sendMessage("tester", msg2);
+		assertNull(output.getNextMsg());
+		
+		queue.sendMessage("tester", msg3);
+		assertEquals(msg1, output.getNextMsg().getMessage());
+		assertEquals(msg2, output.getNextMsg().getMessage());
+		assertEquals(msg3, output.getNextMsg().getMessage());
+		
+		// The last message must wait for the queue to be flushed
+		queue.sendMessage("tester", msg4);
+		assertNull(output.getNextMsg());
+		queue.flush();
+		assertEquals(msg4, output.getNextMsg().getMessage());
+	}
+	
+	/** Tests that batches of messages are sent when their time window has expired 
+	 * 
+	 * This test must be run in SHARED_EXECUTOR mode, in which the queue has no thread of its own that could flush the batches when idle. 
+	 */
+	public void testBatchDelay () {
+		
+		ManualTimer timer = new ManualTimer ();
+		queue.setBatchTimer(timer);
+		queue.setBatching(100, 50);
+		
+		Message msg1 = new Message (new MessageType ("testBatchDelay1"));
+		Message msg2 = new Message (new MessageType ("testBatchDelay2"));
+		
+		// The first message must schedule a flush, and the messages must wait for it
+		queue.sendMessage("tester", msg1);
+		queue.sendMessage("tester", msg2);
+		assertNull(output.getNextMsg());
+		assertEquals(1, timer.tasks.size());
+		assertEquals(50L, timer.delays.get(0).longValue());
+		
+		// Once the time window has expired, the messages must be sent
+		timer.tasks.get(0).run();
+		assertEquals(msg1, output.getNextMsg().getMessage());
+		assertEquals(msg2, output.getNextMsg().getMessage());
+		
+		// The next message must schedule a new flush
+		queue.sendMessage("tester", msg1);
+		assertEquals(2, timer.tasks.size());
+		timer.tasks.get(1).run();
+		assertEquals(msg1, output.getNextMsg().getMessage());
+		
+		timer.shutdownNow();
+	}
+	
+	/** Tests that the messages sent while processing an incoming message are sent once the queue is idle */
+	public void testBatchWhenIdle () {
+		
+		queue.setBatching(100, 0);
+		
+		Message msg = new Message (new MessageType ("testBatchWhenIdle"));
+		input.addMessage(msg);
+		assertEquals(msg, output.getNextMsgTimed().getMessage());
+	}
+
 }
@@ -118,9 +118,12 @@ public class CentralMailer extends Thread {
 				policies = new ArrayList< IncomingMsgPolicyInterface<MessageType> >();
 				inPolicies.put(type, policies);
 				policies.add(policy);
+				inDispatch.clear();
 
-			} else if (! policies.contains(policy)) 
+			} else if (! policies.contains(policy)) {
 				policies.add(policy); 
+				inDispatch.clear();
+			}
 
 			policy.setQueue(this);
 		}
@@ -137,9 +140,12 @@ public class CentralMailer extends Thread {
 				policies = new ArrayList< OutgoingMsgPolicyInterface<MessageType> >();
 				outPolicies.put(type, policies);
 				policies.add(policy);
+				outDispatch.clear();
 
-			} else if (! policies.contains(policy)) 
+			} else if (! policies.contains(policy)) {
 				policies.add(policy); 
+				outDispatch.clear();
+			}
 
 			policy.setQueue(this);
 		}
@@ -155,7 +161,7 @@ public class CentralMailer extends Thread {
 		 */
 		@Override
 		public void addToInbox (MessageWrapper msg) {
-			outbox.add(msg);
+			post(null, msg);
 		}
 
 		/** Removes this agent from the lists of destinations of all messages in the central priority queue */
@@ -189,7 +195,7 @@ public class CentralMailer extends Thread {
 		/** @see Queue#getCurrentTime() */
 		@Override
 		public long getCurrentTime() {
-			return time + (System.nanoTime() - startTime);
+			return time + (now() - startTime);
 		}
 
 		/** @see Queue#getInboxSize() */
@@ -216,14 +222,8 @@ public class CentralMailer extends Thread {
 		protected void notifyInListeners (Message msg, Object toAgent) {
 
 			// Notify the listeners for this message type and its ancestors
-			for (MessageType type = msg.getType(); type != null; type = type.getParent()) {
-				ArrayList< IncomingMsgPolicyInterface<MessageType> > modules = inPolicies.get(type);
-				if (modules != null) {
-					ArrayList< IncomingMsgPolicyInterface<MessageType> > policies = new ArrayList< IncomingMsgPolicyInterface<MessageType> > (modules);
-					for (IncomingMsgPolicyInterface<MessageType> module : policies) // iterate over a copy in case a listener wants to add more listeners
-						module.notifyIn(msg, toAgent);
-				}
-			}
+			for (IncomingMsgPolicyInterface<MessageType> module : this.getInListeners(msg.getType())) 
+				module.notifyIn(msg, toAgent);
 		}
 
 		/** Does the same as the superclass, but without the need to synchronize on a lock
@@ -233,13 +233,9 @@ public class CentralMailer extends Thread {
 		protected boolean notifyOutListeners (Object fromAgent, Message msg, Collection<? extends Object> toAgents) {
 
 			// Notify the listeners registered for this message's type and its ancestors
-			for (MessageType type = msg.getType(); type != null; type = type.getParent()) {
-				ArrayList< OutgoingMsgPolicyInterface<MessageType> > modules = this.outPolicies.get(type);
-				if (modules != null) 
-					for (OutgoingMsgPolicyInterface<MessageType> module : modules) 
-						if (module.notifyOut(fromAgent, msg, toAgents) == OutgoingMsgPolicyInterface.Decision.DISCARD) 
-							return true;
-			}
+			for (OutgoingMsgPolicyInterface<MessageType> module : this.getOutListeners(msg.getType())) 
+				if (module.notifyOut(fromAgent, msg, toAgents) == OutgoingMsgPolicyInterface.Decision.DISCARD) 
+					return true;
 
 			return false;
 		}
@@ -290,7 +286,7 @@ public class CentralMailer extends Thread {
 			
 			// Deliver the message
 			assert queues.containsKey(to) : "Unknown destination: " + to;
-			queues.get(to).addToInbox(msgWrap);
+			post(this, msgWrap);
 		}
 
 		/** @see Queue#sendMessageToMulti(Collection, Message) */
@@ -316,7 +312,7 @@ public class CentralMailer extends Thread {
 				msg.fakeSerialize();
 			
 			// Add the message to the central outbox
-			outbox.add(msgWrap);
+			post(this, msgWrap);
 		}
 
 		/** @see Queue#sendMessageToSelf(Message) */
@@ -325,6 +321,12 @@ public class CentralMailer extends Thread {
 			this.sendMessage(this.agent, msg);
 		}
 
+		/** @see java.lang.Object#toString() */
+		@Override
+		public String toString () {
+			return "FakeQueue for " + this.agent;
+		}
+
 		/** Sets the current message wrapper
 		 * @param wrap 	current message wrapper
 		 */
@@ -335,7 +337,7 @@ public class CentralMailer extends Thread {
 		/** Sets the queue's timestamp to the current time */
 		protected void freezeTime () {
 			if (this.updateTime) {
-				this.time += System.nanoTime() - startTime;
+				this.time += now() - startTime;
 			}
 		}
 
@@ -346,7 +348,7 @@ public class CentralMailer extends Thread {
 
 			if(updateTime && msgTime > this.time) 
 				this.time = msgTime;
-			startTime = System.nanoTime();
+			startTime = now();
 		}
 
 	}
@@ -420,11 +422,11 @@ public class CentralMailer extends Thread {
 	protected boolean idleMsgsSent = false;
 	
 	/** The eavesdroppers for incoming messages, per message type */
-	private HashMap< MessageType, Collection< IncomingMsgPolicyInterface<MessageType> > > eavesdroppersIn = 
+	protected HashMap< MessageType, Collection< IncomingMsgPolicyInterface<MessageType> > > eavesdroppersIn = 
 			new HashMap< MessageType, Collection< IncomingMsgPolicyInterface<MessageType> > > ();
 	
 	/** The eavesdroppers for outgoing messages */
-	private HashMap< MessageType, Collection< OutgoingMsgPolicyInterface<MessageType> > > eavesdroppersOut = 
+	protected HashMap< MessageType, Collection< OutgoingMsgPolicyInterface<MessageType> > > eavesdroppersOut = 
 			new HashMap< MessageType, Collection< OutgoingMsgPolicyInterface<MessageType> > > ();
 
 	/**
@@ -551,65 +553,7 @@ public class CentralMailer extends Thread {
 			while (true) {
 
 				// Process the messages in the outbox
-				for (MessageWrapper outWrap : this.outbox) {
-					
-					//				System.out.println("Out: " + outWrap);
-					assert outWrap.getTime() < 0 || this.lastTimeStamp <= outWrap.getTime() : 
-						"Attempting to send the following message, \nwhich has a timestamp lower than " +
-						"the timetamp of the last released message (" + this.lastTimeStamp + "):\n" + outWrap;
-
-					// Record stats about this message if needed
-					Message outMsg = outWrap.getMessage();
-					if (this.measuringMsgs) 
-						for (Object dest : outWrap.getDestinations()) // for each destination
-							if (! dest.equals(agent)) // skip virtual messages
-								queue.recordStats(dest, outMsg);
-
-					// Notify the eavesdroppers of the outgoing message(s)
-					for (MessageType type = outMsg.getType(); type != null; type = type.getParent()) {
-						Collection< OutgoingMsgPolicyInterface<MessageType> > outs = this.eavesdroppersOut.get(type);
-						if (outs != null) 
-							for (OutgoingMsgPolicyInterface<MessageType> eave : outs) 
-								eave.notifyOut(agent, outMsg, outWrap.getDestinations());
-					}
-					
-					// Add delays if required
-					if (this.delayGenerator != null) {
-
-						// Each message destination must get a different delay
-						Collection<Object> destinations = outWrap.getDestinations();
-						if (destinations.size() == 1) { // only one destination
-
-							// No delay for virtual messages or messages sent to the stats monitor
-							Object dest = destinations.iterator().next();
-							if (! agent.equals(dest) && ! dest.equals(AgentInterface.STATS_MONITOR)) 
-								outWrap.addDelay(this.delayGenerator.generateDelay());
-
-							this.orderedQueue.add(outWrap);
-
-						} else { // create a new message wrapper for each destination and add it to the priority queue
-							assert destinations.size() > 0;
-							long ncccs = outWrap.getNCCCs();
-							long timeStamp = outWrap.getTime();
-							int msgCounter = outWrap.getMessageCounter();
-
-							for (Object dest : destinations) {
-								ArrayList<Object> singleDest = new ArrayList<Object> (1);
-								singleDest.add(dest);
-								MessageWrapper wrap = new MessageWrapper (outMsg, ncccs, timeStamp, singleDest, msgCounter);
-
-								// No delay for virtual messages or messages sent to the stats monitor
-								if (! agent.equals(dest) && ! dest.equals(AgentInterface.STATS_MONITOR)) 
-									wrap.addDelay(this.delayGenerator.generateDelay());
-
-								this.orderedQueue.add(wrap);
-							}
-						}
-
-					} else // no delays; just add the message to the priority queue as is
-						this.orderedQueue.add(outWrap);
-				}
-
+				this.releaseOutbox(this.outbox, agent, queue);
 				this.outbox.clear();
 
 				//			System.out.println("In: " + this.orderedQueue.peek());
@@ -678,26 +622,143 @@ public class CentralMailer extends Thread {
 					nbrAgentsLeft--;
 			}
 			
-		} catch (OutOfMemoryError e) {
-			MessageWrapper wrap = new MessageWrapper(new Message(OutOfMemMsg));
-			FakeQueue queue = this.queues.get(Daemon.DAEMON);
-			stop = true;
-			// Notify the recipient's modules
-			queue.notifyInListeners(wrap.getMessage(), queue.agent);
+		} catch (Throwable e) {
+			this.abort(e);
 			this.lock.unlock();
 			return false;
-			
-		} catch (Throwable e) {
+		}
+	}
+	
+	/** Stops the execution after an error, and notifies the daemon's modules
+	 * @param e 	the error
+	 */
+	protected void abort (Throwable e) {
+		
+		MessageType type = OutOfMemMsg;
+		if (! (e instanceof OutOfMemoryError)) {
 			System.err.println("The CentralMailer was interrupted due to the following exception:");
 			e.printStackTrace();
-			MessageWrapper wrap = new MessageWrapper(new Message(ERROR_MSG));
-			FakeQueue queue = this.queues.get(Daemon.DAEMON);
-			stop = true;
-			queue.notifyInListeners(wrap.getMessage(), queue.agent);
-			this.lock.unlock();
-			return false;
+			type = ERROR_MSG;
+		}
+		
+		this.stop = true;
+		FakeQueue queue = this.queues.get(Daemon.DAEMON);
+		if (queue != null) // notify the daemon's modules
+			queue.notifyInListeners(new Message(type), queue.agent);
+	}
+	
+	/** @return the current time in nanoseconds, used to measure the time the agents spend processing messages */
+	protected long now () {
+		return System.nanoTime();
+	}
+
+	/** Adds a message sent by an agent to the outbox
+	 * @param sender 	the sender's queue, or \c null if the message was not sent by an agent
+	 * @param msgWrap 	the message
+	 */
+	protected void post (FakeQueue sender, MessageWrapper msgWrap) {
+		this.outbox.add(msgWrap);
+	}
+	
+	/** Records statistics about the messages in an outbox, notifies the eavesdroppers, and moves the messages to the priority queue
+	 * @param outbox 	the outbox
+	 * @param agent 	the sender agent
+	 * @param queue 	the sender agent's queue
+	 */
+	protected void releaseOutbox (Collection<MessageWrapper> outbox, Object agent, FakeQueue queue) {
+		
+		for (MessageWrapper outWrap : outbox) {
+			
+			//			System.out.println("Out: " + outWrap);
+			assert outWrap.getTime() < 0 || this.lastTimeStamp <= outWrap.getTime() : 
+				"Attempting to send the following message, \nwhich has a timestamp lower than " +
+				"the timetamp of the last released message (" + this.lastTimeStamp + "):\n" + outWrap;
+
+			// Record stats about this message if needed
+			Message outMsg = outWrap.getMessage();
+			if (this.measuringMsgs) 
+				for (Object dest : outWrap.getDestinations()) // for each destination
+					if (! dest.equals(agent)) // skip virtual messages
+						queue.recordStats(dest, outMsg);
+
+			// Notify the eavesdroppers of the outgoing message(s)
+			for (MessageType type = outMsg.getType(); type != null; type = type.getParent()) {
+				Collection< OutgoingMsgPolicyInterface<MessageType> > outs = this.eavesdroppersOut.get(type);
+				if (outs != null) 
+					for (OutgoingMsgPolicyInterface<MessageType> eave : outs) 
+						eave.notifyOut(agent, outMsg, outWrap.getDestinations());
+			}
+			
+			// Add delays if required
+			if (this.delayGenerator != null) {
+
+				// Each message destination must get a different delay
+				Collection<Object> destinations = outWrap.getDestinations();
+				if (destinations.size() == 1) { // only one destination
+
+					// No delay for virtual messages or messages sent to the stats monitor
+					Object dest = destinations.iterator().next();
+					if (! agent.equals(dest) && ! dest.equals(AgentInterface.STATS_MONITOR)) 
+						outWrap.addDelay(this.delayGenerator.generateDelay());
+
+					this.orderedQueue.add(outWrap);
+
+				} else { // create a new message wrapper for each destination and add it to the priority queue
+					assert destinations.size() > 0;
+					long ncccs = outWrap.getNCCCs();
+					long timeStamp = outWrap.getTime();
+					int msgCounter = outWrap.getMessageCounter();
+
+					for (Object dest : destinations) {
+						ArrayList<Object> singleDest = new ArrayList<Object> (1);
+						singleDest.add(dest);
+						MessageWrapper wrap = new MessageWrapper (outMsg, ncccs, timeStamp, singleDest, msgCounter);
+
+						// No delay for virtual messages or messages sent to the stats monitor
+						if (! agent.equals(dest) && ! dest.equals(AgentInterface.STATS_MONITOR)) 
+							wrap.addDelay(this.delayGenerator.generateDelay());
+
+						this.orderedQueue.add(wrap);
+					}
+				}
+
+			} else // no delays; just add the message to the priority queue as is
+				this.orderedQueue.add(outWrap);
+		}
+	}
+	
+	/** Notifies the eavesdroppers of an incoming message
+	 * @param wrap 		the message
+	 * @param agent 	the recipient agent
+	 */
+	protected void notifyEavesdroppers (MessageWrapper wrap, Object agent) {
+		
+		for (MessageType type = wrap.getMessage().getType(); type != null; type = type.getParent()) {
+			Collection< IncomingMsgPolicyInterface<MessageType> > ins = this.eavesdroppersIn.get(type);
+			if (ins != null) 
+				for (IncomingMsgPolicyInterface<MessageType> eave : ins) 
+					eave.notifyIn(wrap.getMessage(), agent);
 		}
 	}
+	
+	/** Delivers a message to the recipient agent's modules, measuring the time it takes to process it
+	 * @param wrap 		the message
+	 * @param queue 	the recipient agent's queue
+	 */
+	protected void deliver (MessageWrapper wrap, FakeQueue queue) {
+		
+		// Update the recipient's NCCC counter if necessary
+		queue.updateNCCCs(wrap.getNCCCs());
+
+		// Update the recipient's timestamp and start time if necessary
+		queue.updateTime(wrap.getTime());
+
+		// Notify the recipient's modules
+		queue.notifyInListeners(wrap.getMessage(), queue.agent); /// @bug Store the message if required
+
+		// Stop measuring time
+		queue.freezeTime();
+	}
 
 	/** Waits for a message to be available and then delivers it
 	 * @see java.lang.Thread#run() 
@@ -728,27 +789,14 @@ public class CentralMailer extends Thread {
 				assert this.currentMsg != null;
 
 				// Notify the eavesdroppers of the incoming message
-				for (MessageType type = this.currentMsg.getMessage().getType(); type != null; type = type.getParent()) {
-					Collection< IncomingMsgPolicyInterface<MessageType> > ins = this.eavesdroppersIn.get(type);
-					if (ins != null) 
-						for (IncomingMsgPolicyInterface<MessageType> eave : ins) 
-							eave.notifyIn(this.currentMsg.getMessage(), this.currentQueue.agent);
-				}
+				this.notifyEavesdroppers(this.currentMsg, this.currentQueue.agent);
 				
-				// Update the recipient's NCCC counter if necessary
-				this.currentQueue.updateNCCCs(this.currentMsg.getNCCCs());
-
-				// Update the recipient's timestamp and start time if necessary
 				assert this.checkTimestamp(this.currentMsg.getTime()) : 
 					"Attempting to release the following message, which has a timestamp lower than " +
 					"the timetamp of the last released message (" + this.lastTimeStamp + "):\n" + this.currentMsg;
-				this.currentQueue.updateTime(this.currentMsg.getTime());
-
-				// Notify the recipient's modules
-				this.currentQueue.notifyInListeners(this.currentMsg.getMessage(), this.currentQueue.agent); /// @bug Store the message if required
-
-				// Stop measuring time
-				this.currentQueue.freezeTime();
+				
+				// Deliver the message
+				this.deliver(this.currentMsg, this.currentQueue);
 				
 				// Return the control to the main thread
 				this.lock.lock();
@@ -0,0 +1,338 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication.mailer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jdom2.Element;
+
+import frodo2.algorithms.AgentInterface;
+import frodo2.communication.Message;
+import frodo2.communication.MessageWrapper;
+import frodo2.controller.Controller;
+import frodo2.solutionSpaces.ProblemInterface;
+
+/** A CentralMailer that delivers messages to different agents in parallel
+ *
+ * Like the CentralMailer, this mailer releases messages in the order of their timestamps. However, it takes from the priority queue
+ * all messages whose timestamps lie within a lookahead window after the earliest timestamp, and that are destined to distinct agents,
+ * and delivers them concurrently using a pool of worker threads. This is a conservative parallel discrete-event simulation:
+ * the lookahead is the minimum amount of simulated time between the reception of a message and the sending of any message in response,
+ * such that no message sent while processing the current batch can have a timestamp lower than the timestamp of a message in the batch.
+ * Messages sent earlier than allowed by the lookahead are delayed accordingly. With the default lookahead of 0, only messages with
+ * equal timestamps (such as the copies of a message sent to multiple recipients) are delivered concurrently, and the simulated times
+ * and NCCC counts are exactly the same as with the CentralMailer.
+ *
+ * The messages sent by each agent while processing a batch are buffered, and then released in the order in which the messages in
+ * the batch were taken from the priority queue. The eavesdroppers are notified of the incoming messages in the same order,
+ * before the messages are delivered.
+ *
+ * This mailer can be selected in the agent configuration file using the \c mailmanClass attribute of the \c mailman element,
+ * which also accepts the following optional attributes:
+ * - nbrThreads: the number of worker threads (default: the number of available processors)
+ * - lookahead: the lookahead, in nanoseconds of simulated time (default: 0)
+ *
+ * Simulated time is measured using the CPU time of the worker thread that processes each message, when the JVM supports it, 
+ * so that agents processing messages concurrently do not slow down each other's clocks. Otherwise, it is measured using the wall clock, 
+ * and nbrThreads should not exceed the number of available cores. 
+ *
+ * @warning The modules of different agents must not share any mutable state.
+ * @author Thomas Leaute
+ */
+public class ParallelCentralMailer extends CentralMailer {
+
+	/** The number of worker threads */
+	private int nbrThreads;
+
+	/** The lookahead, in nanoseconds of simulated time */
+	private long lookahead;
+
+	/** The worker threads */
+	private ExecutorService workers;
+
+	/** For each queue that receives a message in the current batch, the messages it has sent */
+	private final HashMap< FakeQueue, ArrayList<MessageWrapper> > sent = new HashMap< FakeQueue, ArrayList<MessageWrapper> > ();
+
+	/** For each message in the outbox, the queue of its sender, or \c null if it was not sent by an agent */
+	private final ArrayList<FakeQueue> outboxSenders = new ArrayList<FakeQueue> ();
+
+	/** Used to measure the CPU time of the worker threads, or \c null if the JVM does not support it */
+	private ThreadMXBean cpuTimer;
+
+	/** Constructor
+	 * @param measureMsgs 			whether to measure the number and sizes of messages
+	 * @param useDelayGenerator 	\c true when the DelayGenerator is to be used
+	 * @param parameters			parameters of the mailer (optional attributes \c nbrThreads and \c lookahead)
+	 */
+	public ParallelCentralMailer (boolean measureMsgs, boolean useDelayGenerator, Element parameters) {
+		super (measureMsgs, useDelayGenerator, parameters);
+		this.init(parameters);
+	}
+
+	/** Constructor
+	 * @param problem 		the problem instance
+	 * @param agentConfig 	the agent configuration
+	 */
+	public ParallelCentralMailer (ProblemInterface<?, ?> problem, Element agentConfig) {
+		super (problem, agentConfig);
+		this.init(agentConfig == null ? null : agentConfig.getChild("mailman"));
+	}
+
+	/** Parses the parameters and creates the worker threads
+	 * @param parameters 	the parameters of the mailer
+	 */
+	private void init (Element parameters) {
+
+		String nbrThreads = (parameters == null ? null : parameters.getAttributeValue("nbrThreads"));
+		this.nbrThreads = (nbrThreads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(nbrThreads));
+
+		String lookahead = (parameters == null ? null : parameters.getAttributeValue("lookahead"));
+		this.lookahead = (lookahead == null ? 0 : Long.parseLong(lookahead));
+		assert this.lookahead >= 0 : "Negative lookahead: " + this.lookahead;
+
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		if (threadBean.isCurrentThreadCpuTimeSupported()) {
+			if (! threadBean.isThreadCpuTimeEnabled()) 
+				threadBean.setThreadCpuTimeEnabled(true);
+			this.cpuTimer = threadBean;
+		}
+
+		this.workers = Executors.newFixedThreadPool(this.nbrThreads, task -> {
+			Thread thread = new Thread (task, "CentralMailerWorker");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/** Buffers the message if the sender is processing a message of the current batch
+	 * @see CentralMailer#post(CentralMailer.FakeQueue, MessageWrapper)
+	 */
+	@Override
+	protected void post (FakeQueue sender, MessageWrapper msgWrap) {
+
+		ArrayList<MessageWrapper> msgs = this.sent.get(sender);
+		if (msgs != null)
+			msgs.add(msgWrap);
+		else synchronized (this.outbox) {
+			this.outbox.add(msgWrap);
+			this.outboxSenders.add(sender);
+		}
+	}
+
+	/** @return the CPU time of the current thread if the JVM supports it, else the wall clock time
+	 * @see CentralMailer#now()
+	 */
+	@Override
+	protected long now () {
+		return (this.cpuTimer == null ? System.nanoTime() : this.cpuTimer.getCurrentThreadCpuTime());
+	}
+
+	/** @see CentralMailer#execute(long) */
+	@Override
+	public boolean execute (long timeout) {
+
+		// Convert the timeout to nanoseconds
+		if (timeout < Long.MAX_VALUE / 1000000L)
+			timeout *= 1000000L;
+		else
+			timeout = Long.MAX_VALUE;
+
+		int nbrAgentsLeft = this.queues.size() - 3; // -3 to not count the stats monitor, the controller, nor the daemon
+
+		// The current batch of messages, with their recipients
+		ArrayList<MessageWrapper> batch = new ArrayList<MessageWrapper> ();
+		ArrayList<Object> batchAgents = new ArrayList<Object> ();
+		ArrayList<FakeQueue> batchQueues = new ArrayList<FakeQueue> ();
+		ArrayList< Callable<Void> > tasks = new ArrayList< Callable<Void> > ();
+
+		// The messages that could not be included in the current batch because their recipients were already busy
+		ArrayList<MessageWrapper> postponed = new ArrayList<MessageWrapper> ();
+
+		try {
+			while (true) {
+
+				// Release the messages sent while processing the previous batch, in the order of the batch
+				for (int i = 0; i < batch.size(); i++) {
+					Object agent = batchAgents.get(i);
+					FakeQueue queue = batchQueues.get(i);
+					ArrayList<MessageWrapper> msgs = this.sent.remove(queue);
+
+					// Enforce the lookahead
+					final long minTime = batch.get(i).getTime() + this.lookahead;
+					for (MessageWrapper msgWrap : msgs)
+						if (msgWrap.getTime() >= 0 && msgWrap.getTime() < minTime)
+							msgWrap.setTime(minTime);
+
+					this.releaseOutbox(msgs, agent, queue);
+
+					if (!agent.equals(Controller.CONTROLLER) && !agent.equals(AgentInterface.STATS_MONITOR)
+							&& batch.get(i).getMessage().getType().equals(AgentInterface.AGENT_FINISHED))
+						nbrAgentsLeft--;
+				}
+				assert this.sent.isEmpty();
+				batch.clear();
+				batchAgents.clear();
+				batchQueues.clear();
+				tasks.clear();
+
+				// Release the messages that have not been sent by any agent processing the previous batch, each on behalf of its sender
+				synchronized (this.outbox) {
+					Iterator<FakeQueue> senders = this.outboxSenders.iterator();
+					for (MessageWrapper msgWrap : this.outbox) {
+						FakeQueue sender = senders.next();
+						if (sender != null) 
+							this.releaseOutbox(Collections.singletonList(msgWrap), sender.agent, sender);
+						else // not sent by an agent; attribute it to the controller
+							this.releaseOutbox(Collections.singletonList(msgWrap), Controller.CONTROLLER, this.queues.get(Controller.CONTROLLER));
+					}
+					this.outbox.clear();
+					this.outboxSenders.clear();
+				}
+
+				// Retrieve the next message to be delivered
+				MessageWrapper wrap = this.orderedQueue.peek();
+
+				if (wrap == null) { // no more messages: all agents are idle
+
+					// Notify all agents that they are all idle, unless they have all terminated already
+					if (! this.idleMsgsSent && nbrAgentsLeft > 0) {
+						this.orderedQueue.add(new MessageWrapper (new Message (
+								AgentInterface.ALL_AGENTS_IDLE), 0, lastTimeStamp, new HashSet<Object> (this.queues.keySet()), 0));
+						this.idleMsgsSent = true;
+						continue; // let the agents process the ALL_AGENTS_IDLE message
+
+					} else { // all agents have been notified of the idleness
+
+						// Reset the last timestamp seen and return
+						this.lastTimeStamp = Long.MIN_VALUE;
+						this.idleMsgsSent = false;
+						return true; // correct termination
+					}
+				}
+
+				// Take from the priority queue all messages within the lookahead window that are destined to distinct agents
+				final long maxTime = (wrap.getTime() > Long.MAX_VALUE - this.lookahead ? Long.MAX_VALUE : wrap.getTime() + this.lookahead);
+				long timeLeft = Long.MAX_VALUE;
+				while ((wrap = this.orderedQueue.peek()) != null && wrap.getTime() <= maxTime) {
+
+					Collection<Object> destinations = wrap.getDestinations();
+					Iterator<Object> iter = destinations.iterator();
+					Object dest = iter.next();
+					FakeQueue destQueue = this.queues.get(dest);
+
+					if (this.sent.containsKey(destQueue)) { // the recipient already has a message in the batch
+						postponed.add(this.orderedQueue.poll());
+						continue;
+					}
+
+					// Check if the messages still has remaining destinations
+					if (iter.hasNext())
+						iter.remove();
+					else // no more destinations
+						this.orderedQueue.poll();
+
+					assert this.checkTimestamp(wrap.getTime()) :
+						"Attempting to release the following message, which has a timestamp lower than " +
+						"the timetamp of the last released message (" + this.lastTimeStamp + "):\n" + wrap;
+
+					// Notify the eavesdroppers of the incoming message
+					this.notifyEavesdroppers(wrap, destQueue.agent);
+
+					destQueue.setCurrentMsgWrapper(wrap);
+					this.sent.put(destQueue, new ArrayList<MessageWrapper> ());
+					batch.add(wrap);
+					batchAgents.add(dest);
+					batchQueues.add(destQueue);
+
+					final MessageWrapper msgWrap = wrap;
+					tasks.add(() -> {
+						this.deliver(msgWrap, destQueue);
+						return null;
+					});
+
+					timeLeft = Math.min(timeLeft, timeout - Math.max(0, Math.max(wrap.getTime(), destQueue.time))); // the recipient's clock is frozen
+				}
+				this.orderedQueue.addAll(postponed);
+				postponed.clear();
+
+				// Deliver the messages and wait until they have been processed or a timeout has occurred
+				List< Future<Void> > futures = this.workers.invokeAll(tasks, Math.max(0, timeLeft), TimeUnit.NANOSECONDS);
+				for (Future<Void> future : futures) {
+
+					if (future.isCancelled()) { // timeout
+						this.sent.clear();
+						return false;
+					}
+
+					try {
+						future.get();
+					} catch (ExecutionException e) { // exception in a worker thread
+						throw e.getCause();
+					}
+				}
+			}
+
+		} catch (Throwable e) {
+			this.sent.clear();
+			this.abort(e);
+			return false;
+		}
+	}
+
+	/** Messages whose recipients were busy may be released after messages with higher timestamps, but never by more than the lookahead
+	 * @see CentralMailer#checkTimestamp(long)
+	 */
+	@Override
+	protected boolean checkTimestamp(long time) {
+
+		if (time >= 0 && time + this.lookahead < this.lastTimeStamp)
+			return false;
+
+		this.lastTimeStamp = Math.max(this.lastTimeStamp, time);
+		return true;
+	}
+
+	/** Kills the mailer, including its worker threads
+	 * @see CentralMailer#end()
+	 */
+	@Override
+	public void end () {
+		this.workers.shutdownNow();
+		super.end();
+	}
+
+}
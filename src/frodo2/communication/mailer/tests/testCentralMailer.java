@@ -25,17 +25,31 @@ package frodo2.communication.mailer.tests;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
 
 import junit.extensions.RepeatedTest;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
+import frodo2.algorithms.AgentFactory;
+import frodo2.algorithms.Solution;
+import frodo2.algorithms.XCSPparser;
+import frodo2.algorithms.dpop.DPOPsolver;
+import frodo2.algorithms.test.AllTests;
 import frodo2.communication.IncomingMsgPolicyInterface;
 import frodo2.communication.Message;
 import frodo2.communication.MessageType;
 import frodo2.communication.MessageWrapper;
 import frodo2.communication.Queue;
 import frodo2.communication.mailer.CentralMailer;
+import frodo2.communication.mailer.ParallelCentralMailer;
 import frodo2.communication.sharedMemory.QueueIOPipe;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.ProblemInterface;
 
 /** Test suite for the CentralMailer
  * @author Brammert Ottens, Thomas Leaute
@@ -58,9 +72,34 @@ public class testCentralMailer extends TestCase implements IncomingMsgPolicyInte
 	/** The CentralMailer */
 	private CentralMailer mailman;
 	
+	/** Whether to use the ParallelCentralMailer */
+	private final boolean parallel;
+	
+	/** The lookahead of the ParallelCentralMailer */
+	private final long lookahead;
+	
 	/** Constructor */
 	public testCentralMailer() {
-		super("testNext");
+		this("testNext", false);
+	}
+	
+	/** Constructor
+	 * @param method 	the test method
+	 * @param parallel 	whether to use the ParallelCentralMailer
+	 */
+	public testCentralMailer(String method, boolean parallel) {
+		this(method, parallel, 0);
+	}
+	
+	/** Constructor
+	 * @param method 	the test method
+	 * @param parallel 	whether to use the ParallelCentralMailer
+	 * @param lookahead the lookahead of the ParallelCentralMailer
+	 */
+	public testCentralMailer(String method, boolean parallel, long lookahead) {
+		super(method);
+		this.parallel = parallel;
+		this.lookahead = lookahead;
 	}
 	
 	/** @return the test suite */
@@ -69,6 +108,14 @@ public class testCentralMailer extends TestCase implements IncomingMsgPolicyInte
 		
 		testSuite.addTest(new RepeatedTest (new testCentralMailer (), 100000));
 		
+		TestSuite tmp = new TestSuite ("Tests for the ParallelCentralMailer");
+		tmp.addTest(new RepeatedTest (new testCentralMailer ("testNext", true), 10000));
+		tmp.addTest(new RepeatedTest (new testCentralMailer ("testParallel", true), 1000));
+		tmp.addTest(new RepeatedTest (new testCentralMailer ("testNext", true, 3), 10000));
+		tmp.addTest(new RepeatedTest (new testCentralMailer ("testParallel", true, 3), 1000));
+		tmp.addTest(new RepeatedTest (new testCentralMailer ("testEquivalence", true), 50));
+		testSuite.addTest(tmp);
+		
 		return testSuite;
 	}
 
@@ -78,7 +125,10 @@ public class testCentralMailer extends TestCase implements IncomingMsgPolicyInte
 	@Override
 	protected void setUp() throws Exception {
 		super.setUp();
-		mailman = new CentralMailer (false, false, null);
+		if (this.parallel) 
+			mailman = new ParallelCentralMailer (false, false, new Element ("mailman").setAttribute("lookahead", Long.toString(this.lookahead)));
+		else 
+			mailman = new CentralMailer (false, false, null);
 		messagesReceived = 0;
 	}
 
@@ -122,6 +172,79 @@ public class testCentralMailer extends TestCase implements IncomingMsgPolicyInte
 		assertEquals(nbrMsgs, this.messagesReceived);
 	}
 	
+	/** A listener that checks that it receives its messages in the correct order, and one at a time */
+	private class Receiver implements IncomingMsgPolicyInterface<MessageType> {
+		
+		/** The listener's queue */
+		private Queue queue;
+		
+		/** The timestamp of the last message received */
+		private long lastTime = Long.MIN_VALUE;
+		
+		/** Whether the listener is currently processing a message */
+		private final AtomicBoolean busy = new AtomicBoolean (false);
+		
+		/** The total number of messages received by all listeners */
+		private final AtomicInteger counter;
+		
+		/** Constructor
+		 * @param counter 	the total number of messages received by all listeners
+		 */
+		private Receiver (AtomicInteger counter) {
+			this.counter = counter;
+		}
+
+		/** @see IncomingMsgPolicyInterface#getMsgTypes() */
+		public Collection<MessageType> getMsgTypes() {
+			return testCentralMailer.this.getMsgTypes();
+		}
+
+		/** @see IncomingMsgPolicyInterface#notifyIn(Message) */
+		public void notifyIn(Message msg) {
+			
+			assertTrue(this.busy.compareAndSet(false, true));
+			
+			long time = this.queue.getCurrentMessageWrapper().getTime();
+			assertTrue(this.lastTime <= time);
+			this.lastTime = time;
+			this.counter.incrementAndGet();
+			
+			this.busy.set(false);
+		}
+
+		/** @see IncomingMsgPolicyInterface#setQueue(Queue) */
+		public void setQueue(Queue queue) {
+			this.queue = queue;
+		}
+	}
+	
+	/** Tests that messages to multiple agents, many of which have equal timestamps, are all released in the correct order */
+	public void testParallel () {
+		
+		// Create the agents' queues
+		final int nbrAgents = 8;
+		ArrayList<QueueIOPipe> pipes = new ArrayList<QueueIOPipe> (nbrAgents);
+		AtomicInteger counter = new AtomicInteger ();
+		for (int i = 0; i < nbrAgents; i++) {
+			Queue queue = mailman.newQueue("a" + i);
+			queue.addIncomingMessagePolicy(new Receiver (counter));
+			pipes.add(new QueueIOPipe (queue));
+		}
+		
+		// Generate random messages, with few distinct timestamps
+		final int nbrMsgs = 100;
+		for(int i = 0; i < nbrMsgs; i++) {
+			MessageWrapper rand = new MessageWrapper(new Message(RANDOM_MSG_TYPE));
+			rand.setTime((long)(Math.random() * 10));
+			int dest = (int) (Math.random() * nbrAgents);
+			rand.setDestination("a" + dest);
+			pipes.get(dest).pushMessage(rand);
+		}
+		
+		assertTrue("Timeout after " + counter.get() + " messages", this.mailman.execute(2000));
+		assertEquals(nbrMsgs, counter.get());
+	}
+	
 	/** 
 	 * @see frodo2.communication.IncomingMsgPolicyInterface#getMsgTypes()
 	 */
@@ -157,4 +280,116 @@ public class testCentralMailer extends TestCase implements IncomingMsgPolicyInte
 		this.queue = queue;
 	}
 	
+	/** The recipient of the message being delivered by the current thread, if any */
+	private static final ThreadLocal<String> recipient = new ThreadLocal<String> ();
+	
+	/** @return the amount by which the clock advances each time it is read by the current thread
+	 * 
+	 * The amount is about 1 ms, but depends on the recipient of the message being processed, so that messages sent by different agents 
+	 * hardly ever have the same timestamp, since the order in which such messages are delivered is arbitrary. 
+	 */
+	private static long tick () {
+		String agent = recipient.get();
+		return 1000000L + (agent == null ? 0 : Math.floorMod(agent.hashCode(), 9973) + 1);
+	}
+	
+	/** A CentralMailer whose clock advances by about 1 ms each time it is read
+	 * 
+	 * The simulated time then only depends on the sequence of messages sent and received by each agent. 
+	 */
+	public static class TickingCentralMailer extends CentralMailer {
+		
+		/** The clock */
+		private final AtomicLong clock = new AtomicLong ();
+		
+		/** Constructor
+		 * @param problem 		the problem instance
+		 * @param agentConfig 	the agent configuration
+		 */
+		public TickingCentralMailer (ProblemInterface<?, ?> problem, Element agentConfig) {
+			super (problem, agentConfig);
+		}
+
+		/** @see CentralMailer#now() */
+		@Override
+		protected long now () {
+			return this.clock.addAndGet(tick());
+		}
+
+		/** @see CentralMailer#deliver(MessageWrapper, CentralMailer.FakeQueue) */
+		@Override
+		protected void deliver (MessageWrapper wrap, FakeQueue queue) {
+			recipient.set(queue.toString());
+			super.deliver(wrap, queue);
+			recipient.remove();
+		}
+	}
+	
+	/** A ParallelCentralMailer whose clock advances by about 1 ms each time it is read by a given thread
+	 * 
+	 * The simulated time then only depends on the sequence of messages sent and received by each agent. 
+	 */
+	public static class TickingParallelCentralMailer extends ParallelCentralMailer {
+		
+		/** The clock of each thread */
+		private final ThreadLocal<long[]> clock = ThreadLocal.withInitial(() -> new long [1]);
+		
+		/** Constructor
+		 * @param problem 		the problem instance
+		 * @param agentConfig 	the agent configuration
+		 */
+		public TickingParallelCentralMailer (ProblemInterface<?, ?> problem, Element agentConfig) {
+			super (problem, agentConfig);
+		}
+
+		/** @see ParallelCentralMailer#now() */
+		@Override
+		protected long now () {
+			return this.clock.get()[0] += tick();
+		}
+
+		/** @see CentralMailer#deliver(MessageWrapper, CentralMailer.FakeQueue) */
+		@Override
+		protected void deliver (MessageWrapper wrap, FakeQueue queue) {
+			recipient.set(queue.toString());
+			super.deliver(wrap, queue);
+			recipient.remove();
+		}
+	}
+	
+	/** Tests that DPOP yields the same solution, NCCC count and simulated time with the ParallelCentralMailer as with the CentralMailer
+	 * @throws Exception 	if an error occurs
+	 */
+	public void testEquivalence () throws Exception {
+		
+		Document problem = AllTests.createRandProblem(10, 20, 5, false);
+		
+		Solution<AddableInteger, AddableInteger> seq = this.solve(problem, TickingCentralMailer.class);
+		Solution<AddableInteger, AddableInteger> par = this.solve(problem, TickingParallelCentralMailer.class);
+		
+		assertEquals(seq.getUtility(), par.getUtility());
+		assertEquals(seq.getAssignments(), par.getAssignments());
+		assertEquals("NCCCs", seq.getNcccCount(), par.getNcccCount());
+		assertEquals("messages", seq.getNbrMsgs(), par.getNbrMsgs());
+		assertEquals("simulated time", seq.getTimeNeeded(), par.getTimeNeeded());
+	}
+	
+	/** Solves a problem with DPOP using the simulated time metric
+	 * @param problem 		the problem
+	 * @param mailerClass 	the class of the mailer
+	 * @return the solution
+	 * @throws Exception 	if an error occurs
+	 */
+	private Solution<AddableInteger, AddableInteger> solve (Document problem, Class<? extends CentralMailer> mailerClass) throws Exception {
+		
+		Document agentDesc = XCSPparser.parse(AgentFactory.class.getResourceAsStream("/frodo2/algorithms/dpop/DPOPagent.xml"), false);
+		agentDesc.getRootElement().setAttribute("measureTime", "true");
+		agentDesc.getRootElement().setAttribute("measureMsgs", "true");
+		agentDesc.getRootElement().getChild("mailman").setAttribute("mailmanClass", mailerClass.getName());
+		
+		Solution<AddableInteger, AddableInteger> sol = new DPOPsolver<AddableInteger, AddableInteger> (agentDesc).solve(problem);
+		assertNotNull("Timeout", sol);
+		return sol;
+	}
+	
 }
@@ -0,0 +1,175 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication.mmap;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import frodo2.communication.AgentAddress;
+import frodo2.communication.PipeFactory;
+import frodo2.communication.Queue;
+import frodo2.communication.QueueInputPipeInterface;
+import frodo2.communication.QueueOutputPipeInterface;
+import frodo2.communication.tcp.NIOPipeFactory;
+import frodo2.communication.tcp.QueueInputPipeNIO;
+import frodo2.communication.tcp.TCPAddress;
+
+/** This factory implements pipes based on memory-mapped files for recipients on the same host
+ *
+ * Addresses are TCP addresses, whose port numbers identify the mailboxes of the input pipes. Each input pipe also listens
+ * for messages from other hosts using another PipeFactory (by default, a NIOPipeFactory), which is also used to create
+ * output pipes to recipients on other hosts, or that do not have any mailbox. When the number of connections is limited, 
+ * the limit applies to both kinds of connections together; this requires the other PipeFactory to be a NIOPipeFactory, 
+ * and otherwise no mailbox is created. 
+ * @author Thomas Leaute
+ * @see QueueInputPipeMMap
+ * @see QueueOutputPipeMMap
+ */
+public class MMapPipeFactory implements PipeFactory {
+
+	/** The factory used for recipients on other hosts */
+	private final PipeFactory remote;
+
+	/** For each host name or IP address encountered, whether it refers to this host */
+	private final ConcurrentHashMap<String, Boolean> localHosts = new ConcurrentHashMap<String, Boolean> ();
+
+	/** An input pipe that receives messages both through a memory-mapped mailbox and from other hosts */
+	private static class DualInputPipe implements QueueInputPipeInterface {
+
+		/** The pipe receiving messages from the same host */
+		private final QueueInputPipeInterface local;
+
+		/** The pipe receiving messages from other hosts */
+		private final QueueInputPipeInterface remote;
+
+		/** Constructor
+		 * @param local 	the pipe receiving messages from the same host
+		 * @param remote 	the pipe receiving messages from other hosts
+		 */
+		DualInputPipe (QueueInputPipeInterface local, QueueInputPipeInterface remote) {
+			this.local = local;
+			this.remote = remote;
+		}
+
+		/** @see frodo2.communication.QueueInputPipeInterface#close() */
+		public void close() {
+			this.local.close();
+			this.remote.close();
+		}
+
+		/** @see frodo2.communication.QueueInputPipeInterface#toDOT() */
+		public String toDOT() {
+			return this.local.toDOT();
+		}
+	}
+
+	/** Constructor
+	 * @param remote 	the factory used for recipients on other hosts
+	 */
+	public MMapPipeFactory (PipeFactory remote) {
+		this.remote = remote;
+	}
+
+	/** Constructor that uses a NIOPipeFactory for recipients on other hosts */
+	public MMapPipeFactory () {
+		this (new NIOPipeFactory ());
+	}
+
+	/** @see frodo2.communication.PipeFactory#inputPipe(frodo2.communication.Queue, frodo2.communication.AgentAddress, java.lang.Integer) */
+	public QueueInputPipeInterface inputPipe(Queue queue, AgentAddress address, Integer maxNbrConnections) throws IOException {
+		
+		final int port = ((TCPAddress) address).getPort();
+		
+		// With a limited number of connections, both pipes must draw from the same budget, which only works with NIO pipes; 
+		// otherwise, only create the remote pipe, to which the senders fall back in the absence of a mailbox
+		AtomicInteger nbrConnections = null;
+		QueueInputPipeInterface remotePipe;
+		if (maxNbrConnections == null) 
+			remotePipe = this.remote.inputPipe(queue, address); // fails if the port is already in use
+		else if (this.remote instanceof NIOPipeFactory) 
+			remotePipe = new QueueInputPipeNIO (queue, port, nbrConnections = new AtomicInteger (maxNbrConnections));
+		else 
+			return this.remote.inputPipe(queue, address, maxNbrConnections);
+		
+		try {
+			return new DualInputPipe (new QueueInputPipeMMap (queue, port, nbrConnections), remotePipe);
+		} catch (IOException e) {
+			remotePipe.close();
+			throw e;
+		}
+	}
+
+	/** @see frodo2.communication.PipeFactory#inputPipe(frodo2.communication.Queue, frodo2.communication.AgentAddress) */
+	public QueueInputPipeInterface inputPipe(Queue queue, AgentAddress address) throws IOException {
+		return this.inputPipe(queue, address, null);
+	}
+
+	/** @see frodo2.communication.PipeFactory#outputPipe(frodo2.communication.AgentAddress) */
+	public QueueOutputPipeInterface outputPipe(AgentAddress address) throws UnknownHostException, IOException {
+
+		TCPAddress newAddress = (TCPAddress) address;
+		if (this.isLocal(newAddress.getAddress()) && QueueInputPipeMMap.getMailbox(newAddress.getPort()).isDirectory())
+			return new QueueOutputPipeMMap (newAddress.getPort());
+		else
+			return this.remote.outputPipe(address);
+	}
+
+	/** @see frodo2.communication.PipeFactory#outputPipe(frodo2.communication.AgentAddress, frodo2.communication.AgentAddress) */
+	public QueueOutputPipeInterface outputPipe(AgentAddress address, AgentAddress rawDataAddress) throws UnknownHostException, IOException {
+
+		TCPAddress newAddress = (TCPAddress) address;
+		if (this.isLocal(newAddress.getAddress()) && QueueInputPipeMMap.getMailbox(newAddress.getPort()).isDirectory())
+			return new QueueOutputPipeMMap (newAddress.getPort()); // raw data is carried along with the messages
+		else
+			return this.remote.outputPipe(address, rawDataAddress);
+	}
+
+	/** @see frodo2.communication.PipeFactory#getSelfAddress(int) */
+	public AgentAddress getSelfAddress(int idx) {
+		return this.remote.getSelfAddress(idx);
+	}
+
+	/** Checks whether a host name or IP address refers to this host
+	 * @param host 	the host name or IP address
+	 * @return whether it refers to this host
+	 */
+	private boolean isLocal (String host) {
+
+		Boolean local = this.localHosts.get(host);
+		if (local == null) {
+			try {
+				InetAddress address = InetAddress.getByName(host);
+				local = address.isLoopbackAddress() || address.isAnyLocalAddress() || NetworkInterface.getByInetAddress(address) != null;
+			} catch (IOException e) {
+				local = false;
+			}
+			this.localHosts.put(host, local);
+		}
+		return local;
+	}
+
+}
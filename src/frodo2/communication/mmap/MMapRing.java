@@ -0,0 +1,286 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+/** Contains classes used for communication between agents running in different JVMs on the same host, through memory-mapped files */
+package frodo2.communication.mmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/** A single-producer, single-consumer ring buffer of bytes, stored in a memory-mapped file shared by two processes
+ *
+ * The file starts with a header containing the capacity of the ring, the total numbers of bytes written and read so far,
+ * flags indicating whether either side has closed the ring, and the process ID of the consumer once it has opened the ring; 
+ * each of these fields lies in its own cache line.
+ * The producer only ever writes the \a tail counter, and the consumer the \a head counter, with release semantics,
+ * such that the bytes between the two counters are visible to the consumer.
+ * @author Thomas Leaute
+ */
+final class MMapRing {
+
+	/** The offset of the capacity */
+	private static final int CAPACITY = 0;
+
+	/** The offset of the total number of bytes read by the consumer */
+	private static final int HEAD = 64;
+
+	/** The offset of the total number of bytes written by the producer */
+	private static final int TAIL = 128;
+
+	/** The offset of the flag set by the producer when it will not write any more bytes */
+	private static final int PRODUCER_CLOSED = 192;
+
+	/** The offset of the flag set by the consumer when it will not read any more bytes */
+	private static final int CONSUMER_CLOSED = 256;
+
+	/** The offset of the process ID of the consumer, or 0 if it has not opened the ring yet */
+	private static final int CONSUMER_PID = 320;
+
+	/** The size of the header */
+	private static final int HEADER_SIZE = 384;
+
+	/** The extension of the files of rings that are ready to be opened by their consumers */
+	static final String EXTENSION = ".ring";
+
+	/** The maximum time (in ns) the producer waits before checking again whether there is room in the ring */
+	private static final long MAX_PARK = 1000000L;
+
+	/** The time (in ns) between two checks that the consumer is still alive, while the producer waits for room in the ring */
+	private static final long LIVENESS_PERIOD = 100000000L;
+
+	/** The maximum time (in ns) the producer waits for room in the ring if the consumer has not opened it yet */
+	private static final long OPEN_TIMEOUT = 60000000000L;
+
+	/** Used to access the counters in the header with memory ordering guarantees */
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	/** Used to give unique names to the rings created by this process */
+	private static final AtomicLong counter = new AtomicLong ();
+
+	/** The mapped file */
+	private final MappedByteBuffer buffer;
+
+	/** The capacity of the ring, in bytes */
+	private final int capacity;
+
+	/** A view of the data part of the file, used by either the producer or the consumer */
+	private final ByteBuffer data;
+
+	/** Constructor
+	 * @param buffer 	the mapped file
+	 */
+	private MMapRing (MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		this.capacity = (int) (long) LONGS.getVolatile(buffer, CAPACITY);
+		this.buffer.position(HEADER_SIZE);
+		this.data = this.buffer.slice();
+		this.buffer.position(0);
+	}
+
+	/** Creates a new ring in the given directory, to be opened by the consumer
+	 * @param dir 			the directory in which the consumer looks for new rings
+	 * @param capacity 		the capacity of the ring, in bytes
+	 * @return the new ring
+	 * @throws IOException 	if the file could not be created
+	 */
+	static MMapRing create (File dir, int capacity) throws IOException {
+
+		// Create and initialize the file under a temporary name, so that the consumer does not see it before it is ready
+		String name = ProcessHandle.current().pid() + "_" + counter.incrementAndGet();
+		File tmp = new File (dir, name + ".tmp");
+		MappedByteBuffer buffer = map(tmp, HEADER_SIZE + capacity);
+		LONGS.setVolatile(buffer, CAPACITY, (long) capacity);
+
+		if (! tmp.renameTo(new File (dir, name + EXTENSION))) {
+			tmp.delete();
+			throw new IOException ("Unable to create the ring " + name + " in " + dir);
+		}
+
+		return new MMapRing (buffer);
+	}
+
+	/** Opens a ring created by a producer, and deletes its file, which remains mapped until the ring is garbage-collected
+	 * @param file 			the file of the ring
+	 * @return the ring
+	 * @throws IOException 	if the file could not be mapped
+	 */
+	static MMapRing open (File file) throws IOException {
+
+		MappedByteBuffer buffer = map(file, -1);
+		if (! file.delete()) // for instance on Windows, where mapped files cannot be deleted
+			file.deleteOnExit();
+		LONGS.setVolatile(buffer, CONSUMER_PID, ProcessHandle.current().pid());
+
+		return new MMapRing (buffer);
+	}
+
+	/** Maps a file into memory
+	 * @param file 			the file
+	 * @param size 			the size of the file, or -1 if it already exists
+	 * @return the mapped file
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	private static MappedByteBuffer map (File file, long size) throws IOException {
+
+		try (RandomAccessFile raf = new RandomAccessFile (file, "rw");
+				FileChannel channel = raf.getChannel()) {
+			if (size >= 0)
+				raf.setLength(size);
+			else
+				size = channel.size();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ByteOrder.nativeOrder());
+			return buffer;
+		}
+	}
+
+	/** Writes all remaining bytes of the input buffer to the ring, waiting for the consumer to make room if necessary
+	 *
+	 * Must only be called by the producer, by one thread at a time.
+	 * @param src 			the bytes to be written
+	 * @throws IOException 	if the consumer has closed the ring, if its process has died, 
+	 * 						or if it has not opened the ring within OPEN_TIMEOUT while the ring is full
+	 */
+	void write (ByteBuffer src) throws IOException {
+
+		final long tail = (long) LONGS.getOpaque(this.buffer, TAIL);
+		long written = 0;
+		long park = 0;
+		long waitStart = 0;
+		long lastCheck = 0;
+
+		while (src.hasRemaining()) {
+
+			// Compute the number of bytes that can be written without overwriting unread bytes
+			final long head = (long) LONGS.getAcquire(this.buffer, HEAD);
+			final int free = (int) (this.capacity - (tail + written - head));
+			if (free == 0) {
+
+				if ((long) LONGS.getVolatile(this.buffer, CONSUMER_CLOSED) != 0)
+					throw new IOException ("The consumer has closed the ring");
+
+				// Periodically check that the consumer is still there
+				final long now = System.nanoTime();
+				if (park == 0) 
+					waitStart = lastCheck = now;
+				else if (now - lastCheck >= LIVENESS_PERIOD) {
+					lastCheck = now;
+					final long pid = (long) LONGS.getVolatile(this.buffer, CONSUMER_PID);
+					if (pid == 0) {
+						if (now - waitStart >= OPEN_TIMEOUT) 
+							throw new IOException ("The consumer has not opened the ring within " + OPEN_TIMEOUT / 1000000000L + " s");
+					} else if (! ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) 
+						throw new IOException ("The consumer process " + pid + " has died");
+				}
+
+				// Wait for the consumer to read some bytes
+				if (park == 0)
+					Thread.onSpinWait();
+				else
+					LockSupport.parkNanos(park);
+				park = Math.min(MAX_PARK, 2 * park + 1000);
+				continue;
+			}
+			park = 0;
+
+			// Copy the bytes, in two parts if they wrap around the end of the ring
+			final int pos = (int) ((tail + written) % this.capacity);
+			final int len = Math.min(free, src.remaining());
+			final int first = Math.min(len, this.capacity - pos);
+			this.copy(src, pos, first);
+			if (first < len)
+				this.copy(src, 0, len - first);
+			written += len;
+
+			// Publish the bytes
+			LONGS.setRelease(this.buffer, TAIL, tail + written);
+		}
+	}
+
+	/** Copies bytes from a buffer into the ring
+	 * @param src 	the buffer
+	 * @param pos 	the position in the ring
+	 * @param len 	the number of bytes
+	 */
+	private void copy (ByteBuffer src, int pos, int len) {
+
+		ByteBuffer part = src.duplicate();
+		part.limit(part.position() + len);
+		this.data.position(pos);
+		this.data.put(part);
+		src.position(src.position() + len);
+	}
+
+	/** Reads as many bytes as available into the output buffer, without waiting
+	 *
+	 * Must only be called by the consumer, by one thread at a time.
+	 * @param dst 	the buffer into which bytes are read
+	 * @return the number of bytes read, or -1 if the producer has closed the ring and all bytes have been read
+	 */
+	int read (ByteBuffer dst) {
+
+		// Read the flag before the tail, so that no bytes written before the ring was closed can be missed
+		final boolean closed = (long) LONGS.getVolatile(this.buffer, PRODUCER_CLOSED) != 0;
+		final long head = (long) LONGS.getOpaque(this.buffer, HEAD);
+		final long tail = (long) LONGS.getAcquire(this.buffer, TAIL);
+
+		final int available = (int) (tail - head);
+		if (available == 0)
+			return (closed ? -1 : 0);
+
+		// Copy the bytes, in two parts if they wrap around the end of the ring
+		final int pos = (int) (head % this.capacity);
+		final int len = Math.min(available, dst.remaining());
+		final int first = Math.min(len, this.capacity - pos);
+		ByteBuffer part = this.data.duplicate();
+		part.limit(pos + first).position(pos);
+		dst.put(part);
+		if (first < len) {
+			part.limit(len - first).position(0);
+			dst.put(part);
+		}
+
+		// Make room for the producer
+		LONGS.setRelease(this.buffer, HEAD, head + len);
+		return len;
+	}
+
+	/** Tells the consumer that the producer will not write any more bytes */
+	void closeProducer () {
+		LONGS.setVolatile(this.buffer, PRODUCER_CLOSED, 1L);
+	}
+
+	/** Tells the producer that the consumer will not read any more bytes */
+	void closeConsumer () {
+		LONGS.setVolatile(this.buffer, CONSUMER_CLOSED, 1L);
+	}
+
+}
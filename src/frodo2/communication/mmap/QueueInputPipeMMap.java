@@ -0,0 +1,314 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication.mmap;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import frodo2.communication.FrameReader;
+import frodo2.communication.Queue;
+import frodo2.communication.QueueInputPipeInterface;
+
+/** A queue input pipe that receives messages from other processes on the same host, through memory-mapped ring buffers
+ *
+ * The pipe owns a mailbox directory, named after its port number, in which each QueueOutputPipeMMap creates its own ring.
+ * The rings of all input pipes in the JVM are polled by a single shared thread, which only reassembles the length-prefixed 
+ * frames written by the output pipes; the messages are deserialized by a pool of decoding threads, and passed to the queues. 
+ * The polling thread stops when no input pipe remains. 
+ * @author Thomas Leaute
+ * @see QueueOutputPipeMMap
+ */
+public class QueueInputPipeMMap implements QueueInputPipeInterface {
+
+	/** The thread that polls the rings of all input pipes */
+	private static class Poller extends Thread {
+
+		/** The minimum time (in ns) between two scans of the mailboxes for new rings */
+		private static final long SCAN_PERIOD = 20000000L;
+
+		/** The maximum time (in ns) the poller waits before polling the rings again when there are no new bytes */
+		private static final long MAX_PARK = 1000000L;
+
+		/** The running instance, if any */
+		private static Poller instance;
+
+		/** The threads that deserialize the frames */
+		private static final ExecutorService decoders = Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread (task, "MMapDecoder");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		/** The input pipes */
+		private final CopyOnWriteArrayList<QueueInputPipeMMap> pipes = new CopyOnWriteArrayList<QueueInputPipeMMap> ();
+
+		/** Constructor */
+		private Poller () {
+			super ("MMapPoller");
+			this.setDaemon(true);
+		}
+
+		/** Adds a pipe to the running poller, starting a new poller if none is running
+		 * @param pipe 	the pipe
+		 */
+		static synchronized void register (QueueInputPipeMMap pipe) {
+			if (instance == null) {
+				instance = new Poller ();
+				instance.start();
+			}
+			instance.pipes.add(pipe);
+		}
+
+		/** Stops the poller if it has no more pipes
+		 * @param poller 	the poller
+		 * @return whether the poller should stop
+		 */
+		private static synchronized boolean retire (Poller poller) {
+			if (! poller.pipes.isEmpty()) 
+				return false;
+			if (instance == poller) 
+				instance = null;
+			return true;
+		}
+
+		/** @see java.lang.Thread#run() */
+		@Override
+		public void run () {
+
+			long lastScan = 0;
+			long park = 0;
+			while (true) {
+
+				// Periodically look for new rings
+				final long now = System.nanoTime();
+				final boolean scan = (now - lastScan >= SCAN_PERIOD);
+				if (scan)
+					lastScan = now;
+
+				// Poll the rings
+				boolean read = false;
+				for (QueueInputPipeMMap pipe : this.pipes) {
+					
+					if (pipe.closed) {
+						pipe.closeConnections();
+						this.pipes.remove(pipe);
+						continue;
+					}
+					
+					if (scan)
+						pipe.accept();
+					read |= pipe.poll();
+				}
+				
+				// Stop if there are no more pipes
+				if (this.pipes.isEmpty() && retire(this)) 
+					return;
+
+				// Back off when there is nothing to read
+				if (read)
+					park = 0;
+				else {
+					if (park == 0)
+						Thread.onSpinWait();
+					else
+						LockSupport.parkNanos(park);
+					park = Math.min(MAX_PARK, 2 * park + 1000);
+				}
+			}
+		}
+	}
+
+	/** A connection with a sender, from which length-prefixed frames of messages are read */
+	private class Connection {
+
+		/** The ring */
+		private final MMapRing ring;
+
+		/** Reassembles the frames, which are deserialized by the decoding threads */
+		private final FrameReader frames = new FrameReader (queue, Poller.decoders);
+
+		/** Constructor
+		 * @param ring 	the ring
+		 */
+		Connection (MMapRing ring) {
+			this.ring = ring;
+		}
+	}
+
+	/** The mailbox directory, in which senders create their rings */
+	private final File mailbox;
+
+	/** The currently open connections; only accessed by the poller thread */
+	private final ArrayList<Connection> connections = new ArrayList<Connection> ();
+
+	/** The number of connection requests currently still allowed, possibly shared with other pipes, or \c null if there is no limit */
+	private final AtomicInteger nbrConnections;
+
+	/** Whether close() has been called */
+	private volatile boolean closed = false;
+
+	/** This pipe's queue */
+	private final Queue queue;
+
+	/** The port number */
+	private final int port;
+
+	/** Constructor
+	 * @param queue 			the queue messages should be passed to
+	 * @param port 				port number identifying the mailbox of this pipe on this host
+	 * @param maxNbrConnections maximum number of connection requests allowed. If \c null, there is no limit.
+	 * @throws IOException 		thrown if the mailbox could not be created
+	 */
+	public QueueInputPipeMMap (Queue queue, int port, Integer maxNbrConnections) throws IOException  {
+		this (queue, port, maxNbrConnections == null ? null : new AtomicInteger (maxNbrConnections));
+	}
+
+	/** Constructor
+	 * @param queue 			the queue messages should be passed to
+	 * @param port 				port number identifying the mailbox of this pipe on this host
+	 * @param nbrConnections 	number of connection requests still allowed, which can be shared with other pipes. If \c null, there is no limit.
+	 * @throws IOException 		thrown if the mailbox could not be created
+	 */
+	QueueInputPipeMMap (Queue queue, int port, AtomicInteger nbrConnections) throws IOException  {
+
+		this.queue = queue;
+		this.port = port;
+		this.nbrConnections = nbrConnections;
+
+		// Create the mailbox, deleting any ring left over by a previous owner of the port
+		this.mailbox = getMailbox(port);
+		if (! this.mailbox.isDirectory() && ! this.mailbox.mkdirs())
+			throw new IOException ("Unable to create the mailbox " + this.mailbox);
+		File[] files = this.mailbox.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+
+		queue.toBeClosedUponKill(this);
+		Poller.register(this);
+	}
+
+	/** Constructor
+	 *
+	 * Accepts an unlimited number of connections.
+	 * @param queue 	the queue messages should be passed to
+	 * @param port 		port number identifying the mailbox of this pipe on this host
+	 * @throws IOException thrown if the mailbox could not be created
+	 */
+	QueueInputPipeMMap (Queue queue, int port) throws IOException  {
+		this(queue, port, (Integer) null);
+	}
+
+	/** Returns the mailbox directory associated with a given port number
+	 *
+	 * Mailboxes are created in /dev/shm if it exists, and in the temporary directory otherwise.
+	 * @param port 	the port number
+	 * @return the mailbox directory
+	 */
+	static File getMailbox (int port) {
+		File shm = new File ("/dev/shm");
+		File root = (shm.isDirectory() && shm.canWrite() ? shm : new File (System.getProperty("java.io.tmpdir")));
+		return new File (new File (root, "frodo-mmap-" + System.getProperty("user.name")), Integer.toString(port));
+	}
+
+	/** Opens the new rings found in the mailbox; only called by the poller thread */
+	private void accept () {
+
+		File[] files = this.mailbox.listFiles((dir, name) -> name.endsWith(MMapRing.EXTENSION));
+		if (files == null)
+			return;
+
+		for (File file : files) {
+			
+			MMapRing ring;
+			try {
+				ring = MMapRing.open(file);
+			} catch (IOException e) {
+				System.err.println("Unable to open the ring " + file);
+				e.printStackTrace();
+				file.delete();
+				continue;
+			}
+
+			// Check whether we are still allowed to accept connections; if not, tell the sender
+			if (this.nbrConnections != null && this.nbrConnections.getAndDecrement() <= 0) {
+				ring.closeConsumer();
+				continue;
+			}
+			
+			this.connections.add(new Connection (ring));
+		}
+	}
+
+	/** Polls all connections; only called by the poller thread
+	 * @return whether any bytes were read
+	 */
+	private boolean poll () {
+
+		boolean read = false;
+		for (int i = this.connections.size() - 1; i >= 0; i--) {
+			Connection connection = this.connections.get(i);
+			try {
+				read |= connection.frames.read(connection.ring::read);
+				
+			} catch (EOFException e) { // the sender has closed the ring
+				this.connections.remove(i);
+				
+			} catch (IOException | RuntimeException e) { // tell the sender that its ring is no longer read
+				System.err.println("Closing a connection to the mailbox " + this.mailbox + " due to the following error:");
+				e.printStackTrace();
+				connection.ring.closeConsumer();
+				this.connections.remove(i);
+			}
+		}
+		return read;
+	}
+	
+	/** Tells the senders that their rings are no longer read; only called by the poller thread */
+	private void closeConnections () {
+		for (Connection connection : this.connections)
+			connection.ring.closeConsumer();
+		this.connections.clear();
+	}
+
+	/** Stops accepting new connections and tells the senders that their rings are no longer read
+	 * @see frodo2.communication.QueueInputPipeInterface#close()
+	 */
+	public void close() {
+		this.closed = true;
+		this.mailbox.delete();
+	}
+
+	/** @see frodo2.communication.QueueInputPipeInterface#toDOT() */
+	public String toDOT() {
+		return "MMapPipe_port" + this.port;
+	}
+
+}
@@ -0,0 +1,200 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication.mmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import frodo2.communication.FrameReader;
+import frodo2.communication.Message;
+import frodo2.communication.MessageRegistry;
+import frodo2.communication.MessageWithRawData;
+import frodo2.communication.MessageWrapper;
+import frodo2.communication.QueueOutputPipeInterface;
+
+/** A queue output pipe that sends messages to another process on the same host, through a memory-mapped ring buffer
+ *
+ * The pipe creates its own ring in the mailbox of the recipient QueueInputPipeMMap. Each message (or batch of messages)
+ * is serialized when it is pushed, and written to the ring as a frame prefixed with its length, using the same format
+ * as QueueOutputPipeNIO. If the ring is full, the caller waits until the recipient has read enough bytes.
+ * The raw data of messages is carried along with the messages.
+ * @author Thomas Leaute
+ * @see QueueInputPipeMMap
+ */
+public class QueueOutputPipeMMap implements QueueOutputPipeInterface {
+
+	/** The default capacity of the ring, in bytes */
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+
+	/** A ByteArrayOutputStream whose contents are turned into frames
+	 *
+	 * Each frame starts with its length (excluding these first 4 bytes), followed by the number of messages it contains.
+	 */
+	private static class FrameBuilder extends ByteArrayOutputStream {
+
+		/** The size of the frame header */
+		private static final int HEADER_SIZE = 8;
+
+		/** Constructor */
+		FrameBuilder () {
+			super (1024);
+			this.count = HEADER_SIZE; // room for the header of the first frame
+		}
+
+		/** @param nbrMsgs 	the number of messages written since the last call
+		 * @return a frame containing all bytes written since the last call
+		 */
+		ByteBuffer takeFrame (int nbrMsgs) {
+
+			ByteBuffer frame = ByteBuffer.wrap(this.buf, 0, this.count);
+			frame.putInt(0, this.count - 4).putInt(4, nbrMsgs);
+
+			this.count = HEADER_SIZE; // room for the header of the next frame
+			return frame;
+		}
+	}
+
+	/** The ring */
+	private final MMapRing ring;
+
+	/** The buffer messages are serialized into */
+	private final FrameBuilder bytes = new FrameBuilder ();
+
+	/** The stream messages are serialized into */
+	private final ObjectOutputStream output;
+
+	/** Used to serialize the messages to \a output */
+	private final MessageRegistry.Encoder encoder = new MessageRegistry.Encoder ();
+
+	/** Whether close() has been called */
+	private boolean closed = false;
+
+	/** The port number of the recipient */
+	private final int port;
+
+	/** Constructor
+	 * @param port 			port number identifying the mailbox of the recipient on this host
+	 * @param capacity 		the capacity of the ring, in bytes
+	 * @throws IOException 	thrown if the recipient has no mailbox, or the ring could not be created
+	 */
+	public QueueOutputPipeMMap (int port, int capacity) throws IOException {
+
+		File mailbox = QueueInputPipeMMap.getMailbox(port);
+		if (! mailbox.isDirectory())
+			throw new IOException ("No mailbox for port " + port + " in " + mailbox.getParent());
+
+		this.ring = MMapRing.create(mailbox, capacity);
+		this.port = port;
+		this.output = new ObjectOutputStream (this.bytes); // the stream header will be sent with the first message
+	}
+
+	/** Constructor
+	 * @param port 			port number identifying the mailbox of the recipient on this host
+	 * @throws IOException 	thrown if the recipient has no mailbox, or the ring could not be created
+	 */
+	public QueueOutputPipeMMap (int port) throws IOException {
+		this (port, DEFAULT_CAPACITY);
+	}
+
+	/** Serializes the message, and writes it to the ring
+	 * @see frodo2.communication.QueueOutputPipeInterface#pushMessage(frodo2.communication.MessageWrapper)
+	 */
+	public void pushMessage(MessageWrapper msgWrap) {
+		this.pushMessages(Collections.singletonList(msgWrap));
+	}
+
+	/** Serializes the messages into a single frame, and writes it to the ring
+	 * @see frodo2.communication.QueueOutputPipeInterface#pushMessages(java.util.List)
+	 */
+	@Override
+	public synchronized void pushMessages(List<MessageWrapper> msgs) {
+
+		if (this.closed)
+			return;
+
+		int nbrMsgs = 0;
+		for (MessageWrapper msgWrap : msgs)
+			if (this.serialize(msgWrap.getMessage()))
+				nbrMsgs++;
+		if (nbrMsgs == 0)
+			return;
+
+		try {
+			this.output.flush();
+			ByteBuffer frame = this.bytes.takeFrame(nbrMsgs);
+
+			// Refuse to send a frame that the recipient would reject
+			if (frame.limit() - 4 > FrameReader.MAX_FRAME_LENGTH) {
+				System.err.println("Unable to send a frame of " + nbrMsgs + " message(s) of " + (frame.limit() - 4) + " bytes; the maximum is " 
+						+ FrameReader.MAX_FRAME_LENGTH + " bytes");
+				return;
+			}
+			this.ring.write(frame);
+		} catch (IOException e) {
+			e.printStackTrace();
+			this.closed = true;
+		}
+	}
+
+	/** Serializes a message into the current frame
+	 * @param msg 	the message
+	 * @return \c false if the message could not be serialized
+	 */
+	private boolean serialize (Message msg) {
+
+		try {
+			// Check whether the raw data of this message still remains to be serialized
+			if (msg instanceof MessageWithRawData) {
+				MessageWithRawData msgCast = (MessageWithRawData) msg;
+				if (msgCast.getHandler() == null)
+					msgCast.setHandler(new RawDataHandlerMMap (msgCast));
+			}
+
+			this.encoder.write(this.output, msg);
+
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/** Tells the recipient that no more messages will be sent
+	 * @see frodo2.communication.QueueOutputPipeInterface#close()
+	 */
+	public synchronized void close () {
+		this.closed = true;
+		this.ring.closeProducer();
+	}
+
+	/** @see frodo2.communication.QueueOutputPipeInterface#toDOT() */
+	public String toDOT() {
+		return "MMapPipe_port" + this.port;
+	}
+
+}
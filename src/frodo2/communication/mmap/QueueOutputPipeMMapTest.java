@@ -0,0 +1,241 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+package frodo2.communication.mmap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import frodo2.communication.Message;
+import frodo2.communication.MessageSerializedSimple;
+import frodo2.communication.MessageType;
+import frodo2.communication.MessageWithPayload;
+import frodo2.communication.MessageWrapper;
+import frodo2.communication.Queue;
+import frodo2.communication.QueueInputPipeInterface;
+import frodo2.communication.QueueOutputPipeInterface;
+import frodo2.communication.QueueTest.ConstantMsgPolicy;
+import frodo2.communication.QueueTest.QueueOutputPipeTrivial;
+import frodo2.communication.tcp.TCPAddress;
+
+import junit.extensions.RepeatedTest;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/** A JUnit test class for QueueOutputPipeMMap, that uses QueueInputPipeMMap
+ * @author Thomas Leaute
+ */
+public class QueueOutputPipeMMapTest extends TestCase {
+	
+	/** The port number identifying the mailbox used for the tests */
+	private static final int port = 4455;
+	
+	/** The QueueOutputPipeMMap under test */
+	private QueueOutputPipeMMap out;
+	
+	/** The queue to which messages are passed */
+	private Queue queue;
+	
+	/** The output pipe used for the tests */
+	private QueueOutputPipeTrivial output;
+	
+	/** The capacity of the ring */
+	private final int capacity;
+	
+	/** Generates a test case for the given method name
+	 * @param string 			name of the method
+	 */
+	public QueueOutputPipeMMapTest(String string) {
+		this (string, QueueOutputPipeMMap.DEFAULT_CAPACITY);
+	}
+
+	/** Generates a test case for the given method name
+	 * @param string 			name of the method
+	 * @param capacity 			the capacity of the ring
+	 */
+	public QueueOutputPipeMMapTest(String string, int capacity) {
+		super (string);
+		this.capacity = capacity;
+	}
+
+	/** @return the test suite */
+	public static TestSuite suite () {
+		TestSuite suite = new TestSuite ("Tests for QueueOutputPipeMMap");
+		
+		TestSuite tmp = new TestSuite ("Tests using messages without raw data");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeMMapTest ("testNonSerialized"), 1000));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests using messages with raw data");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeMMapTest ("testSerialized"), 1000));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests using batches of messages");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeMMapTest ("testBatches"), 1000));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests using large messages");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeMMapTest ("testLargeMessages"), 100));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests using messages larger than the ring");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeMMapTest ("testLargeMessages", 4096), 20));
+		suite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests for the MMapPipeFactory");
+		tmp.addTest(new QueueOutputPipeMMapTest ("testFactory"));
+		suite.addTest(tmp);
+		
+		return suite;
+	}
+
+	/**
+	 * @throws IOException thrown if an I/O error occurs
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	public void setUp () throws Exception {
+		
+		this.queue = new Queue(false);
+		output = new QueueOutputPipeTrivial();
+		queue.addOutputPipe("tester", output);
+		queue.addIncomingMessagePolicy(new ConstantMsgPolicy("tester", false));
+		if (! this.getName().equals("testFactory")) {
+			new QueueInputPipeMMap (queue, port, 1);
+			out = new QueueOutputPipeMMap (port, this.capacity);
+		}
+	}
+	
+	/** @see junit.framework.TestCase#tearDown() */
+	public void tearDown () {
+		if (out != null) 
+			out.close();
+		out = null;
+		queue.end();
+		queue = null;
+		output = null;
+	}
+	
+	/** Pushes multiple non-serialized messages */
+	public void testNonSerialized () {
+		
+		Message msg1 = new Message (new MessageType ("testNonSerialized1"));
+		Message msg2 = new Message (new MessageType ("testNonSerialized2"));
+		Message msg3 = new Message (new MessageType ("testNonSerialized3"));
+		
+		out.pushMessage(new MessageWrapper(msg1));
+		out.pushMessage(new MessageWrapper(msg2));
+		out.pushMessage(new MessageWrapper(msg3));
+		
+		assertEquals(msg1.getType(), output.getNextMsgTimed().getMessage().getType());
+		assertEquals(msg2.getType(), output.getNextMsgTimed().getMessage().getType());
+		assertEquals(msg3.getType(), output.getNextMsgTimed().getMessage().getType());
+	}
+
+	/** Pushes multiple messages with associated raw data */
+	@SuppressWarnings("unchecked")
+	public void testSerialized () {
+		
+		// Create the serialized data
+		String rawData1 = "rawData1";
+		MessageSerializedSimple <String> msg1 = new MessageSerializedSimple <String> (new MessageType ("testSerialized1"), rawData1);
+		String rawData2 = "rawData2";		
+		MessageSerializedSimple <String> msg2 = new MessageSerializedSimple <String> (new MessageType ("testSerialized2"), rawData2);
+
+		out.pushMessage(new MessageWrapper(msg1));
+		out.pushMessage(new MessageWrapper(msg2));
+		
+		// Read the messages and compare with originals
+		MessageSerializedSimple <String> msgReceived = (MessageSerializedSimple <String>) output.getNextMsgTimed().getMessage();
+		assertEquals (msg1.getType(), msgReceived.getType());
+		msgReceived.deserializeRawData();
+		assertEquals (rawData1, msgReceived.getData());
+		
+		msgReceived = (MessageSerializedSimple <String>) output.getNextMsgTimed().getMessage();
+		assertEquals (msg2.getType(), msgReceived.getType());
+		msgReceived.deserializeRawData();
+		assertEquals (rawData2, msgReceived.getData());
+	}
+	
+	/** Pushes batches of messages, interleaved with single messages */
+	public void testBatches () {
+		
+		ArrayList<Message> msgs = new ArrayList<Message> ();
+		for (int i = 0; i < 10; i++) {
+			
+			ArrayList<MessageWrapper> batch = new ArrayList<MessageWrapper> ();
+			for (int j = (int) (Math.random() * 5); j >= 0; j--) {
+				Message msg = new Message (new MessageType ("testBatches" + msgs.size()));
+				msgs.add(msg);
+				batch.add(new MessageWrapper (msg));
+			}
+			
+			if (batch.size() == 1) 
+				out.pushMessage(batch.get(0));
+			else 
+				out.pushMessages(batch);
+		}
+		
+		for (Message msg : msgs) 
+			assertEquals(msg.getType(), output.getNextMsgTimed().getMessage().getType());
+	}
+	
+	/** Pushes many messages, some of which are larger than the ring */
+	@SuppressWarnings("unchecked")
+	public void testLargeMessages () {
+		
+		final int nbrMsgs = 50;
+		for (int i = 0; i < nbrMsgs; i++) {
+			int[] payload = new int [(int) (Math.random() * 100000)];
+			for (int j = 0; j < payload.length; j++) 
+				payload[j] = i + j;
+			out.pushMessage(new MessageWrapper(new MessageWithPayload<int[]> (new MessageType ("testLargeMessages" + i), payload)));
+		}
+		
+		// Check that the messages are received in the same order, and intact
+		for (int i = 0; i < nbrMsgs; i++) {
+			MessageWithPayload<int[]> msg = (MessageWithPayload<int[]>) output.getNextMsgTimed().getMessage();
+			assertEquals (new MessageType ("testLargeMessages" + i), msg.getType());
+			int[] payload = msg.getPayload();
+			for (int j = 0; j < payload.length; j++) 
+				assertEquals (i + j, payload[j]);
+		}
+	}
+	
+	/** Tests that the MMapPipeFactory uses memory-mapped pipes for recipients on this host
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	public void testFactory () throws IOException {
+		
+		MMapPipeFactory factory = new MMapPipeFactory ();
+		TCPAddress address = new TCPAddress ("localhost", port);
+		QueueInputPipeInterface in = factory.inputPipe(queue, address);
+		QueueOutputPipeInterface pipe = factory.outputPipe(address);
+		assertTrue (pipe instanceof QueueOutputPipeMMap);
+		
+		Message msg = new Message (new MessageType ("testFactory"));
+		pipe.pushMessage(new MessageWrapper (msg));
+		assertEquals(msg.getType(), output.getNextMsgTimed().getMessage().getType());
+		
+		pipe.close();
+		in.close();
+	}
+	
+}
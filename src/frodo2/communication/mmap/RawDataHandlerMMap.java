@@ -0,0 +1,86 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication.mmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import frodo2.communication.MessageWithRawData;
+import frodo2.communication.MessageWithRawData.RawDataHandler;
+
+/** A raw data handler that carries the raw data along with the message
+ *
+ * Since messages sent through memory-mapped rings do not cross the network, the raw data is serialized
+ * when the message is sent, and written to the ring together with the message.
+ * @author Thomas Leaute
+ */
+public class RawDataHandlerMMap implements RawDataHandler {
+
+	/** Used for serialization */
+	private static final long serialVersionUID = -2553937429185931856L;
+
+	/** The serialized raw data, or \c null if it has already been requested or discarded */
+	private byte[] rawData;
+
+	/** Constructor
+	 * @param msg 			the message whose raw data should be serialized
+	 * @throws IOException 	if an I/O error occurs while serializing the raw data
+	 */
+	public RawDataHandlerMMap (MessageWithRawData msg) throws IOException {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+		ObjectOutputStream out = new ObjectOutputStream (bytes);
+		msg.serializeRawData(out);
+		out.close();
+		this.rawData = bytes.toByteArray();
+	}
+
+	/** Returns the raw data
+	 *
+	 * Returns \c null if an exception occurs in the process, or this is not the first time the method is called.
+	 * @see MessageWithRawData.RawDataHandler#requestRawData()
+	 */
+	public synchronized ObjectInputStream requestRawData() {
+
+		if (this.rawData == null)
+			return null;
+
+		try {
+			return new ObjectInputStream (new ByteArrayInputStream (this.rawData));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			this.rawData = null;
+		}
+	}
+
+	/** @see MessageWithRawData.RawDataHandler#discardRawData() */
+	public synchronized void discardRawData() {
+		this.rawData = null;
+	}
+
+}
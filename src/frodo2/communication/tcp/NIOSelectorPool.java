@@ -0,0 +1,218 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication.tcp;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A small pool of threads shared by all NIO pipes, each of which multiplexes many non-blocking channels using a Selector
+ *
+ * Channels are assigned to the selector threads in a round-robin fashion. All operations on a channel's SelectionKey
+ * must be performed by the selector thread the channel is registered with, by passing tasks to SelectorThread#execute(Runnable).
+ * Blocking operations that must not hold up a selector thread (such as raw data transfers) are run on a separate pool of threads.
+ * @author Thomas Leaute
+ */
+final class NIOSelectorPool {
+
+	/** The interface that must be implemented by the objects attached to the registered channels */
+	interface Handler {
+
+		/** Called by the selector thread when the channel is ready for the operations it registered for
+		 * @param key 			the channel's selection key
+		 * @throws IOException 	if an I/O error occurs, in which case the channel is closed and closed() is called
+		 */
+		void ready (SelectionKey key) throws IOException;
+
+		/** Called by the selector thread when the channel has been closed because of an I/O error or of the end of the stream */
+		void closed ();
+	}
+
+	/** A thread that waits for channels to be ready, and runs their handlers */
+	static class SelectorThread extends Thread {
+
+		/** The selector */
+		private final Selector selector;
+
+		/** Tasks to be run by this thread */
+		private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable> ();
+
+		/** Constructor
+		 * @param name 			the name of the thread
+		 * @throws IOException 	if the selector cannot be opened
+		 */
+		private SelectorThread (String name) throws IOException {
+			super (name);
+			this.selector = Selector.open();
+			this.setDaemon(true);
+			this.start();
+		}
+
+		/** Asks this thread to run a task
+		 * @param task 	the task
+		 */
+		void execute (Runnable task) {
+			this.tasks.add(task);
+			this.selector.wakeup();
+		}
+
+		/** Registers a channel with this thread's selector
+		 * @param channel 	the channel, in non-blocking mode
+		 * @param ops 		the operations of interest
+		 * @param handler 	the handler to be called when the channel is ready
+		 */
+		void register (final SelectableChannel channel, final int ops, final Handler handler) {
+			this.execute(() -> {
+				try {
+					channel.register(this.selector, ops, handler);
+				} catch (ClosedChannelException e) {
+					handler.closed();
+				}
+			});
+		}
+
+		/** @param channel 	a channel
+		 * @return the key representing the channel's registration with this thread's selector, or \c null if it is not registered
+		 */
+		SelectionKey keyFor (SelectableChannel channel) {
+			return channel.keyFor(this.selector);
+		}
+
+		/** Closes a channel, and waits until its underlying socket has been released
+		 * @param channel 	the channel
+		 */
+		void close (final SelectableChannel channel) {
+
+			final CountDownLatch done = new CountDownLatch (1);
+			this.execute(() -> {
+				try {
+					channel.close();
+					this.selector.selectNow(); // deregisters the channel, which releases its socket
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				done.countDown();
+			});
+
+			if (Thread.currentThread() != this) {
+				try {
+					done.await();
+				} catch (InterruptedException e) { }
+			}
+		}
+
+		/** Waits for channels to be ready, and runs their handlers and the pending tasks */
+		@Override
+		public void run () {
+
+			while (true) {
+
+				try {
+					this.selector.select();
+				} catch (IOException e) {
+					e.printStackTrace();
+					return;
+				}
+
+				for (Runnable task = this.tasks.poll(); task != null; task = this.tasks.poll())
+					task.run();
+
+				for (Iterator<SelectionKey> iter = this.selector.selectedKeys().iterator(); iter.hasNext(); ) {
+					SelectionKey key = iter.next();
+					iter.remove();
+
+					Handler handler = (Handler) key.attachment();
+					try {
+						handler.ready(key);
+					} catch (IOException | CancelledKeyException e) { // the channel was closed
+						key.cancel();
+						try {
+							key.channel().close();
+						} catch (IOException e1) { }
+						handler.closed();
+					}
+				}
+			}
+		}
+	}
+
+	/** The maximum number of selector threads */
+	static final int MAX_NBR_THREADS = 4;
+
+	/** The shared instance */
+	private static NIOSelectorPool instance;
+
+	/** The selector threads */
+	private final SelectorThread[] threads;
+
+	/** Used to assign channels to selector threads in a round-robin fashion */
+	private final AtomicInteger next = new AtomicInteger ();
+
+	/** The pool of threads used to run blocking tasks */
+	private final ExecutorService blockingTasks = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread (task, "NIOBlockingTask");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/** Constructor
+	 * @param nbrThreads 	the number of selector threads
+	 * @throws IOException 	if a selector cannot be opened
+	 */
+	private NIOSelectorPool (int nbrThreads) throws IOException {
+		this.threads = new SelectorThread [nbrThreads];
+		for (int i = 0; i < nbrThreads; i++)
+			this.threads[i] = new SelectorThread ("NIOSelector" + i);
+	}
+
+	/** @return the shared instance, which is created the first time this method is called
+	 * @throws IOException 	if a selector cannot be opened
+	 */
+	static synchronized NIOSelectorPool getInstance () throws IOException {
+		if (instance == null)
+			instance = new NIOSelectorPool (Math.min(MAX_NBR_THREADS, Runtime.getRuntime().availableProcessors()));
+		return instance;
+	}
+
+	/** @return the selector thread to which the next channel should be assigned */
+	SelectorThread nextThread () {
+		return this.threads[Math.floorMod(this.next.getAndIncrement(), this.threads.length)];
+	}
+
+	/** Runs a task that may block, outside of the selector threads
+	 * @param task 	the task
+	 */
+	void runBlocking (Runnable task) {
+		this.blockingTasks.execute(task);
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import frodo2.communication.FrameReader;
+import frodo2.communication.Queue;
+import frodo2.communication.QueueInputPipeInterface;
+
+/** A queue input pipe that receives messages through TCP, using non-blocking I/O
+ *
+ * Unlike QueueInputPipeTCP, this pipe does not use any thread of its own: connection requests and incoming messages are
+ * handled by the threads of the shared NIOSelectorPool. Messages are expected to be sent by a QueueOutputPipeNIO,
+ * which sends them in frames prefixed with their lengths. The selector threads only reassemble the frames; 
+ * the messages are deserialized by the pool's threads for blocking tasks, once their frame has been fully received.
+ * @author Thomas Leaute
+ * @see QueueOutputPipeNIO
+ */
+public class QueueInputPipeNIO implements QueueInputPipeInterface {
+
+	/** The server channel used to listen to connection requests from message senders */
+	private final ServerSocketChannel servChannel;
+
+	/** The selector thread the server channel is registered with */
+	private final NIOSelectorPool.SelectorThread servThread;
+
+	/** The currently open connections */
+	private final ArrayList<Connection> connections = new ArrayList<Connection> ();
+
+	/** The number of connection requests currently still allowed, possibly shared with other pipes, or \c null if there is no limit */
+	private final AtomicInteger nbrConnections;
+
+	/** This pipe's queue */
+	private final Queue queue;
+
+	/** The port number */
+	private final int port;
+
+	/** A connection with a sender, from which length-prefixed frames of messages are read */
+	private class Connection implements NIOSelectorPool.Handler {
+
+		/** The channel */
+		private final SocketChannel channel;
+
+		/** The selector thread the channel is registered with */
+		private final NIOSelectorPool.SelectorThread thread;
+
+		/** Reassembles the frames, which are deserialized by the pool's threads for blocking tasks */
+		private final FrameReader frames;
+
+		/** Constructor
+		 * @param channel 	the channel
+		 * @param thread 	the selector thread the channel is registered with
+		 * @param pool 		the selector pool
+		 */
+		Connection (SocketChannel channel, NIOSelectorPool.SelectorThread thread, NIOSelectorPool pool) {
+			this.channel = channel;
+			this.thread = thread;
+			this.frames = new FrameReader (queue, pool::runBlocking);
+		}
+
+		/** Reads as many bytes as available, and passes each fully received frame to be deserialized off the selector thread
+		 * @see NIOSelectorPool.Handler#ready(java.nio.channels.SelectionKey)
+		 */
+		public void ready(SelectionKey key) throws IOException {
+			this.frames.read(this.channel::read);
+		}
+
+		/** @see NIOSelectorPool.Handler#closed() */
+		public void closed() {
+			synchronized (connections) {
+				connections.remove(this);
+			}
+		}
+	}
+
+	/** Constructor
+	 * @param queue 			the queue messages should be passed to
+	 * @param port 				port number used to listen for incoming messages
+	 * @param maxNbrConnections maximum number of connection requests allowed. If \c null, there is no limit.
+	 * @throws IOException 		thrown if an I/O error occurred
+	 */
+	public QueueInputPipeNIO (Queue queue, int port, Integer maxNbrConnections) throws IOException  {
+		this (queue, port, maxNbrConnections == null ? null : new AtomicInteger (maxNbrConnections));
+	}
+
+	/** Constructor
+	 * @param queue 			the queue messages should be passed to
+	 * @param port 				port number used to listen for incoming messages
+	 * @param nbrConnections 	number of connection requests still allowed, which can be shared with other pipes. If \c null, there is no limit.
+	 * @throws IOException 		thrown if an I/O error occurred
+	 */
+	public QueueInputPipeNIO (Queue queue, int port, AtomicInteger nbrConnections) throws IOException  {
+
+		this.queue = queue;
+		this.port = port;
+		this.nbrConnections = nbrConnections;
+
+		this.servChannel = ServerSocketChannel.open();
+		this.servChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		this.servChannel.bind(new InetSocketAddress (port));
+		this.servChannel.configureBlocking(false);
+
+		final NIOSelectorPool pool = NIOSelectorPool.getInstance();
+		this.servThread = pool.nextThread();
+		this.servThread.register(this.servChannel, SelectionKey.OP_ACCEPT, new NIOSelectorPool.Handler () {
+
+			public void ready(SelectionKey key) throws IOException {
+				accept(pool);
+			}
+
+			public void closed() { }
+		});
+
+		queue.toBeClosedUponKill(this);
+	}
+
+	/** Constructor
+	 *
+	 * Listens to an unlimited number of connection requests.
+	 * @param queue 	the queue messages should be passed to
+	 * @param port 		port number used to listen for incoming messages
+	 * @throws IOException thrown if an I/O error occurred
+	 */
+	QueueInputPipeNIO (Queue queue, int port) throws IOException  {
+		this(queue, port, (Integer) null);
+	}
+
+	/** Accepts the pending connection requests
+	 * @param pool 			the selector pool
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	private void accept (NIOSelectorPool pool) throws IOException {
+
+		for (SocketChannel channel = this.servChannel.accept(); channel != null; channel = this.servChannel.accept()) {
+
+			// Check whether we are still allowed to accept connections, which other pipes sharing the limit might have used up
+			if (this.nbrConnections != null && this.nbrConnections.getAndDecrement() <= 0) {
+				channel.close();
+				this.servChannel.close();
+				return;
+			}
+
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+			NIOSelectorPool.SelectorThread thread = pool.nextThread();
+			Connection connection = new Connection (channel, thread, pool);
+			synchronized (this.connections) {
+				this.connections.add(connection);
+			}
+			thread.register(channel, SelectionKey.OP_READ, connection);
+
+			// Check whether we have reached the maximum number of connections allowed
+			if (this.nbrConnections != null && this.nbrConnections.get() <= 0) {
+				this.servChannel.close();
+				return;
+			}
+		}
+	}
+
+	/** @see frodo2.communication.QueueInputPipeInterface#close() */
+	public void close() {
+
+		this.servThread.close(this.servChannel);
+
+		ArrayList<Connection> connections;
+		synchronized (this.connections) {
+			connections = new ArrayList<Connection> (this.connections);
+			this.connections.clear();
+		}
+		for (Connection connection : connections)
+			connection.thread.close(connection.channel);
+	}
+
+	/** @see frodo2.communication.QueueInputPipeInterface#toDOT() */
+	public String toDOT() {
+		return "TCPpipe_port" + this.port;
+	}
+
+}
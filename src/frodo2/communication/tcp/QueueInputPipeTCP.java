@@ -22,18 +22,23 @@ How to contact the authors:
 
 package frodo2.communication.tcp;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.lang.reflect.InvocationTargetException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import frodo2.communication.Message;
+import frodo2.communication.MessageRegistry;
+import frodo2.communication.MessageWithRawData;
 import frodo2.communication.MessageWrapper;
 import frodo2.communication.Queue;
 import frodo2.communication.QueueInputPipeInterface;
+import frodo2.communication.tcp.RawDataHandlerChunked.ChunkInputStream;
 
 /** This is a queue input pipe that receives messages through TCP
  * @author Thomas Leaute
@@ -46,8 +51,12 @@ public class QueueInputPipeTCP extends Thread implements QueueInputPipeInterface
 	/** Currently active sockets from which messages are being read */
 	private ArrayList<Socket> sockets;
 	
-	/** Whenever a request for connection is received, one such a thread is spawn to establish the connection */
-	private static class Receiver extends Thread {
+	/** Whenever a request for connection is received, one such a thread is spawn to establish the connection
+	 * 
+	 * The thread also receives the chunks of raw data interleaved with the messages, and passes them to the streams 
+	 * from which the raw data is read. The requests for raw data are sent back to the sender through the same socket. 
+	 */
+	private static class Receiver extends Thread implements RawDataHandlerChunked.Connection {
 		
 		/** The QueueInputPipeTCP that spawned this thread */
 		private QueueInputPipeTCP server;
@@ -55,6 +64,15 @@ public class QueueInputPipeTCP extends Thread implements QueueInputPipeInterface
 		/** The socket from which messages should be read */
 		private Socket socket;
 		
+		/** For each ID of requested raw data, the stream to which its chunks should be passed */
+		private final HashMap<Integer, ChunkInputStream> streams = new HashMap<Integer, ChunkInputStream> ();
+		
+		/** The stream used to send requests for raw data to the sender, created when first needed */
+		private DataOutputStream control;
+		
+		/** Whether the connection has been closed */
+		private boolean closed = false;
+		
 		/** Constructor 
 		 * @param socket the socket used to exchange messages
 		 * @param server the QueueInputPipeTCP that spawned this thread
@@ -84,44 +102,119 @@ public class QueueInputPipeTCP extends Thread implements QueueInputPipeInterface
 				input = new ObjectInputStream (socket.getInputStream());
 			} catch (IOException e) {
 				e.printStackTrace();
-				try {
-					socket.close();
-				} catch (IOException e1) {
-					e1.printStackTrace();
-				}
-				synchronized (server.sockets) {
-					server.sockets.remove(socket);
-				}
+				this.close();
 				return;
 			}
 			
+			MessageRegistry.Decoder decoder = new MessageRegistry.Decoder ();
 			while (true) {
 
-				// Read next Message object from the socket and pass it to the queue
+				// Read next record from the socket
 				try {
-					@SuppressWarnings("unchecked")
-					Class<? extends Message> msgClass = (Class<? extends Message>) input.readObject();
-					Message msg = msgClass.getConstructor().newInstance();
-					msg.readExternal(input);
-					server.queue.addToInbox(new MessageWrapper(msg));
+					final short tag = input.readShort();
+					
+					if (tag == QueueOutputPipeTCP.RAW_DATA_CHUNK) {
+						final int key = input.readInt();
+						byte[] chunk = new byte [input.readInt()];
+						input.readFully(chunk);
+						
+						ChunkInputStream stream;
+						synchronized (this.streams) {
+							stream = this.streams.get(key);
+						}
+						if (stream != null) // otherwise, the raw data is no longer wanted
+							stream.add(chunk);
+						
+					} else if (tag == QueueOutputPipeTCP.RAW_DATA_END) {
+						
+						ChunkInputStream stream;
+						synchronized (this.streams) {
+							stream = this.streams.remove(input.readInt());
+						}
+						if (stream != null) 
+							stream.add(ChunkInputStream.END);
+						
+					} else if (tag == QueueOutputPipeTCP.RAW_DATA_MSG) { // a message whose raw data can be requested
+						final int key = input.readInt();
+						MessageWithRawData msg = (MessageWithRawData) decoder.read(input, input.readShort());
+						msg.setHandler(new RawDataHandlerChunked (key, this));
+						server.queue.addToInbox(new MessageWrapper(msg));
+						
+					} else // Pass the next Message object to the queue
+						server.queue.addToInbox(new MessageWrapper(decoder.read(input, tag)));
 					
 				} catch (IOException e) { // End Of File
-					try {
-						socket.close();
-					} catch (IOException e1) {
-						e1.printStackTrace();
-					}
-					synchronized (server.sockets) {
-						server.sockets.remove(socket);
-					}
+					this.close();
 					return;
-				} catch (InvocationTargetException | NoSuchMethodException | IllegalAccessException | InstantiationException | ClassNotFoundException e) {
+				} catch (ClassNotFoundException e) {
 					e.printStackTrace();
 					continue;
 				}
 			}
 		}
 		
+		/** Closes the socket, and ends all streams of raw data */
+		private void close () {
+			
+			try {
+				socket.close();
+			} catch (IOException e1) {
+				e1.printStackTrace();
+			}
+			synchronized (server.sockets) {
+				server.sockets.remove(socket);
+			}
+			
+			synchronized (this.streams) {
+				this.closed = true;
+				for (ChunkInputStream stream : this.streams.values()) 
+					stream.add(ChunkInputStream.END);
+				this.streams.clear();
+			}
+		}
+
+		/** @see RawDataHandlerChunked.Connection#open(int) */
+		public ChunkInputStream open(int key) {
+			
+			ChunkInputStream stream = new ChunkInputStream (key, this);
+			synchronized (this.streams) {
+				if (this.closed) 
+					stream.add(ChunkInputStream.END);
+				else 
+					this.streams.put(key, stream);
+			}
+			this.grant(key, RawDataHandlerChunked.WINDOW);
+			return stream;
+		}
+
+		/** @see RawDataHandlerChunked.Connection#grant(int, int) */
+		public void grant(int key, int credits) {
+			this.send(key, credits);
+		}
+
+		/** @see RawDataHandlerChunked.Connection#discard(int) */
+		public void discard(int key) {
+			synchronized (this.streams) {
+				this.streams.remove(key);
+			}
+			this.send(key, -1);
+		}
+		
+		/** Sends a request concerning raw data to the sender
+		 * @param key 		the ID of the raw data
+		 * @param credits 	the number of additional chunks the sender may send, or -1 if the raw data is no longer wanted
+		 */
+		private synchronized void send (int key, int credits) {
+			try {
+				if (this.control == null) {
+					this.socket.setTcpNoDelay(true); // requests are small, and should not wait for previous ones to be acknowledged
+					this.control = new DataOutputStream (new BufferedOutputStream (this.socket.getOutputStream()));
+				}
+				this.control.writeInt(key);
+				this.control.writeInt(credits);
+				this.control.flush();
+			} catch (IOException e) { } // the connection has been closed
+		}
 	}
 	
 	/** The number of connection requests currently still allowed */
@@ -29,6 +29,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import frodo2.communication.Message;
+import frodo2.communication.MessageRegistry;
 import frodo2.communication.MessageType;
 import frodo2.communication.Queue;
 import frodo2.communication.QueueTest.ConstantMsgPolicy;
@@ -93,10 +94,9 @@ public class QueueInputPipeTCPTest extends TestCase {
 				Socket socket = new Socket (QueueInputPipeTCPTest.address, QueueInputPipeTCPTest.port);
 				ObjectOutputStream out = new ObjectOutputStream (socket.getOutputStream());
 
-				for (Message message: messages) {
-					out.writeObject(message.getClass());
-					message.writeExternal(out);
-				}
+				MessageRegistry.Encoder encoder = new MessageRegistry.Encoder ();
+				for (Message message: messages) 
+					encoder.write(out, message);
 
 				out.close();
 				socket.close();
@@ -0,0 +1,415 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication.tcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import frodo2.communication.FrameReader;
+import frodo2.communication.Message;
+import frodo2.communication.MessageRegistry;
+import frodo2.communication.MessageWithRawData;
+import frodo2.communication.MessageWrapper;
+import frodo2.communication.QueueOutputPipeInterface;
+
+/** A queue output pipe that sends messages through TCP, using non-blocking I/O
+ *
+ * Unlike QueueOutputPipeTCP, this pipe does not use any thread of its own. Each message (or batch of messages) is serialized 
+ * by one of the NIOSelectorPool's threads for blocking tasks, prefixed with its length, and the resulting frame is written 
+ * to the socket by one of the selector threads whenever the socket can accept more bytes. Requests for raw data are accepted by the selector threads,
+ * and served by the pool's threads for blocking tasks, using the protocol implemented by RawDataHandlerTCP.
+ * @author Thomas Leaute
+ * @see QueueInputPipeNIO
+ */
+public class QueueOutputPipeNIO implements QueueOutputPipeInterface, NIOSelectorPool.Handler {
+
+	/** A ByteArrayOutputStream whose contents are turned into frames
+	 * 
+	 * Each frame starts with its length (excluding these first 4 bytes), followed by the number of messages it contains. 
+	 */
+	private static class FrameBuilder extends ByteArrayOutputStream {
+
+		/** The size of the frame header */
+		private static final int HEADER_SIZE = 8;
+
+		/** Constructor */
+		FrameBuilder () {
+			super (1024);
+			this.count = HEADER_SIZE; // room for the header of the first frame
+		}
+
+		/** @param nbrMsgs 	the number of messages written since the last call
+		 * @return a frame containing all bytes written since the last call 
+		 */
+		ByteBuffer takeFrame (int nbrMsgs) {
+
+			ByteBuffer frame = ByteBuffer.allocate(this.count);
+			frame.put(this.buf, 0, this.count).putInt(0, this.count - 4).putInt(4, nbrMsgs);
+			frame.flip();
+
+			this.count = HEADER_SIZE; // room for the header of the next frame
+			return frame;
+		}
+		
+		/** Discards all bytes written since the last frame was taken */
+		void discardFrame () {
+			this.count = HEADER_SIZE;
+		}
+	}
+
+	/** The pool of selector threads */
+	private final NIOSelectorPool pool;
+
+	/** The selector thread the channel is registered with */
+	private final NIOSelectorPool.SelectorThread thread;
+
+	/** The channel to the recipient */
+	private final SocketChannel channel;
+
+	/** The buffer messages are serialized into; only accessed by the serializing thread */
+	private final FrameBuilder bytes = new FrameBuilder ();
+
+	/** The stream messages are serialized into; only accessed by the serializing thread */
+	private final ObjectOutputStream output;
+
+	/** Used to serialize the messages to \a output */
+	private final MessageRegistry.Encoder encoder = new MessageRegistry.Encoder ();
+
+	/** The batches of messages that remain to be serialized */
+	private final ConcurrentLinkedQueue< List<MessageWrapper> > pending = new ConcurrentLinkedQueue< List<MessageWrapper> > ();
+
+	/** Whether a thread has been asked to serialize the pending batches of messages */
+	private final AtomicBoolean serializing = new AtomicBoolean (false);
+
+	/** The frames that remain to be written to the channel */
+	private final ConcurrentLinkedQueue<ByteBuffer> frames = new ConcurrentLinkedQueue<ByteBuffer> ();
+
+	/** Whether the selector thread has been asked to write the pending frames */
+	private final AtomicBoolean writing = new AtomicBoolean (false);
+
+	/** Whether close() has been called */
+	private volatile boolean closing = false;
+
+	/** The name of this pipe, used only by QueueOutputPipeNIO#toDOT() */
+	private final String name;
+
+	/** Port number on which the pipe should wait for requests for raw data */
+	private final int rawDataPort;
+
+	/** Serves the requests for raw data */
+	private final RawDataHandlerTCP.Server rawDataHandler;
+
+	/** The server channel used to wait for requests for raw data, created when the first message with raw data is sent */
+	private ServerSocketChannel rawDataServer;
+
+	/** The selector thread the raw data server channel is registered with */
+	private NIOSelectorPool.SelectorThread rawDataThread;
+
+	/** Constructor
+	 * @param address 		IP address of the recipient
+	 * @param port 			port number of the recipient
+	 * @param rawDataIP 	IP address to which recipients should connect to request raw data
+	 * @param rawDataPort 	port number on which the pipe should wait for requests for raw data
+	 * @throws IOException 	thrown if an I/O error occurs while setting up the connection
+	 * @throws UnknownHostException thrown if the provided address does not work
+	 */
+	QueueOutputPipeNIO (String address, int port, String rawDataIP, int rawDataPort) throws UnknownHostException, IOException {
+
+		InetSocketAddress recipient = new InetSocketAddress (address, port);
+		if (recipient.isUnresolved())
+			throw new UnknownHostException (address);
+
+		SocketChannel channel = null;
+		for (int i = 0; ; i++) {
+			try {
+				channel = SocketChannel.open(recipient);
+			} catch (IOException e) {
+				if (i >= 1000) {
+					throw e;
+				} else
+					continue;
+			}
+			break;
+		}
+		this.channel = channel;
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		channel.configureBlocking(false);
+
+		this.output = new ObjectOutputStream (this.bytes); // the stream header will be sent with the first message
+
+		if (address.equals("localhost")) {
+			this.name = "TCPpipe_port" + port;
+		} else {
+			this.name = "TCTpipe_IP" + address + "_port" + port;
+		}
+		this.rawDataPort = rawDataPort;
+		this.rawDataHandler = new RawDataHandlerTCP.Server (rawDataIP, rawDataPort);
+
+		this.pool = NIOSelectorPool.getInstance();
+		this.thread = this.pool.nextThread();
+		this.thread.register(channel, 0, this);
+	}
+
+	/** Constructor
+	 *
+	 * Sets the raw data port to \a port + 1 and the raw data IP to "localhost."
+	 * @param address 	IP address of the recipient
+	 * @param port 		port number of the recipient
+	 * @throws IOException thrown if an I/O error occurs while setting up the connection
+	 * @throws UnknownHostException thrown if the provided address does not work
+	 */
+	QueueOutputPipeNIO (String address, int port) throws UnknownHostException, IOException {
+		this (address, port, "localhost", port + 1);
+	}
+
+	/** Asks for the message to be serialized and sent
+	 * @see frodo2.communication.QueueOutputPipeInterface#pushMessage(frodo2.communication.MessageWrapper)
+	 */
+	public void pushMessage(MessageWrapper msgWrap) {
+		this.pushMessages(Collections.singletonList(msgWrap));
+	}
+
+	/** Asks for the messages to be serialized into a single frame and sent
+	 * 
+	 * The serialization is performed by one of the pool's threads for blocking tasks, so that the caller is never blocked 
+	 * by another caller serializing large messages. 
+	 * @see frodo2.communication.QueueOutputPipeInterface#pushMessages(java.util.List)
+	 */
+	@Override
+	public void pushMessages(List<MessageWrapper> msgs) {
+
+		if (this.closing)
+			return;
+
+		this.pending.add(new ArrayList<MessageWrapper> (msgs)); // the caller may reuse its list after this call returns
+
+		// Ask a thread to serialize the batch, unless one is already going to
+		if (this.serializing.compareAndSet(false, true))
+			this.pool.runBlocking(this::serializeAll);
+	}
+
+	/** Serializes all pending batches of messages into frames, and asks the selector thread to send them
+	 * 
+	 * At most one thread executes this method at any given time. 
+	 */
+	private void serializeAll () {
+
+		while (true) {
+
+			try {
+				for (List<MessageWrapper> msgs = this.pending.poll(); msgs != null; msgs = this.pending.poll()) {
+					try {
+						this.serialize(msgs);
+					} catch (RuntimeException e) {
+						System.err.println("Unable to serialize a batch of " + msgs.size() + " message(s)");
+						e.printStackTrace();
+						this.bytes.discardFrame();
+					}
+				}
+			} finally { // otherwise no thread would ever be asked again to serialize the later batches
+				this.serializing.set(false);
+			}
+
+			// Check whether a batch has been added in the meantime, and we are responsible for serializing it
+			if (this.pending.isEmpty() || ! this.serializing.compareAndSet(false, true))
+				break;
+		}
+
+		if (this.closing) 
+			this.thread.execute(this::closeIfDone);
+	}
+
+	/** Serializes a batch of messages into a single frame, and asks the selector thread to send it
+	 * @param msgs 	the batch of messages
+	 */
+	private void serialize (List<MessageWrapper> msgs) {
+
+		int nbrMsgs = 0;
+		for (MessageWrapper msgWrap : msgs)
+			if (this.serialize(msgWrap.getMessage()))
+				nbrMsgs++;
+		if (nbrMsgs == 0)
+			return;
+
+		try {
+			this.output.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		ByteBuffer frame = this.bytes.takeFrame(nbrMsgs);
+		
+		// Refuse to send a frame that the recipient would reject
+		if (frame.limit() - 4 > FrameReader.MAX_FRAME_LENGTH) {
+			System.err.println("Unable to send a frame of " + nbrMsgs + " message(s) of " + (frame.limit() - 4) + " bytes; the maximum is " 
+					+ FrameReader.MAX_FRAME_LENGTH + " bytes");
+			return;
+		}
+		this.frames.add(frame);
+
+		// Ask the selector thread to write the frame, unless it is already going to
+		if (this.writing.compareAndSet(false, true))
+			this.thread.execute(this::startWriting);
+	}
+
+	/** Serializes a message into the current frame
+	 * @param msg 	the message
+	 * @return \c false if the message could not be serialized
+	 */
+	private boolean serialize (Message msg) {
+
+		// Check whether the raw data of this message still remains to be serialized
+		if (msg instanceof MessageWithRawData) {
+			MessageWithRawData msgCast = (MessageWithRawData) msg;
+			if (msgCast.getHandler() == null) {
+
+				// Create the raw data server if it does not already exist
+				try {
+					this.startRawDataServer();
+				} catch (IOException e) {
+					System.err.println("Unable to create the raw data server");
+					e.printStackTrace();
+					return false;
+				}
+
+				this.rawDataHandler.register(msgCast);
+			}
+		}
+
+		try {
+			this.encoder.write(this.output, msg);
+		} catch (IOException e) {
+			System.err.println("Unable to serialize the following message:\n" + msg);
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/** Tells the selector to notify us when the channel can accept more bytes; only called by the selector thread */
+	private void startWriting () {
+		SelectionKey key = this.thread.keyFor(this.channel);
+		if (key != null && key.isValid())
+			key.interestOps(SelectionKey.OP_WRITE);
+	}
+
+	/** Writes as many pending frames as possible; only called by the selector thread
+	 * @see NIOSelectorPool.Handler#ready(java.nio.channels.SelectionKey)
+	 */
+	public void ready(SelectionKey key) throws IOException {
+
+		while (true) {
+
+			for (ByteBuffer frame = this.frames.peek(); frame != null; frame = this.frames.peek()) {
+				this.channel.write(frame);
+				if (frame.hasRemaining()) // the socket's buffer is full
+					return;
+				this.frames.poll();
+			}
+
+			// All frames have been written
+			key.interestOps(0);
+			this.writing.set(false);
+
+			// Check whether a frame has been added in the meantime, and we are responsible for writing it
+			if (this.frames.isEmpty() || ! this.writing.compareAndSet(false, true))
+				break;
+			key.interestOps(SelectionKey.OP_WRITE);
+		}
+
+		this.closeIfDone();
+	}
+
+	/** Closes the channel if close() has been called and all messages have been serialized and written; only called by the selector thread */
+	private void closeIfDone () {
+		if (this.closing && ! this.serializing.get() && this.pending.isEmpty() && this.frames.isEmpty())
+			this.thread.close(this.channel);
+	}
+
+	/** @see NIOSelectorPool.Handler#closed() */
+	public void closed() {
+		this.frames.clear();
+	}
+
+	/** Closes the channel once all pending messages have been sent, and stops listening for raw data requests */
+	public void close () {
+
+		this.closing = true;
+		this.thread.execute(this::closeIfDone);
+
+		synchronized (this.rawDataHandler) {
+			if (this.rawDataServer != null)
+				this.rawDataThread.close(this.rawDataServer);
+		}
+	}
+
+	/** Creates the server channel used to wait for requests for raw data, unless it already exists
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	private void startRawDataServer () throws IOException {
+
+		synchronized (this.rawDataHandler) {
+			
+			if (this.rawDataServer != null) 
+				return;
+			
+			final ServerSocketChannel server = ServerSocketChannel.open();
+			server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			server.bind(new InetSocketAddress (this.rawDataPort));
+			server.configureBlocking(false);
+
+			this.rawDataServer = server;
+			this.rawDataThread = this.pool.nextThread();
+			this.rawDataThread.register(server, SelectionKey.OP_ACCEPT, new NIOSelectorPool.Handler () {
+
+				public void ready(SelectionKey key) throws IOException {
+					for (SocketChannel socket = server.accept(); socket != null; socket = server.accept()) {
+						final SocketChannel request = socket;
+						pool.runBlocking(() -> rawDataHandler.serve(request.socket()));
+					}
+				}
+
+				public void closed() { }
+			});
+		}
+	}
+
+	/** @see frodo2.communication.QueueOutputPipeInterface#toDOT() */
+	public String toDOT() {
+		return this.name;
+	}
+
+}
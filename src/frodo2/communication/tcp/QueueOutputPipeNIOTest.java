@@ -0,0 +1,226 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication.tcp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import frodo2.communication.Message;
+import frodo2.communication.MessageSerializedSimple;
+import frodo2.communication.MessageType;
+import frodo2.communication.MessageWithPayload;
+import frodo2.communication.MessageWrapper;
+import frodo2.communication.Queue;
+import frodo2.communication.QueueTest.ConstantMsgPolicy;
+import frodo2.communication.QueueTest.QueueOutputPipeTrivial;
+
+import junit.extensions.RepeatedTest;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/** A JUnit test class for QueueOutputPipeNIO, that uses QueueInputPipeNIO
+ * @author Thomas Leaute
+ */
+public class QueueOutputPipeNIOTest extends TestCase {
+	
+	/** The QueueOutputPipeNIO under test */
+	private QueueOutputPipeNIO out;
+	
+	/** The queue to which messages are passed */
+	private Queue queue;
+	
+	/** The output pipe used for the tests */
+	private QueueOutputPipeTrivial output;
+	
+	/** Generates a test case for the given method name
+	 * @param string 			name of the method
+	 */
+	public QueueOutputPipeNIOTest(String string) {
+		super (string);
+	}
+
+	/** @return the test suite */
+	public static TestSuite suite () {
+		TestSuite suite = new TestSuite ("Tests for QueueOutputPipeNIO");
+		
+		TestSuite queueSuite = new TestSuite("Tests for Queue");
+		
+		TestSuite tmp = new TestSuite ("Tests using messages without raw data");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeNIOTest ("testNonSerialized"), 1000));
+		queueSuite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests using messages with raw data");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeNIOTest ("testSerialized"), 1000));
+		queueSuite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests using batches of messages");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeNIOTest ("testBatches"), 1000));
+		queueSuite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests using a queue that batches messages");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeNIOTest ("testQueueBatching"), 100));
+		queueSuite.addTest(tmp);
+		
+		tmp = new TestSuite ("Tests using large messages");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeNIOTest ("testLargeMessages"), 100));
+		queueSuite.addTest(tmp);
+		
+		suite.addTest(queueSuite);
+		
+		return suite;
+	}
+
+	/**
+	 * @throws IOException thrown if an I/O error occurs
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	public void setUp () throws Exception {
+		
+		this.queue = new Queue(false);
+		output = new QueueOutputPipeTrivial();
+		queue.addOutputPipe("tester", output);
+		queue.addIncomingMessagePolicy(new ConstantMsgPolicy("tester", false));
+		new QueueInputPipeNIO (queue, QueueInputPipeTCPTest.port, 1);
+		out = new QueueOutputPipeNIO (QueueInputPipeTCPTest.address, QueueInputPipeTCPTest.port);
+	}
+	
+	/** @see junit.framework.TestCase#tearDown() */
+	public void tearDown () {
+		out.close();
+		queue.end();
+		queue = null;
+		output = null;
+	}
+	
+	/** Pushes multiple non-serialized messages */
+	public void testNonSerialized () {
+		
+		Message msg1 = new Message (new MessageType ("testNonSerialized1"));
+		Message msg2 = new Message (new MessageType ("testNonSerialized2"));
+		Message msg3 = new Message (new MessageType ("testNonSerialized3"));
+		
+		out.pushMessage(new MessageWrapper(msg1));
+		out.pushMessage(new MessageWrapper(msg2));
+		out.pushMessage(new MessageWrapper(msg3));
+		
+		assertEquals(msg1.getType(), output.getNextMsgTimed().getMessage().getType());
+		assertEquals(msg2.getType(), output.getNextMsgTimed().getMessage().getType());
+		assertEquals(msg3.getType(), output.getNextMsgTimed().getMessage().getType());
+	}
+
+	/** Pushes multiple messages with associated raw data
+	 * @throws IOException thrown if an I/O error occurs
+	 */
+	@SuppressWarnings("unchecked")
+	public void testSerialized () throws IOException {
+		
+		// Create the serialized data
+		String rawData1 = "rawData1";
+		MessageSerializedSimple <String> msg1 = new MessageSerializedSimple <String> (new MessageType ("testSerialized1"), rawData1);
+		String rawData2 = "rawData2";		
+		MessageSerializedSimple <String> msg2 = new MessageSerializedSimple <String> (new MessageType ("testSerialized2"), rawData2);
+
+		out.pushMessage(new MessageWrapper(msg1));
+		out.pushMessage(new MessageWrapper(msg2));
+		
+		// Read the messages and compare with originals
+		MessageSerializedSimple <String> msgReceived = (MessageSerializedSimple <String>) output.getNextMsgTimed().getMessage();
+		assertEquals (msg1.getType(), msgReceived.getType());
+		msgReceived.deserializeRawData();
+		assertEquals (rawData1, msgReceived.getData());
+		
+		msgReceived = (MessageSerializedSimple <String>) output.getNextMsgTimed().getMessage();
+		assertEquals (msg2.getType(), msgReceived.getType());
+		msgReceived.deserializeRawData();
+		assertEquals (rawData2, msgReceived.getData());
+
+	}
+	
+	/** Pushes batches of messages, interleaved with single messages */
+	public void testBatches () {
+		
+		ArrayList<Message> msgs = new ArrayList<Message> ();
+		for (int i = 0; i < 10; i++) {
+			
+			ArrayList<MessageWrapper> batch = new ArrayList<MessageWrapper> ();
+			for (int j = (int) (Math.random() * 5); j >= 0; j--) {
+				Message msg = new Message (new MessageType ("testBatches" + msgs.size()));
+				msgs.add(msg);
+				batch.add(new MessageWrapper (msg));
+			}
+			
+			if (batch.size() == 1) 
+				out.pushMessage(batch.get(0));
+			else 
+				out.pushMessages(batch);
+		}
+		
+		for (Message msg : msgs) 
+			assertEquals(msg.getType(), output.getNextMsgTimed().getMessage().getType());
+	}
+	
+	/** Sends many messages through a queue that batches them, and checks that they are all delivered in order
+	 * 
+	 * Checks that the queue does not reuse a batch once it has passed it to the pipe, which serializes it asynchronously. 
+	 */
+	public void testQueueBatching () {
+		
+		Queue sender = new Queue (false);
+		sender.setBatching(1 + (int) (Math.random() * 100), 0);
+		sender.addOutputPipe("receiver", out);
+		
+		final int nbrMsgs = 5000;
+		for (int i = 0; i < nbrMsgs; i++) 
+			sender.sendMessage("receiver", new Message (new MessageType ("testQueueBatching" + i)));
+		sender.flush();
+		
+		for (int i = 0; i < nbrMsgs; i++) 
+			assertEquals(new MessageType ("testQueueBatching" + i), output.getNextMsgTimed().getMessage().getType());
+		assertNull(output.getNextMsg());
+		
+		sender.end();
+	}
+	
+	/** Pushes many messages, some of which are too large to be sent or received in one go */
+	@SuppressWarnings("unchecked")
+	public void testLargeMessages () {
+		
+		final int nbrMsgs = 50;
+		for (int i = 0; i < nbrMsgs; i++) {
+			int[] payload = new int [(int) (Math.random() * 100000)];
+			for (int j = 0; j < payload.length; j++) 
+				payload[j] = i + j;
+			out.pushMessage(new MessageWrapper(new MessageWithPayload<int[]> (new MessageType ("testLargeMessages" + i), payload)));
+		}
+		
+		// Check that the messages are received in the same order, and intact
+		for (int i = 0; i < nbrMsgs; i++) {
+			MessageWithPayload<int[]> msg = (MessageWithPayload<int[]>) output.getNextMsgTimed().getMessage();
+			assertEquals (new MessageType ("testLargeMessages" + i), msg.getType());
+			int[] payload = msg.getPayload();
+			for (int j = 0; j < payload.length; j++) 
+				assertEquals (i + j, payload[j]);
+		}
+	}
+	
+}
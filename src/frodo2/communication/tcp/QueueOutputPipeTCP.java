@@ -23,57 +23,71 @@ How to contact the authors:
 /** Contains classes used for communication between agents via TCP */
 package frodo2.communication.tcp;
 
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 import frodo2.communication.Message;
+import frodo2.communication.MessageRegistry;
 import frodo2.communication.MessageWithRawData;
+import frodo2.communication.MessageWithRawData.RawDataHandler;
 import frodo2.communication.MessageWrapper;
 import frodo2.communication.QueueOutputPipeInterface;
 
 /** This is a queue output pipe that sends messages through TCP
+ * 
+ * The raw data of messages is streamed over the same connection as the messages, in chunks that are interleaved with 
+ * the other messages. Each message whose raw data remains to be serialized is preceded by a record containing the ID 
+ * of its raw data, and the recipient uses a RawDataHandlerChunked to request the raw data, or tell the pipe that 
+ * it is not needed, through the reverse direction of the connection. The raw data is only serialized once it has been 
+ * requested, and the pipe only sends a chunk when the recipient has granted it a credit, so that a slow recipient 
+ * neither delays the other messages nor forces the sender to buffer the whole raw data. 
  * @author Thomas Leaute
  * @todo Use ZIP streams to reduce information exchange?... 
  */
 public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 
-	/** List into which pushed messages should be added, until they are sent */
-	private LinkedList <Message> messages = new LinkedList <Message> ();
+	/** The tag of a record that contains the ID of the raw data of the message that follows */
+	static final short RAW_DATA_MSG = MessageRegistry.UNTAGGED - 1;
 	
-	/** IP address to which recipients should connect to request raw data */
-	private String rawDataIP;
+	/** The tag of a record that contains a chunk of raw data */
+	static final short RAW_DATA_CHUNK = MessageRegistry.UNTAGGED - 2;
 	
-	/** Port number on which the pipe should wait for requests for raw data */
-	private int rawDataPort;
+	/** The tag of a record that signals the end of some raw data */
+	static final short RAW_DATA_END = MessageRegistry.UNTAGGED - 3;
+	
+	/** The maximum size of a chunk of raw data, in bytes */
+	static final int CHUNK_SIZE = 1 << 16;
+	
+	/** List into which pushed messages and chunks of raw data should be added, until they are sent */
+	private LinkedList <Object> messages = new LinkedList <Object> ();
 	
 	/** Used to tell the thread to stop */
-	private boolean keepGoing = true;
+	private volatile boolean keepGoing = true;
 
 	/** Output stream to which outgoing messages should be written */
 	private ObjectOutputStream output;
 	
+	/** Used to serialize the messages to \a output */
+	private final MessageRegistry.Encoder encoder = new MessageRegistry.Encoder ();
+	
 	/** The output socket */
 	private Socket socket;
 
-	/** The name of this pipe, used only by QueueOutputPipeTCP#toDOT() */
+	/** The name of this QueueOutputPipeTCP, used only by QueueOutputPipeTCP#toDOT() */
 	private String name;
 	
-	/** The ID incremented each time a message with raw data is sent */
-	private Integer rawDataID = 0;
-	
-	/** Lock for the rawDataID field */
-	private final ReentrantLock rawDataID_lock = new ReentrantLock();
-	
-	/** Lock for the rawDataInfos field */
-	private final ReentrantLock rawDataInfos_lock = new ReentrantLock();
+	/** The ID incremented each time a message with raw data is sent; only accessed by the pipe's thread */
+	private int rawDataID = 0;
 	
 	/** Lock for the messages field */
 	private final ReentrantLock messages_lock = new ReentrantLock();
@@ -81,40 +95,67 @@ public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 	/** Condition used to signal that the messages list is not empty */
 	private final Condition messageReceived = messages_lock.newCondition(); /// @todo Use a BlockingQueue instead?
 	
+	/** A chunk of raw data */
+	private static class Chunk {
+		
+		/** The ID of the raw data */
+		final int key;
+		
+		/** The bytes, or \c null if this chunk signals the end of the raw data */
+		final byte[] data;
+		
+		/** The number of bytes */
+		final int length;
+
+		/** Constructor
+		 * @param key 		the ID of the raw data
+		 * @param data 		the bytes, or \c null if this chunk signals the end of the raw data
+		 * @param length 	the number of bytes
+		 */
+		Chunk (int key, byte[] data, int length) {
+			this.key = key;
+			this.data = data;
+			this.length = length;
+		}
+	}
+	
 	/** A convenience class used to store information about raw data */
 	private static class RawDataInfo {
 		
 		/** A message with associated raw data */
-		public MessageWithRawData msg;
+		final MessageWithRawData msg;
+		
+		/** Whether the raw data of \a msg must first be requested from the pipe it was received from */
+		final boolean relayed;
 		
-		/** The number of recipients potentially interested in the raw data */
-		public Integer counter;
+		/** The number of chunks the recipient currently allows the pipe to send */
+		int credits = 0;
+		
+		/** Whether the recipient has requested the raw data */
+		boolean requested = false;
+		
+		/** Whether the recipient no longer wants the raw data */
+		boolean discarded = false;
 
 		/** Constructor
-		 * @param msg the message with raw data
-		 * @param counter the number of recipients potentially interested in the raw data
+		 * @param msg 		the message with raw data
+		 * @param relayed 	whether the raw data of \a msg must first be requested from the pipe it was received from
 		 */
-		public RawDataInfo(MessageWithRawData msg, Integer counter) {
+		RawDataInfo(MessageWithRawData msg, boolean relayed) {
 			this.msg = msg;
-			this.counter = counter;
+			this.relayed = relayed;
 		}
 	}
 	
 	/** For each raw data ID, the information about the corresponding raw data */
-	private HashMap<Integer, RawDataInfo> rawDataInfos = new HashMap<Integer, RawDataInfo> ();
+	private final HashMap<Integer, RawDataInfo> rawDataInfos = new HashMap<Integer, RawDataInfo> ();
 	
-	/** A thread that listens for requests to serialize or discard raw data */
-	private class RawDataSender extends Thread {
+	/** A thread that listens for the credits and discard requests sent back by the recipient */
+	private class RawDataControl extends Thread {
 		
-		/** The socket used to communicate with the potential raw data recipient */
-		private Socket socket;
-		
-		/** Constructor 
-		 * @param socket the socket used to communicate with the potential raw data recipient
-		 */
-		public RawDataSender(Socket socket) {
-			super("RawDataSender");
-			this.socket = socket;
+		/** Constructor */
+		public RawDataControl() {
+			super("RawDataControl");
 			start();
 		}
 
@@ -125,84 +166,152 @@ public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 			super.start();
 		}
 
-		/** Waits for requests concerning raw data */
+		/** Waits for credits and discard requests, until the connection is closed */
 		public void run () {
 			
-			// Get the info about the requested raw data
-			ObjectInputStream inStream;
-			Integer rawDataID;
-			try {
-				inStream = new ObjectInputStream (socket.getInputStream());
-				rawDataID = inStream.readInt();
-			} catch (IOException e2) {
-				System.err.println("Failed to read the raw data ID");
-				e2.printStackTrace();
-				return;
-			}
-			RawDataInfo rawDataInfo;
 			try {
-				rawDataInfos_lock.lock();
-				assert rawDataInfos.containsKey(rawDataID) : "Received a request for an unknown raw data ID " + rawDataID;
-				rawDataInfo = rawDataInfos.get(rawDataID);
-			} finally {
-				rawDataInfos_lock.unlock();
+				DataInputStream input = new DataInputStream (socket.getInputStream());
+				while (true) {
+					
+					final int key = input.readInt();
+					final int credits = input.readInt();
+					
+					RawDataInfo info;
+					synchronized (rawDataInfos) {
+						info = (credits < 0 ? rawDataInfos.remove(key) : rawDataInfos.get(key));
+					}
+					if (info == null) // the raw data has already been fully sent or discarded
+						continue;
+					
+					synchronized (info) {
+						if (credits < 0) 
+							info.discarded = true;
+						else {
+							info.credits += credits;
+							if (! info.requested) { // first request for this raw data
+								info.requested = true;
+								new RawDataSender (key, info);
+							}
+						}
+						info.notifyAll();
+					}
+				}
+			} catch (IOException e) { // the connection was closed
+				discardAll();
 			}
-			
-			// Increment the number of potential recipients for the raw data
-			synchronized (rawDataInfo) {
-				rawDataInfo.counter++;
+		}
+	}
+	
+	/** The thread that listens for the credits and discard requests sent back by the recipient */
+	private RawDataControl rawDataControl;
+	
+	/** A stream that splits the raw data into chunks, and passes each chunk to the pipe when the recipient allows it */
+	private class ChunkOutputStream extends OutputStream {
+		
+		/** The ID of the raw data */
+		private final int key;
+		
+		/** The information about the raw data */
+		private final RawDataInfo info;
+		
+		/** The current chunk */
+		private byte[] buf = new byte [CHUNK_SIZE];
+		
+		/** The number of bytes in the current chunk */
+		private int count = 0;
+		
+		/** Whether the stream has been closed */
+		private boolean closed = false;
+
+		/** Constructor
+		 * @param key 	the ID of the raw data
+		 * @param info 	the information about the raw data
+		 */
+		ChunkOutputStream (int key, RawDataInfo info) {
+			this.key = key;
+			this.info = info;
+		}
+
+		/** @see java.io.OutputStream#write(int) */
+		@Override
+		public void write(int b) throws IOException {
+			if (this.count == this.buf.length) 
+				this.sendChunk();
+			this.buf[this.count++] = (byte) b;
+		}
+
+		/** @see java.io.OutputStream#write(byte[], int, int) */
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (this.count == this.buf.length) 
+					this.sendChunk();
+				final int n = Math.min(len, this.buf.length - this.count);
+				System.arraycopy(b, off, this.buf, this.count, n);
+				this.count += n;
+				off += n;
+				len -= n;
 			}
+		}
+		
+		/** Waits for a credit, and passes the current chunk to the pipe
+		 * @throws IOException 	if the recipient no longer wants the raw data
+		 */
+		private void sendChunk () throws IOException {
 			
-			// Check whether we must send the raw data
-			try {
-				if (inStream.readBoolean()) {
+			synchronized (this.info) {
+				while (this.info.credits == 0 && ! this.info.discarded) {
 					try {
-						ObjectOutputStream outStream = new ObjectOutputStream(socket.getOutputStream());
-						rawDataInfo.msg.serializeRawData(outStream);
-						try {
-							outStream.close();
-						} catch (IOException e) { }
-					} catch (IOException e1) {
-						System.err.println("Unable to set up the stream to send raw data in the following message:\n" + rawDataInfo.msg);
-						e1.printStackTrace();
+						this.info.wait();
+					} catch (InterruptedException e) {
+						throw new IOException ("Interrupted while waiting for the recipient to consume the raw data", e);
 					}
 				}
-			} catch (IOException e1) {
-				System.err.println("Failed to determine whether the recipients wants the raw data of the following message:\n"
-						+ rawDataInfo.msg);
-				e1.printStackTrace();
+				if (this.info.discarded) 
+					throw new IOException ("The recipient no longer wants the raw data");
+				this.info.credits--;
 			}
 			
-			try {
-				inStream.close();
-			} catch (IOException e) { }
+			enqueue(new Chunk (this.key, this.buf, this.count));
+			this.buf = new byte [CHUNK_SIZE];
+			this.count = 0;
+		}
+
+		/** Sends the last chunk, followed by the end of the raw data
+		 * @see java.io.OutputStream#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			if (this.closed) 
+				return;
+			this.closed = true;
 			
-			// Check whether there are no more potential recipients for the raw data
-			synchronized (rawDataInfo) {
-				if (--rawDataInfo.counter <= 0) { // no more potential recipients; discard the data
-					synchronized (rawDataInfos) {
-						rawDataInfos.remove(rawDataID);
-					}
-				}
-			}
+			if (this.count > 0) 
+				this.sendChunk();
+			enqueue(new Chunk (this.key, null, 0));
 		}
 	}
 	
-	/** The thread responsible for waiting for requests for raw data */
-	private class RawDataServer extends Thread {
-
-		/** Server socket used to wait for requests for raw data */
-		private ServerSocket servSocket;
+	/** A thread that serializes some raw data once the recipient has requested it */
+	private class RawDataSender extends Thread {
+		
+		/** The ID of the raw data */
+		private final int key;
+		
+		/** The information about the raw data */
+		private final RawDataInfo info;
 
-		/** Constructor
-		 * @throws IOException thrown if an I/O errors occurs when creating the server socket
+		/** Constructor 
+		 * @param key 	the ID of the raw data
+		 * @param info 	the information about the raw data
 		 */
-		public RawDataServer() throws IOException {
-			super("RawDataServer");
-			servSocket = new ServerSocket (rawDataPort);
+		public RawDataSender(int key, RawDataInfo info) {
+			super("RawDataSender");
+			this.key = key;
+			this.info = info;
 			start();
 		}
-		
+
 		/** @see java.lang.Thread#start() */
 		@Override
 		public void start () {
@@ -210,24 +319,38 @@ public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 			super.start();
 		}
 
-		/** Waits for requests for raw data
-		 * @see java.lang.Thread#run()
-		 */
+		/** Serializes the raw data */
 		public void run () {
-			while (true) {
-				// Wait for a request and spawn a new RawDataSender
+			
+			ChunkOutputStream chunks = new ChunkOutputStream (this.key, this.info);
+			try {
+				// If the message was received through another pipe, first get its raw data from there
+				if (this.info.relayed) 
+					this.info.msg.deserializeRawData();
+				
+				ObjectOutputStream outStream = new ObjectOutputStream (chunks);
+				this.info.msg.serializeRawData(outStream);
+				outStream.close();
+				
+			} catch (IOException e) {
+				if (! this.info.discarded) {
+					System.err.println("Unable to send the raw data in the following message:\n" + this.info.msg);
+					e.printStackTrace();
+				}
+			} finally {
+				
+				// Make sure the recipient does not wait forever for the end of the raw data
 				try {
-					new RawDataSender (servSocket.accept());
-				} catch (IOException e) { // the socket server was closed
-					return;
+					chunks.close();
+				} catch (IOException e) { }
+				
+				synchronized (rawDataInfos) {
+					rawDataInfos.remove(this.key);
 				}
 			}
 		}
 	}
 	
-	/** The thread responsible for waiting for requests for raw data */
-	private RawDataServer rawDataServer;
-	
 	/** The QueueOutputPipeTCP's thread */
 	private Thread myThread;
 	
@@ -238,18 +361,14 @@ public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 	 * @param output output stream to which outgoing messages should be written
 	 * @param address IP address of the recipient (only used by QueueOutputPipeTCP#toDOT())
 	 * @param port port number of the recipient (only used by QueueOutputPipeTCP#toDOT())
-	 * @param rawDataIP IP address to which recipients should connect to request raw data
-	 * @param rawDataPort port number on which the pipe should wait for requests for raw data
 	 */
-	private void init (ObjectOutputStream output, String address, int port, String rawDataIP, int rawDataPort) {
+	private void init (ObjectOutputStream output, String address, int port) {
 		this.output = output;
 		if (address.equals("localhost")) {
 			this.name = "TCPpipe_port" + port;
 		} else {
 			this.name = "TCTpipe_IP" + address + "_port" + port;
 		}
-		this.rawDataPort = rawDataPort;
-		this.rawDataIP = rawDataIP;
 		myThread = new Thread(this, myThreadName);
 		myThread.setDaemon(true);
 		myThread.start();
@@ -258,12 +377,10 @@ public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 	/** Constructor
 	 * @param address IP address of the recipient
 	 * @param port port number of the recipient
-	 * @param rawDataIP IP address to which recipients should connect to request raw data
-	 * @param rawDataPort port number on which the pipe should wait for requests for raw data
 	 * @throws IOException thrown if an I/O error occurs while setting up the connection
 	 * @throws UnknownHostException thrown if the provided address does not work
 	 */
-	QueueOutputPipeTCP(String address, int port, String rawDataIP, int rawDataPort) throws UnknownHostException, IOException {
+	QueueOutputPipeTCP(String address, int port) throws UnknownHostException, IOException {
 		ObjectOutputStream out = null;
 		for (int i = 0; ; i++) {
 			try {
@@ -278,46 +395,61 @@ public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 			}
 			break;
 		}
-		init(out, address, port, rawDataIP, rawDataPort);
+		
+		// The records sent in response to requests for raw data are small, and should not wait for previous ones to be acknowledged
+		this.socket.setTcpNoDelay(true);
+		init(out, address, port);
 	}
 
-	/** Constructor
-	 * 
-	 * Sets the raw data port to \ port + 1 and the raw data IP to "localhost."
-	 * @param address IP address of the recipient
-	 * @param port port number of the recipient
-	 * @throws IOException thrown if an I/O error occurs while setting up the connection
-	 * @throws UnknownHostException thrown if the provided address does not work
+	/** Adds an item to the list of items to be sent
+	 * @param item 	a message or a chunk of raw data
 	 */
-	QueueOutputPipeTCP(String address, int port) throws UnknownHostException, IOException {
-		ObjectOutputStream out = null;
-		for (int i = 0; ; i++) {
-			try {
-				out = new ObjectOutputStream ((this.socket = new Socket (address, port)).getOutputStream());
-			} catch (UnknownHostException e) {
-				throw e;
-			} catch (IOException e) {
-				if (i >= 1000) {
-					throw e;
-				} else 
-					continue;
-			}
-			break;
+	private void enqueue (Object item) {
+		try {
+			messages_lock.lock();
+			messages.add(item);
+			messageReceived.signal();
+		} finally {
+			messages_lock.unlock();
 		}
-		init(out, address, port, "localhost", port + 1);
 	}
-
+	
 	/** @see frodo2.communication.QueueOutputPipeInterface#pushMessage(frodo2.communication.MessageWrapper) */
 	public void pushMessage(MessageWrapper msgWrap) {
+		this.enqueue(msgWrap.getMessage());
+	}
+	
+	/** Adds all messages at once, so that they are written in a row before the stream is flushed
+	 * @see frodo2.communication.QueueOutputPipeInterface#pushMessages(java.util.List)
+	 */
+	@Override
+	public void pushMessages(List<MessageWrapper> msgs) {
 		try {
 			messages_lock.lock();
-			messages.add(msgWrap.getMessage());
+			for (MessageWrapper msgWrap : msgs) 
+				messages.add(msgWrap.getMessage());
 			messageReceived.signal();
 		} finally {
 			messages_lock.unlock();
 		}
 	}
 	
+	/** Wakes up and stops all RawDataSenders */
+	private void discardAll () {
+		
+		ArrayList<RawDataInfo> infos;
+		synchronized (rawDataInfos) {
+			infos = new ArrayList<RawDataInfo> (rawDataInfos.values());
+			rawDataInfos.clear();
+		}
+		for (RawDataInfo info : infos) {
+			synchronized (info) {
+				info.discarded = true;
+				info.notifyAll();
+			}
+		}
+	}
+	
 	/** Close all pipes, and tells the thread to stop */
 	public void close () {
 		keepGoing = false;
@@ -329,25 +461,14 @@ public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 			e1.printStackTrace();
 		}
 		
-		if (rawDataServer != null) {
-			try {
-				rawDataServer.servSocket.close();
-				try {
-					rawDataServer.join();
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
+		this.discardAll();
 	}
 
 	/** Continuously checks if there are messages to be sent and sends them */
 	public void run () {
 		while (keepGoing) {
 
-			Message msg = null;
+			Object item = null;
 			try {
 				messages_lock.lock();
 				if (messages.isEmpty()) { // wait for notification of new message
@@ -356,7 +477,8 @@ public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 					try {
 						output.flush();
 					} catch (IOException e1) {
-						e1.printStackTrace();
+						if (keepGoing) 
+							e1.printStackTrace();
 						return;
 					}
 					
@@ -368,55 +490,20 @@ public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 					}
 					continue;
 				} else 
-					msg = messages.removeFirst();
+					item = messages.removeFirst();
 			} finally {
 				if(messages_lock.isHeldByCurrentThread())
 					messages_lock.unlock();
 			}
 			
-			// First check whether this message is of type MessageWithRawData
-			if (msg instanceof MessageWithRawData) {
-				MessageWithRawData msgCast = (MessageWithRawData) msg;
-
-				// Check whether the raw data still remains to be serialized
-				if (msgCast.getHandler() == null) {
-
-					// Create and start the RawDataServer if it is not already running
-					if (rawDataServer == null) {
-						try {
-							rawDataServer = new RawDataServer ();
-						} catch (IOException e) {
-							System.err.println("Unable to create RawDataServer");
-							e.printStackTrace();
-							continue;
-						}
-					}
-
-					// Record the info about these new raw data
-					try {
-						rawDataID_lock.lock();
-						rawDataInfos_lock.lock();
-						rawDataInfos.put(++rawDataID, new RawDataInfo (msgCast, 0));
-						
-						// Set up the raw data handler for this message
-						msgCast.setHandler(new RawDataHandlerTCP (rawDataID, rawDataIP, rawDataPort));
-					} finally {
-						rawDataID_lock.unlock();
-						if(rawDataInfos_lock.isHeldByCurrentThread())
-							rawDataInfos_lock.unlock();
-					}
-				}
-
-				/// @todo There is a privacy issue when the raw data is already serialized: 
-				/// the recipients learn the IP address of the sender of the raw data
-			}
-
-			// Now, send the message
 			try {
-				output.writeObject(msg.getClass());
-				msg.writeExternal(output);
+				if (item instanceof Chunk) 
+					this.write((Chunk) item);
+				else 
+					this.write((Message) item);
 			} catch (IOException e) {
-				e.printStackTrace();
+				if (keepGoing) 
+					e.printStackTrace();
 				return;
 			}
 
@@ -430,6 +517,54 @@ public class QueueOutputPipeTCP implements Runnable, QueueOutputPipeInterface {
 			e.printStackTrace();
 		}
 	}
+	
+	/** Writes a chunk of raw data to the stream
+	 * @param chunk 		the chunk
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	private void write (Chunk chunk) throws IOException {
+		
+		if (chunk.data == null) { // end of the raw data
+			output.writeShort(RAW_DATA_END);
+			output.writeInt(chunk.key);
+		} else {
+			output.writeShort(RAW_DATA_CHUNK);
+			output.writeInt(chunk.key);
+			output.writeInt(chunk.length);
+			output.write(chunk.data, 0, chunk.length);
+		}
+	}
+	
+	/** Writes a message to the stream
+	 * @param msg 			the message
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	private void write (Message msg) throws IOException {
+		
+		// First check whether this message is of type MessageWithRawData
+		if (msg instanceof MessageWithRawData) {
+			MessageWithRawData msgCast = (MessageWithRawData) msg;
+			
+			// Check whether the raw data still remains to be serialized, or was received in chunks from another pipe
+			RawDataHandler handler = msgCast.getHandler();
+			if (handler == null || handler instanceof RawDataHandlerChunked) {
+				
+				// Start listening for requests for raw data if not already done
+				if (rawDataControl == null) 
+					rawDataControl = new RawDataControl ();
+				
+				// Record the info about these new raw data, which will be serialized when the recipient requests them
+				synchronized (rawDataInfos) {
+					rawDataInfos.put(++rawDataID, new RawDataInfo (msgCast, handler != null));
+				}
+				output.writeShort(RAW_DATA_MSG);
+				output.writeInt(rawDataID);
+			}
+		}
+
+		// Now, send the message
+		encoder.write(output, msg);
+	}
 
 	/** @see frodo2.communication.QueueOutputPipeInterface#toDOT() */
 	public String toDOT() {
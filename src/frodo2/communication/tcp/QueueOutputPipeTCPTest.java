@@ -23,6 +23,8 @@ How to contact the authors:
 package frodo2.communication.tcp;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
 
 import frodo2.communication.Message;
 import frodo2.communication.MessageSerializedSimple;
@@ -71,6 +73,11 @@ public class QueueOutputPipeTCPTest extends TestCase {
 		tmp.addTest(new RepeatedTest (new QueueOutputPipeTCPTest ("testSerialized"), 1000));
 		queueSuite.addTest(tmp);
 		
+		tmp = new TestSuite ("Tests using messages with large raw data");
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeTCPTest ("testLargeSerialized"), 10));
+		tmp.addTest(new RepeatedTest (new QueueOutputPipeTCPTest ("testDiscarded"), 100));
+		queueSuite.addTest(tmp);
+		
 		suite.addTest(queueSuite);
 		
 		return suite;
@@ -142,4 +149,53 @@ public class QueueOutputPipeTCPTest extends TestCase {
 
 	}
 	
+	/** Pushes a message with raw data spanning many chunks, followed by a message without raw data
+	 * 
+	 * The second message must be received before the raw data of the first has been requested. 
+	 */
+	@SuppressWarnings("unchecked")
+	public void testLargeSerialized () {
+		
+		// Create raw data much larger than the window of chunks the sender may send ahead
+		int[] rawData = new int [RawDataHandlerChunked.WINDOW * QueueOutputPipeTCP.CHUNK_SIZE + new Random ().nextInt(1000000)];
+		Random rand = new Random ();
+		for (int i = 0; i < rawData.length; i++) 
+			rawData[i] = rand.nextInt();
+		MessageSerializedSimple <int[]> msg1 = new MessageSerializedSimple <int[]> (new MessageType ("testLargeSerialized1"), rawData);
+		Message msg2 = new Message (new MessageType ("testLargeSerialized2"));
+		
+		out.pushMessage(new MessageWrapper(msg1));
+		out.pushMessage(new MessageWrapper(msg2));
+		
+		MessageSerializedSimple <int[]> msgReceived = (MessageSerializedSimple <int[]>) output.getNextMsgTimed().getMessage();
+		assertEquals (msg1.getType(), msgReceived.getType());
+		assertEquals (msg2.getType(), output.getNextMsgTimed().getMessage().getType());
+		
+		msgReceived.deserializeRawData();
+		assertTrue (Arrays.equals(rawData, msgReceived.getData()));
+	}
+	
+	/** Discards the raw data of a message, and checks that the raw data of the next message is still received */
+	@SuppressWarnings("unchecked")
+	public void testDiscarded () {
+		
+		MessageSerializedSimple <int[]> msg1 = new MessageSerializedSimple <int[]> (new MessageType ("testDiscarded1"), new int [100000]);
+		String rawData2 = "rawData2";
+		MessageSerializedSimple <String> msg2 = new MessageSerializedSimple <String> (new MessageType ("testDiscarded2"), rawData2);
+		
+		out.pushMessage(new MessageWrapper(msg1));
+		out.pushMessage(new MessageWrapper(msg2));
+		
+		// Discard the raw data of the first message
+		MessageSerializedSimple <int[]> msgReceived1 = (MessageSerializedSimple <int[]>) output.getNextMsgTimed().getMessage();
+		assertEquals (msg1.getType(), msgReceived1.getType());
+		msgReceived1.getHandler().discardRawData();
+		assertNull (msgReceived1.getRawData());
+		
+		MessageSerializedSimple <String> msgReceived2 = (MessageSerializedSimple <String>) output.getNextMsgTimed().getMessage();
+		assertEquals (msg2.getType(), msgReceived2.getType());
+		msgReceived2.deserializeRawData();
+		assertEquals (rawData2, msgReceived2.getData());
+	}
+	
 }
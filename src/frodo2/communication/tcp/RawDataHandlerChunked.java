@@ -0,0 +1,241 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.communication.tcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import frodo2.communication.MessageWithRawData;
+import frodo2.communication.MessageWithRawData.RawDataHandler;
+
+/** A raw data handler that streams the raw data in chunks over the connection through which the message was received
+ * 
+ * The raw data is only sent when it is requested. The sender then sends it in chunks interleaved with its other messages, 
+ * and only sends a new chunk when the recipient has granted it a credit, which it does each time it has consumed a chunk. 
+ * @author Thomas Leaute
+ * @see QueueOutputPipeTCP
+ */
+public class RawDataHandlerChunked implements RawDataHandler {
+
+	/** Used for serialization */
+	private static final long serialVersionUID = 4604927335911547395L;
+	
+	/** The number of chunks the sender is allowed to send before the recipient has consumed any */
+	static final int WINDOW = 4;
+	
+	/** The connection through which the message was received */
+	interface Connection {
+		
+		/** Requests the raw data
+		 * @param key 	the ID of the raw data
+		 * @return the stream from which the raw data can be read
+		 */
+		ChunkInputStream open (int key);
+		
+		/** Allows the sender to send more chunks
+		 * @param key 		the ID of the raw data
+		 * @param credits 	the number of additional chunks the sender may send
+		 */
+		void grant (int key, int credits);
+		
+		/** Tells the sender the raw data will not be requested, or no more chunks are needed
+		 * @param key 	the ID of the raw data
+		 */
+		void discard (int key);
+	}
+	
+	/** A stream that reads the chunks of raw data as they are received */
+	static class ChunkInputStream extends InputStream {
+		
+		/** The marker that signals the end of the raw data */
+		static final byte[] END = new byte [0];
+		
+		/** The ID of the raw data */
+		private final int key;
+		
+		/** The connection from which the chunks are received */
+		private final Connection connection;
+		
+		/** The chunks received and not yet consumed */
+		private final LinkedBlockingQueue<byte[]> chunks = new LinkedBlockingQueue<byte[]> ();
+		
+		/** The chunk currently being read */
+		private byte[] current;
+		
+		/** The position in the current chunk */
+		private int pos;
+		
+		/** Whether the end of the raw data has been reached, or the stream has been closed */
+		private boolean ended = false;
+
+		/** Constructor
+		 * @param key 			the ID of the raw data
+		 * @param connection 	the connection from which the chunks are received
+		 */
+		ChunkInputStream (int key, Connection connection) {
+			this.key = key;
+			this.connection = connection;
+		}
+		
+		/** Called by the receiving thread when a chunk has been received
+		 * @param chunk 	the chunk, or ChunkInputStream#END
+		 */
+		void add (byte[] chunk) {
+			this.chunks.add(chunk);
+		}
+		
+		/** Makes sure the current chunk has bytes left to be read, waiting for the next chunk if necessary
+		 * @return \c false if the end of the raw data has been reached
+		 * @throws IOException 	if the thread is interrupted while waiting
+		 */
+		private boolean fill () throws IOException {
+			
+			while (this.current == null || this.pos >= this.current.length) {
+				if (this.ended) 
+					return false;
+				
+				byte[] chunk;
+				try {
+					chunk = this.chunks.take();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException ();
+				}
+				if (chunk == END) {
+					this.ended = true;
+					return false;
+				}
+				this.current = chunk;
+				this.pos = 0;
+				
+				// Allow the sender to send a new chunk in place of this one
+				this.connection.grant(this.key, 1);
+			}
+			return true;
+		}
+
+		/** @see java.io.InputStream#read() */
+		@Override
+		public synchronized int read() throws IOException {
+			return (this.fill() ? this.current[this.pos++] & 0xFF : -1);
+		}
+
+		/** @see java.io.InputStream#read(byte[], int, int) */
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			
+			if (len == 0) 
+				return 0;
+			if (! this.fill()) 
+				return -1;
+			
+			len = Math.min(len, this.current.length - this.pos);
+			System.arraycopy(this.current, this.pos, b, off, len);
+			this.pos += len;
+			return len;
+		}
+
+		/** @see java.io.InputStream#available() */
+		@Override
+		public synchronized int available() {
+			return (this.current == null ? 0 : this.current.length - this.pos);
+		}
+
+		/** Tells the sender to stop sending chunks if the end of the raw data has not been reached
+		 * @see java.io.InputStream#close()
+		 */
+		@Override
+		public synchronized void close() {
+			if (! this.ended) {
+				this.ended = true;
+				this.connection.discard(this.key);
+			}
+			this.current = null;
+			this.chunks.clear();
+		}
+	}
+	
+	/** The ID of the raw data */
+	private final int key;
+	
+	/** The connection through which the message was received, or \c null if this handler has not been bound to any */
+	private transient Connection connection;
+	
+	/** Whether the raw data has already been requested or discarded */
+	private boolean done = false;
+
+	/** Constructor
+	 * @param key 			the ID of the raw data
+	 * @param connection 	the connection through which the message was received
+	 */
+	RawDataHandlerChunked (int key, Connection connection) {
+		this.key = key;
+		this.connection = connection;
+	}
+	
+	/** Requests the serialized raw data
+	 * 
+	 * Returns \c null if the handler is not bound to any connection, or if this is not the first time the raw data is requested. 
+	 * @return the stream from which the serialized raw data can be read
+	 */
+	private synchronized ChunkInputStream requestRawBytes () {
+		
+		if (this.connection == null || this.done) 
+			return null;
+		this.done = true;
+		return this.connection.open(this.key);
+	}
+
+	/** Requests the raw data
+	 * 
+	 * Returns \c null if an exception occurs in the process, or this is not the first time the method is called. 
+	 * @see MessageWithRawData.RawDataHandler#requestRawData()
+	 */
+	public ObjectInputStream requestRawData() {
+		
+		ChunkInputStream bytes = this.requestRawBytes();
+		if (bytes == null) 
+			return null;
+		
+		try {
+			return new ObjectInputStream (bytes);
+		} catch (IOException e) {
+			System.err.println("Failed to set up the stream to receive raw data");
+			e.printStackTrace();
+			bytes.close();
+			return null;
+		}
+	}
+
+	/** @see MessageWithRawData.RawDataHandler#discardRawData() */
+	public synchronized void discardRawData() {
+		
+		if (this.connection != null && ! this.done) {
+			this.done = true;
+			this.connection.discard(this.key);
+		}
+	}
+
+}
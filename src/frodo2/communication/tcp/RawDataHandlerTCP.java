@@ -27,10 +27,15 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.util.HashMap;
 
+import frodo2.communication.MessageWithRawData;
 import frodo2.communication.MessageWithRawData.RawDataHandler;
 
 /** A raw data handler that works with TCP
+ * 
+ * The recipient of the message connects to the sender's Server, sends the ID of the raw data, and then tells it whether 
+ * it wants the raw data, in which case the sender serializes it to the same connection. 
  * @author Thomas Leaute
  */
 public class RawDataHandlerTCP implements RawDataHandler {
@@ -143,4 +148,120 @@ public class RawDataHandlerTCP implements RawDataHandler {
 		socket.close();
 		super.finalize();
 	}
+
+	/** The sender side of the protocol, which serves the requests for raw data sent by RawDataHandlerTCP instances */
+	static class Server {
+		
+		/** A convenience class used to store information about raw data */
+		private static class RawDataInfo {
+
+			/** A message with associated raw data */
+			public MessageWithRawData msg;
+
+			/** The number of recipients potentially interested in the raw data */
+			public int counter;
+
+			/** Constructor
+			 * @param msg the message with raw data
+			 */
+			public RawDataInfo(MessageWithRawData msg) {
+				this.msg = msg;
+			}
+		}
+
+		/** For each raw data ID, the information about the corresponding raw data */
+		private final HashMap<Integer, RawDataInfo> rawDataInfos = new HashMap<Integer, RawDataInfo> ();
+		
+		/** The ID incremented each time a message with raw data is registered */
+		private int rawDataID = 0;
+		
+		/** IP address to which recipients should connect to request raw data */
+		private final String rawDataIP;
+
+		/** Port number on which the server waits for requests for raw data */
+		private final int rawDataPort;
+		
+		/** Constructor
+		 * @param rawDataIP 	IP address to which recipients should connect to request raw data
+		 * @param rawDataPort 	port number on which the server waits for requests for raw data
+		 */
+		Server (String rawDataIP, int rawDataPort) {
+			this.rawDataIP = rawDataIP;
+			this.rawDataPort = rawDataPort;
+		}
+		
+		/** Records the raw data of a message, and sets the message's handler
+		 * @param msg 	the message, whose raw data remains to be serialized
+		 */
+		void register (MessageWithRawData msg) {
+			
+			int id;
+			synchronized (this.rawDataInfos) {
+				id = ++this.rawDataID;
+				this.rawDataInfos.put(id, new RawDataInfo (msg));
+			}
+			msg.setHandler(new RawDataHandlerTCP (id, this.rawDataIP, this.rawDataPort));
+		}
+		
+		/** Serves a request to serialize or discard raw data
+		 * @param socket 	the blocking socket used to communicate with the potential raw data recipient
+		 */
+		void serve (Socket socket) {
+
+			// Get the info about the requested raw data
+			ObjectInputStream inStream;
+			int rawDataID;
+			try {
+				inStream = new ObjectInputStream (socket.getInputStream());
+				rawDataID = inStream.readInt();
+			} catch (IOException e2) {
+				System.err.println("Failed to read the raw data ID");
+				e2.printStackTrace();
+				return;
+			}
+			RawDataInfo rawDataInfo;
+			synchronized (this.rawDataInfos) {
+				assert this.rawDataInfos.containsKey(rawDataID) : "Received a request for an unknown raw data ID " + rawDataID;
+				rawDataInfo = this.rawDataInfos.get(rawDataID);
+			}
+
+			// Increment the number of potential recipients for the raw data
+			synchronized (rawDataInfo) {
+				rawDataInfo.counter++;
+			}
+
+			// Check whether we must send the raw data
+			try {
+				if (inStream.readBoolean()) {
+					try {
+						ObjectOutputStream outStream = new ObjectOutputStream(socket.getOutputStream());
+						rawDataInfo.msg.serializeRawData(outStream);
+						try {
+							outStream.close();
+						} catch (IOException e) { }
+					} catch (IOException e1) {
+						System.err.println("Unable to set up the stream to send raw data in the following message:\n" + rawDataInfo.msg);
+						e1.printStackTrace();
+					}
+				}
+			} catch (IOException e1) {
+				System.err.println("Failed to determine whether the recipients wants the raw data of the following message:\n"
+						+ rawDataInfo.msg);
+				e1.printStackTrace();
+			}
+
+			try {
+				socket.close();
+			} catch (IOException e) { }
+
+			// Check whether there are no more potential recipients for the raw data
+			synchronized (rawDataInfo) {
+				if (--rawDataInfo.counter <= 0) { // no more potential recipients; discard the data
+					synchronized (this.rawDataInfos) {
+						this.rawDataInfos.remove(rawDataID);
+					}
+				}
+			}
+		}
+	}
 }
@@ -56,11 +56,12 @@ public class TCPPipeFactory implements PipeFactory {
 		return new QueueOutputPipeTCP(newAddress.getAddress(),newAddress.getPort());
 	}
 
-	/** @see frodo2.communication.PipeFactory#outputPipe(frodo2.communication.AgentAddress, frodo2.communication.AgentAddress) */
+	/** Raw data is streamed over the same connection as the messages, so the raw data address is ignored
+	 * @see frodo2.communication.PipeFactory#outputPipe(frodo2.communication.AgentAddress, frodo2.communication.AgentAddress) 
+	 */
 	public QueueOutputPipeInterface outputPipe(AgentAddress address, AgentAddress rawDataAddress) throws UnknownHostException, IOException {
 		TCPAddress newAddress = (TCPAddress) address;
-		TCPAddress newRawAddress = (TCPAddress) rawDataAddress;
-		return new QueueOutputPipeTCP(newAddress.getAddress(),newAddress.getPort(),newRawAddress.getAddress(),newRawAddress.getPort());
+		return new QueueOutputPipeTCP(newAddress.getAddress(),newAddress.getPort());
 	}
 
 	/** @see frodo2.communication.PipeFactory#getSelfAddress(int) */
@@ -700,10 +700,13 @@ public class ConfigurationManager implements IncomingMsgPolicyInterface <Message
 		if(!local) {
 			dList = daemonList.keySet().toArray(new String[0]);
 		}
+		// Subproblems are serialized in their own formats: only Problem subproblems are shipped as ProblemSnapshots, 
+		// while XCSPparser subproblems are still shipped as JDOM trees
+		Map< String, ? extends ProblemInterface<?, ?> > subProbs = problem.getSubProblems();
 		for(int agent = 0; agent < numberOfAgents; agent++) {
 
 			// Get the problem description
-			ProblemInterface<?, ?> subProb = problem.getSubProblem(agents.get(agent));
+			ProblemInterface<?, ?> subProb = subProbs.get(agents.get(agent));
 
 			MessageWith3Payloads <ProblemInterface<?, ?>, Document, Boolean> msg = 
 					new MessageWith3Payloads <ProblemInterface<?, ?>, Document, Boolean> (AGENT_CONFIGURATION_MESSAGE, subProb, this.agentDescriptionDoc, true);
@@ -27,6 +27,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -37,6 +38,8 @@ import frodo2.communication.Queue;
 import frodo2.communication.QueueInputPipeInterface;
 import frodo2.communication.QueueOutputPipeInterface;
 import frodo2.communication.sharedMemory.QueueIOPipe;
+import frodo2.communication.mmap.MMapPipeFactory;
+import frodo2.communication.tcp.NIOPipeFactory;
 import frodo2.communication.tcp.TCPPipeFactory;
 import frodo2.controller.userIO.Console;
 import frodo2.controller.userIO.DistributedSolver;
@@ -224,11 +227,23 @@ public class Controller {
 	/**
 	 * @param args	if -local then the experiments are run on the local machine (default is distributed)
 	 * 				if -license is passed as an argument, displays the license and returns
+	 * 				if -nio is passed as an argument, uses non-blocking TCP pipes that share a few threads
+	 * 				if -mmap is passed as an argument, uses memory-mapped files to communicate with daemons on the same host
 	 */
 	public static void main(String[] args) {
 		
 		String workDir = "";
 		
+		// Use non-blocking TCP pipes if the -nio option was used
+		ArrayList<String> otherArgs = new ArrayList<String> (Arrays.asList(args));
+		if (otherArgs.remove("-nio")) 
+			PipeFactoryInstance = new NIOPipeFactory ();
+		
+		// Use memory-mapped files to communicate with daemons on the same host if the -mmap option was used
+		if (otherArgs.remove("-mmap")) 
+			PipeFactoryInstance = new MMapPipeFactory (PipeFactoryInstance);
+		args = otherArgs.toArray(new String [otherArgs.size()]);
+		
 		Arrays.sort(args);
 		
 		// Print out the license and return if the -license option was used
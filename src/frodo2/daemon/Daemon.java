@@ -38,6 +38,8 @@ import frodo2.communication.AgentAddress;
 import frodo2.communication.Queue;
 import frodo2.communication.QueueOutputPipeInterface;
 import frodo2.communication.sharedMemory.QueueIOPipe;
+import frodo2.communication.mmap.MMapPipeFactory;
+import frodo2.communication.tcp.NIOPipeFactory;
 import frodo2.communication.tcp.TCPAddress;
 import frodo2.controller.Controller;
 import frodo2.controller.messages.MessageAgentReporting;
@@ -211,6 +213,7 @@ public class Daemon {
 		String controllerIP = null;
 		int daemonPort = DEFAULT_PORT;
 		String workDir = "";
+		boolean mmap = false;
 		for (int i = 0; i < args.length; i++) {
 			
 			// If passed "-license", display the license and quit
@@ -244,6 +247,12 @@ public class Daemon {
 			} else if (args[i].equals("-workdir") && ++i < args.length) {
 				workDir = args[i];
 				continue;
+			} else if (args[i].equals("-nio")) {
+				Controller.PipeFactoryInstance = new NIOPipeFactory ();
+				continue;
+			} else if (args[i].equals("-mmap")) {
+				mmap = true;
+				continue;
 			}
 
 			System.err.println("Invalid arguments given. Please use one of the following arguments");
@@ -252,9 +261,15 @@ public class Daemon {
 			System.err.println("-controller ip-address\t to give the IP address of the controller");
 			System.err.println("-daemonport port\t to give the port number the daemon should listen on");
 			System.err.println("-workdir dir\t to set the working directory");
+			System.err.println("-nio\t\t\t to use non-blocking TCP pipes sharing a few threads");
+			System.err.println("-mmap\t\t\t to use memory-mapped files to communicate with agents on the same host");
 			System.exit(1);
 		}
 		
+		// Use memory-mapped files to communicate with agents on the same host if the -mmap option was used
+		if (mmap) 
+			Controller.PipeFactoryInstance = new MMapPipeFactory (Controller.PipeFactoryInstance);
+		
 		if (workDir.length() > 0) {
 			if (! workDir.endsWith("/")) 
 				workDir = workDir + "/";
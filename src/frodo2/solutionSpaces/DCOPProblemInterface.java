@@ -355,6 +355,9 @@ public interface DCOPProblemInterface < V extends Addable<V>, U extends Addable<
 	/** @see ProblemInterface#getSubProblem(java.lang.String) */
 	public DCOPProblemInterface<V, U> getSubProblem (String agent);
 	
+	/** @see ProblemInterface#getSubProblems() */
+	public Map< String, ? extends DCOPProblemInterface<V, U> > getSubProblems ();
+	
 	/** Adds a constraint that enforces that var = val
 	 * @param var 	the variable
 	 * @param val 	the value
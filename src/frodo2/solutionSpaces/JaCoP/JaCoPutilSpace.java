@@ -810,6 +810,12 @@ public class JaCoPutilSpace < U extends Addable<U> > implements UtilitySolutionS
 		return out;
 	}
 
+	/** @see UtilitySolutionSpace#joinAndProject(UtilitySolutionSpace[], java.lang.String[], boolean) */
+	public UtilitySolutionSpace.ProjOutput<AddableInteger, U> joinAndProject(
+			UtilitySolutionSpace<AddableInteger, U>[] spaces, String[] varsOut, boolean maximum) {
+		return this.join(spaces).project(varsOut, maximum);
+	}
+
 	/** @see UtilitySolutionSpace#project(int, boolean) */
 	public UtilitySolutionSpace.ProjOutput<AddableInteger, U> project(
 			int numberToProject, boolean maximum) {
@@ -55,6 +55,7 @@ import org.jacop.core.IntervalDomain;
 import org.jacop.core.StoreCloneable;
 import org.jacop.core.Var;
 
+import frodo2.algorithms.TupleTokenizer;
 import frodo2.algorithms.XCSPparser;
 import frodo2.solutionSpaces.Addable;
 import frodo2.solutionSpaces.AddableInteger;
@@ -468,14 +469,26 @@ public class JaCoPxcspParser < U extends Addable<U> > extends XCSPparser<Addable
 		String name = relation.getAttributeValue("name");
 		int arity = Integer.parseInt(relation.getAttributeValue("arity"));
 
-		String tuplesString = relation.getText();
-
-		pattern = Pattern.compile("\\|");
-		String[] tuples = pattern.split(tuplesString);
-		assert nbTuples == 0 || tuples.length == nbTuples : "Relation `" + name + "' has nbTuples == " + nbTuples + 
-		" but its description actually contains " + tuples.length + " tuples";
-
-		pattern = Pattern.compile("\\s+");
+		assert arity == varNames.length : "The relation `" + name + "' of arity " + arity + " is used in the constraint `" + constraintName + 
+		"' whose scope contains " + varNames.length + " variables";
+
+		TupleTokenizer tokenizer = TupleTokenizer.tokenize(arity, nbTuples, true, relation.getText());
+		assert nbTuples == 0 || tokenizer.getNbrTuples() == nbTuples : "Relation `" + name + "' has nbTuples == " + nbTuples + 
+		" but its description actually contains " + tokenizer.getNbrTuples() + " tuples";
+		nbTuples = tokenizer.getNbrTuples();
+		final int[] vals = tokenizer.getValues();
+		final int[] utilIndexes = tokenizer.getUtilIndexes();
+
+		// Parse each distinct utility only once
+		String[] utilTokens = tokenizer.getUtilTokens();
+		int[] utilValues = new int [utilTokens.length];
+		boolean[] infinite = new boolean [utilTokens.length];
+		for (int i = 0; i < utilTokens.length; i++) {
+			if (utilTokens[i].equals("-infinity") || utilTokens[i].equals("infinity")) 
+				infinite[i] = true;
+			else 
+				utilValues[i] = parseInt(utilTokens[i]);
+		}
 
 		// The relation defines a soft extensional constraint
 		if(semantics.equals("soft")){
@@ -496,13 +509,6 @@ public class JaCoPxcspParser < U extends Addable<U> > extends XCSPparser<Addable
 			String defaultCost = relation.getAttributeValue("defaultCost");
 			assert nbTuples > 0 || defaultCost != null : "Relation `" + name + "' has nbTuples == " + nbTuples + " and no default cost";
 			
-			if(nbTuples == 0){
-				tuples = new String[0];
-			}
-			
-			Pattern patternColon = Pattern.compile(":");
-			pattern = Pattern.compile("\\s+");
-
 			// The domain of the utility variable
 			IntervalDomain utilDom = new IntervalDomain (nbTuples);
 
@@ -516,15 +522,9 @@ public class JaCoPxcspParser < U extends Addable<U> > extends XCSPparser<Addable
 			if(defaultCost == null || defaultCost.equals("-infinity") || defaultCost.equals("infinity")){
 
 				ext: for (int i = 0; i < nbTuples; i++){
-					if (tuples[i].contains(":")) {
-						String[] pair = patternColon.split(tuples[i]);
-						tuples[i] = pair[1];
-						if(pair[0].trim().equals("-infinity") || pair[0].trim().equals("infinity")){
-							isInfinity = true;
-						}else{
-							currentUtil = parseInt(pair[0].trim());
-							isInfinity = false;
-						}
+					if (utilIndexes[i] >= 0) {
+						isInfinity = infinite[utilIndexes[i]];
+						currentUtil = utilValues[utilIndexes[i]];
 					}
 
 					// If the utility represents a feasible value, we need to put the tuple in the extensional constraint
@@ -532,12 +532,8 @@ public class JaCoPxcspParser < U extends Addable<U> > extends XCSPparser<Addable
 
 						int[] tuple = new int[arity + 1];
 
-						String[] vals = pattern.split(tuples[i].trim());
-
-						assert vals.length == varNames.length : "The tuple " + tuples[i].trim() + " does not specify a value for every variable!";
-						
 						for (int j = 0; j < varNames.length; j++) {
-							tuple[j] = parseInt(vals[j]);
+							tuple[j] = vals[i * arity + j];
 
 							// the value of the variable is no more contained in its domain (due to a previous slice operation)
 							if(!vars[j].dom().contains(tuple[j]))
@@ -603,23 +599,13 @@ public class JaCoPxcspParser < U extends Addable<U> > extends XCSPparser<Addable
 				// We iterate over every explicitly stated tuple
 				ext: for(int i = 0; i < nbTuples; i++){
 
-					if (tuples[i].contains(":")) {
-						String[] pair = patternColon.split(tuples[i]);
-						tuples[i] = pair[1];
-						if(pair[0].trim().equals("-infinity") || pair[0].trim().equals("infinity")){
-							isInfinity = true;
-						}else{
-							currentUtil = parseInt(pair[0].trim());
-							isInfinity = false;
-						}
+					if (utilIndexes[i] >= 0) {
+						isInfinity = infinite[utilIndexes[i]];
+						currentUtil = utilValues[utilIndexes[i]];
 					}
 					
-					String[] vals = pattern.split(tuples[i].trim());
-					
-					assert vals.length == varNames.length : "The tuple " + tuples[i].trim() + " does not specify a value for every variable!";
-					
 					for (int j = 0; j < varNames.length; j++) {
-						tuple[j] = parseInt(vals[j]);
+						tuple[j] = vals[i * arity + j];
 
 						// the value of the variable is no more contained in its domain (due to a previous slice operation)
 						if(!vars[j].dom().contains(tuple[j]))
@@ -717,12 +703,8 @@ public class JaCoPxcspParser < U extends Addable<U> > extends XCSPparser<Addable
 
 				int[] tuple = new int[arity];
 
-				String[] vals = pattern.split(tuples[i].trim());
-				
-				assert vals.length == varNames.length : "The tuple " + tuples[i].trim() + " does not specify a value for every variable!";
-
 				for (int j = 0; j < varNames.length; j++) {
-					tuple[j] = parseInt(vals[j]);
+					tuple[j] = vals[i * arity + j];
 
 					// if the value of the variable in the current tuple is not contained in the domain this variable,
 					// we do not need to add the tuple in the constraint. Besides ExtensionalConflict would crash.
@@ -1130,6 +1112,8 @@ public class JaCoPxcspParser < U extends Addable<U> > extends XCSPparser<Addable
 	 */
 	public void rescale(U multiply, U add) {
 
+		this.invalidateModel();
+		
 		Element relations = this.root.getChild("relations");
 
 		if(relations != null){
@@ -1177,6 +1161,18 @@ public class JaCoPxcspParser < U extends Addable<U> > extends XCSPparser<Addable
 	}
 
 
+	/** Builds the subproblems by calling getSubProblem() for each agent, because they may involve predicates and functions
+	 * @see XCSPparser#getSubProblems()
+	 */
+	@Override
+	public Map< String, JaCoPxcspParser<U> > getSubProblems () {
+		
+		HashMap< String, JaCoPxcspParser<U> > out = new HashMap< String, JaCoPxcspParser<U> > ();
+		for (String agent : this.getAgents()) 
+			out.put(agent, this.getSubProblem(agent));
+		return out;
+	}
+
 	/** @see XCSPparser#getSubProblem(String) */
 	@Override
 	public JaCoPxcspParser<U> getSubProblem (String agent) {
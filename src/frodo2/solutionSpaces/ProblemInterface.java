@@ -23,6 +23,7 @@ How to contact the authors:
 package frodo2.solutionSpaces;
 
 import java.io.Serializable;
+import java.util.Map;
 import java.util.Set;
 
 /** A general problem
@@ -75,6 +76,13 @@ public interface ProblemInterface <V extends Addable<V>, U extends Addable<U>> e
 	 */
 	public ProblemInterface<V, U> getSubProblem (String agent);
 	
+	/** Builds the subproblem descriptions of all agents at once
+	 * 
+	 * This is equivalent to calling getSubProblem() for each agent in getAgents(), but implementations may be much faster. 
+	 * @return for each agent, its subproblem
+	 */
+	public Map< String, ? extends ProblemInterface<V, U> > getSubProblems ();
+	
 	/** @return \c true when agents can be of different types, and \c false otherwise */
 	public boolean multipleTypes();
 	
@@ -335,6 +335,19 @@ extends UtilitySolutionSpaceLimited<V, U, U> {
 	 */
 	public ProjOutput< V, U > project( String variable_name, boolean maximum );
 	
+	/** Joins this UtilitySolutionSpace with the input ones, and projects variables out of the join
+	 * 
+	 * This is equivalent to calling join(spaces).project(varsOut, maximum), except that implementations may avoid 
+	 * materializing the join, which can be much larger than the output of the projection. 
+	 * @param spaces 	the spaces to join with this one
+	 * @param varsOut 	the variables to be projected out, which must all be contained in at least one of the spaces
+	 * @param maximum 	\c true if we should maximize the utility; \c false if it should be minimized
+	 * @return a ProjOutput object that represents the pair resulting space - conditional optimal assignments
+	 * @see UtilitySolutionSpace#join(UtilitySolutionSpace[])
+	 * @see UtilitySolutionSpace#project(String[], boolean)
+	 */
+	public ProjOutput< V, U > joinAndProject( UtilitySolutionSpace< V, U >[] spaces, String[] varsOut, boolean maximum );
+	
 	/** @see UtilitySolutionSpaceLimited#blindProject(String, boolean) */
 	public UtilitySolutionSpace<V, U> blindProject (String varOut, boolean maximize);
 	
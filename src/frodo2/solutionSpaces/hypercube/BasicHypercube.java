@@ -24,6 +24,7 @@ How to contact the authors:
 package frodo2.solutionSpaces.hypercube;
 
 import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableInteger;
 import frodo2.solutionSpaces.ProblemInterface;
 import frodo2.solutionSpaces.SolutionSpace;
 import frodo2.solutionSpaces.UtilitySolutionSpace;
@@ -89,6 +90,19 @@ implements BasicUtilitySolutionSpace<V, U>, Externalizable {
 	 */
 	protected transient HashMap< V, Integer >[] steps_hashmaps;
 	
+	/** For each variable whose domain is a range of consecutive AddableIntegers, its step in the utility values array
+	 * 
+	 * For such a variable, the step of a value is computed from its position in the range, without looking it up in the 
+	 * corresponding steps_hashmaps. The entry is 0 for the other variables; the array is \c null if no domain is such a range. 
+	 */
+	protected transient int[] rangeSteps;
+	
+	/** For each variable whose domain is a range of consecutive AddableIntegers, the first value in the range */
+	protected transient int[] rangeStarts;
+	
+	/** For each variable whose domain is a range of consecutive AddableIntegers, the size of its domain */
+	protected transient int[] rangeSizes;
+	
 	/** The types of spaces that we know how to handle */
 	private static HashSet< Class<?> > knownSpaces;
 	
@@ -97,6 +111,10 @@ implements BasicUtilitySolutionSpace<V, U>, Externalizable {
 		knownSpaces.add(BasicHypercube.class);
 		knownSpaces.add(ScalarBasicHypercube.class);
 		knownSpaces.add(Hypercube.class);
+		knownSpaces.add(IntHypercube.class);
+		knownSpaces.add(DoubleHypercube.class);
+		knownSpaces.add(OffHeapIntHypercube.class);
+		knownSpaces.add(SparseHypercube.class);
 		knownSpaces.add(Hypercube.NullHypercube.class);
 		knownSpaces.add(ScalarHypercube.class);
 		knownSpaces.add(BlindProjectOutput.class);
@@ -156,8 +174,22 @@ implements BasicUtilitySolutionSpace<V, U>, Externalizable {
 	 * @warning utility_values needs to be properly ordered, the first utility corresponds to the 
 	 * assignment in which each variable is assigned its smallest value.
 	 */
-	@SuppressWarnings("unchecked")
 	public BasicHypercube ( String[] variables_order, V[][] variables_domains, U[] utility_values, U infeasibleUtil, ProblemInterface<V, ?> problem ) {
+		this(variables_order, variables_domains, utility_values.length, infeasibleUtil, problem);
+		this.values = utility_values;
+	}
+	
+	/** Construct a new BasicHypercube without a utility array, for subclasses that store their utilities differently
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param nbrUtils 				the number of utility values, i.e. the product of the domain sizes; if it does not fit in an \c int, 
+	 * 								number_of_utility_values is set to 0, and the subclass must override getNumberOfSolutions() and setStepsHashmaps()
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @param problem 				the problem to be notified of constraint checks
+	 * @warning variables_domains parameter needs to be sorted in ascending order.
+	 */
+	@SuppressWarnings("unchecked")
+	protected BasicHypercube ( String[] variables_order, V[][] variables_domains, long nbrUtils, U infeasibleUtil, ProblemInterface<V, ?> problem ) {
 		
 		assert variables_order.length > 0  : "A hypercube must contain at least one variable";
 		
@@ -166,8 +198,7 @@ implements BasicUtilitySolutionSpace<V, U>, Externalizable {
 		this.name = this.getClass().getSimpleName() + "_" + (++lastID);
 		this.variables = variables_order;
 		this.domains = variables_domains;
-		this.values = utility_values;
-		this.number_of_utility_values = values.length;
+		this.number_of_utility_values = (nbrUtils <= Integer.MAX_VALUE ? (int) nbrUtils : 0);
 		this.classOfV = (Class<V>) variables_domains.getClass().getComponentType().getComponentType();
 	    this.assignment = (V[]) Array.newInstance(this.classOfV, this.variables.length);
 	    this.infeasibleUtil = infeasibleUtil;
@@ -222,6 +253,57 @@ implements BasicUtilitySolutionSpace<V, U>, Externalizable {
 			
 			steps_hashmaps[ i ] = steps;
 		}
+		
+		this.setRangeSteps(domains2, number_of_utility_values2);
+	}
+	
+	/** Sets the steps of the variables whose domains are ranges of consecutive AddableIntegers
+	 * @param domains2                  list of domains
+	 * @param number_of_utility_values2 number of utility values
+	 * @see BasicHypercube#rangeSteps
+	 */
+	void setRangeSteps(V[][] domains2, int number_of_utility_values2) {
+		
+		final int number_of_variables = domains2.length;
+		int[] steps = new int [number_of_variables];
+		int[] starts = new int [number_of_variables];
+		int[] sizes = new int [number_of_variables];
+		boolean anyRange = false;
+		
+		int step = number_of_utility_values2;
+		for (int i = 0; i < number_of_variables; i++) {
+			V[] domain = domains2[i];
+			step = step / domain.length;
+			if (isIntRange(domain)) {
+				steps[i] = step;
+				starts[i] = ((AddableInteger) domain[0]).intValue();
+				sizes[i] = domain.length;
+				anyRange = true;
+			}
+		}
+		
+		this.rangeSteps = (anyRange ? steps : null);
+		this.rangeStarts = (anyRange ? starts : null);
+		this.rangeSizes = (anyRange ? sizes : null);
+	}
+	
+	/** Checks whether a domain is a range of consecutive AddableIntegers
+	 * @param domain 	the domain
+	 * @return \c true if the domain is a non-empty range of consecutive AddableIntegers
+	 */
+	private static boolean isIntRange (Object[] domain) {
+		
+		if (domain.length == 0 || domain[0].getClass() != AddableInteger.class) 
+			return false;
+		
+		final int first = ((AddableInteger) domain[0]).intValue();
+		for (int j = domain.length - 1; j >= 1; j--) {
+			Object val = domain[j];
+			if (val.getClass() != AddableInteger.class || ((AddableInteger) val).intValue() != first + j) 
+				return false;
+		}
+		
+		return true;
 	}
 	
 	/** @see java.io.Externalizable#writeExternal(java.io.ObjectOutput) */
@@ -464,6 +546,24 @@ implements BasicUtilitySolutionSpace<V, U>, Externalizable {
 		return this.getUtility(this.assignment);
 	}
 
+	/** Returns the utility corresponding to the positions of the variables' values in their domains
+	 * 
+	 * This is faster than getUtility(V[]), because it does not need to look up the values in the domains. 
+	 * @param valueIndexes 	for each variable, in the order of the hypercube, the index of its value in its domain
+	 * @return the corresponding utility
+	 * @see BasicHypercubeIter#getCurrentValueIndexes()
+	 */
+	public U getUtility (int[] valueIndexes) {
+		
+		assert valueIndexes.length == this.domains.length : "One index must be provided for each variable";
+		
+		long index = 0;
+		for (int i = 0; i < valueIndexes.length; i++) 
+			index = index * this.domains[i].length + valueIndexes[i];
+		
+		return this.getUtility(index);
+	}
+
 	/** Returns an object representing the utility value corresponding to the provided
 	 * variables values
 	 * 
@@ -537,7 +637,21 @@ implements BasicUtilitySolutionSpace<V, U>, Externalizable {
 		int number_of_variables = variables.length;
 		
 		//loop over all the variables in this hypercube
+		final int[] myRangeSteps = this.rangeSteps;
 		for( int i = 0 ;i < number_of_variables; i++ ) {
+			
+			// If the domain is a range of AddableIntegers, compute the step from the position of the value in the range
+			if (myRangeSteps != null && myRangeSteps[i] != 0) {
+				V value = variables_values[i];
+				if (value != null && value.getClass() == AddableInteger.class) {
+					final int pos = ((AddableInteger) value).intValue() - this.rangeStarts[i];
+					if (pos < 0 || pos >= this.rangeSizes[i]) 
+						return -1;
+					utility_index += pos * myRangeSteps[i];
+					continue;
+				}
+			}
+			
 			//find the step corresponding to the variable taking the associated value in the "variables_values"
 			HashMap<V, Integer> steps_hashmap = steps_hashmaps[i];
 			if ( steps_hashmap == null )
@@ -706,6 +820,7 @@ implements BasicUtilitySolutionSpace<V, U>, Externalizable {
 			
 			// Set the domain
 			this.domains[index] = dom;
+			this.setRangeSteps(this.domains, this.number_of_utility_values);
 		}
 	}
 
@@ -1743,11 +1858,18 @@ implements BasicUtilitySolutionSpace<V, U>, Externalizable {
 		V[] domain;
 		int index_to_increment = number_of_variables2 - 1;
 		
+		//the step of each remaining variable, which is the number of utility values in the new Hypercube divided by the domain sizes up to this variable
+		int[] steps = new int[ number_of_variables2 ];
+		for( int j = number_of_variables2 - 1, step = number_of_utility_values / number_of_values; j >= 0; j-- ) {
+			steps[ j ] = step;
+			step *= domains[ j ].length;
+		}
+		
 		for( int i = 0; i < number_of_values; i++ ) {
 			index = fixed_step;
 			//compute the index of the next utility value
 			for( int j = 0; j < number_of_variables2; j++ )
-				index += steps_hashmaps[ j ].get( domains[ j ][ indexes[ j ]] );
+				index += indexes[ j ] * steps[ j ];
 			
 			// add the utility value to the array of utility values of the new Hypercube
 			new_values[ i ] = values[ index ];
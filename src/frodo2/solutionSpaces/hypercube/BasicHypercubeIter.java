@@ -394,6 +394,14 @@ implements Iterator<V, U> {
 		return this.solution;
 	}
 
+	/** Returns the positions of the current values of the variables in their domains
+	 * @return for each variable in the iteration order, the index of its current value in its domain, as returned by getDomains()
+	 * @warning Returns a pointer to an internal data structure that will be modified by subsequent calls to next(). 
+	 */
+	public int[] getCurrentValueIndexes() {
+		return this.valIndexes;
+	}
+
 	/** @see frodo2.solutionSpaces.BasicUtilitySolutionSpace.Iterator#getCurrentUtility() */
 	public U getCurrentUtility() {
 		
@@ -0,0 +1,243 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableReal;
+import frodo2.solutionSpaces.ProblemInterface;
+
+/** A Hypercube with AddableReal utilities, stored in a double[] array
+ *
+ * +infinity and -infinity are stored as Double.POSITIVE_INFINITY and Double.NEGATIVE_INFINITY, like AddableReal does when it is externalized.
+ * @param <V> the type used for variable values
+ */
+public class DoubleHypercube < V extends Addable<V> > extends PrimitiveHypercube<V, AddableReal> {
+	
+	/** Used for serialization */
+	private static final long serialVersionUID = -6022853419757716873L;
+	
+	/** The utility values */
+	protected double[] doubleValues;
+	
+	/** Empty constructor used for externalization */
+	public DoubleHypercube () { }
+	
+	/** Constructor
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param utility_values 		the utility values contained in a one-dimensional array
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @warning variables_domains parameter needs to be sorted in ascending order.
+	 */
+	public DoubleHypercube (String[] variables_order, V[][] variables_domains, double[] utility_values, AddableReal infeasibleUtil) {
+		super (variables_order, variables_domains, utility_values.length, infeasibleUtil, null);
+		this.doubleValues = utility_values;
+	}
+	
+	/** Constructor
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param utility_values 		the utility values contained in a one-dimensional array, which must not contain \c null
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @warning variables_domains parameter needs to be sorted in ascending order.
+	 */
+	public DoubleHypercube (String[] variables_order, V[][] variables_domains, AddableReal[] utility_values, AddableReal infeasibleUtil) {
+		this (variables_order, variables_domains, toDoubles(utility_values), infeasibleUtil);
+	}
+	
+	/** Constructor
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param utility_values 		the utility values contained in a one-dimensional array, which must not contain \c null
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @param problem 				the problem to be notified of constraint checks
+	 * @warning variables_domains parameter needs to be sorted in ascending order.
+	 */
+	public DoubleHypercube (String[] variables_order, V[][] variables_domains, AddableReal[] utility_values, AddableReal infeasibleUtil,
+			ProblemInterface<V, AddableReal> problem) {
+		super (variables_order, variables_domains, utility_values.length, infeasibleUtil, problem);
+		this.doubleValues = toDoubles(utility_values);
+	}
+	
+	/** Checks whether an array of utilities can be stored in a DoubleHypercube without loss of information
+	 * @param utils 	the utilities
+	 * @return \c false if the array contains \c null or instances of subclasses of AddableReal other than +/- infinity
+	 */
+	public static boolean supports (AddableReal[] utils) {
+		
+		for (AddableReal util : utils)
+			if (util == null
+				|| (util.getClass() != AddableReal.class && util != AddableReal.PlusInfinity.PLUS_INF && util != AddableReal.MinInfinity.MIN_INF))
+				return false;
+		
+		return true;
+	}
+	
+	/** Converts an array of AddableReals to an array of doubles
+	 * @param utils 	the AddableReals
+	 * @return the corresponding doubles
+	 */
+	private static double[] toDoubles (AddableReal[] utils) {
+		double[] out = new double [utils.length];
+		for (int i = utils.length - 1; i >= 0; i--)
+			out[i] = utils[i].doubleValue();
+		return out;
+	}
+	
+	/** @see PrimitiveHypercube#utilAt(int) */
+	@Override
+	protected AddableReal utilAt (int index) {
+		
+		final double util = this.doubleValues[index];
+		
+		if (util == Double.POSITIVE_INFINITY)
+			return AddableReal.PlusInfinity.PLUS_INF;
+		
+		else if (util == Double.NEGATIVE_INFINITY)
+			return AddableReal.MinInfinity.MIN_INF;
+		
+		return new AddableReal (util);
+	}
+	
+	/** @see PrimitiveHypercube#setUtilAt(int, Addable) */
+	@Override
+	protected void setUtilAt (int index, AddableReal util) {
+		this.doubleValues[index] = util.doubleValue();
+	}
+	
+	/** @see PrimitiveHypercube#isUtil(int, Addable) */
+	@Override
+	protected boolean isUtil (int index, AddableReal util) {
+		return this.doubleValues[index] == util.doubleValue();
+	}
+	
+	/** @see PrimitiveHypercube#compareUtil(int, Addable) */
+	@Override
+	protected int compareUtil (int index, AddableReal util) {
+		final double util1 = this.doubleValues[index];
+		final double util2 = util.doubleValue();
+		return (util1 == util2 ? 0 : (util1 < util2 ? -1 : 1));
+	}
+	
+	/** @see PrimitiveHypercube#compareUtils(int, int) */
+	@Override
+	protected int compareUtils (int index1, int index2) {
+		final double util1 = this.doubleValues[index1];
+		final double util2 = this.doubleValues[index2];
+		return (util1 == util2 ? 0 : (util1 < util2 ? -1 : 1));
+	}
+	
+	/** @see PrimitiveHypercube#copyUtil(int, PrimitiveHypercube, int) */
+	@Override
+	protected void copyUtil (int index, PrimitiveHypercube<V, AddableReal> dest, int destIndex) {
+		((DoubleHypercube<V>) dest).doubleValues[destIndex] = this.doubleValues[index];
+	}
+	
+	/** @see PrimitiveHypercube#copyUtils(int, PrimitiveHypercube, int, int) */
+	@Override
+	protected void copyUtils (int index, PrimitiveHypercube<V, AddableReal> dest, int destIndex, int length) {
+		System.arraycopy(this.doubleValues, index, ((DoubleHypercube<V>) dest).doubleValues, destIndex, length);
+	}
+	
+	/** @see Hypercube#joinBlock(long, int, Hypercube[], long[], long[][], Addable, boolean) */
+	@Override
+	protected void joinBlock (final long start, final int length, Hypercube<V, AddableReal>[] inputs, long[] bases, long[][] offsets, 
+			AddableReal constant, final boolean addition) {
+		
+		// Only sums of double-valued hypercubes are computed directly on the double[] arrays
+		boolean direct = addition;
+		for (int i = inputs.length - 1; direct && i >= 0; i--) 
+			direct = (inputs[i] instanceof DoubleHypercube);
+		if (! direct) {
+			super.joinBlock(start, length, inputs, bases, offsets, constant, addition);
+			return;
+		}
+		
+		final double[] out = this.doubleValues;
+		final int end = (int) start + length;
+		
+		// Copy the utilities of the first input
+		double[] in = ((DoubleHypercube<V>) inputs[0]).doubleValues;
+		long base = bases[0];
+		long[] offs = offsets[0];
+		for (int o = (int) start, d = 0; o < end; o++, d++) 
+			out[o] = in[(int) (base + offs[d])];
+		
+		// Add the utilities of the other inputs
+		for (int i = 1; i < inputs.length; i++) {
+			in = ((DoubleHypercube<V>) inputs[i]).doubleValues;
+			base = bases[i];
+			offs = offsets[i];
+			for (int o = (int) start, d = 0; o < end; o++, d++) 
+				out[o] += in[(int) (base + offs[d])];
+		}
+		
+		if (constant != null) {
+			final double cst = constant.doubleValue();
+			for (int o = (int) start; o < end; o++) 
+				out[o] += cst;
+		}
+	}
+	
+	/** @see PrimitiveHypercube#newPrimitiveInstance(java.lang.String, java.lang.String[], V[][], long) */
+	@Override
+	protected DoubleHypercube<V> newPrimitiveInstance (String name, String[] new_variables, V[][] new_domains, long nbrUtils) {
+		
+		if (nbrUtils >= Integer.MAX_VALUE) 
+			throw new OutOfMemoryError ("Size of utility array too big for an int");
+		
+		DoubleHypercube<V> out = new DoubleHypercube<V> (new_variables, new_domains, new double [(int) nbrUtils], this.infeasibleUtil);
+		out.name = name;
+		return out;
+	}
+	
+	/** @see PrimitiveHypercube#getClassOfU() */
+	@Override
+	public Class<AddableReal> getClassOfU () {
+		return AddableReal.class;
+	}
+	
+	/** @see HypercubeLimited#writeUtilities(java.io.ObjectOutput) */
+	@Override
+	protected void writeUtilities (ObjectOutput out) throws IOException {
+		
+		out.writeInt(this.number_of_utility_values); // number of utilities
+		UtilityCodec.writeDoubles(out, this.doubleValues, this.number_of_utility_values, 
+				(this.infeasibleUtil == null ? 0.0 : this.infeasibleUtil.doubleValue()));
+		
+		this.incrNCCCs(this.number_of_utility_values);
+	}
+	
+	/** @see HypercubeLimited#readUtilities(java.io.ObjectInput) */
+	@Override
+	protected void readUtilities (ObjectInput in) throws IOException {
+		
+		this.number_of_utility_values = in.readInt();
+		this.doubleValues = UtilityCodec.readDoubles(in, this.number_of_utility_values);
+	}
+
+}
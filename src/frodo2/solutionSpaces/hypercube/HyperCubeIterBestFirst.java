@@ -190,8 +190,10 @@ public class HyperCubeIterBestFirst < V extends Addable<V>, U extends Addable<U>
 			int valIndex = index/step;
 			index -= valIndex*step;
 			solution[i] = this.domains[i][valIndex];
+			valIndexes[i] = valIndex;
 		}
 		solution[i] = this.domains[i][index];
+		valIndexes[i] = index;
 	}
 	
 	/**
@@ -27,6 +27,7 @@ How to contact the authors:
 package frodo2.solutionSpaces.hypercube;
 
 import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableInteger;
 import frodo2.solutionSpaces.AddableReal;
 import frodo2.solutionSpaces.BasicUtilitySolutionSpace;
 import frodo2.solutionSpaces.ProblemInterface;
@@ -92,6 +93,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		this.values = utility_values;
 		this.number_of_utility_values = this.values.length;
 		this.steps_hashmaps = steps_hashmaps;
+		this.setRangeSteps(variables_domains, this.number_of_utility_values);
 		this.classOfV = (Class<V>) variables_domains.getClass().getComponentType().getComponentType();
 	    this.assignment = (V[]) Array.newInstance(this.classOfV, this.variables.length);
 		
@@ -226,6 +228,113 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		super(variables_order, variables_domains, utility_values, infeasibleUtil, problem);
 	}
 	
+	/** Constructor for subclasses that do not store their utilities in a U[] array
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param nbrUtils 				the number of utility values
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @param problem 				the problem to be notified of constraint checks
+	 */
+	protected Hypercube( String[] variables_order, V[][] variables_domains, long nbrUtils, U infeasibleUtil, ProblemInterface<V, U> problem ) {
+		super(variables_order, variables_domains, nbrUtils, infeasibleUtil, problem);
+	}
+	
+	/** Creates a new Hypercube, using a primitive-backed implementation whenever the utility type allows it
+	 * @param <V> 					the type used for variable values
+	 * @param <U> 					the type used for utility values
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param utility_values 		the utility values contained in a one-dimensional array
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @return an IntHypercube if the utilities are AddableIntegers, a DoubleHypercube if they are AddableReals, 
+	 * and a Hypercube otherwise
+	 * @see PrimitiveHypercube
+	 */
+	public static < V extends Addable<V>, U extends Addable<U> > Hypercube<V, U> newHypercube ( 
+			String[] variables_order, V[][] variables_domains, U[] utility_values, U infeasibleUtil ) {
+		return newHypercube(null, variables_order, variables_domains, utility_values, infeasibleUtil);
+	}
+	
+	/** Creates a new Hypercube, using a primitive-backed implementation whenever the utility type allows it
+	 * @param <V> 					the type used for variable values
+	 * @param <U> 					the type used for utility values
+	 * @param name 					the name of the Hypercube; if \c null, a name is generated
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param utility_values 		the utility values contained in a one-dimensional array
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @return an IntHypercube if the utilities are AddableIntegers, a DoubleHypercube if they are AddableReals, 
+	 * and a Hypercube otherwise
+	 * @see PrimitiveHypercube
+	 */
+	@SuppressWarnings("unchecked")
+	public static < V extends Addable<V>, U extends Addable<U> > Hypercube<V, U> newHypercube ( 
+			String name, String[] variables_order, V[][] variables_domains, U[] utility_values, U infeasibleUtil ) {
+		
+		Hypercube<V, U> out;
+		Class<?> classOfU = utility_values.getClass().getComponentType();
+		
+		if (classOfU == AddableInteger.class && IntHypercube.supports((AddableInteger[]) utility_values)) 
+			out = (Hypercube<V, U>) new IntHypercube<V> (variables_order, variables_domains, (AddableInteger[]) utility_values, (AddableInteger) infeasibleUtil);
+		
+		else if (classOfU == AddableReal.class && DoubleHypercube.supports((AddableReal[]) utility_values)) 
+			out = (Hypercube<V, U>) new DoubleHypercube<V> (variables_order, variables_domains, (AddableReal[]) utility_values, (AddableReal) infeasibleUtil);
+		
+		else 
+			out = new Hypercube<V, U> (variables_order, variables_domains, utility_values, infeasibleUtil);
+		
+		if (name != null) 
+			out.name = name;
+		
+		return out;
+	}
+	
+	/** Creates a new Hypercube with the given number of utilities, to be filled by the caller
+	 * @param <V> 					the type used for variable values
+	 * @param <U> 					the type used for utility values
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param classOfU 				the class used for utility values
+	 * @param nbrUtils 				the number of utility values, i.e. the product of the domain sizes
+	 * @param initUtil 				the initial value of all utilities; if \c null, the utilities are left uninitialized
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @return an IntHypercube, a DoubleHypercube or a Hypercube, depending on the class of utilities; 
+	 * an OffHeapIntHypercube if the utilities are AddableIntegers and there are at least getOffHeapThreshold() of them
+	 * @throws OutOfMemoryError 	if the utilities must be stored on the heap, but there are 2^31-1 or more of them
+	 */
+	@SuppressWarnings("unchecked")
+	public static < V extends Addable<V>, U extends Addable<U> > Hypercube<V, U> newHypercube ( 
+			String[] variables_order, V[][] variables_domains, Class<U> classOfU, long nbrUtils, U initUtil, U infeasibleUtil ) {
+		
+		if (isOffHeap(classOfU, nbrUtils)) {
+			OffHeapIntArray utils = new OffHeapIntArray (nbrUtils);
+			if (initUtil != null && initUtil.intValue() != 0) 
+				utils.fill(initUtil.intValue());
+			return (Hypercube<V, U>) new OffHeapIntHypercube<V> (variables_order, variables_domains, utils, (AddableInteger) infeasibleUtil);
+		}
+		
+		if (nbrUtils >= Integer.MAX_VALUE) 
+			throw new OutOfMemoryError ("Size of utility array too big for an int");
+		
+		if (classOfU == AddableInteger.class) {
+			int[] utils = new int [(int) nbrUtils];
+			if (initUtil != null) 
+				Arrays.fill(utils, initUtil.intValue());
+			return (Hypercube<V, U>) new IntHypercube<V> (variables_order, variables_domains, utils, (AddableInteger) infeasibleUtil);
+			
+		} else if (classOfU == AddableReal.class) {
+			double[] utils = new double [(int) nbrUtils];
+			if (initUtil != null) 
+				Arrays.fill(utils, initUtil.doubleValue());
+			return (Hypercube<V, U>) new DoubleHypercube<V> (variables_order, variables_domains, utils, (AddableReal) infeasibleUtil);
+		}
+		
+		U[] utils = (U[]) Array.newInstance(classOfU, (int) nbrUtils);
+		if (initUtil != null) 
+			Arrays.fill(utils, initUtil);
+		return new Hypercube<V, U> (variables_order, variables_domains, utils, infeasibleUtil);
+	}
+	
 	/**Construct a new Hypercube with the variables names, the domains of this variables and the utility values stored in the provided 
 	 * XML file
 	 * @param file the name of the XML file containing the needed information. the file name may also contain the path to that XML file
@@ -573,7 +682,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 			
 			// Create the output hypercube, with an initially empty array of utilities
 			assert nbrOutputUtils < Integer.MAX_VALUE : "A Hypercube cannot contain more than 2^31-1 solutions";
-			U[] outputUtils = (U[]) Array.newInstance(this.values.getClass().getComponentType(), (int) nbrOutputUtils);
+			U[] outputUtils = (U[]) Array.newInstance(this.getClassOfU(), (int) nbrOutputUtils);
 			Hypercube<V, U> out = this.newInstance(this.name + "_joined", (String[]) outputVars.clone(), outputDomains, outputUtils, this.infeasibleUtil );
 			
 			// Initialize the output utilities with the caller hypercube's utilities
@@ -751,7 +860,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 			// Create the output hypercube, with an initially empty array of utilities
 			if (Math.log(nbrUtils) >= Math.log(Integer.MAX_VALUE)) 
 				throw new OutOfMemoryError ("Number of solutions in a hypercube too large for an int: " + nbrUtils + " > " + Integer.MAX_VALUE);
-			U[] outUtils = (U[]) Array.newInstance(this.values.getClass().getComponentType(), (int)nbrUtils);
+			U[] outUtils = (U[]) Array.newInstance(this.getClassOfU(), (int)nbrUtils);
 			Hypercube<V, U> out = this.newInstance(this.name + "_joined", outVars, outDoms, outUtils, this.infeasibleUtil);
 
 			// Initialize the output utilities with the caller hypercube's utilities
@@ -788,6 +897,451 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 			return new JoinOutputHypercube<V, U> (this, spaces, outVars, outDoms, addition, this.infeasibleUtil, nbrUtils);
 	}
 	
+	/** The maximum number of utilities in a block of the stride-based join, over which the inner loop of the join iterates */
+	private static final int STRIDE_BLOCK_SIZE = 4096;
+	
+	/** The minimum number of utilities in a join above which the stride-based join and projection are computed in parallel; 0 if never */
+	private static volatile long parallelThreshold = 0;
+	
+	/** For each thread, the parallel threshold that overrides parallelThreshold, or \c null if none */
+	private static final ThreadLocal<Long> localParallelThreshold = new ThreadLocal<Long> ();
+	
+	/** Sets the minimum size of a join above which joins and projections of hypercubes are computed in parallel
+	 * 
+	 * This setting is the default for all threads in the JVM that have not overridden it with setLocalParallelThreshold(). 
+	 * Computations in parallel use the common ForkJoinPool. 
+	 * @param threshold 	the minimum number of utilities in the join; 0 to never compute joins and projections in parallel
+	 */
+	public static void setParallelThreshold (long threshold) {
+		assert threshold >= 0 : "Negative parallel threshold: " + threshold;
+		parallelThreshold = threshold;
+	}
+	
+	/** Overrides the parallel threshold for the joins and projections performed by the current thread
+	 * 
+	 * This is used by modules that have their own setting, such that agents in the same JVM do not overwrite each other's setting. 
+	 * @param threshold 	the minimum number of utilities in the join; 0 to never compute joins and projections in parallel; 
+	 * 						\c null to revert to the default setting
+	 * @return the previous override for the current thread, which should be restored when done, or \c null if there was none
+	 * @see Hypercube#setParallelThreshold(long)
+	 */
+	public static Long setLocalParallelThreshold (Long threshold) {
+		assert threshold == null || threshold >= 0 : "Negative parallel threshold: " + threshold;
+		
+		Long previous = localParallelThreshold.get();
+		if (threshold == null) 
+			localParallelThreshold.remove();
+		else 
+			localParallelThreshold.set(threshold);
+		return previous;
+	}
+	
+	/** @return the minimum number of utilities in a join above which joins and projections of hypercubes are computed in parallel 
+	 * by the current thread; 0 if never */
+	public static long getParallelThreshold () {
+		Long threshold = localParallelThreshold.get();
+		return (threshold == null ? parallelThreshold : threshold);
+	}
+	
+	/** The minimum number of AddableInteger utilities above which new hypercubes are stored off the heap; 0 if never */
+	private static volatile long offHeapThreshold = 0;
+	
+	/** For each thread, the off-heap threshold that overrides offHeapThreshold, or \c null if none */
+	private static final ThreadLocal<Long> localOffHeapThreshold = new ThreadLocal<Long> ();
+	
+	/** Sets the minimum size above which the hypercubes created by joins and projections are stored off the heap
+	 * 
+	 * This setting is the default for all threads in the JVM that have not overridden it with setLocalOffHeapThreshold(), 
+	 * and currently only applies to hypercubes with AddableInteger utilities. 
+	 * @param threshold 	the minimum number of utilities; 0 to always store utilities on the heap
+	 * @see OffHeapIntHypercube
+	 */
+	public static void setOffHeapThreshold (long threshold) {
+		assert threshold >= 0 : "Negative off-heap threshold: " + threshold;
+		offHeapThreshold = threshold;
+	}
+	
+	/** Overrides the off-heap threshold for the hypercubes created by the current thread
+	 * 
+	 * This is used by modules that have their own setting, such that agents in the same JVM do not overwrite each other's setting. 
+	 * @param threshold 	the minimum number of utilities; 0 to always store utilities on the heap; \c null to revert to the default setting
+	 * @return the previous override for the current thread, which should be restored when done, or \c null if there was none
+	 * @see Hypercube#setOffHeapThreshold(long)
+	 */
+	public static Long setLocalOffHeapThreshold (Long threshold) {
+		assert threshold == null || threshold >= 0 : "Negative off-heap threshold: " + threshold;
+		
+		Long previous = localOffHeapThreshold.get();
+		if (threshold == null) 
+			localOffHeapThreshold.remove();
+		else 
+			localOffHeapThreshold.set(threshold);
+		return previous;
+	}
+	
+	/** @return the minimum number of utilities above which the hypercubes created by the current thread are stored off the heap; 0 if never */
+	public static long getOffHeapThreshold () {
+		Long threshold = localOffHeapThreshold.get();
+		return (threshold == null ? offHeapThreshold : threshold);
+	}
+	
+	/** Checks whether a new hypercube should be stored off the heap
+	 * @param classOfU 	the class used for utility values
+	 * @param nbrUtils 	the number of utilities
+	 * @return \c true if the utilities are AddableIntegers and there are at least getOffHeapThreshold() of them
+	 */
+	static boolean isOffHeap (Class<?> classOfU, long nbrUtils) {
+		final long threshold = getOffHeapThreshold();
+		return classOfU == AddableInteger.class && threshold > 0 && nbrUtils >= threshold;
+	}
+	
+	/** Checks whether the input space can be joined by strideJoin()
+	 * @param space 	the space
+	 * @return \c true if the space is a Hypercube whose utilities are all stored in memory (and not computed lazily)
+	 */
+	static boolean isStrided (UtilitySolutionSpace<?, ?> space) {
+		Class<?> spaceClass = space.getClass();
+		return spaceClass == Hypercube.class || spaceClass == ScalarHypercube.class || space instanceof PrimitiveHypercube;
+	}
+	
+	/** Computes the join of the input spaces by walking the output space with per-variable strides computed only once
+	 * @param <V> 			the type used for variable values
+	 * @param <U> 			the type used for utility values
+	 * @param spaces 		the input spaces
+	 * @param outVars 		the variables of the output hypercube
+	 * @param outDoms 		the domains of the output variables, which must be sub-domains of the inputs' domains
+	 * @param nbrUtils 		the number of utilities in the output hypercube
+	 * @param addition 		\c true if utilities should be added, \c false if they should be multiplied
+	 * @param infeasibleUtil -INF if we are maximizing, +INF if we are minimizing
+	 * @return the join, or \c null if one of the input spaces is not a Hypercube whose utilities are stored in memory, 
+	 * 			or if the join is too large to be stored on the heap and cannot be stored off the heap
+	 * @see Hypercube#strideJoin(Hypercube, Hypercube[], Addable, boolean)
+	 */
+	protected static < V extends Addable<V>, U extends Addable<U> > Hypercube<V, U> strideJoin (List< ? extends UtilitySolutionSpace<V, U> > spaces, 
+			String[] outVars, V[][] outDoms, long nbrUtils, final boolean addition, U infeasibleUtil) {
+		
+		if (outVars.length == 0) 
+			return null;
+		
+		Hypercube<V, U>[] inputs = strideInputs(spaces);
+		if (inputs == null) 
+			return null;
+		
+		Class<U> classOfU = inputs[0].getClassOfU();
+		if (nbrUtils >= Integer.MAX_VALUE && ! isOffHeap(classOfU, nbrUtils)) 
+			return null;
+		
+		Hypercube<V, U> out = newHypercube(outVars, outDoms, classOfU, nbrUtils, null, infeasibleUtil);
+		strideJoin(out, inputs, strideConstant(spaces, addition), addition);
+		return out;
+	}
+	
+	/** Returns the input spaces that contain at least one variable, which must all be Hypercubes whose utilities are stored in memory
+	 * @param <V> 		the type used for variable values
+	 * @param <U> 		the type used for utility values
+	 * @param spaces 	the input spaces
+	 * @return the non-scalar input spaces, or \c null if one of the input spaces is not a Hypercube whose utilities are stored in memory, 
+	 * 			or if all input spaces are scalar
+	 */
+	@SuppressWarnings("unchecked")
+	private static < V extends Addable<V>, U extends Addable<U> > Hypercube<V, U>[] strideInputs (List< ? extends UtilitySolutionSpace<V, U> > spaces) {
+		
+		ArrayList< Hypercube<V, U> > inputs = new ArrayList< Hypercube<V, U> > (spaces.size());
+		for (UtilitySolutionSpace<V, U> space : spaces) {
+			if (! isStrided(space)) 
+				return null;
+			if (space.getNumberOfVariables() > 0) 
+				inputs.add((Hypercube<V, U>) space);
+		}
+		
+		return (inputs.isEmpty() ? null : inputs.toArray((Hypercube<V, U>[]) new Hypercube<?, ?> [inputs.size()]));
+	}
+	
+	/** Combines the utilities of the scalar input spaces into a single constant
+	 * @param <V> 		the type used for variable values
+	 * @param <U> 		the type used for utility values
+	 * @param spaces 	the input spaces
+	 * @param addition 	\c true if utilities should be added, \c false if they should be multiplied
+	 * @return the constant, or \c null if there is no scalar input space
+	 */
+	private static < V extends Addable<V>, U extends Addable<U> > U strideConstant (List< ? extends UtilitySolutionSpace<V, U> > spaces, final boolean addition) {
+		
+		U constant = null;
+		for (UtilitySolutionSpace<V, U> space : spaces) {
+			if (space.getNumberOfVariables() == 0) {
+				U util = space.getUtility(0);
+				constant = (constant == null ? util : (addition ? constant.add(util) : constant.multiply(util)));
+			}
+		}
+		
+		return constant;
+	}
+	
+	/** Computes the join of the input hypercubes by walking the output hypercube with per-variable strides computed only once
+	 * 
+	 * For each input, the offset of each value of each output variable in the input's utility array is looked up once 
+	 * in the input's steps_hashmaps. The output utility array is then filled block by block, each block covering the last 
+	 * output variables, using only integer arithmetic on the indexes of the input utilities. 
+	 * The blocks are computed in parallel if the join contains at least getParallelThreshold() utilities. 
+	 * @param <V> 			the type used for variable values
+	 * @param <U> 			the type used for utility values
+	 * @param out 			the output hypercube, whose variables and domains define the join; it may also be one of the inputs
+	 * @param inputs 		the input hypercubes, each of which must contain at least one variable, and only variables of the output
+	 * @param constant 		a utility to be added to (or multiplied with) all output utilities; may be \c null
+	 * @param addition 		\c true if utilities should be added, \c false if they should be multiplied
+	 */
+	protected static < V extends Addable<V>, U extends Addable<U> > void strideJoin (final Hypercube<V, U> out, Hypercube<V, U>[] inputs, 
+			final U constant, final boolean addition) {
+		strideJoin(out, out.variables, out.domains, inputs, constant, addition, true);
+	}
+	
+	/** Computes the join of the input hypercubes by walking a space whose utilities are laid out like the output hypercube's
+	 * @param <V> 			the type used for variable values
+	 * @param <U> 			the type used for utility values
+	 * @param out 			the output hypercube, whose utilities are laid out like those of the space defined by \a outVars and \a outDoms
+	 * @param outVars 		the variables of the space walked through, which may include variables of \a out's with singleton domains
+	 * @param outDoms 		the domains of the variables in \a outVars, which must be sub-domains of the inputs' domains
+	 * @param inputs 		the input hypercubes, each of which must contain at least one variable, and only variables in \a outVars
+	 * @param constant 		a utility to be added to (or multiplied with) all output utilities; may be \c null
+	 * @param addition 		\c true if utilities should be added, \c false if they should be multiplied
+	 * @param countNCCCs 	whether the inputs should be notified of the constraint checks
+	 * @see Hypercube#strideJoin(Hypercube, Hypercube[], Addable, boolean)
+	 */
+	static < V extends Addable<V>, U extends Addable<U> > void strideJoin (final Hypercube<V, U> out, String[] outVars, V[][] outDoms, 
+			Hypercube<V, U>[] inputs, final U constant, final boolean addition, boolean countNCCCs) {
+		
+		// Choose the last variables over which the blocks span
+		int firstBlockVar = outDoms.length - 1;
+		int blockSize = outDoms[firstBlockVar].length;
+		while (firstBlockVar > 0 && blockSize * outDoms[firstBlockVar - 1].length <= STRIDE_BLOCK_SIZE) 
+			blockSize *= outDoms[--firstBlockVar].length;
+		
+		new StrideWalk<V, U> (inputs, outVars, outDoms, firstBlockVar) {
+			
+			@Override
+			protected void walkBlock(long block, long[] bases, Hypercube<V, U> scratch) {
+				out.joinBlock(block * this.blockSize, this.blockSize, this.inputs, bases, this.blockOffsets, constant, addition);
+			}
+		}.walk(countNCCCs);
+	}
+	
+	/** Joins the input spaces and projects variables out of the join, without materializing the join
+	 * 
+	 * The join is computed block by block by the stride-based join, each block covering all the variables projected out, 
+	 * and possibly some of the last variables kept. Only one block is held in memory at any time; the optimal utilities 
+	 * and the conditional optimal assignments are extracted from it before moving on to the next block. 
+	 * If the join contains at least getParallelThreshold() utilities, ranges of blocks are computed in parallel, 
+	 * each with its own block held in memory. 
+	 * @param <V> 			the type used for variable values
+	 * @param <U> 			the type used for utility values
+	 * @param spaces 		the input spaces
+	 * @param vars 			the variables of the join
+	 * @param doms 			the domains of the variables of the join, which must be sub-domains of the inputs' domains
+	 * @param varsOut 		the variables to project out, which must all be variables of the join
+	 * @param addition 		\c true if utilities should be added, \c false if they should be multiplied
+	 * @param maximum 		\c true if we should maximize, \c false if we should minimize
+	 * @param infeasibleUtil -INF if we are maximizing, +INF if we are minimizing
+	 * @return the output of the projection, or \c null if one of the input spaces is not a Hypercube whose utilities are stored in memory, 
+	 * 			or if the projection would not produce an output hypercube with at least one variable
+	 */
+	@SuppressWarnings("unchecked")
+	protected static < V extends Addable<V>, U extends Addable<U> > ProjOutput<V, U> strideJoinAndProject (List< ? extends UtilitySolutionSpace<V, U> > spaces, 
+			String[] vars, V[][] doms, String[] varsOut, final boolean addition, final boolean maximum, U infeasibleUtil) {
+		
+		final int nbrVars = vars.length;
+		final int nbrVarsOut = varsOut.length;
+		final int nbrVarsKept = nbrVars - nbrVarsOut;
+		if (nbrVarsOut == 0 || nbrVarsKept <= 0) 
+			return null;
+		
+		Hypercube<V, U>[] inputs = strideInputs(spaces);
+		if (inputs == null) 
+			return null;
+		
+		// Put the variables projected out last
+		HashSet<String> varsOutSet = new HashSet<String> (Arrays.asList(varsOut));
+		String[] outVars = new String [nbrVars];
+		V[][] outDoms = (V[][]) Array.newInstance(doms.getClass().getComponentType(), nbrVars);
+		long nbrUtilsKept = 1;
+		for (int i = 0, k = 0; i < nbrVars; i++) {
+			String var = vars[i];
+			if (! varsOutSet.contains(var)) {
+				outVars[k] = var;
+				outDoms[k++] = doms[i];
+				nbrUtilsKept *= doms[i].length;
+			}
+		}
+		long nbrUtilsOut = 1;
+		for (int j = 0; j < nbrVarsOut; j++) {
+			String varOut = varsOut[j];
+			for (int i = 0; i < nbrVars; i++) {
+				if (vars[i].equals(varOut)) {
+					outVars[nbrVarsKept + j] = varOut;
+					outDoms[nbrVarsKept + j] = doms[i];
+					nbrUtilsOut *= doms[i].length;
+					break;
+				}
+			}
+		}
+		assert varsOutSet.size() == nbrVarsOut && outVars[nbrVars - 1] != null : "The join must contain all the variables that must be projected out";
+		
+		// If all projected variables have singleton domains, Hypercube#project(String[], boolean) returns scalar conditional optimal assignments
+		if (nbrUtilsOut == 1 || nbrUtilsOut >= Integer.MAX_VALUE || nbrUtilsKept >= Integer.MAX_VALUE) 
+			return null;
+		final int utilsOut = (int) nbrUtilsOut;
+		final int utilsKept = (int) nbrUtilsKept;
+		
+		// Choose the last variables over which the blocks span, which must include all the variables projected out
+		int firstBlockVar = nbrVarsKept;
+		int blockSize = utilsOut;
+		while (firstBlockVar > 0 && blockSize * outDoms[firstBlockVar - 1].length <= STRIDE_BLOCK_SIZE) 
+			blockSize *= outDoms[--firstBlockVar].length;
+		final int nbrChunks = blockSize / utilsOut;
+		
+		// Initialize the outputs
+		String[] varsKept = Arrays.copyOf(outVars, nbrVarsKept);
+		V[][] domsKept = Arrays.copyOf(outDoms, nbrVarsKept);
+		final Class<U> classOfU = inputs[0].getClassOfU();
+		final Hypercube<V, U> out = newHypercube(varsKept, domsKept, classOfU, utilsKept, null, infeasibleUtil);
+		final ArrayList<V>[] optSols = (ArrayList<V>[]) new ArrayList<?> [utilsKept];
+		final U constant = strideConstant(spaces, addition);
+		final String[] blockVars = Arrays.copyOfRange(outVars, firstBlockVar, nbrVars);
+		final V[][] blockDoms = Arrays.copyOfRange(outDoms, firstBlockVar, nbrVars);
+		
+		new StrideWalk<V, U> (inputs, outVars, outDoms, firstBlockVar) {
+			
+			/** Creates the hypercube in which each block of the join is computed */
+			@Override
+			protected Hypercube<V, U> newScratch () {
+				return newHypercube(blockVars, blockDoms, classOfU, this.blockSize, null, infeasibleUtil);
+			}
+			
+			@Override
+			protected void walkBlock(long block, long[] bases, Hypercube<V, U> scratch) {
+				
+				scratch.joinBlock(0, this.blockSize, this.inputs, bases, this.blockOffsets, constant, addition);
+				
+				// Each chunk of the block corresponds to one assignment to the variables kept
+				for (int c = 0, start = 0, i = (int) block * nbrChunks; c < nbrChunks; c++, start += utilsOut, i++) {
+					int optIndex = scratch.optIndex(start, utilsOut, maximum);
+					out.setUtilAt(i, scratch.utilAt(optIndex));
+					
+					// Compute the optimal assignments
+					ArrayList<V> optSol = new ArrayList<V> (nbrVarsOut);
+					for (int j = 0; j < nbrVarsOut; j++) 
+						optSol.add(null);
+					optIndex -= start;
+					for (int j = nbrVars - 1; j >= nbrVarsKept; j--) { // for each projected variable
+						V[] dom = outDoms[j];
+						optSol.set(j - nbrVarsKept, dom[optIndex % dom.length]);
+						optIndex /= dom.length;
+					}
+					optSols[i] = optSol;
+				}
+			}
+		}.walk();
+		
+		return new ProjOutput<V, U> (out, varsOut, new BasicHypercube< V, ArrayList<V> > (varsKept.clone(), domsKept.clone(), optSols, null));
+	}
+	
+	/** Computes a block of consecutive output utilities of a stride-based join
+	 * @param start 		the index of the first utility in the block
+	 * @param length 		the number of utilities in the block
+	 * @param inputs 		the input hypercubes
+	 * @param bases 		for each input, the index of the utility corresponding to the first solution in the block
+	 * @param offsets 		for each input, the offset of each solution in the block, relative to the input's base index
+	 * @param constant 		a utility to be added to (or multiplied with) all output utilities; may be \c null
+	 * @param addition 		\c true if utilities should be added, \c false if they should be multiplied
+	 * @see Hypercube#strideJoin(Hypercube, Hypercube[], Addable, boolean)
+	 */
+	protected void joinBlock (final long start, final int length, Hypercube<V, U>[] inputs, long[] bases, long[][] offsets, U constant, final boolean addition) {
+		
+		final int nbrInputs = inputs.length;
+		for (int d = 0; d < length; d++) {
+			
+			U util = constant;
+			for (int i = 0; i < nbrInputs; i++) {
+				U util2 = inputs[i].utilAt(bases[i] + offsets[i][d]);
+				util = (util == null ? util2 : (addition ? util.add(util2) : util.multiply(util2)));
+			}
+			
+			this.setUtilAt(start + d, util);
+		}
+	}
+	
+	/** Returns the utility at the given index in the utility array, without counting any constraint check
+	 * @param index 	the index
+	 * @return the utility
+	 */
+	protected U utilAt (int index) {
+		return this.values[index];
+	}
+	
+	/** Returns the utility at the given index in the utility array, without counting any constraint check
+	 * @param index 	the index, which must be lower than Integer.MAX_VALUE unless the utilities are stored off the heap
+	 * @return the utility
+	 */
+	protected U utilAt (long index) {
+		return this.utilAt((int) index);
+	}
+	
+	/** Sets the utility at the given index in the utility array
+	 * @param index 	the index
+	 * @param util 		the new utility
+	 */
+	protected void setUtilAt (int index, U util) {
+		this.values[index] = util;
+	}
+	
+	/** Sets the utility at the given index in the utility array
+	 * @param index 	the index, which must be lower than Integer.MAX_VALUE unless the utilities are stored off the heap
+	 * @param util 		the new utility
+	 */
+	protected void setUtilAt (long index, U util) {
+		this.setUtilAt((int) index, util);
+	}
+	
+	/** Returns the offsets in the utility array of the given values of a variable
+	 * @param var 		the index of the variable
+	 * @param values 	values in the domain of the variable
+	 * @return for each value, the index in the utility array of the first utility corresponding to this value
+	 * @see StrideWalk
+	 */
+	protected long[] getOffsets (int var, V[] values) {
+		
+		long[] offsets = new long [values.length];
+		HashMap<V, Integer> steps = this.steps_hashmaps[var];
+		for (int d = values.length - 1; d >= 0; d--) {
+			Integer step = steps.get(values[d]);
+			assert step != null : "The value " + values[d] + " of variable " + this.variables[var] + " is not in the domain of " + this;
+			offsets[d] = step;
+		}
+		
+		return offsets;
+	}
+	
+	/** Looks up the optimal utility among consecutive utilities in the utility array, without counting any constraint check
+	 * @param start 	the index of the first utility
+	 * @param length 	the number of utilities
+	 * @param maximum 	\c true if we should maximize, \c false if we should minimize
+	 * @return the index of the optimal utility; in case of ties, the last one
+	 */
+	protected int optIndex (final int start, final int length, final boolean maximum) {
+		
+		int optIndex = start;
+		U optUtil = this.values[start];
+		for (int i = start + 1; i < start + length; i++) {
+			U util = this.values[i];
+			final int cmp = util.compareTo(optUtil);
+			if (maximum ? cmp >= 0 : cmp <= 0) {
+				optIndex = i;
+				optUtil = util;
+			}
+		}
+		
+		return optIndex;
+	}
+	
 	/** @see UtilitySolutionSpace#multiply(UtilitySolutionSpace, java.lang.String[]) */
 	public UtilitySolutionSpace<V, U> multiply(UtilitySolutionSpace<V, U> space, String[] total_variables) {
 		
@@ -877,20 +1431,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		//the number of variables in resulting hypercube
 		int number_of_variables = total_variables.length;
 		
-		//this array will contain the index of each variable of the provided in the new order
-		int [] variables2_indexes = new int[number_of_variables];
-		Arrays.fill(variables2_indexes, -1);
-		
-		String variable, tmp_variable;
-		
-		//the array that will contain the variables names of the new hypercube
-		String[] new_variables = new String[ number_of_variables ];
-		//the array that will contain the variables names in an order consistent with the second hypercube
-		String[] new_variables2 = new String[ number_of_variables ];
-		//the array that will keep the position of each variable of the second hypercube in the variables list of the new hypercube
-		int[] position_in_index = new int[ number_of_variables2 ];
-		//the array that will contain the domains of the variables of the new hypercube
-		V[][] new_domains = (V[][]) new Addable[ number_of_variables ][];
+		String variable;
 		
 		//these arrays will contain the variables which belong to this hypercube
 		//and the new domain associated to these variables after this hypercube has been sliced
@@ -903,11 +1444,10 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		ArrayList<V[]> domains_to_augment_list = new ArrayList<V[]>();
 		
 		V[] domain, domain_tmp;
-		int index1 = 0, index2 = 0, index = 0;
+		int index1 = 0, index = 0;
 		for( int i = 0; index < number_of_variables; i++ ) {
 			domain_tmp = null;
 			variable = total_variables[ i ];
-			tmp_variable = variable;
 			
 			domain = getDomain( variable, index1 );
 			for (int j = 0 ; j < number_of_variables2 ; j++) {
@@ -951,78 +1491,18 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		//fill the variables and domains arrays used to slice and augment this hypercube
 		String[] variables_to_slice = (String[]) variables_to_slice_list.toArray(new String[variables_to_slice_list.size()]);
 		V[][] domains_to_slice = (V[][]) domains_to_slice_list.toArray(new Addable[domains_to_slice_list.size()][]);
-		int number_of_variables_to_slice = variables_to_slice.length;
 		
 		String[] variables_to_augment = (String[]) variables_to_augment_list.toArray(new String[variables_to_augment_list.size()]);
 		V[][] domains_to_augment = (V[][]) domains_to_augment_list.toArray(new Addable[domains_to_augment_list.size()][]);
-		int number_of_variables_to_augment = variables_to_augment.length;
-		
-		System.arraycopy(variables_to_augment, 0, new_variables, 0, number_of_variables_to_augment);
-		System.arraycopy(variables_to_slice, 0, new_variables, number_of_variables_to_augment, number_of_variables_to_slice);
-		
-		System.arraycopy(domains_to_augment, 0, new_domains, 0, number_of_variables_to_augment);
-		System.arraycopy(domains_to_slice, 0, new_domains, number_of_variables_to_augment, number_of_variables_to_slice);
-		
-		//as the variables in the second hypercube can be in any order, we have to keep the index of each of its variables
-		//in the variables list of the new hypercube
-		for (int i = 0 ; i < number_of_variables ; i++) {
-			variable = new_variables[i];
-			tmp_variable = variable;
-			for (int j = 0 ; j < number_of_variables2 ; j++) {
-				if (variables2[j].equals(variable)) {
-					variables2_indexes[i] = j;
-					tmp_variable = variables2[index2];
-					position_in_index[index2] = i;
-					index2++;
-					break;
-				}
-			}
-			new_variables2[i] = tmp_variable;
-		}
 		
 		current_hypercube = (Hypercube<V, U>) current_hypercube.applySlice(variables_to_slice, domains_to_slice);
 		current_hypercube = (Hypercube<V, U>) current_hypercube.applyAugment(variables_to_augment, domains_to_augment);
 		
-		//this array will contain the values of the variables for the first hypercube
-		V[] variables_values = (V[]) new Addable[ number_of_variables ];
-		//this array will contain the values of the variables for the second hypercube
-		V[] variables_values2 = (V[]) new Addable[ number_of_variables ];
-		//this object is used to compute the sum of the utility values
-		U utility_value;
-		//index of the index of the variable to increment
-		int index_to_increment = number_of_variables-1;
-		
-		int[] indexes = new int[ number_of_variables ];
+		//add the utilities of the provided hypercube, walking through both utility arrays with precomputed strides
+		if (! isStrided(hypercube)) 
+			hypercube = hypercube.resolve();
+		strideJoin(current_hypercube, (Hypercube<V, U>[]) new Hypercube<?, ?> [] { current_hypercube, hypercube }, null, true);
 		
-		for( int i = 0; i < current_hypercube.number_of_utility_values; i++ ) {
-			
-			//the next possible array of values
-			for(int j = number_of_variables - 1; j >= 0; j--) {
-				index = indexes[ j ];
-				domain = new_domains[ j ];
-				//next possible value of the jth variable
-				variables_values[j] = domain[index];
-				if (variables2_indexes[j] == -1)
-					variables_values2[j] = domain[index];
-				else
-					variables_values2[position_in_index[variables2_indexes[j]]] = domain[index];
-				
-				if( j == index_to_increment ) {
-					index = (index + 1) % domain.length;
-					indexes[ j ] = index;
-					
-					// when a whole loop is done increment also the next variable which is previous to this one in order
-					if(index == 0)  index_to_increment--;
-					else index_to_increment = number_of_variables-1;
-				}
-			}
-			
-			//update the utility value by adding the corresponding utility in the second hypercube
-			utility_value = hypercube.getUtilityValueSameOrder( new_variables2, variables_values2 );
-			current_hypercube.values[i] = (U) utility_value.add(current_hypercube.values[i]);
-			current_hypercube.incrNCCCs(1);
-
-		}
 		return current_hypercube;
 	}
 	
@@ -1037,7 +1517,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		
 		Hypercube<V, U> hypercube = (Hypercube<V, U>) space;
 		
-		if (this.values.length > hypercube.values.length) {
+		if (this.getNumberOfSolutions() > hypercube.getNumberOfSolutions()) {
 			String[] union = union(this.variables, hypercube.variables);
 			return this.applyJoin(hypercube, union);
 		}
@@ -1410,9 +1890,38 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 					new ScalarBasicHypercube< V, ArrayList<V> > (optSol, null));
 		}
 		
+		// Large hypercubes are projected in parallel, if enabled; hypercubes too large to be indexed by ints are always projected by blocks
+		final long nbrUtils = this.getNumberOfSolutions();
+		final long threshold = getParallelThreshold();
+		if ((nbrUtils >= Integer.MAX_VALUE || threshold > 0 && nbrUtils >= threshold) && isStrided(this)) {
+			ProjOutput<V, U> out = strideJoinAndProject(Arrays.asList(this), this.variables, this.domains, varsOut, true, maximum, this.infeasibleUtil);
+			if (out != null) 
+				return out;
+		}
+		
 		// Build the output array of kept variables
 		String[] varsKept = new String [nbrVarsKept];
 		System.arraycopy(varOrder, 0, varsKept, 0, nbrVarsKept);
+		
+		return this.project(varOrder, varsKept, domsKept, nbrUtilsKept, varsOut, nbrUtilsOut, maximum);
+	}
+	
+	/** Projects out the last variables in the input iteration order
+	 * @param varOrder 		the iteration order, in which the variables projected out come last
+	 * @param varsKept 		the variables kept
+	 * @param domsKept 		the domains of the variables kept
+	 * @param nbrUtilsKept 	the number of assignments to the variables kept
+	 * @param varsOut 		the variables projected out
+	 * @param nbrUtilsOut 	the number of assignments to the variables projected out
+	 * @param maximum 		boolean indicating whether to use the maximum or the minumum
+	 * @return a ProjOutput object
+	 */
+	@SuppressWarnings("unchecked")
+	protected UtilitySolutionSpace.ProjOutput< V, U > project( String[] varOrder, String[] varsKept, V[][] domsKept, 
+			final int nbrUtilsKept, String[] varsOut, final long nbrUtilsOut, final boolean maximum ) {
+		
+		final int nbrVarsKept = varsKept.length;
+		final int nbrVarsOut = varsOut.length;
 
 		// Initialize the output arrays of utilities
 		U[] optUtils = (U[]) Array.newInstance(this.getClassOfU(), nbrUtilsKept);
@@ -1422,7 +1931,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		UtilitySolutionSpace.Iterator<V, U> iter = this.iterator(varOrder);
 		V[] optSol = (V[]) Array.newInstance(this.classOfV, nbrVarsOut);
 		U optUtil;
-		for (i = 0; iter.hasNext(); i++) {
+		for (int i = 0; iter.hasNext(); i++) {
 			
 			// Look up the best assignment to the variables projected out for the current assignment to the variables kept
 			if (maximum) {
@@ -1445,7 +1954,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 			optSols[i] = new ArrayList<V> (Arrays.asList(optSol));
 		}
 		
-		return new ProjOutput<V, U> (new Hypercube< V, U>( varsKept, domsKept, optUtils, this.infeasibleUtil), 
+		return new ProjOutput<V, U> (newHypercube( varsKept, domsKept, optUtils, this.infeasibleUtil), 
 				varsOut, 
 				 new BasicHypercube< V, ArrayList<V> > (varsKept.clone(), domsKept.clone(), optSols, null));
 	}
@@ -1529,6 +2038,17 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		return project( new String[] { variable_name }, maximum );
 	}
 	
+	/** Joins this hypercube with the input spaces, and projects variables out of the join
+	 * 
+	 * The join is computed lazily; if all spaces are hypercubes whose utilities are stored in memory, the projection 
+	 * then streams over the assignments to the variables kept, computing only one block of the join at a time. 
+	 * @see UtilitySolutionSpace#joinAndProject(UtilitySolutionSpace[], java.lang.String[], boolean)
+	 * @see JoinOutputHypercube#project(java.lang.String[], boolean)
+	 */
+	public UtilitySolutionSpace.ProjOutput< V, U > joinAndProject( UtilitySolutionSpace< V, U >[] spaces, String[] varsOut, boolean maximum ) {
+		return this.join(spaces).project(varsOut, maximum);
+	}
+	
 	/**Returns a hypercube obtained by projecting out from this hypercube the last \c number_to_project variables of the hypercube
 	 * @param number_to_project  number of the varibles of the hypercube to project out
 	 * @param maximum            indicates wether to take the maximum or minimum among the utility values that will be mapped into the
@@ -1564,7 +2084,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 			nbrUtilsKept *= domain.length;
 		
 		//the array that will contain the utility values of the resulting hypercube
-		U[] new_values = (U[]) Array.newInstance(this.values.getClass().getComponentType(), nbrUtilsKept);
+		U[] new_values = (U[]) Array.newInstance(this.getClassOfU(), nbrUtilsKept);
 		
 		// The conditional optimal assignments
 		ArrayList<V>[] condOptAssignments = (ArrayList<V>[]) new ArrayList[ nbrUtilsKept ];
@@ -1615,7 +2135,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		String[] varsOut = new String [number_to_project];
 		System.arraycopy(this.variables, nbrVarsKept, varsOut, 0, number_to_project);
 				
-		return new ProjOutput<V, U> (new Hypercube< V, U >( new_variables, new_domains, new_values, this.infeasibleUtil ), 
+		return new ProjOutput<V, U> (newHypercube( new_variables, new_domains, new_values, this.infeasibleUtil ), 
 				varsOut, 
 				new BasicHypercube< V, ArrayList<V> > (new_variables, new_domains, condOptAssignments, null));
 	}
@@ -1948,7 +2468,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		 */
 		
 		//Construct the array containing the utility values corresponding to the new domains of the variables
-		U[] new_values = (U[]) Array.newInstance(this.values.getClass().getComponentType(), number_of_utilities);
+		U[] new_values = (U[]) Array.newInstance(this.getClassOfU(), number_of_utilities);
 		//reset the array of indexes to 0 and the index to increment to the index of the last variable
 		java.util.Arrays.fill(indexes, 0, number_of_variables - 1, 0);
 		index_to_increment = number_of_variables - 1;
@@ -2406,7 +2926,7 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 		if (new_variables.length == 0) 
 			return new ScalarHypercube<V, U> (name, new_values[0], infeasibleUtil, (Class<? extends V[]>) this.assignment.getClass());
 		
-		return new Hypercube<V, U> ( name, new_variables, new_domains, new_values, infeasibleUtil );
+		return newHypercube( name, new_variables, new_domains, new_values, infeasibleUtil );
 	}
 		
 	/** @see BasicHypercube#compose(java.lang.String[], BasicUtilitySolutionSpace) */
@@ -2734,6 +3254,14 @@ extends HypercubeLimited<V, U, U> implements UtilitySolutionSpace<V, U> {
 			return new ProjOutput<V, U> (NULL, new String [0], NULL);
 		}
 		
+		/** Always returns \a NULL for the resulting hypercube, and for the optimal assignments
+		 * @see Hypercube#joinAndProject(UtilitySolutionSpace[], java.lang.String[], boolean)
+		 */
+		@Override
+		public ProjOutput< V, U > joinAndProject( UtilitySolutionSpace< V, U >[] spaces, String[] varsOut, boolean maximum ) {
+			return new ProjOutput<V, U> (NULL, new String [0], NULL);
+		}
+		
 		/** Always returns \a NULL for the resulting hypercube, and for the optimal assignments
 		 * @see Hypercube#project(java.lang.String, boolean)
 		 */
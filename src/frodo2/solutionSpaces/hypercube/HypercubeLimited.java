@@ -87,6 +87,17 @@ extends BasicHypercube<V, UL> implements UtilitySolutionSpaceLimited<V, U, UL> {
 		super (variablesOrder, variablesDomains, utilityValues, infeasibleUtil, problem);
 	}
 	
+	/** Constructor for subclasses that do not store their utilities in a UL[] array
+	 * @param variablesOrder 	the array containing the variables names ordered according to their order in the hypercube
+	 * @param variablesDomains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param nbrUtils 			the number of utility values
+	 * @param infeasibleUtil 	-INF if we are maximizing, +INF if we are minimizing
+	 * @param problem 			the problem to be notified of constraint checks
+	 */
+	protected HypercubeLimited(String[] variablesOrder, V[][] variablesDomains, long nbrUtils, UL infeasibleUtil, ProblemInterface<V, U> problem) {
+		super (variablesOrder, variablesDomains, nbrUtils, infeasibleUtil, problem);
+	}
+	
 	/** @see BasicHypercube#resolve() */
 	@Override
 	public HypercubeLimited<V, U, UL> resolve() {
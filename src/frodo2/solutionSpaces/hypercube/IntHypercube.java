@@ -0,0 +1,292 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.ProblemInterface;
+
+/** A Hypercube with AddableInteger utilities, stored in an int[] array
+ *
+ * +infinity and -infinity are stored as Integer.MAX_VALUE and Integer.MIN_VALUE, like AddableInteger does when it is externalized.
+ * @param <V> the type used for variable values
+ */
+public class IntHypercube < V extends Addable<V> > extends PrimitiveHypercube<V, AddableInteger> {
+	
+	/** Used for serialization */
+	private static final long serialVersionUID = 4417986126430157121L;
+	
+	/** The utility values */
+	protected int[] intValues;
+	
+	/** Empty constructor used for externalization */
+	public IntHypercube () { }
+	
+	/** Constructor
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param utility_values 		the utility values contained in a one-dimensional array
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @warning variables_domains parameter needs to be sorted in ascending order.
+	 */
+	public IntHypercube (String[] variables_order, V[][] variables_domains, int[] utility_values, AddableInteger infeasibleUtil) {
+		super (variables_order, variables_domains, utility_values.length, infeasibleUtil, null);
+		this.intValues = utility_values;
+	}
+	
+	/** Constructor
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param utility_values 		the utility values contained in a one-dimensional array, which must not contain \c null
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @warning variables_domains parameter needs to be sorted in ascending order.
+	 */
+	public IntHypercube (String[] variables_order, V[][] variables_domains, AddableInteger[] utility_values, AddableInteger infeasibleUtil) {
+		this (variables_order, variables_domains, toInts(utility_values), infeasibleUtil);
+	}
+	
+	/** Constructor
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param utility_values 		the utility values contained in a one-dimensional array, which must not contain \c null
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @param problem 				the problem to be notified of constraint checks
+	 * @warning variables_domains parameter needs to be sorted in ascending order.
+	 */
+	public IntHypercube (String[] variables_order, V[][] variables_domains, AddableInteger[] utility_values, AddableInteger infeasibleUtil,
+			ProblemInterface<V, AddableInteger> problem) {
+		super (variables_order, variables_domains, utility_values.length, infeasibleUtil, problem);
+		this.intValues = toInts(utility_values);
+	}
+	
+	/** Checks whether an array of utilities can be stored in an IntHypercube without loss of information
+	 * @param utils 	the utilities
+	 * @return \c false if the array contains \c null or instances of subclasses of AddableInteger other than +/- infinity
+	 */
+	public static boolean supports (AddableInteger[] utils) {
+		
+		for (AddableInteger util : utils)
+			if (util == null
+				|| (util.getClass() != AddableInteger.class && util != AddableInteger.PlusInfinity.PLUS_INF && util != AddableInteger.MinInfinity.MIN_INF))
+				return false;
+		
+		return true;
+	}
+	
+	/** Converts an array of AddableIntegers to an array of ints
+	 * @param utils 	the AddableIntegers
+	 * @return the corresponding ints
+	 */
+	private static int[] toInts (AddableInteger[] utils) {
+		int[] out = new int [utils.length];
+		for (int i = utils.length - 1; i >= 0; i--)
+			out[i] = utils[i].intValue();
+		return out;
+	}
+	
+	/** @see PrimitiveHypercube#utilAt(int) */
+	@Override
+	protected AddableInteger utilAt (int index) {
+		
+		final int util = this.intValues[index];
+		switch (util) {
+		
+		case Integer.MAX_VALUE:
+			return AddableInteger.PlusInfinity.PLUS_INF;
+		
+		case Integer.MIN_VALUE:
+			return AddableInteger.MinInfinity.MIN_INF;
+		
+		default:
+			return new AddableInteger (util);
+		}
+	}
+	
+	/** @see PrimitiveHypercube#setUtilAt(int, Addable) */
+	@Override
+	protected void setUtilAt (int index, AddableInteger util) {
+		this.intValues[index] = util.intValue();
+	}
+	
+	/** @see PrimitiveHypercube#isUtil(int, Addable) */
+	@Override
+	protected boolean isUtil (int index, AddableInteger util) {
+		return this.intValues[index] == util.intValue();
+	}
+	
+	/** @see PrimitiveHypercube#compareUtil(int, Addable) */
+	@Override
+	protected int compareUtil (int index, AddableInteger util) {
+		return Integer.compare(this.intValues[index], util.intValue());
+	}
+	
+	/** @see PrimitiveHypercube#compareUtils(int, int) */
+	@Override
+	protected int compareUtils (int index1, int index2) {
+		return Integer.compare(this.intValues[index1], this.intValues[index2]);
+	}
+	
+	/** @see PrimitiveHypercube#copyUtil(int, PrimitiveHypercube, int) */
+	@Override
+	protected void copyUtil (int index, PrimitiveHypercube<V, AddableInteger> dest, int destIndex) {
+		((IntHypercube<V>) dest).intValues[destIndex] = this.intValues[index];
+	}
+	
+	/** @see PrimitiveHypercube#copyUtils(int, PrimitiveHypercube, int, int) */
+	@Override
+	protected void copyUtils (int index, PrimitiveHypercube<V, AddableInteger> dest, int destIndex, int length) {
+		System.arraycopy(this.intValues, index, ((IntHypercube<V>) dest).intValues, destIndex, length);
+	}
+	
+	/** @see Hypercube#joinBlock(long, int, Hypercube[], long[], long[][], Addable, boolean) */
+	@Override
+	protected void joinBlock (final long start, final int length, Hypercube<V, AddableInteger>[] inputs, long[] bases, long[][] offsets, 
+			AddableInteger constant, final boolean addition) {
+		
+		// Only sums of int-valued hypercubes are computed directly on the int[] arrays
+		boolean direct = addition;
+		for (int i = inputs.length - 1; direct && i >= 0; i--) 
+			direct = isIntBacked(inputs[i]);
+		if (! direct) {
+			super.joinBlock(start, length, inputs, bases, offsets, constant, addition);
+			return;
+		}
+		
+		sumBlock(this.intValues, (int) start, length, inputs, bases, offsets, constant);
+	}
+	
+	/** Checks whether a hypercube stores its utilities as ints
+	 * @param space 	the hypercube
+	 * @return \c true if the hypercube is an IntHypercube or an OffHeapIntHypercube
+	 */
+	static boolean isIntBacked (Hypercube<?, ?> space) {
+		return space instanceof IntHypercube || space instanceof OffHeapIntHypercube;
+	}
+	
+	/** Computes a block of the sum of int-valued hypercubes
+	 * @param <V> 		the type used for variable values
+	 * @param out 		the array in which the block is written
+	 * @param start 	the index in \a out of the first utility in the block
+	 * @param length 	the number of utilities in the block
+	 * @param inputs 	the inputs, which must all be int-valued
+	 * @param bases 	for each input, the index of its utility corresponding to the first utility in the block
+	 * @param offsets 	for each input, the offsets of all utilities in the block, relative to the input's base
+	 * @param constant 	a constant to be added to all utilities, or \c null
+	 * @see IntHypercube#isIntBacked(Hypercube)
+	 */
+	static < V extends Addable<V> > void sumBlock (final int[] out, final int start, final int length, Hypercube<V, AddableInteger>[] inputs, 
+			long[] bases, long[][] offsets, AddableInteger constant) {
+		
+		final int end = start + length;
+		
+		for (int i = 0; i < inputs.length; i++) {
+			final long base = bases[i];
+			final long[] offs = offsets[i];
+			
+			if (inputs[i] instanceof IntHypercube) {
+				final int[] in = ((IntHypercube<V>) inputs[i]).intValues;
+				if (i == 0) // copy the utilities of the first input
+					for (int o = start, d = 0; o < end; o++, d++) 
+						out[o] = in[(int) (base + offs[d])];
+				else // add the utilities of the other inputs
+					for (int o = start, d = 0; o < end; o++, d++) 
+						out[o] = add(out[o], in[(int) (base + offs[d])]);
+				
+			} else {
+				final OffHeapIntArray in = ((OffHeapIntHypercube<V>) inputs[i]).offHeapValues;
+				if (i == 0) 
+					for (int o = start, d = 0; o < end; o++, d++) 
+						out[o] = in.get(base + offs[d]);
+				else 
+					for (int o = start, d = 0; o < end; o++, d++) 
+						out[o] = add(out[o], in.get(base + offs[d]));
+			}
+		}
+		
+		if (constant != null) {
+			final int cst = constant.intValue();
+			for (int o = start; o < end; o++) 
+				out[o] = add(out[o], cst);
+		}
+	}
+	
+	/** Adds two utilities, following the semantics of AddableInteger#add(AddableInteger) for infinite utilities
+	 * @param util1 	the first utility
+	 * @param util2 	the second utility
+	 * @return the sum
+	 */
+	private static int add (final int util1, final int util2) {
+		
+		if (util1 == Integer.MAX_VALUE || util2 == Integer.MAX_VALUE) {
+			assert util1 != Integer.MIN_VALUE && util2 != Integer.MIN_VALUE : "Adding plus infinity and minus infinity is not defined!";
+			return Integer.MAX_VALUE;
+		
+		} else if (util1 == Integer.MIN_VALUE || util2 == Integer.MIN_VALUE) 
+			return Integer.MIN_VALUE;
+		
+		assert Math.addExact(util1, util2) == util1 + util2 : "Integer overflow";
+		return util1 + util2;
+	}
+	
+	/** @see PrimitiveHypercube#newPrimitiveInstance(java.lang.String, java.lang.String[], V[][], long) */
+	@Override
+	protected IntHypercube<V> newPrimitiveInstance (String name, String[] new_variables, V[][] new_domains, long nbrUtils) {
+		
+		if (nbrUtils >= Integer.MAX_VALUE) 
+			throw new OutOfMemoryError ("Size of utility array too big for an int");
+		
+		IntHypercube<V> out = new IntHypercube<V> (new_variables, new_domains, new int [(int) nbrUtils], this.infeasibleUtil);
+		out.name = name;
+		return out;
+	}
+	
+	/** @see PrimitiveHypercube#getClassOfU() */
+	@Override
+	public Class<AddableInteger> getClassOfU () {
+		return AddableInteger.class;
+	}
+	
+	/** @see HypercubeLimited#writeUtilities(java.io.ObjectOutput) */
+	@Override
+	protected void writeUtilities (ObjectOutput out) throws IOException {
+		
+		out.writeInt(this.number_of_utility_values); // number of utilities
+		UtilityCodec.writeInts(out, this.intValues, this.number_of_utility_values, 
+				(this.infeasibleUtil == null ? 0 : this.infeasibleUtil.intValue()));
+		
+		this.incrNCCCs(this.number_of_utility_values);
+	}
+	
+	/** @see HypercubeLimited#readUtilities(java.io.ObjectInput) */
+	@Override
+	protected void readUtilities (ObjectInput in) throws IOException {
+		
+		this.number_of_utility_values = in.readInt();
+		this.intValues = UtilityCodec.readInts(in, this.number_of_utility_values);
+	}
+
+}
@@ -53,8 +53,8 @@ extends Hypercube<V, U> {
 	 */
 	private static class JoinOutputIterator < V extends Addable<V>, U extends Addable<U> > implements UtilitySolutionSpace.Iterator<V, U> {
 		
-		/** The underlying iterators 
-		 * @todo Order the iterators by putting the ones that are cheap to check first. 
+		/** The underlying iterators, ordered such that the ones that are cheap to check and likely to be infeasible come first
+		 * @see JoinOutputHypercube#orderInputs()
 		 */
 		private UtilitySolutionSpace.Iterator<V, U>[] iters;
 		
@@ -319,6 +319,13 @@ extends Hypercube<V, U> {
 	/** Whether we are adding or multiplying */
 	protected final boolean addition;
 	
+	/** The number of utilities sampled in each input space to estimate its proportion of infeasible utilities */
+	private static final int NBR_SAMPLES = 32;
+	
+	/** The estimated cost of checking a utility of a space that computes its utilities on the fly, 
+	 * relative to the cost of looking up a utility stored in memory */
+	private static final double VIRTUAL_COST = 10.0;
+	
 	/** The types of spaces that we know how to handle */
 	private static HashSet< Class<?> > knownSpaces;
 	
@@ -327,6 +334,8 @@ extends Hypercube<V, U> {
 		knownSpaces.add(BasicHypercube.class);
 		knownSpaces.add(ScalarBasicHypercube.class);
 		knownSpaces.add(Hypercube.class);
+		knownSpaces.add(IntHypercube.class);
+		knownSpaces.add(DoubleHypercube.class);
 		knownSpaces.add(Hypercube.NullHypercube.class);
 		knownSpaces.add(ScalarHypercube.class);
 		knownSpaces.add(JoinOutputHypercube.class);
@@ -499,7 +508,7 @@ extends Hypercube<V, U> {
 		if (this.getNumberOfVariables() == 0) 
 			return new ScalarHypercube<V, U> (this.values[0], this.infeasibleUtil, (Class<? extends V[]>) this.domains.getClass().getComponentType());
 		else 
-			return new Hypercube<V, U> (this.variables, this.domains, this.values, this.infeasibleUtil);
+			return Hypercube.newHypercube(this.variables, this.domains, this.values, this.infeasibleUtil);
 	}
 
 	/** @see Hypercube#resolve() */
@@ -516,13 +525,16 @@ extends Hypercube<V, U> {
 		if (this.getNumberOfVariables() == 0) 
 			return this.scalarHypercube(this.getUtility(0));
 
-		// Resolve the utilities
+		// Resolve the utilities; only the stride-based join can produce outputs stored off the heap with more than 2^31-1 solutions
+		Hypercube<V, U> out = Hypercube.strideJoin(this.inputs, this.variables, this.domains, this.nbrUtils, this.addition, this.infeasibleUtil);
+		if (out != null) 
+			return out;
+		
 		assert this.nbrUtils < Integer.MAX_VALUE : "Cannot resolve a JoinOutputHypercube that contains more than 2^31-1 solutions";
-		U[] values = (U[]) Array.newInstance(this.getClassOfU(), (int) nbrUtils);
-		Hypercube<V, U> out = new Hypercube<V, U> (this.variables, this.domains, values, this.infeasibleUtil);
+		out = Hypercube.newHypercube(this.variables, this.domains, this.getClassOfU(), nbrUtils, 
+				(sparse ? this.infeasibleUtil : null), this.infeasibleUtil);
 		
 		if (sparse) {
-			Arrays.fill(values, this.infeasibleUtil);
 			UtilitySolutionSpace.SparseIterator<V, U> iter = this.sparseIter();
 			for (U util = iter.nextUtility(); util != null; util = iter.nextUtility()) 
 				out.setUtility(iter.getCurrentSolution(), util);
@@ -530,7 +542,7 @@ extends Hypercube<V, U> {
 		} else { // not sparse
 			int i = 0;
 			for (UtilitySolutionSpace.Iterator<V, U> iter = this.iterator(); iter.hasNext(); ) 
-				values[i++] = iter.nextUtility();
+				out.setUtility(i++, iter.nextUtility());
 		}
 
 		return out;
@@ -593,13 +605,89 @@ extends Hypercube<V, U> {
 		} else {
 			UtilitySolutionSpace.Iterator<V, U>[] iters = new UtilitySolutionSpace.Iterator [inputs.size()];
 			final int nbrInputs = this.inputs.size();
+			int[] inputOrder = this.orderInputs();
 			for (int i = 0; i < nbrInputs; i++) 
-				iters[i] = this.inputs.get(i).iterator(order, domains, assignment);
+				iters[i] = this.inputs.get(inputOrder[i]).iterator(order, domains, assignment);
 			
 			return new JoinOutputIterator<V, U> (iters, this.addition, this.infeasibleUtil, skippedUtil);
 		}
 	}
 	
+	/** Orders the input spaces in which their iterators should be checked
+	 * 
+	 * When adding, the iteration over the join stops checking the inputs as soon as one of them returns an infeasible utility. 
+	 * The inputs are therefore sorted by decreasing ratio of their estimated proportion of infeasible utilities 
+	 * to their estimated cost of checking a utility, such that the expected cost of checking a tuple is minimized. 
+	 * When multiplying, no input can be skipped, and the inputs are kept in their original order. 
+	 * @return the indexes of the input spaces, in the order in which they should be checked
+	 */
+	protected int[] orderInputs () {
+		
+		final int nbrInputs = this.inputs.size();
+		Integer[] order = new Integer [nbrInputs];
+		for (int i = 0; i < nbrInputs; i++) 
+			order[i] = i;
+		
+		if (this.addition && nbrInputs > 1) {
+			
+			final double[] ranks = new double [nbrInputs];
+			for (int i = 0; i < nbrInputs; i++) {
+				UtilitySolutionSpace<V, U> input = this.inputs.get(i);
+				ranks[i] = this.estimateInfeasibility(input) / this.estimateCost(input);
+			}
+			
+			Arrays.sort(order, (i1, i2) -> Double.compare(ranks[i2], ranks[i1])); // stable
+		}
+		
+		int[] out = new int [nbrInputs];
+		for (int i = 0; i < nbrInputs; i++) 
+			out[i] = order[i];
+		return out;
+	}
+	
+	/** Estimates the cost of checking one utility of an input space
+	 * @param space 	the input space
+	 * @return the estimated cost, relative to the cost of looking up a utility stored in memory
+	 */
+	protected double estimateCost (UtilitySolutionSpace<V, U> space) {
+		
+		if (Hypercube.isStrided(space)) 
+			return 1.0;
+		
+		if (space instanceof JoinOutputHypercube) {
+			double cost = 0.0;
+			for (UtilitySolutionSpace<V, U> input : ((JoinOutputHypercube<V, U>) space).inputs) 
+				cost += this.estimateCost(input);
+			return cost;
+		}
+		
+		return VIRTUAL_COST;
+	}
+	
+	/** Estimates the proportion of infeasible utilities in an input space
+	 * 
+	 * The utilities are sampled at regular intervals; spaces whose utilities are not stored in memory are not sampled, 
+	 * and are assumed not to contain any infeasible utility, like when no infeasible utility is defined. 
+	 * The samples are not counted as constraint checks. 
+	 * @param space 	the input space
+	 * @return the estimated proportion of infeasible utilities
+	 */
+	protected double estimateInfeasibility (UtilitySolutionSpace<V, U> space) {
+		
+		if (this.infeasibleUtil == null || ! Hypercube.isStrided(space)) 
+			return 0.0;
+		
+		Hypercube<V, U> hypercube = (Hypercube<V, U>) space;
+		final long nbrSols = hypercube.getNumberOfSolutions();
+		final long nbrSamples = Math.min(nbrSols, NBR_SAMPLES);
+		int nbrInfeasible = 0;
+		for (long i = 0; i < nbrSamples; i++) 
+			if (this.infeasibleUtil.equals(hypercube.utilAt(i * nbrSols / nbrSamples))) 
+				nbrInfeasible++;
+		
+		return nbrInfeasible / (double) nbrSamples;
+	}
+	
 	/** @see BasicHypercube#getUtility(long) */
 	@Override
 	public U getUtility( long index ){
@@ -867,7 +955,7 @@ extends Hypercube<V, U> {
 		// Check if all my spaces are subject to projection
 		final int nbrSpaces = spaces.size();
 		if (nbrSpaces == myNbrSpaces) 
-			return super.project(varsOut, maximum);
+			return this.projectJoin(varsOut, maximum);
 		
 		// Join all spaces subject to projection
 		UtilitySolutionSpace<V, U> join;
@@ -901,7 +989,7 @@ extends Hypercube<V, U> {
 		
 		// Check if all my spaces are subject to projection
 		if (otherSpaces.isEmpty()) 
-			return super.project(varsOut, maximum); /// @todo Improvement: call .getCurrentUtility(bound) on the last space
+			return this.projectJoin(varsOut, maximum); /// @todo Improvement: call .getCurrentUtility(bound) on the last space
 		
 		// Compute the projection
 		ProjOutput< V, U > projOutput = join.project(varsOut, maximum);
@@ -909,6 +997,28 @@ extends Hypercube<V, U> {
 					varsOut, projOutput.assignments);
 	}
 	
+	/** Projects variables out of the join of all my inputs
+	 * 
+	 * If all inputs are hypercubes whose utilities are stored in memory, the join is computed block by block using 
+	 * the stride-based join, and each block is projected before the next one is computed, such that the join is never materialized. 
+	 * @param varsOut 	the variables to project out
+	 * @param maximum 	\c true if we should maximize, \c false if we should minimize
+	 * @return the output of the projection
+	 */
+	private ProjOutput< V, U > projectJoin( String[] varsOut, final boolean maximum ) {
+		
+		ProjOutput< V, U > out = Hypercube.strideJoinAndProject(this.inputs, this.variables, this.domains, varsOut, this.addition, maximum, this.infeasibleUtil);
+		if (out != null) 
+			return out;
+		
+		// Fall back to materializing the join first
+		Hypercube<V, U> join = Hypercube.strideJoin(this.inputs, this.variables, this.domains, this.nbrUtils, this.addition, this.infeasibleUtil);
+		if (join == null) 
+			return super.project(varsOut, maximum);
+		
+		return join.project(varsOut, maximum);
+	}
+	
 	/** @see Hypercube#projExpectMonotone(java.lang.String, java.util.Map, boolean) */
 	@SuppressWarnings("unchecked")
 	@Override
@@ -0,0 +1,198 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/** A long-indexed array of ints stored outside of the Java heap
+ *
+ * The ints are stored in chunks, each of which is a memory-mapped temporary file, so that the operating system
+ * can page them out to disk when they do not fit in physical memory. The temporary files are deleted as soon as
+ * they are mapped; the memory is released when the array is garbage-collected. If a temporary file cannot be
+ * created, the corresponding chunk is allocated as a direct ByteBuffer instead.
+ * @author Thomas Leaute
+ */
+public class OffHeapIntArray {
+	
+	/** The default number of ints in a chunk, i.e. 256MB per chunk */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 26;
+	
+	/** The number of ints */
+	private final long length;
+	
+	/** The number of ints in a chunk */
+	private final int chunkSize;
+	
+	/** The chunks */
+	private final IntBuffer[] chunks;
+	
+	/** Constructor
+	 * @param length 	the number of ints, all initialized to 0
+	 */
+	public OffHeapIntArray (long length) {
+		this (length, DEFAULT_CHUNK_SIZE);
+	}
+	
+	/** Constructor
+	 * @param length 		the number of ints, all initialized to 0
+	 * @param chunkSize 	the number of ints in a chunk
+	 */
+	public OffHeapIntArray (long length, int chunkSize) {
+		
+		assert length >= 0 : "Negative length: " + length;
+		assert chunkSize > 0 : "Non-positive chunk size: " + chunkSize;
+		
+		this.length = length;
+		this.chunkSize = chunkSize;
+		
+		final int nbrChunks = (int) ((length + chunkSize - 1) / chunkSize);
+		this.chunks = new IntBuffer [nbrChunks];
+		for (int i = 0; i < nbrChunks; i++)
+			this.chunks[i] = newChunk((int) Math.min(chunkSize, length - (long) i * chunkSize));
+	}
+	
+	/** Allocates a chunk
+	 * @param size 	the number of ints in the chunk
+	 * @return a view of the chunk as an IntBuffer
+	 */
+	private static IntBuffer newChunk (final int size) {
+		
+		final long nbrBytes = 4L * size;
+		ByteBuffer bytes = null;
+		
+		try {
+			File file = File.createTempFile("frodo_utils", ".bin");
+			try (RandomAccessFile raf = new RandomAccessFile (file, "rw"); FileChannel channel = raf.getChannel()) {
+				raf.setLength(nbrBytes);
+				bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, nbrBytes); // the mapping remains valid after the channel is closed
+			} finally {
+				file.delete();
+			}
+		} catch (IOException e) { // fall back to a direct buffer
+			bytes = ByteBuffer.allocateDirect((int) nbrBytes);
+		}
+		
+		return bytes.order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+	
+	/** @return the number of ints */
+	public long length () {
+		return this.length;
+	}
+	
+	/** Returns the int at the given index
+	 * @param index 	the index
+	 * @return the int
+	 */
+	public int get (final long index) {
+		return this.chunks[(int) (index / this.chunkSize)].get((int) (index % this.chunkSize));
+	}
+	
+	/** Sets the int at the given index
+	 * @param index 	the index
+	 * @param value 	the new value
+	 */
+	public void set (final long index, final int value) {
+		this.chunks[(int) (index / this.chunkSize)].put((int) (index % this.chunkSize), value);
+	}
+	
+	/** Copies a range of ints into an int[] array
+	 * @param index 	the index of the first int to be copied
+	 * @param dest 		the destination array
+	 * @param destIndex the index in the destination array of the first int
+	 * @param length 	the number of ints to copy
+	 */
+	public void get (long index, int[] dest, int destIndex, int length) {
+		
+		while (length > 0) {
+			final int chunk = (int) (index / this.chunkSize);
+			final int pos = (int) (index % this.chunkSize);
+			final int len = Math.min(length, this.chunkSize - pos);
+			this.chunks[chunk].get(pos, dest, destIndex, len);
+			index += len;
+			destIndex += len;
+			length -= len;
+		}
+	}
+	
+	/** Copies a range of ints from an int[] array
+	 * @param index 	the index of the first int to be overwritten
+	 * @param src 		the source array
+	 * @param srcIndex 	the index in the source array of the first int
+	 * @param length 	the number of ints to copy
+	 */
+	public void put (long index, int[] src, int srcIndex, int length) {
+		
+		while (length > 0) {
+			final int chunk = (int) (index / this.chunkSize);
+			final int pos = (int) (index % this.chunkSize);
+			final int len = Math.min(length, this.chunkSize - pos);
+			this.chunks[chunk].put(pos, src, srcIndex, len);
+			index += len;
+			srcIndex += len;
+			length -= len;
+		}
+	}
+	
+	/** Copies a range of ints into another OffHeapIntArray, without copying them to the heap
+	 * @param index 	the index of the first int to be copied
+	 * @param dest 		the destination array
+	 * @param destIndex the index in the destination array of the first int
+	 * @param length 	the number of ints to copy
+	 */
+	public void copyTo (long index, OffHeapIntArray dest, long destIndex, long length) {
+		
+		while (length > 0) {
+			final int pos = (int) (index % this.chunkSize);
+			final int destPos = (int) (destIndex % dest.chunkSize);
+			final int len = (int) Math.min(length, Math.min(this.chunkSize - pos, dest.chunkSize - destPos));
+			
+			IntBuffer src = this.chunks[(int) (index / this.chunkSize)].duplicate();
+			src.position(pos).limit(pos + len);
+			IntBuffer dst = dest.chunks[(int) (destIndex / dest.chunkSize)].duplicate();
+			dst.position(destPos);
+			dst.put(src);
+			
+			index += len;
+			destIndex += len;
+			length -= len;
+		}
+	}
+	
+	/** Sets all ints to the same value
+	 * @param value 	the value
+	 */
+	public void fill (final int value) {
+		
+		for (IntBuffer chunk : this.chunks)
+			for (int i = chunk.limit() - 1; i >= 0; i--)
+				chunk.put(i, value);
+	}
+
+}
@@ -0,0 +1,456 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.UtilitySolutionSpace;
+
+/** A Hypercube with AddableInteger utilities, stored outside of the Java heap in an OffHeapIntArray
+ *
+ * This is used for hypercubes that are too large to be stored in an int[] array on the heap, typically the outputs of
+ * the joins of large UTIL messages. The utilities are encoded like in IntHypercube, and are indexed by \c longs, such that 
+ * the hypercube may contain more than 2^31 utilities. Joins, projections, slices and re-orderings are computed by the 
+ * stride-based join, which walks through the utilities by blocks without ever boxing them into a U[] array. 
+ * The outputs of these operations are stored off the heap if they contain at least Hypercube#getOffHeapThreshold() utilities, 
+ * or too many utilities for an int[] array, and in an IntHypercube otherwise.
+ * 
+ * The operations that require iterating over the solutions, or the utilities to be boxed, are only supported if the 
+ * hypercube contains fewer than 2^31-1 utilities. 
+ * @param <V> the type used for variable values
+ * @see Hypercube#setOffHeapThreshold(long)
+ * @see Hypercube#setLocalOffHeapThreshold(Long)
+ */
+public class OffHeapIntHypercube < V extends Addable<V> > extends PrimitiveHypercube<V, AddableInteger> {
+	
+	/** Used for serialization */
+	private static final long serialVersionUID = 1683360734981627375L;
+
+	/** The utility values */
+	protected OffHeapIntArray offHeapValues;
+	
+	/** For each variable, the position of each value in its domain */
+	private transient HashMap<V, Integer>[] positions;
+	
+	/** For each variable, the distance in the utility array between the utilities of two consecutive values of the variable */
+	private transient long[] strides;
+	
+	/** Empty constructor used for externalization */
+	public OffHeapIntHypercube () { }
+	
+	/** Constructor
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param utility_values 		the utility values
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @warning variables_domains parameter needs to be sorted in ascending order.
+	 */
+	public OffHeapIntHypercube (String[] variables_order, V[][] variables_domains, OffHeapIntArray utility_values, AddableInteger infeasibleUtil) {
+		super (variables_order, variables_domains, utility_values.length(), infeasibleUtil, null);
+		this.offHeapValues = utility_values;
+	}
+	
+	/** Constructor
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param utility_values 		the utility values contained in a one-dimensional array, which must not contain \c null
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @warning variables_domains parameter needs to be sorted in ascending order.
+	 */
+	public OffHeapIntHypercube (String[] variables_order, V[][] variables_domains, AddableInteger[] utility_values, AddableInteger infeasibleUtil) {
+		this (variables_order, variables_domains, new OffHeapIntArray (utility_values.length), infeasibleUtil);
+		for (int i = utility_values.length - 1; i >= 0; i--)
+			this.offHeapValues.set(i, utility_values[i].intValue());
+	}
+	
+	/** Computes the positions and strides of the values of the variables, 
+	 * and the steps hashmaps if the utilities can be indexed by ints
+	 * @see BasicHypercube#setStepsHashmaps()
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	void setStepsHashmaps () {
+		
+		final int nbrVars = this.variables.length;
+		this.positions = (HashMap<V, Integer>[]) new HashMap<?, ?> [nbrVars];
+		this.strides = new long [nbrVars];
+		
+		long stride = 1;
+		for (int i = nbrVars - 1; i >= 0; i--) {
+			V[] dom = this.domains[i];
+			HashMap<V, Integer> pos = new HashMap<V, Integer> (dom.length);
+			for (int j = 0; j < dom.length; j++) 
+				pos.put(dom[j], j);
+			this.positions[i] = pos;
+			this.strides[i] = stride;
+			stride *= dom.length;
+		}
+		
+		// The int-indexed steps can only be used if there are fewer than 2^31-1 utilities
+		if (stride < Integer.MAX_VALUE) 
+			super.setStepsHashmaps();
+		else {
+			this.steps_hashmaps = null;
+			this.rangeSteps = null;
+			this.rangeStarts = null;
+			this.rangeSizes = null;
+		}
+	}
+	
+	/** @return \c true if the utilities can be indexed by ints, i.e. if there are fewer than 2^31-1 of them */
+	private boolean isIntIndexed () {
+		return this.offHeapValues.length() < Integer.MAX_VALUE;
+	}
+	
+	/** @see BasicHypercube#getNumberOfSolutions() */
+	@Override
+	public long getNumberOfSolutions () {
+		return this.offHeapValues.length();
+	}
+	
+	/** Computes the index of the utility of an assignment
+	 * @param variables_values 	the values of the variables, in the order of the variables in the hypercube
+	 * @return the index of the utility, or -1 if one of the values is not in the domain of the corresponding variable
+	 */
+	private long indexOf (V[] variables_values) {
+		
+		long index = 0;
+		for (int i = this.strides.length - 1; i >= 0; i--) {
+			Integer pos = this.positions[i].get(variables_values[i]);
+			if (pos == null) 
+				return -1;
+			index += pos * this.strides[i];
+		}
+		
+		return index;
+	}
+	
+	/** @see PrimitiveHypercube#utilAt(int) */
+	@Override
+	protected AddableInteger utilAt (int index) {
+		return this.utilAt((long) index);
+	}
+	
+	/** @see Hypercube#utilAt(long) */
+	@Override
+	protected AddableInteger utilAt (long index) {
+		
+		final int util = this.offHeapValues.get(index);
+		switch (util) {
+		
+		case Integer.MAX_VALUE:
+			return AddableInteger.PlusInfinity.PLUS_INF;
+		
+		case Integer.MIN_VALUE:
+			return AddableInteger.MinInfinity.MIN_INF;
+		
+		default:
+			return new AddableInteger (util);
+		}
+	}
+	
+	/** @see PrimitiveHypercube#setUtilAt(int, Addable) */
+	@Override
+	protected void setUtilAt (int index, AddableInteger util) {
+		this.offHeapValues.set(index, util.intValue());
+	}
+	
+	/** @see Hypercube#setUtilAt(long, Addable) */
+	@Override
+	protected void setUtilAt (long index, AddableInteger util) {
+		this.offHeapValues.set(index, util.intValue());
+	}
+	
+	/** @see PrimitiveHypercube#isUtil(int, Addable) */
+	@Override
+	protected boolean isUtil (int index, AddableInteger util) {
+		return this.offHeapValues.get(index) == util.intValue();
+	}
+	
+	/** @see PrimitiveHypercube#compareUtil(int, Addable) */
+	@Override
+	protected int compareUtil (int index, AddableInteger util) {
+		return Integer.compare(this.offHeapValues.get(index), util.intValue());
+	}
+	
+	/** @see PrimitiveHypercube#compareUtils(int, int) */
+	@Override
+	protected int compareUtils (int index1, int index2) {
+		return Integer.compare(this.offHeapValues.get(index1), this.offHeapValues.get(index2));
+	}
+	
+	/** @see PrimitiveHypercube#copyUtil(int, PrimitiveHypercube, int) */
+	@Override
+	protected void copyUtil (int index, PrimitiveHypercube<V, AddableInteger> dest, int destIndex) {
+		
+		if (dest instanceof OffHeapIntHypercube)
+			((OffHeapIntHypercube<V>) dest).offHeapValues.set(destIndex, this.offHeapValues.get(index));
+		else
+			((IntHypercube<V>) dest).intValues[destIndex] = this.offHeapValues.get(index);
+	}
+	
+	/** @see PrimitiveHypercube#copyUtils(int, PrimitiveHypercube, int, int) */
+	@Override
+	protected void copyUtils (int index, PrimitiveHypercube<V, AddableInteger> dest, int destIndex, int length) {
+		
+		if (dest instanceof OffHeapIntHypercube)
+			this.offHeapValues.copyTo(index, ((OffHeapIntHypercube<V>) dest).offHeapValues, destIndex, length);
+		else
+			this.offHeapValues.get(index, ((IntHypercube<V>) dest).intValues, destIndex, length);
+	}
+	
+	/** @see PrimitiveHypercube#copyAllUtils(PrimitiveHypercube) */
+	@Override
+	protected void copyAllUtils (PrimitiveHypercube<V, AddableInteger> dest) {
+		
+		final long length = this.offHeapValues.length();
+		if (dest instanceof OffHeapIntHypercube)
+			this.offHeapValues.copyTo(0, ((OffHeapIntHypercube<V>) dest).offHeapValues, 0, length);
+		else
+			this.offHeapValues.get(0, ((IntHypercube<V>) dest).intValues, 0, (int) length);
+	}
+	
+	/** @see PrimitiveHypercube#adopt(PrimitiveHypercube) */
+	@Override
+	protected void adopt (PrimitiveHypercube<V, AddableInteger> space) {
+		
+		// The outputs of the operations on this hypercube are stored on the heap if they are small enough
+		if (space instanceof OffHeapIntHypercube) 
+			this.offHeapValues = ((OffHeapIntHypercube<V>) space).offHeapValues;
+		else {
+			int[] utils = ((IntHypercube<V>) space).intValues;
+			this.offHeapValues = new OffHeapIntArray (space.number_of_utility_values);
+			this.offHeapValues.put(0, utils, 0, space.number_of_utility_values);
+		}
+		
+		this.variables = space.variables;
+		this.domains = space.domains;
+		this.number_of_utility_values = space.number_of_utility_values;
+		this.setStepsHashmaps();
+	}
+	
+	/** @see Hypercube#getOffsets(int, Addable[]) */
+	@Override
+	protected long[] getOffsets (int var, V[] values) {
+		
+		final long stride = this.strides[var];
+		HashMap<V, Integer> pos = this.positions[var];
+		long[] offsets = new long [values.length];
+		for (int d = values.length - 1; d >= 0; d--) {
+			Integer position = pos.get(values[d]);
+			assert position != null : "The value " + values[d] + " of variable " + this.variables[var] + " is not in the domain of " + this;
+			offsets[d] = position * stride;
+		}
+		
+		return offsets;
+	}
+	
+	/** @see PrimitiveHypercube#getUtility(V[]) */
+	@Override
+	public AddableInteger getUtility (V[] variables_values) {
+		
+		if (variables_values.length < this.variables.length)
+			return null;
+		
+		this.incrNCCCs(1);
+		
+		final long index = this.indexOf(variables_values);
+		if (index < 0)
+			return this.infeasibleUtil;
+		
+		return this.utilAt(index);
+	}
+	
+	/** @see PrimitiveHypercube#getUtility(long) */
+	@Override
+	public AddableInteger getUtility (long index) {
+		
+		if (index >= this.offHeapValues.length())
+			return null;
+		
+		this.incrNCCCs(1);
+		return this.utilAt(index);
+	}
+	
+	/** @see PrimitiveHypercube#setUtility(V[], Addable) */
+	@Override
+	public boolean setUtility (V[] variables_values, AddableInteger utility) {
+		
+		final long index = this.indexOf(variables_values);
+		if (index < 0)
+			return false;
+		
+		this.setUtilAt(index, utility);
+		return true;
+	}
+	
+	/** @see PrimitiveHypercube#setUtility(long, Addable) */
+	@Override
+	public void setUtility (long index, AddableInteger utility) {
+		this.setUtilAt(index, utility);
+	}
+	
+	/** @see Hypercube#joinBlock(long, int, Hypercube[], long[], long[][], Addable, boolean) */
+	@Override
+	protected void joinBlock (final long start, final int length, Hypercube<V, AddableInteger>[] inputs, long[] bases, long[][] offsets,
+			AddableInteger constant, final boolean addition) {
+		
+		// Only sums of int-valued hypercubes are computed directly on ints, in a buffer that is then copied off the heap
+		boolean direct = addition;
+		for (int i = inputs.length - 1; direct && i >= 0; i--)
+			direct = IntHypercube.isIntBacked(inputs[i]);
+		if (! direct) {
+			super.joinBlock(start, length, inputs, bases, offsets, constant, addition);
+			return;
+		}
+		
+		int[] block = new int [length];
+		IntHypercube.sumBlock(block, 0, length, inputs, bases, offsets, constant);
+		this.offHeapValues.put(start, block, 0, length);
+	}
+	
+	/** @see PrimitiveHypercube#newPrimitiveInstance(java.lang.String, java.lang.String[], V[][], long) */
+	@Override
+	protected PrimitiveHypercube<V, AddableInteger> newPrimitiveInstance (String name, String[] new_variables, V[][] new_domains, long nbrUtils) {
+		
+		PrimitiveHypercube<V, AddableInteger> out;
+		if (nbrUtils >= Integer.MAX_VALUE || isOffHeap(AddableInteger.class, nbrUtils))
+			out = new OffHeapIntHypercube<V> (new_variables, new_domains, new OffHeapIntArray (nbrUtils), this.infeasibleUtil);
+		else
+			out = new IntHypercube<V> (new_variables, new_domains, new int [(int) nbrUtils], this.infeasibleUtil);
+		
+		out.name = name;
+		return out;
+	}
+	
+	/** @see PrimitiveHypercube#project(int, boolean) */
+	@Override
+	public UtilitySolutionSpace.ProjOutput<V, AddableInteger> project (int number_to_project, boolean maximum) {
+		
+		final int nbrVarsKept = this.variables.length - number_to_project;
+		if (this.isIntIndexed() || nbrVarsKept <= 0 || number_to_project == 0) 
+			return super.project(number_to_project, maximum);
+		
+		// Project out the last variables by blocks
+		String[] varsOut = new String [number_to_project];
+		System.arraycopy(this.variables, nbrVarsKept, varsOut, 0, number_to_project);
+		return this.project(varsOut, maximum);
+	}
+	
+	/** @see PrimitiveHypercube#projectAll(boolean, java.lang.String[]) */
+	@SuppressWarnings("unchecked")
+	@Override
+	public ProjOutput<V, AddableInteger> projectAll (boolean maximum, String[] varsOut) {
+		
+		if (this.isIntIndexed()) 
+			return super.projectAll(maximum, varsOut);
+		
+		// Compute the optimum utility value, reading the utilities by blocks
+		final long length = this.offHeapValues.length();
+		int[] block = new int [OffHeapIntArray.DEFAULT_CHUNK_SIZE >>> 4];
+		long optIndex = 0;
+		int optUtil = this.offHeapValues.get(0);
+		for (long start = 0; start < length; start += block.length) {
+			final int blockLength = (int) Math.min(block.length, length - start);
+			this.offHeapValues.get(start, block, 0, blockLength);
+			for (int i = 0; i < blockLength; i++) {
+				final int util = block[i];
+				if (maximum ? util >= optUtil : util <= optUtil) {
+					optUtil = util;
+					optIndex = start + i;
+				}
+			}
+		}
+		this.incrNCCCs(length);
+		AddableInteger optimum = this.utilAt(optIndex);
+		
+		// Find the corresponding optimal assignments
+		HashMap<String, V> opt = new HashMap<String, V> ();
+		for (int i = this.variables.length - 1; i >= 0; i--) {
+			V[] dom = this.domains[i];
+			opt.put(this.variables[i], dom[(int) (optIndex % dom.length)]);
+			optIndex /= dom.length;
+		}
+		
+		// Build the array of optimal values, following the order in varsOut
+		ArrayList<V> optValues = new ArrayList<V> (this.variables.length);
+		for (int i = 0; i < this.variables.length; i++)
+			optValues.add(opt.get(varsOut[i]));
+		
+		return new ProjOutput<V, AddableInteger> (new ScalarHypercube<V, AddableInteger>(optimum, this.infeasibleUtil, (Class<? extends V[]>) this.assignment.getClass()), 
+				varsOut, new ScalarBasicHypercube< V, ArrayList<V> > (optValues, null));
+	}
+	
+	/** @see PrimitiveHypercube#newIter(java.lang.String[], V[][], V[], Addable) */
+	@Override
+	protected UtilitySolutionSpace.Iterator<V, AddableInteger> newIter (String[] variables, V[][] domains, V[] assignment, AddableInteger skippedUtil) {
+		
+		if (! this.isIntIndexed()) 
+			throw new UnsupportedOperationException ("Iterating over more than 2^31-1 solutions is not supported");
+		
+		return super.newIter(variables, domains, assignment, skippedUtil);
+	}
+	
+	/** @see PrimitiveHypercube#boxUtils() */
+	@Override
+	protected AddableInteger[] boxUtils () {
+		
+		if (! this.isIntIndexed()) 
+			throw new OutOfMemoryError ("Size of utility array too big for an int");
+		
+		return super.boxUtils();
+	}
+	
+	/** @see PrimitiveHypercube#getClassOfU() */
+	@Override
+	public Class<AddableInteger> getClassOfU () {
+		return AddableInteger.class;
+	}
+	
+	/** @see HypercubeLimited#writeUtilities(java.io.ObjectOutput) */
+	@Override
+	protected void writeUtilities (ObjectOutput out) throws IOException {
+		
+		final long length = this.offHeapValues.length();
+		out.writeLong(length); // number of utilities
+		UtilityCodec.writeInts(out, this.offHeapValues, this.infeasibleUtil.intValue());
+		
+		this.incrNCCCs(length);
+	}
+	
+	/** @see HypercubeLimited#readUtilities(java.io.ObjectInput) */
+	@Override
+	protected void readUtilities (ObjectInput in) throws IOException {
+		
+		final long length = in.readLong();
+		this.offHeapValues = UtilityCodec.readInts(in, length);
+		this.number_of_utility_values = (length <= Integer.MAX_VALUE ? (int) length : 0);
+	}
+
+}
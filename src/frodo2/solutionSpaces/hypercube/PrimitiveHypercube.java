@@ -0,0 +1,652 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.ProblemInterface;
+import frodo2.solutionSpaces.UtilitySolutionSpace;
+
+/** A Hypercube whose utilities are stored in an array of primitive values rather than in a U[] array
+ *
+ * The inherited U[] values array is always \c null; subclasses store the utilities in a primitive array and
+ * map the +/- infinity singletons of the utility type to sentinel primitive values. Boxed utilities are only
+ * created on demand, when a caller asks for a U. The operations on which DPOP spends most of its time
+ * (lookups, iteration, slicing, re-ordering, joins and projections) work directly on the primitive array. 
+ * The other rarely used operations (split(), sample()...) are delegated to a boxed copy.
+ * @param <V> the type used for variable values
+ * @param <U> the type used for utility values
+ * @see Hypercube#newHypercube(String[], Addable[][], Addable[], Addable)
+ */
+public abstract class PrimitiveHypercube < V extends Addable<V>, U extends Addable<U> > extends Hypercube<V, U> {
+	
+	/** Used for serialization */
+	private static final long serialVersionUID = -2571637018844416734L;
+
+	/** Empty constructor used for externalization */
+	public PrimitiveHypercube () { }
+	
+	/** Constructor
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param nbrUtils 				the number of utility values
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @param problem 				the problem to be notified of constraint checks
+	 */
+	protected PrimitiveHypercube (String[] variables_order, V[][] variables_domains, long nbrUtils, U infeasibleUtil, ProblemInterface<V, U> problem) {
+		super (variables_order, variables_domains, nbrUtils, infeasibleUtil, problem);
+	}
+	
+	/** Returns the utility at the given index in the utility array
+	 * @param index 	the index
+	 * @return the utility, boxed as a U; +/- infinity are returned as the corresponding singletons
+	 */
+	protected abstract U utilAt (int index);
+	
+	/** Sets the utility at the given index in the utility array
+	 * @param index 	the index
+	 * @param util 		the new utility
+	 */
+	protected abstract void setUtilAt (int index, U util);
+	
+	/** Checks whether the utility at the given index is equal to the input utility
+	 * @param index 	the index
+	 * @param util 		the utility
+	 * @return \c true if the two utilities are equal
+	 */
+	protected abstract boolean isUtil (int index, U util);
+	
+	/** Compares the utility at the given index with the input utility
+	 * @param index 	the index
+	 * @param util 		the utility
+	 * @return a negative number, zero or a positive number if the utility at the given index is lower than, equal to, or greater than the input utility
+	 */
+	protected abstract int compareUtil (int index, U util);
+	
+	/** Compares two utilities in the utility array
+	 * @param index1 	the index of the first utility
+	 * @param index2 	the index of the second utility
+	 * @return a negative number, zero or a positive number if the first utility is lower than, equal to, or greater than the second
+	 */
+	protected abstract int compareUtils (int index1, int index2);
+	
+	/** Copies a single utility to another PrimitiveHypercube of the same class
+	 * @param index 		the index of the utility in this hypercube
+	 * @param dest 			the destination hypercube
+	 * @param destIndex 	the index of the utility in the destination hypercube
+	 */
+	protected abstract void copyUtil (int index, PrimitiveHypercube<V, U> dest, int destIndex);
+	
+	/** Copies a block of utilities to another PrimitiveHypercube of the same class
+	 * @param index 		the index of the first utility in this hypercube
+	 * @param dest 			the destination hypercube
+	 * @param destIndex 	the index of the first utility in the destination hypercube
+	 * @param length 		the number of utilities to copy
+	 */
+	protected abstract void copyUtils (int index, PrimitiveHypercube<V, U> dest, int destIndex, int length);
+	
+	/** Copies all utilities to another PrimitiveHypercube of the same class with the same number of utilities
+	 * @param dest 	the destination hypercube
+	 */
+	protected void copyAllUtils (PrimitiveHypercube<V, U> dest) {
+		this.copyUtils(0, dest, 0, this.number_of_utility_values);
+	}
+	
+	/** Creates a new PrimitiveHypercube of the same class, with the same infeasible utility, and with all utilities set to zero
+	 * @param name 				the name of the new hypercube
+	 * @param new_variables 	the variables
+	 * @param new_domains 		the domains
+	 * @param nbrUtils 			the number of utilities
+	 * @return a new PrimitiveHypercube
+	 * @throws OutOfMemoryError 	if there are too many utilities for this class of hypercubes
+	 */
+	protected abstract PrimitiveHypercube<V, U> newPrimitiveInstance (String name, String[] new_variables, V[][] new_domains, long nbrUtils);
+	
+	/** @see BasicHypercube#getClassOfU() */
+	@Override
+	public abstract Class<U> getClassOfU ();
+	
+	/** @return all the utilities, boxed into a U[] array */
+	@SuppressWarnings("unchecked")
+	protected U[] boxUtils () {
+		U[] utils = (U[]) Array.newInstance(this.getClassOfU(), this.number_of_utility_values);
+		for (int i = 0; i < this.number_of_utility_values; i++)
+			utils[i] = this.utilAt(i);
+		return utils;
+	}
+	
+	/** @return a Hypercube that is a copy of this one, but whose utilities are stored in a U[] array */
+	public Hypercube<V, U> toBoxed () {
+		Hypercube<V, U> out = new Hypercube<V, U> (this.name, this.variables.clone(), this.domains.clone(), this.boxUtils(), this.infeasibleUtil);
+		out.setProblem(this.problem);
+		return out;
+	}
+	
+	/** @see BasicHypercube#getUtility(V[]) */
+	@Override
+	public U getUtility( V[] variables_values ) {
+		
+		if (variables_values.length < this.variables.length)
+			return null;
+		
+		this.incrNCCCs(1);
+		
+		int index = getIndexOfUtilityValue( variables_values );
+		if (index < 0)
+			return this.infeasibleUtil;
+		
+		return this.utilAt(index);
+	}
+	
+	/** @see BasicHypercube#getUtility(long) */
+	@Override
+	public U getUtility( long index ) {
+		
+		if (index >= this.number_of_utility_values)
+			return null;
+		
+		this.incrNCCCs(1);
+		return this.utilAt((int) index);
+	}
+	
+	/** @see BasicHypercube#setUtility(V[], java.io.Serializable) */
+	@Override
+	public boolean setUtility (V[] variables_values, U utility) {
+		
+		int index = getIndexOfUtilityValue( variables_values );
+		if (index == -1)
+			return false;
+		
+		this.setUtilAt(index, utility);
+		
+		return true;
+	}
+	
+	/** @see BasicHypercube#setUtility(long, java.io.Serializable) */
+	@Override
+	public void setUtility(long index, U utility) {
+		assert index < Integer.MAX_VALUE : "A hypercube can only contain up to 2^31-1 solutions";
+		this.setUtilAt((int) index, utility);
+	}
+	
+	/** @see BasicHypercube#renameAllVars(java.lang.String[]) */
+	@Override
+	public PrimitiveHypercube<V, U> renameAllVars(String[] newVarNames) {
+		assert newVarNames.length == this.variables.length : "Incorrect number of variables in input array";
+		PrimitiveHypercube<V, U> out = this.newPrimitiveInstance(this.name + "_named_vars", newVarNames, this.domains, this.getNumberOfSolutions());
+		this.copyAllUtils(out);
+		out.setProblem(this.problem); // keep counting constraint checks
+		return out;
+	}
+	
+	/** @see BasicHypercube#toString() */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder (super.toString());
+		
+		builder.append("[");
+		final long nbrUtils = this.getNumberOfSolutions();
+		if (nbrUtils >= Integer.MAX_VALUE) // too many utilities to be displayed
+			builder.append(nbrUtils + " utilities");
+		else {
+			for (int i = 0; i < nbrUtils; i++) {
+				if (i > 0)
+					builder.append(", ");
+				builder.append(this.utilAt(i));
+			}
+		}
+		builder.append("]\n");
+		
+		return builder.toString();
+	}
+	
+	/** @see BasicHypercube#hashCode() */
+	@Override
+	public int hashCode () {
+		int hash = 0;
+		
+		for (V[] dom : this.domains)
+			for (V val : dom)
+				hash += val.hashCode();
+		
+		hash += name.hashCode();
+		
+		for (int i = 0; i < this.number_of_utility_values; i++)
+			hash += this.utilAt(i).hashCode();
+		
+		for (String var : this.variables)
+			hash += var.hashCode();
+		
+		return hash;
+	}
+	
+	/** @see Hypercube#clone() */
+	@SuppressWarnings("unchecked")
+	@Override
+	public PrimitiveHypercube<V, U> clone () {
+		
+		// Clone the domains
+		V[][] domains2 = (V[][]) Array.newInstance(this.domains.getClass().getComponentType(), this.domains.length);
+		for (int i = 0; i < domains2.length; i++)
+			domains2[i] = domains[i].clone();
+		
+		PrimitiveHypercube<V, U> out = this.newPrimitiveInstance(this.name, variables.clone(), domains2, this.getNumberOfSolutions());
+		this.copyAllUtils(out);
+		out.setOwner(this.getOwner());
+		out.problem = this.problem; // keep counting constraint checks
+		
+		return out;
+	}
+	
+	/** @see Hypercube#newIter(java.lang.String[], V[][], V[], Addable) */
+	@Override
+	protected UtilitySolutionSpace.Iterator<V, U> newIter (String[] variables, V[][] domains, V[] assignment, U skippedUtil) {
+		
+		if (variables == null)
+			return new PrimitiveHypercubeIter<V, U> (this, assignment, skippedUtil);
+		else if (domains == null)
+			return new PrimitiveHypercubeIter<V, U> (this, variables, assignment, skippedUtil);
+		else
+			return new PrimitiveHypercubeIter<V, U> (this, variables, domains, assignment, skippedUtil);
+	}
+	
+	/** @return this hypercube, as the single input of a stride-based walk */
+	@SuppressWarnings("unchecked")
+	private Hypercube<V, U>[] asInputs () {
+		return (Hypercube<V, U>[]) new Hypercube<?, ?> [] { this };
+	}
+	
+	/** @see Hypercube#changeVariablesOrder(java.lang.String[]) */
+	@SuppressWarnings("unchecked")
+	@Override
+	public PrimitiveHypercube< V, U > changeVariablesOrder( String[] variables_order ) {
+		
+		assert sub(variables, variables_order).length == 0 && sub(variables_order, variables).length == 0 :
+			Arrays.asList(variables).toString() + " does not match input " + Arrays.asList(variables_order).toString();
+		
+		V[][] doms = (V[][]) Array.newInstance(this.domains.getClass().getComponentType(), variables_order.length);
+		for (int i = 0; i < variables_order.length; i++) 
+			doms[i] = this.getDomain(variables_order[i]);
+		
+		// Walk through the utility array in the new order; re-ordering the variables should not require constraint checks
+		PrimitiveHypercube<V, U> out = this.newPrimitiveInstance(this.name + "_reordered_vars", variables_order, doms, this.getNumberOfSolutions());
+		strideJoin(out, variables_order, doms, this.asInputs(), null, true, false);
+		
+		out.problem = this.problem; // the output should still count constraint checks if I do
+		
+		return out;
+	}
+	
+	/** @see BasicHypercube#applyChangeVariablesOrder(java.lang.String[]) */
+	@Override
+	public void applyChangeVariablesOrder( String[] variables_order ) {
+		
+		this.adopt(this.changeVariablesOrder(variables_order.clone()));
+	}
+	
+	/** Replaces the variables, domains and utilities of this hypercube with those of another hypercube
+	 * @param space 	a hypercube of the same class, with at most as many utilities as this one, and that is not used afterwards
+	 */
+	protected void adopt (PrimitiveHypercube<V, U> space) {
+		
+		assert space.getClass() == this.getClass() && space.number_of_utility_values <= this.number_of_utility_values;
+		
+		space.copyUtils(0, this, 0, space.number_of_utility_values);
+		this.setNumberOfSolutions(space.number_of_utility_values);
+		
+		this.variables = space.variables;
+		this.domains = space.domains;
+		this.steps_hashmaps = space.steps_hashmaps;
+		this.rangeSteps = space.rangeSteps;
+		this.rangeStarts = space.rangeStarts;
+		this.rangeSizes = space.rangeSizes;
+	}
+	
+	/** @see BasicHypercube#slice(java.lang.String[], V[][], V[][], long, java.lang.Class) */
+	@Override
+	protected PrimitiveHypercube<V, U> slice (String[] remainingVars, V[][] remainingDoms, V[][] iterDoms, long nbrRemainingUtils, Class<?> domClass) {
+		
+		// Compute the new array of utilities, whose layout is the same as when keeping the sliced variables with singleton domains
+		PrimitiveHypercube<V, U> out = this.newPrimitiveInstance(this.name + "_sliced", remainingVars, remainingDoms, nbrRemainingUtils);
+		strideJoin(out, this.variables, iterDoms, this.asInputs(), null, true, false); /// @bug Don't count NCCCs
+		
+		out.problem = this.problem;
+		
+		return out;
+	}
+	
+	/** @see Hypercube#slice(V[]) */
+	@Override
+	public Hypercube< V, U > slice( V[] variables_values ) {
+		
+		assert variables_values.length <= variables.length :
+			"number of provided variables is greator than the number of variables in the Hypercube";
+		
+		String[] vars = Arrays.copyOfRange(this.variables, this.variables.length - variables_values.length, this.variables.length);
+		return this.slice(vars, variables_values);
+	}
+	
+	/** @see BasicHypercube#applySlice(java.lang.String[], V[][]) */
+	@SuppressWarnings("unchecked")
+	@Override
+	public BasicHypercube<V, U> applySlice( String[] variables_names, V[][] sub_domains ) {
+		
+		Hypercube<V, U> out = this.slice(variables_names, sub_domains);
+		if (out == this || out.getClass() != this.getClass()) // no effect, or scalar output
+			return out;
+		
+		this.adopt((PrimitiveHypercube<V, U>) out);
+		return this;
+	}
+	
+	/** @see BasicHypercube#applyAugment(java.lang.String[], V[][]) */
+	@SuppressWarnings("unchecked")
+	@Override
+	public BasicHypercube< V, U > applyAugment(String[] new_variables, V[][] new_domains ) {
+		
+		int number_of_new_variables = new_variables.length;
+		int number_of_variables = variables.length;
+		
+		assert number_of_new_variables == new_domains.length : "A domains must be specified for each new variable.";
+		
+		// The variables and domains of the augmented hypercube
+		String[] augmented_variables = new String [number_of_new_variables + number_of_variables];
+		System.arraycopy(new_variables, 0, augmented_variables, 0, number_of_new_variables);
+		System.arraycopy(variables, 0, augmented_variables, number_of_new_variables, number_of_variables);
+		V[][] augmented_domains = (V[][]) Array.newInstance(this.domains.getClass().getComponentType(), augmented_variables.length);
+		System.arraycopy(new_domains, 0, augmented_domains, 0, number_of_new_variables);
+		System.arraycopy(domains, 0, augmented_domains, number_of_new_variables, number_of_variables);
+		
+		long augmentation_factor = 1;
+		for (V[] dom : new_domains)
+			augmentation_factor *= dom.length;
+		
+		// The augmented utility array consists of augmentation_factor copies of this one
+		PrimitiveHypercube<V, U> out = this.newPrimitiveInstance(this.name + "_augmented", augmented_variables, augmented_domains,
+				augmentation_factor * this.getNumberOfSolutions());
+		strideJoin(out, augmented_variables, augmented_domains, this.asInputs(), null, true, false);
+		
+		out.setProblem(this.problem); // to continue counting constraint checks
+		return out;
+	}
+	
+	/** @see Hypercube#applyJoin(UtilitySolutionSpace, java.lang.String[]) 
+	 * @note Like Hypercube#applyJoin(UtilitySolutionSpace, java.lang.String[]), the output variables are the variables only 
+	 * in the input space, followed by the variables in this hypercube. The join is computed by the stride-based join directly 
+	 * into a new PrimitiveHypercube of the same class. 
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public UtilitySolutionSpace< V, U > applyJoin( UtilitySolutionSpace< V, U > space, String[] total_variables) {
+		
+		Hypercube<V, U> hypercube = (Hypercube<V, U>) space;
+		
+		if (hypercube.isNull()) 
+			return NullHypercube.NULL;
+		
+		if (hypercube.getNumberOfVariables() == 0) // the input hypercube is a ScalarHypercube
+			return hypercube.applyJoin(this, total_variables);
+		
+		// Compute the variables only in the input space, and the intersections of the domains of my variables
+		ArrayList<String> outVars = new ArrayList<String> (total_variables.length);
+		ArrayList<V[]> outDoms = new ArrayList<V[]> (total_variables.length);
+		for (String var : total_variables) {
+			if (this.getDomain(var) == null) {
+				V[] dom = hypercube.getDomain(var);
+				if (dom != null) {
+					outVars.add(var);
+					outDoms.add(dom);
+				}
+			}
+		}
+		for (int i = 0; i < this.variables.length; i++) {
+			V[] dom = this.domains[i];
+			V[] dom2 = hypercube.getDomain(this.variables[i]);
+			if (dom2 != null && (dom = intersection(dom, dom2)) == null) 
+				return NullHypercube.NULL;
+			outVars.add(this.variables[i]);
+			outDoms.add(dom);
+		}
+		
+		long nbrUtils = 1;
+		for (V[] dom : outDoms) 
+			nbrUtils *= dom.length;
+		
+		if (! isStrided(hypercube)) 
+			hypercube = hypercube.resolve();
+		
+		return this.joinWith(hypercube, outVars.toArray(new String [outVars.size()]), 
+				outDoms.toArray((V[][]) Array.newInstance(this.domains.getClass().getComponentType(), outDoms.size())), nbrUtils);
+	}
+	
+	/** Computes the join with a hypercube whose utilities are stored in memory
+	 * @param hypercube 	the hypercube, which must contain at least one variable
+	 * @param outVars 		the variables of the join: the variables only in \a hypercube, followed by the variables in this hypercube
+	 * @param outDoms 		the domains of the variables of the join
+	 * @param nbrUtils 		the number of utilities in the join
+	 * @return the join
+	 */
+	@SuppressWarnings("unchecked")
+	protected Hypercube<V, U> joinWith (Hypercube<V, U> hypercube, String[] outVars, V[][] outDoms, long nbrUtils) {
+		
+		PrimitiveHypercube<V, U> out = this.newPrimitiveInstance(this.name, outVars, outDoms, nbrUtils);
+		out.setProblem(this.problem); // to continue counting constraint checks
+		
+		// Add the utilities of both hypercubes, walking through their utility arrays with precomputed strides
+		Hypercube<V, U>[] inputs = (Hypercube<V, U>[]) new Hypercube<?, ?> [] { this, hypercube };
+		strideJoin(out, inputs, null, true);
+		
+		return out;
+	}
+	
+	/** @see Hypercube#project(java.lang.String[], java.lang.String[], V[][], int, java.lang.String[], long, boolean) */
+	@SuppressWarnings("unchecked")
+	@Override
+	protected UtilitySolutionSpace.ProjOutput< V, U > project( String[] varOrder, String[] varsKept, V[][] domsKept,
+			final int nbrUtilsKept, String[] varsOut, final long nbrUtilsOut, final boolean maximum ) {
+		
+		final int nbrVarsKept = varsKept.length;
+		final int nbrVarsOut = varsOut.length;
+		
+		// Initialize the outputs
+		PrimitiveHypercube<V, U> out = this.newPrimitiveInstance(this.name + "_projected", varsKept, domsKept, nbrUtilsKept);
+		ArrayList<V>[] optSols = (ArrayList<V>[]) new ArrayList<?> [nbrUtilsKept];
+		
+		// Iterate over the solutions in the space, comparing the utilities in place
+		PrimitiveHypercubeIter<V, U> iter = new PrimitiveHypercubeIter<V, U> (this, varOrder, null, null);
+		V[] optSol = (V[]) Array.newInstance(this.classOfV, nbrVarsOut);
+		for (int i = 0; i < nbrUtilsKept; i++) {
+			
+			// Iterate over all possible assignments to the variables projected out
+			int optIndex = iter.iter();
+			System.arraycopy(iter.getCurrentSolution(), nbrVarsKept, optSol, 0, nbrVarsOut);
+			for (long j = 1; j < nbrUtilsOut; j++) {
+				int index = iter.iter();
+				int cmp = this.compareUtils(index, optIndex);
+				
+				if (maximum ? cmp >= 0 : cmp <= 0) {
+					optIndex = index;
+					System.arraycopy(iter.getCurrentSolution(), nbrVarsKept, optSol, 0, nbrVarsOut);
+				}
+			}
+			
+			this.copyUtil(optIndex, out, i);
+			optSols[i] = new ArrayList<V> (Arrays.asList(optSol));
+		}
+		this.incrNCCCs(this.number_of_utility_values);
+		
+		return new ProjOutput<V, U> (out, varsOut,
+				 new BasicHypercube< V, ArrayList<V> > (varsKept.clone(), domsKept.clone(), optSols, null));
+	}
+	
+	/** @see Hypercube#optIndex(int, int, boolean) */
+	@Override
+	protected int optIndex (final int start, final int length, final boolean maximum) {
+		
+		int optIndex = start;
+		for (int i = start + 1; i < start + length; i++) {
+			final int cmp = this.compareUtils(i, optIndex);
+			if (maximum ? cmp >= 0 : cmp <= 0) 
+				optIndex = i;
+		}
+		
+		return optIndex;
+	}
+	
+	/** @see Hypercube#project(int, boolean) */
+	@SuppressWarnings("unchecked")
+	@Override
+	public UtilitySolutionSpace.ProjOutput< V, U > project( int number_to_project, boolean maximum) {
+		
+		int nbrVarsKept = variables.length - number_to_project;
+		
+		// If all variables must be projected out
+		if( nbrVarsKept <= 0 )
+			return this.projectAll(maximum);
+		
+		if( number_to_project == 0)
+			return new ProjOutput<V, U> (this.clone(), new String [0], NullHypercube.NULL);
+		
+		// The variables and domains of the new hypercube
+		String[] new_variables = new String[nbrVarsKept];
+		System.arraycopy(variables, 0, new_variables, 0, nbrVarsKept);
+		V[][] new_domains = (V[][]) Array.newInstance(this.domains.getClass().getComponentType(), nbrVarsKept);
+		System.arraycopy(domains, 0, new_domains, 0, nbrVarsKept);
+		
+		int nbrUtilsKept = 1;
+		for( V[] domain : new_domains)
+			nbrUtilsKept *= domain.length;
+		
+		PrimitiveHypercube<V, U> out = this.newPrimitiveInstance(this.name + "_projected", new_variables, new_domains, nbrUtilsKept);
+		ArrayList<V>[] condOptAssignments = (ArrayList<V>[]) new ArrayList<?> [ nbrUtilsKept ];
+		
+		// The utilities for each assignment to the kept variables are stored in a contiguous block
+		final int step = this.number_of_utility_values / nbrUtilsKept;
+		for (int index = 0, start = 0; index < nbrUtilsKept; index++, start += step) {
+			
+			// Index of the optimal utility in the utility array for the current assignments to all kept variables
+			int jOpt = start;
+			for (int j = start + 1; j < start + step; j++) {
+				int cmp = this.compareUtils(j, jOpt);
+				if (maximum ? cmp > 0 : cmp < 0)
+					jOpt = j;
+			}
+			this.copyUtil(jOpt, out, index);
+			
+			// Compute the optimal assignments
+			ArrayList<V> condOptAssignment = new ArrayList<V> (number_to_project);
+			for (int j = 0; j < number_to_project; j++)
+				condOptAssignment.add(null);
+			int modulo = 1;
+			for ( int j = variables.length - 1; j >= nbrVarsKept; j-- ) { // for each projected variable
+				V[] domain = domains[j];
+				condOptAssignment.set(j - nbrVarsKept, domain[(jOpt % (modulo * domain.length)) / modulo]);
+				modulo *= domain.length;
+			}
+			condOptAssignments[index] = condOptAssignment;
+		}
+		this.incrNCCCs(this.number_of_utility_values);
+		
+		String[] varsOut = new String [number_to_project];
+		System.arraycopy(this.variables, nbrVarsKept, varsOut, 0, number_to_project);
+		
+		return new ProjOutput<V, U> (out, varsOut,
+				new BasicHypercube< V, ArrayList<V> > (new_variables, new_domains, condOptAssignments, null));
+	}
+	
+	/** @see Hypercube#projectAll(boolean, java.lang.String[]) */
+	@SuppressWarnings("unchecked")
+	@Override
+	public ProjOutput<V, U> projectAll(boolean maximum, String[] varsOut) {
+		
+		// Compute the optimum utility value
+		int optIndex = 0;
+		for (int i = 1; i < number_of_utility_values; i++) {
+			int cmp = this.compareUtils(i, optIndex);
+			if (maximum ? cmp >= 0 : cmp <= 0)
+				optIndex = i;
+		}
+		this.incrNCCCs(this.number_of_utility_values);
+		U optimum = this.utilAt(optIndex);
+		
+		// Find the corresponding optimal assignments
+		HashMap<String, V> opt = new HashMap<String, V> ();
+		for (int i = variables.length - 1; i >= 0; i--) {
+			V[] dom = domains[i];
+			opt.put(this.variables[i], dom[optIndex % dom.length]);
+			optIndex /= dom.length;
+		}
+		
+		// Build the array of optimal values, following the order in varsOut
+		ArrayList<V> optValues = new ArrayList<V> (variables.length);
+		for (int i = 0; i < variables.length; i++)
+			optValues.add(opt.get(varsOut[i]));
+		
+		return new ProjOutput<V, U> (new ScalarHypercube<V, U>(optimum, this.infeasibleUtil, (Class<? extends V[]>) this.assignment.getClass()), varsOut, new ScalarBasicHypercube< V, ArrayList<V> > (optValues, null));
+	}
+	
+	/** @see Hypercube#applyProject(java.lang.String[], boolean) */
+	@SuppressWarnings("unchecked")
+	@Override
+	public UtilitySolutionSpace.ProjOutput< V, U > applyProject( String[] variables_names, final boolean maximum ) {
+		
+		ProjOutput<V, U> projOutput = this.project(variables_names, maximum);
+		
+		// Scalar outputs, or outputs of another class, cannot be written into this hypercube
+		if (projOutput.space.getClass() != this.getClass()) 
+			return projOutput;
+		
+		this.adopt((PrimitiveHypercube<V, U>) projOutput.space);
+		return new ProjOutput<V, U> (this, projOutput.varsOut, projOutput.assignments);
+	}
+	
+	/** @see Hypercube#split(Addable, boolean) */
+	@Override
+	public Hypercube< V, U > split( U threshold, boolean maximum ) {
+		return this.toBoxed().split(threshold, maximum);
+	}
+	
+	/** @see Hypercube#sample(int) */
+	@Override
+	public Map<V, Double> sample(int nbrSamples) {
+		return this.toBoxed().sample(nbrSamples);
+	}
+	
+	/** @see Hypercube#saveAsXML(java.lang.String) */
+	@Override
+	public void saveAsXML( String file ) {
+		this.toBoxed().saveAsXML(file);
+	}
+	
+	/** @see Hypercube#iteratorBestFirst(boolean) */
+	@Override
+	public UtilitySolutionSpace.IteratorBestFirst<V, U> iteratorBestFirst(boolean maximize) {
+		return this.toBoxed().iteratorBestFirst(maximize);
+	}
+
+}
@@ -0,0 +1,182 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube;
+
+import frodo2.solutionSpaces.Addable;
+
+/** An iterator for a PrimitiveHypercube
+ *
+ * The steps through the utility array are the same as for a HypercubeIter; only the lookups differ,
+ * since the utilities are not stored in a U[] array.
+ * @param <V> the type used for variable values
+ * @param <U> the type used for utility values
+ */
+public class PrimitiveHypercubeIter < V extends Addable<V>, U extends Addable<U> > extends HypercubeIter<V, U> {
+	
+	/** The PrimitiveHypercube we are iterating over */
+	protected final PrimitiveHypercube<V, U> primSpace;
+	
+	/** The utility value that is skipped in sparse iterator mode */
+	private final U skipped;
+	
+	/** Constructor
+	 * @param space 		the PrimitiveHypercube to iterate over
+	 * @param variables 	the variables to iterate over; may include variables not in the space
+	 * @param domains 		the variables' domains
+	 * @param assignment 	An array that will be used as the output of nextSolution()
+	 * @param skippedUtil	The utility value to skip, if any
+	 * @warning The input array of variables must contain all of the space's variables, and the input domains must be sub-domains of the space's.
+	 */
+	protected PrimitiveHypercubeIter(PrimitiveHypercube<V, U> space, String[] variables, V[][] domains, V[] assignment, U skippedUtil) {
+		super(space, variables, domains, assignment, skippedUtil);
+		this.primSpace = space;
+		this.skipped = skippedUtil;
+	}
+	
+	/** Constructor
+	 * @param space 		the PrimitiveHypercube to iterate over
+	 * @param varOrder 		the order of iteration of the variables
+	 * @param assignment 	An array that will be used as the output of nextSolution()
+	 * @param skippedUtil	The utility value to skip, if any
+	 * @warning The input array of variables must contain exactly all of the space's variables.
+	 */
+	protected PrimitiveHypercubeIter(PrimitiveHypercube<V, U> space, String[] varOrder, V[] assignment, U skippedUtil) {
+		super(space, varOrder, assignment, skippedUtil);
+		this.primSpace = space;
+		this.skipped = skippedUtil;
+	}
+	
+	/** Constructor
+	 * @param space 		the PrimitiveHypercube to iterate over
+	 * @param assignment 	An array that will be used as the output of nextSolution()
+	 * @param skippedUtil	The utility value to skip, if any
+	 */
+	protected PrimitiveHypercubeIter(PrimitiveHypercube<V, U> space, V[] assignment, U skippedUtil) {
+		super(space, assignment, skippedUtil);
+		this.primSpace = space;
+		this.skipped = skippedUtil;
+	}
+	
+	/** Moves to the next solution whose utility is not the skipped utility
+	 * @return the index of the next solution in the utility array, or -1 if there is none
+	 */
+	private int nextIndex () {
+		
+		// Return -1 if there are no more solutions
+		if (this.nbrSolLeft <= 0) {
+			this.utility = null;
+			this.solution = null;
+			return -1;
+		}
+		
+		int index = this.iter();
+		
+		final U inf = this.skipped;
+		if (inf != null) {
+			final PrimitiveHypercube<V, U> space = this.primSpace;
+			
+			space.incrNCCCs(1);
+			while (space.isUtil(index, inf) && this.nbrSolLeft > 0) {
+				index = this.iter();
+				space.incrNCCCs(1);
+			}
+			
+			if (space.isUtil(index, inf)) { // I have not found any next feasible solution
+				this.utility = null;
+				this.solution = null;
+				return -1;
+			}
+		}
+		
+		return index;
+	}
+	
+	/** @see BasicHypercubeIter#nextSolution() */
+	@Override
+	public V[] nextSolution() {
+		
+		int index = this.nextIndex();
+		if (index >= 0 && this.skipped != null) // the NCCC has already been counted
+			this.utility = this.primSpace.utilAt(index);
+		
+		return this.solution;
+	}
+	
+	/** @see BasicHypercubeIter#nextUtility() */
+	@Override
+	public U nextUtility() {
+		
+		int index = this.nextIndex();
+		if (index < 0)
+			return null;
+		
+		if (this.skipped == null)
+			this.primSpace.incrNCCCs(1);
+		return this.utility = this.primSpace.utilAt(index);
+	}
+	
+	/** @see HypercubeIter#nextUtility(Addable, boolean) */
+	@Override
+	public U nextUtility(U bound, final boolean minimize) {
+		
+		final PrimitiveHypercube<V, U> space = this.primSpace;
+		final boolean counted = (this.skipped != null);
+		
+		for (int index = this.nextIndex(); index >= 0; index = this.nextIndex()) {
+			if (! counted)
+				space.incrNCCCs(1);
+			
+			int cmp = space.compareUtil(index, bound);
+			if (minimize ? cmp < 0 : cmp > 0)
+				return this.utility = space.utilAt(index);
+		}
+		
+		return null;
+	}
+	
+	/** @see BasicHypercubeIter#getCurrentUtility() */
+	@Override
+	public U getCurrentUtility() {
+		
+		if (this.solution != null && this.utility == null) {
+			this.utility = this.primSpace.utilAt(this.utilIndex);
+			this.primSpace.incrNCCCs(1);
+		}
+		
+		return this.utility;
+	}
+	
+	/** @see HypercubeIter#getCurrentUtility(Addable, boolean) */
+	@Override
+	public U getCurrentUtility(U bound, final boolean minimize) {
+		return this.getCurrentUtility();
+	}
+	
+	/** @see BasicHypercubeIter#setCurrentUtility(java.io.Serializable) */
+	@Override
+	public void setCurrentUtility(U util) {
+		this.utility = util;
+		this.primSpace.setUtilAt(this.utilIndex, util);
+	}
+
+}
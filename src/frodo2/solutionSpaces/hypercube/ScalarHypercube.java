@@ -92,7 +92,7 @@ extends Hypercube <V, U> {
 	public void writeExternal(ObjectOutput out) throws IOException {
 		out.writeObject(this.infeasibleUtil);
 		out.writeUTF(this.name);
-		out.writeObject(this.values[0]);
+		UtilityCodec.writeUtilities(out, this.values, 1, this.infeasibleUtil);
 		out.writeObject(this.domains.getClass().getComponentType());
 		this.incrNCCCs(1);
 	}
@@ -102,7 +102,7 @@ extends Hypercube <V, U> {
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
 		this.infeasibleUtil = (U) in.readObject();
 		this.name = in.readUTF();
-		U util = (U) in.readObject();
+		U util = (U) UtilityCodec.readUtilities(in, 1)[0];
 		this.values = (U[]) Array.newInstance(util.getClass(), 1);
 		this.number_of_utility_values = 1;
 		this.values[0] = util;
@@ -0,0 +1,529 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors:
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.UtilitySolutionSpace;
+
+/** A Hypercube that only stores the utilities that differ from a default utility
+ *
+ * This is meant for constraint tables with only a few tuples whose utility differs from the relation's default utility,
+ * typically hard constraints whose default cost is infeasible. The utilities are stored in a hash map indexed by
+ * the position of each tuple in the corresponding dense utility array. Memory is therefore proportional to the number of
+ * non-default tuples. Sparse iteration, projections and joins only visit the stored utilities; the other operations 
+ * inherited from PrimitiveHypercube (slicing, re-ordering...) keep working on the (virtual) dense array. 
+ * The outputs are also SparseHypercubes, except for joins when the default utility is not infinite, 
+ * since most utilities of the join then differ from the default utility. 
+ * @param <V> the type used for variable values
+ * @param <U> the type used for utility values
+ */
+public class SparseHypercube < V extends Addable<V>, U extends Addable<U> > extends PrimitiveHypercube<V, U> {
+
+	/** Used for serialization */
+	private static final long serialVersionUID = 4626016385817316208L;
+
+	/** The utilities that differ from the default utility, indexed by their positions in the dense utility array */
+	protected HashMap<Integer, U> utils;
+
+	/** The utility of all tuples not in \a utils */
+	protected U defaultUtil;
+
+	/** The class of U */
+	protected Class<U> classOfU;
+
+	/** Empty constructor used for externalization */
+	public SparseHypercube () { }
+
+	/** Constructor for a hypercube whose utilities are all initially equal to the default utility
+	 * @param variables_order 		the array containing the variables names ordered according to their order in the hypercube
+	 * @param variables_domains 	the domains of the variables contained in the variables_order array and ordered in the same order.
+	 * @param nbrUtils 				the number of utility values, i.e. the product of the domain sizes
+	 * @param classOfU 				the class of U
+	 * @param defaultUtil 			the default utility
+	 * @param infeasibleUtil 		-INF if we are maximizing, +INF if we are minimizing
+	 * @warning variables_domains parameter needs to be sorted in ascending order.
+	 */
+	public SparseHypercube (String[] variables_order, V[][] variables_domains, int nbrUtils, Class<U> classOfU, U defaultUtil, U infeasibleUtil) {
+		super (variables_order, variables_domains, nbrUtils, infeasibleUtil, null);
+		assert defaultUtil != null : "The default utility must not be null";
+		this.utils = new HashMap<Integer, U> ();
+		this.defaultUtil = defaultUtil;
+		this.classOfU = classOfU;
+	}
+
+	/** @return the number of tuples whose utility differs from the default utility */
+	public int getNbrStoredUtils () {
+		return this.utils.size();
+	}
+
+	/** @see PrimitiveHypercube#utilAt(int) */
+	@Override
+	protected U utilAt (int index) {
+		U util = this.utils.get(index);
+		return (util == null ? this.defaultUtil : util);
+	}
+
+	/** @see PrimitiveHypercube#setUtilAt(int, Addable) */
+	@Override
+	protected void setUtilAt (int index, U util) {
+
+		if (util.equals(this.defaultUtil))
+			this.utils.remove(index);
+		else
+			this.utils.put(index, util);
+	}
+
+	/** @see PrimitiveHypercube#isUtil(int, Addable) */
+	@Override
+	protected boolean isUtil (int index, U util) {
+		return this.utilAt(index).equals(util);
+	}
+
+	/** @see PrimitiveHypercube#compareUtil(int, Addable) */
+	@Override
+	protected int compareUtil (int index, U util) {
+		return this.utilAt(index).compareTo(util);
+	}
+
+	/** @see PrimitiveHypercube#compareUtils(int, int) */
+	@Override
+	protected int compareUtils (int index1, int index2) {
+		return this.utilAt(index1).compareTo(this.utilAt(index2));
+	}
+
+	/** @see PrimitiveHypercube#copyUtil(int, PrimitiveHypercube, int) */
+	@Override
+	protected void copyUtil (int index, PrimitiveHypercube<V, U> dest, int destIndex) {
+		dest.setUtilAt(destIndex, this.utilAt(index));
+	}
+
+	/** @see PrimitiveHypercube#copyUtils(int, PrimitiveHypercube, int, int) */
+	@Override
+	protected void copyUtils (int index, PrimitiveHypercube<V, U> dest, int destIndex, int length) {
+
+		// If the destination only contains default utilities, only copy the non-default utilities
+		if (dest instanceof SparseHypercube) {
+			SparseHypercube<V, U> destCast = (SparseHypercube<V, U>) dest;
+			if (destCast.utils.isEmpty() && destCast.defaultUtil.equals(this.defaultUtil)) {
+
+				final int end = index + length;
+				for (Map.Entry<Integer, U> entry : this.utils.entrySet()) {
+					final int i = entry.getKey();
+					if (i >= index && i < end)
+						destCast.utils.put(destIndex + i - index, entry.getValue());
+				}
+				return;
+			}
+		}
+
+		for (int i = 0; i < length; i++)
+			dest.setUtilAt(destIndex + i, this.utilAt(index + i));
+	}
+
+	/** @see PrimitiveHypercube#newPrimitiveInstance(java.lang.String, java.lang.String[], V[][], long) */
+	@Override
+	protected SparseHypercube<V, U> newPrimitiveInstance (String name, String[] new_variables, V[][] new_domains, long nbrUtils) {
+		
+		if (nbrUtils >= Integer.MAX_VALUE) 
+			throw new OutOfMemoryError ("Size of utility array too big for an int");
+		
+		SparseHypercube<V, U> out = new SparseHypercube<V, U> (new_variables, new_domains, (int) nbrUtils, this.classOfU, this.defaultUtil, this.infeasibleUtil);
+		out.name = name;
+		return out;
+	}
+
+	/** @see PrimitiveHypercube#newIter(java.lang.String[], V[][], V[], Addable) */
+	@Override
+	protected UtilitySolutionSpace.Iterator<V, U> newIter (String[] variables, V[][] domains, V[] assignment, U skippedUtil) {
+
+		// Only visit the stored utilities if the iteration skips the default utility, in the natural order and over the full domains
+		if (skippedUtil != null && skippedUtil.equals(this.defaultUtil) 
+				&& (variables == null || Arrays.equals(variables, this.variables)) 
+				&& (domains == null || Arrays.deepEquals(domains, this.domains))) 
+			return new SparseHypercubeIter<V, U> (this, assignment);
+
+		return super.newIter(variables, domains, assignment, skippedUtil);
+	}
+
+	/** @return the strides of the variables in the (virtual) dense utility array */
+	private int[] strides () {
+
+		int[] strides = new int [this.variables.length];
+		int stride = 1;
+		for (int i = this.variables.length - 1; i >= 0; i--) {
+			strides[i] = stride;
+			stride *= this.domains[i].length;
+		}
+		return strides;
+	}
+
+	/** @see PrimitiveHypercube#joinWith(Hypercube, java.lang.String[], V[][], long) 
+	 * @note If the default utility is infinite, the join of a non-stored utility is also infinite, and the join is a SparseHypercube 
+	 * computed only from the stored utilities. Otherwise, the join is a dense hypercube. 
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	protected Hypercube<V, U> joinWith (Hypercube<V, U> hypercube, String[] outVars, V[][] outDoms, long nbrUtils) {
+
+		if (! this.defaultUtil.equals(this.defaultUtil.getPlusInfinity()) && ! this.defaultUtil.equals(this.defaultUtil.getMinInfinity())) {
+			Hypercube<V, U> out = newHypercube(outVars, outDoms, this.classOfU, nbrUtils, null, this.infeasibleUtil);
+			out.setProblem(this.problem); // to continue counting constraint checks
+			strideJoin(out, (Hypercube<V, U>[]) new Hypercube<?, ?> [] { this, hypercube }, null, true);
+			return out;
+		}
+
+		SparseHypercube<V, U> out = this.newPrimitiveInstance(this.name, outVars, outDoms, nbrUtils);
+		out.setProblem(this.problem); // to continue counting constraint checks
+
+		// For each of my variables, the position of each of its values in the output domain, and the offsets in the input hypercube
+		final int nbrVars = this.variables.length;
+		final int nbrVarsOnly = outVars.length - nbrVars; // the variables only in the input hypercube come first
+		int[][] positions = new int [nbrVars][];
+		long[][] offsets = new long [nbrVars][];
+		int[] outStrides = new int [nbrVars];
+		int nbrMyUtils = 1;
+		for (int i = nbrVars - 1; i >= 0; i--) {
+			V[] outDom = outDoms[nbrVarsOnly + i];
+			outStrides[i] = nbrMyUtils;
+			nbrMyUtils *= outDom.length;
+
+			HashMap<V, Integer> outPositions = new HashMap<V, Integer> (outDom.length);
+			for (int d = 0; d < outDom.length; d++) 
+				outPositions.put(outDom[d], d);
+			V[] dom = this.domains[i];
+			positions[i] = new int [dom.length];
+			for (int d = 0; d < dom.length; d++) {
+				Integer pos = outPositions.get(dom[d]);
+				positions[i][d] = (pos == null ? -1 : pos);
+			}
+
+			int var = hypercube.getIndex(this.variables[i]);
+			if (var >= 0) 
+				offsets[i] = hypercube.getOffsets(var, outDom);
+		}
+
+		// The offsets in the input hypercube of all assignments to the variables only in the input hypercube
+		long[] onlyOffsets = new long [] { 0 };
+		for (int j = 0; j < nbrVarsOnly; j++) {
+			long[] varOffsets = hypercube.getOffsets(hypercube.getIndex(outVars[j]), outDoms[j]);
+			long[] newOffsets = new long [onlyOffsets.length * varOffsets.length];
+			for (int c = 0, k = 0; c < onlyOffsets.length; c++) 
+				for (int d = 0; d < varOffsets.length; d++) 
+					newOffsets[k++] = onlyOffsets[c] + varOffsets[d];
+			onlyOffsets = newOffsets;
+		}
+
+		// Join each stored utility with all corresponding utilities in the input hypercube
+		final int[] strides = this.strides();
+		long nbrChecks = 0;
+		entries: for (Map.Entry<Integer, U> entry : this.utils.entrySet()) {
+			final int index = entry.getKey();
+
+			int outIndex = 0;
+			long base = 0;
+			for (int i = 0; i < nbrVars; i++) {
+				final int pos = positions[i][(index / strides[i]) % positions[i].length];
+				if (pos < 0) // this value is not in the input hypercube's domain
+					continue entries;
+				outIndex += pos * outStrides[i];
+				if (offsets[i] != null) 
+					base += offsets[i][pos];
+			}
+
+			final U util = entry.getValue();
+			for (int c = 0; c < onlyOffsets.length; c++, outIndex += nbrMyUtils) 
+				out.setUtilAt(outIndex, util.add(hypercube.utilAt(base + onlyOffsets[c])));
+			nbrChecks += onlyOffsets.length;
+		}
+		this.incrNCCCs(this.utils.size());
+		hypercube.incrNCCCs(nbrChecks);
+
+		return out;
+	}
+
+	/** For each assignment to the kept variables, looks up the index of the optimal utility, only comparing the stored utilities and the default utility
+	 * @param posKept 		the positions of the variables kept
+	 * @param posOut 		the positions of the variables projected out, in the order of iteration
+	 * @param nbrUtilsKept 	the number of assignments to the variables kept
+	 * @param nbrUtilsOut 	the number of assignments to the variables projected out
+	 * @param maximum 		\c true if we should maximize, \c false if we should minimize
+	 * @param lastWins 		in case of ties, whether to pick the last optimal assignment in the order of iteration, rather than the first
+	 * @return for each assignment to the variables kept, the index of the optimal utility in the (virtual) dense utility array
+	 */
+	private int[] optIndexes (int[] posKept, int[] posOut, final int nbrUtilsKept, final int nbrUtilsOut, final boolean maximum, final boolean lastWins) {
+
+		final int[] strides = this.strides();
+		int[] optIndexes = new int [nbrUtilsKept];
+		Arrays.fill(optIndexes, -1);
+		int[] optOut = new int [nbrUtilsKept];
+		int[] nbrStored = new int [nbrUtilsKept];
+
+		// Go through the stored utilities
+		for (Map.Entry<Integer, U> entry : this.utils.entrySet()) {
+			final int index = entry.getKey();
+			final int kept = this.subIndex(index, posKept, strides);
+			final int out = this.subIndex(index, posOut, strides);
+			nbrStored[kept]++;
+
+			final int optIndex = optIndexes[kept];
+			if (optIndex < 0 || this.isBetter(entry.getValue(), out, this.utilAt(optIndex), optOut[kept], maximum, lastWins)) {
+				optIndexes[kept] = index;
+				optOut[kept] = out;
+			}
+		}
+		this.incrNCCCs(this.utils.size());
+
+		// Compare with the default utility, at the first or last position where it occurs
+		for (int kept = 0; kept < nbrUtilsKept; kept++) {
+			if (nbrStored[kept] == nbrUtilsOut) 
+				continue;
+
+			int out = (lastWins ? nbrUtilsOut - 1 : 0);
+			int index = this.fullIndex(kept, posKept, out, posOut, strides);
+			while (this.utils.containsKey(index)) {
+				out += (lastWins ? -1 : 1);
+				index = this.fullIndex(kept, posKept, out, posOut, strides);
+			}
+
+			final int optIndex = optIndexes[kept];
+			if (optIndex < 0 || this.isBetter(this.defaultUtil, out, this.utilAt(optIndex), optOut[kept], maximum, lastWins)) 
+				optIndexes[kept] = index;
+		}
+
+		return optIndexes;
+	}
+
+	/** Checks whether a utility is better than the current optimum
+	 * @param util 		the utility
+	 * @param out 		the position of the utility among the assignments to the variables projected out
+	 * @param opt 		the current optimal utility
+	 * @param optOut 	the position of the current optimal utility among the assignments to the variables projected out
+	 * @param maximum 	\c true if we should maximize, \c false if we should minimize
+	 * @param lastWins 	in case of ties, whether the last optimal assignment in the order of iteration wins, rather than the first
+	 * @return whether \a util should replace the current optimum
+	 */
+	private boolean isBetter (U util, int out, U opt, int optOut, boolean maximum, boolean lastWins) {
+		final int cmp = util.compareTo(opt);
+		if (cmp == 0) 
+			return (lastWins ? out > optOut : out < optOut);
+		return (maximum ? cmp > 0 : cmp < 0);
+	}
+
+	/** Computes the index of the assignment to a subset of the variables corresponding to an index in the (virtual) dense utility array
+	 * @param index 	the index in the dense utility array
+	 * @param pos 		the positions of the variables in the subset
+	 * @param strides 	the strides of the variables in the dense utility array
+	 * @return the index of the assignment to the variables in the subset, the last variable varying the fastest
+	 */
+	private int subIndex (int index, int[] pos, int[] strides) {
+		int out = 0;
+		for (int p : pos) {
+			final int size = this.domains[p].length;
+			out = out * size + (index / strides[p]) % size;
+		}
+		return out;
+	}
+
+	/** Computes the index in the (virtual) dense utility array of the assignment made of two assignments to complementary subsets of the variables
+	 * @param kept 		the index of the assignment to the first subset
+	 * @param posKept 	the positions of the variables in the first subset
+	 * @param out 		the index of the assignment to the second subset
+	 * @param posOut 	the positions of the variables in the second subset
+	 * @param strides 	the strides of the variables in the dense utility array
+	 * @return the index in the dense utility array
+	 */
+	private int fullIndex (int kept, int[] posKept, int out, int[] posOut, int[] strides) {
+		return this.fullIndex(kept, posKept, strides) + this.fullIndex(out, posOut, strides);
+	}
+
+	/** Computes the contribution to an index in the (virtual) dense utility array of an assignment to a subset of the variables
+	 * @param sub 		the index of the assignment to the subset
+	 * @param pos 		the positions of the variables in the subset
+	 * @param strides 	the strides of the variables in the dense utility array
+	 * @return the contribution to the index in the dense utility array
+	 */
+	private int fullIndex (int sub, int[] pos, int[] strides) {
+		int index = 0;
+		for (int i = pos.length - 1; i >= 0; i--) {
+			final int size = this.domains[pos[i]].length;
+			index += (sub % size) * strides[pos[i]];
+			sub /= size;
+		}
+		return index;
+	}
+
+	/** @return the positions of the input variables
+	 * @param vars 	variables of this hypercube
+	 */
+	private int[] positions (String[] vars) {
+		int[] pos = new int [vars.length];
+		for (int i = 0; i < vars.length; i++) 
+			pos[i] = this.getIndex(vars[i]);
+		return pos;
+	}
+
+	/** Projects variables out, only comparing the stored utilities and the default utility
+	 * @param varsKept 		the variables kept
+	 * @param domsKept 		the domains of the variables kept
+	 * @param nbrUtilsKept 	the number of assignments to the variables kept
+	 * @param varsOut 		the variables projected out
+	 * @param nbrUtilsOut 	the number of assignments to the variables projected out
+	 * @param maximum 		\c true if we should maximize, \c false if we should minimize
+	 * @param lastWins 		in case of ties, whether to pick the last optimal assignment in the order of iteration, rather than the first
+	 * @return a ProjOutput object
+	 */
+	@SuppressWarnings("unchecked")
+	private ProjOutput<V, U> projectStored (String[] varsKept, V[][] domsKept, int nbrUtilsKept, String[] varsOut, int nbrUtilsOut, 
+			boolean maximum, boolean lastWins) {
+
+		int[] posOut = this.positions(varsOut);
+		int[] optIndexes = this.optIndexes(this.positions(varsKept), posOut, nbrUtilsKept, nbrUtilsOut, maximum, lastWins);
+
+		SparseHypercube<V, U> out = this.newPrimitiveInstance(this.name + "_projected", varsKept, domsKept, nbrUtilsKept);
+		ArrayList<V>[] optSols = (ArrayList<V>[]) new ArrayList<?> [nbrUtilsKept];
+		final int[] strides = this.strides();
+		for (int i = 0; i < nbrUtilsKept; i++) {
+			final int optIndex = optIndexes[i];
+			out.setUtilAt(i, this.utilAt(optIndex));
+
+			ArrayList<V> optSol = new ArrayList<V> (posOut.length);
+			for (int p : posOut) {
+				V[] dom = this.domains[p];
+				optSol.add(dom[(optIndex / strides[p]) % dom.length]);
+			}
+			optSols[i] = optSol;
+		}
+
+		return new ProjOutput<V, U> (out, varsOut, new BasicHypercube< V, ArrayList<V> > (varsKept.clone(), domsKept.clone(), optSols, null));
+	}
+
+	/** @see PrimitiveHypercube#project(java.lang.String[], java.lang.String[], V[][], int, java.lang.String[], long, boolean) */
+	@Override
+	protected ProjOutput<V, U> project (String[] varOrder, String[] varsKept, V[][] domsKept, 
+			final int nbrUtilsKept, String[] varsOut, final long nbrUtilsOut, final boolean maximum) {
+		return this.projectStored(varsKept, domsKept, nbrUtilsKept, varsOut, (int) nbrUtilsOut, maximum, true);
+	}
+
+	/** @see PrimitiveHypercube#project(int, boolean) */
+	@Override
+	public ProjOutput<V, U> project (int number_to_project, boolean maximum) {
+
+		final int nbrVarsKept = this.variables.length - number_to_project;
+		if (nbrVarsKept <= 0) 
+			return this.projectAll(maximum);
+		if (number_to_project == 0) 
+			return super.project(number_to_project, maximum);
+
+		int nbrUtilsKept = 1;
+		for (int i = 0; i < nbrVarsKept; i++) 
+			nbrUtilsKept *= this.domains[i].length;
+
+		return this.projectStored(Arrays.copyOf(this.variables, nbrVarsKept), Arrays.copyOf(this.domains, nbrVarsKept), nbrUtilsKept, 
+				Arrays.copyOfRange(this.variables, nbrVarsKept, this.variables.length), this.number_of_utility_values / nbrUtilsKept, maximum, false);
+	}
+
+	/** @see PrimitiveHypercube#projectAll(boolean, java.lang.String[]) */
+	@SuppressWarnings("unchecked")
+	@Override
+	public ProjOutput<V, U> projectAll (boolean maximum, String[] varsOut) {
+
+		final int optIndex = this.optIndexes(new int [0], this.positions(this.variables), 1, this.number_of_utility_values, maximum, true)[0];
+
+		// Build the array of optimal values, following the order in varsOut
+		final int[] strides = this.strides();
+		ArrayList<V> optValues = new ArrayList<V> (varsOut.length);
+		for (String var : varsOut) {
+			final int p = this.getIndex(var);
+			V[] dom = this.domains[p];
+			optValues.add(dom[(optIndex / strides[p]) % dom.length]);
+		}
+
+		return new ProjOutput<V, U> (new ScalarHypercube<V, U>(this.utilAt(optIndex), this.infeasibleUtil, (Class<? extends V[]>) this.assignment.getClass()), 
+				varsOut, new ScalarBasicHypercube< V, ArrayList<V> > (optValues, null));
+	}
+
+	/** @see PrimitiveHypercube#getClassOfU() */
+	@Override
+	public Class<U> getClassOfU () {
+		return this.classOfU;
+	}
+
+	/** @see BasicHypercube#getDefaultUtility() */
+	@Override
+	public U getDefaultUtility () {
+		return this.defaultUtil;
+	}
+
+	/** @see HypercubeLimited#writeUtilities(java.io.ObjectOutput) */
+	@Override
+	protected void writeUtilities (ObjectOutput out) throws IOException {
+
+		out.writeInt(this.number_of_utility_values); // number of utilities
+		out.writeObject(this.classOfU);
+		out.writeObject(this.defaultUtil);
+		
+		// Write the differences between the increasing indexes of the non-default utilities, followed by the utilities in the same order
+		final int nbrUtils = this.utils.size();
+		out.writeInt(nbrUtils); // number of non-default utilities
+		int[] indexes = new int [nbrUtils];
+		int i = 0;
+		for (Integer index : this.utils.keySet()) 
+			indexes[i++] = index;
+		Arrays.sort(indexes);
+		Addable<?>[] values = new Addable<?> [nbrUtils];
+		int[] gaps = new int [nbrUtils];
+		for (i = 0; i < nbrUtils; i++) {
+			values[i] = this.utils.get(indexes[i]);
+			gaps[i] = (i == 0 ? indexes[0] : indexes[i] - indexes[i - 1]);
+		}
+		UtilityCodec.writeInts(out, gaps, nbrUtils, 0);
+		UtilityCodec.writeUtilities(out, values, nbrUtils, this.infeasibleUtil);
+
+		this.incrNCCCs(nbrUtils);
+	}
+
+	/** @see HypercubeLimited#readUtilities(java.io.ObjectInput) */
+	@SuppressWarnings("unchecked")
+	@Override
+	protected void readUtilities (ObjectInput in) throws IOException, ClassNotFoundException {
+
+		this.number_of_utility_values = in.readInt();
+		this.classOfU = (Class<U>) in.readObject();
+		this.defaultUtil = (U) in.readObject();
+		final int nbrUtils = in.readInt();
+		int[] gaps = UtilityCodec.readInts(in, nbrUtils);
+		Addable<?>[] values = UtilityCodec.readUtilities(in, nbrUtils);
+		this.utils = new HashMap<Integer, U> (nbrUtils);
+		for (int i = 0, index = 0; i < nbrUtils; i++) 
+			this.utils.put(index += gaps[i], (U) values[i]);
+	}
+
+}
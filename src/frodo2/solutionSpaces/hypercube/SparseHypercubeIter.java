@@ -0,0 +1,135 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube;
+
+import java.util.Arrays;
+
+import frodo2.solutionSpaces.Addable;
+
+/** A sparse iterator for a SparseHypercube that skips its default utility
+ *
+ * Only the stored utilities are visited, in increasing order of their indexes in the (virtual) dense utility array, 
+ * which is the order in which a PrimitiveHypercubeIter would visit them. The solution corresponding to each stored 
+ * utility is decoded from its index. 
+ * @param <V> the type used for variable values
+ * @param <U> the type used for utility values
+ */
+public class SparseHypercubeIter < V extends Addable<V>, U extends Addable<U> > extends PrimitiveHypercubeIter<V, U> {
+	
+	/** The sorted indexes of the stored utilities */
+	private final int[] indexes;
+	
+	/** The position in \a indexes of the next stored utility */
+	private int next;
+	
+	/** For each variable, the step in the dense utility array between two consecutive values */
+	private final int[] strides;
+	
+	/** Constructor
+	 * @param space 		the SparseHypercube to iterate over
+	 * @param assignment 	An array that will be used as the output of nextSolution()
+	 */
+	protected SparseHypercubeIter(SparseHypercube<V, U> space, V[] assignment) {
+		super(space, assignment, space.defaultUtil);
+		
+		this.indexes = new int [space.utils.size()];
+		int i = 0;
+		for (Integer index : space.utils.keySet()) 
+			this.indexes[i++] = index;
+		Arrays.sort(this.indexes);
+		this.nbrSolLeft = this.indexes.length;
+		
+		this.strides = new int [this.nbrVars];
+		int stride = 1;
+		for (int j = this.nbrVars - 1; j >= 0; j--) {
+			this.strides[j] = stride;
+			stride *= this.domains[j].length;
+		}
+	}
+	
+	/** Moves to the next stored utility
+	 * @return the index of the next stored utility in the dense utility array, or -1 if there is none
+	 */
+	private int nextIndex () {
+		
+		// Return -1 if there are no more stored utilities
+		if (this.next >= this.indexes.length) {
+			this.utility = null;
+			this.solution = null;
+			return -1;
+		}
+		
+		// Decode the solution from the index
+		final int index = this.indexes[this.next++];
+		this.nbrSolLeft = this.indexes.length - this.next;
+		for (int j = this.nbrVars - 1; j >= 0; j--) {
+			final V[] dom = this.domains[j];
+			final int valIndex = (index / this.strides[j]) % dom.length;
+			this.valIndexes[j] = valIndex;
+			this.solution[j] = dom[valIndex];
+		}
+		this.utilIndex = index;
+		this.utility = null;
+		
+		this.primSpace.incrNCCCs(1);
+		return index;
+	}
+	
+	/** @see PrimitiveHypercubeIter#nextSolution() */
+	@Override
+	public V[] nextSolution() {
+		
+		int index = this.nextIndex();
+		if (index >= 0) // the NCCC has already been counted
+			this.utility = this.primSpace.utilAt(index);
+		
+		return this.solution;
+	}
+	
+	/** @see PrimitiveHypercubeIter#nextUtility() */
+	@Override
+	public U nextUtility() {
+		
+		int index = this.nextIndex();
+		if (index < 0)
+			return null;
+		
+		return this.utility = this.primSpace.utilAt(index);
+	}
+	
+	/** @see PrimitiveHypercubeIter#nextUtility(Addable, boolean) */
+	@Override
+	public U nextUtility(U bound, final boolean minimize) {
+		
+		final PrimitiveHypercube<V, U> space = this.primSpace;
+		
+		for (int index = this.nextIndex(); index >= 0; index = this.nextIndex()) {
+			int cmp = space.compareUtil(index, bound);
+			if (minimize ? cmp < 0 : cmp > 0)
+				return this.utility = space.utilAt(index);
+		}
+		
+		return null;
+	}
+
+}
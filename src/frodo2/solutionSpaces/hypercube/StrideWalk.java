@@ -0,0 +1,256 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import frodo2.solutionSpaces.Addable;
+
+/** A walk through the blocks of a stride-based join, one block at a time
+ *
+ * For each input, the offset of each value of each output variable in the input's utility array is looked up once
+ * with Hypercube#getOffsets(int, Addable[]). Each block covers the last output variables, and the index of the first utility
+ * of each block in each input is then computed using only integer arithmetic. Indexes are \c longs, such that inputs
+ * and outputs stored off the heap may contain more than 2^31 utilities.
+ *
+ * If the join is larger than Hypercube#getParallelThreshold(), the blocks are split into ranges that are walked
+ * through in parallel on the common ForkJoinPool; each block must therefore only write to memory no other block writes to.
+ * @param <V> the type used for variable values
+ * @param <U> the type used for utility values
+ * @see Hypercube#strideJoin(Hypercube, Hypercube[], Addable, boolean)
+ */
+abstract class StrideWalk < V extends Addable<V>, U extends Addable<U> > {
+	
+	/** The minimum number of blocks walked through by a parallel task */
+	private static final int MIN_BLOCKS_PER_TASK = 4;
+	
+	/** The input hypercubes, each of which must contain at least one variable, and only output variables */
+	protected final Hypercube<V, U>[] inputs;
+	
+	/** The domains of the output variables */
+	protected final V[][] outDoms;
+	
+	/** The index of the first output variable over which the blocks span */
+	protected final int firstBlockVar;
+	
+	/** The number of solutions in a block */
+	protected final int blockSize;
+	
+	/** The number of blocks */
+	protected final long nbrBlocks;
+	
+	/** For each input and each output variable, the offsets of its values, or \c null if the variable is not in the input */
+	protected final long[][][] offsets;
+	
+	/** For each input, the offsets of all solutions in a block, relative to the beginning of the block */
+	protected final long[][] blockOffsets;
+	
+	/** Constructor
+	 * @param inputs 			the input hypercubes, each of which must contain at least one variable, and only output variables
+	 * @param outVars 			the output variables
+	 * @param outDoms 			the domains of the output variables, which must be sub-domains of the inputs' domains
+	 * @param firstBlockVar 	the index of the first output variable over which the blocks span
+	 */
+	protected StrideWalk (Hypercube<V, U>[] inputs, String[] outVars, V[][] outDoms, final int firstBlockVar) {
+		
+		this.inputs = inputs;
+		this.outDoms = outDoms;
+		this.firstBlockVar = firstBlockVar;
+		
+		final int nbrVars = outVars.length;
+		final int nbrInputs = inputs.length;
+		
+		int blockSize = 1;
+		for (int j = firstBlockVar; j < nbrVars; j++)
+			blockSize *= outDoms[j].length;
+		this.blockSize = blockSize;
+		
+		long nbrBlocks = 1;
+		for (int j = 0; j < firstBlockVar; j++)
+			nbrBlocks *= outDoms[j].length;
+		this.nbrBlocks = nbrBlocks;
+		
+		// For each input, compute the offset of each value of each output variable in the input's utility array
+		this.offsets = new long [nbrInputs][nbrVars][];
+		for (int i = 0; i < nbrInputs; i++) {
+			Hypercube<V, U> input = inputs[i];
+			for (int j = 0; j < nbrVars; j++) {
+				
+				// Look up the position of the variable in the input
+				final int k = input.getIndex(outVars[j]);
+				if (k < 0) // the variable is not in the input; the offsets are all 0
+					continue;
+				
+				this.offsets[i][j] = input.getOffsets(k, outDoms[j]);
+			}
+		}
+		
+		// For each input, compute the offsets of all solutions in a block, relative to the beginning of the block
+		this.blockOffsets = new long [nbrInputs][];
+		for (int i = 0; i < nbrInputs; i++) {
+			long[] blockOffs = new long [blockSize];
+			int size = 1;
+			for (int j = firstBlockVar; j < nbrVars; j++) {
+				final int domSize = outDoms[j].length;
+				final long[] offs = offsets[i][j];
+				
+				// Each existing offset is expanded into domSize offsets, in decreasing order so as not to overwrite them
+				for (int s = size - 1; s >= 0; s--) {
+					final long base = blockOffs[s];
+					for (int d = domSize - 1; d >= 0; d--)
+						blockOffs[s * domSize + d] = base + (offs == null ? 0 : offs[d]);
+				}
+				size *= domSize;
+			}
+			this.blockOffsets[i] = blockOffs;
+		}
+	}
+	
+	/** Processes a block
+	 * @param block 	the index of the block
+	 * @param bases 	for each input, the index of its utility corresponding to the first solution in the block
+	 * @param scratch 	the scratch hypercube returned by newScratch() for the current range of blocks
+	 */
+	protected abstract void walkBlock (long block, long[] bases, Hypercube<V, U> scratch);
+	
+	/** Creates a hypercube that is reused across all blocks in a range of blocks walked through sequentially
+	 * @return \c null by default
+	 */
+	protected Hypercube<V, U> newScratch () {
+		return null;
+	}
+	
+	/** Walks through all blocks, in parallel if the join is larger than Hypercube#getParallelThreshold(),
+	 * and notifies the inputs of the corresponding constraint checks
+	 */
+	public void walk () {
+		this.walk(true);
+	}
+	
+	/** Walks through all blocks, in parallel if the join is larger than Hypercube#getParallelThreshold()
+	 * @param countNCCCs 	whether the inputs should be notified of the corresponding constraint checks
+	 */
+	public void walk (boolean countNCCCs) {
+		
+		final long size = this.nbrBlocks * this.blockSize;
+		final long threshold = Hypercube.getParallelThreshold();
+		if (threshold > 0 && size >= threshold && this.nbrBlocks >= 2 * MIN_BLOCKS_PER_TASK) {
+			
+			// Split the blocks into a few tasks per worker thread
+			final long grain = Math.max(MIN_BLOCKS_PER_TASK, this.nbrBlocks / (8 * ForkJoinPool.getCommonPoolParallelism()));
+			ForkJoinPool.commonPool().invoke(new Task (0, this.nbrBlocks, grain));
+		
+		} else
+			this.walk(0, this.nbrBlocks);
+		
+		if (countNCCCs) 
+			for (Hypercube<V, U> input : this.inputs)
+				input.incrNCCCs(size);
+	}
+	
+	/** Walks sequentially through a range of blocks
+	 * @param from 	the index of the first block
+	 * @param to 	the index of the block following the last block
+	 */
+	private void walk (final long from, final long to) {
+		
+		final int nbrInputs = this.inputs.length;
+		
+		// Compute the values of the variables not in the block, and the index of the first utility of the first block in each input
+		int[] digits = new int [this.firstBlockVar];
+		long rest = from;
+		for (int j = this.firstBlockVar - 1; j >= 0; j--) {
+			final int domSize = this.outDoms[j].length;
+			digits[j] = (int) (rest % domSize);
+			rest /= domSize;
+		}
+		long[] bases = new long [nbrInputs];
+		for (int i = 0; i < nbrInputs; i++)
+			for (int j = 0; j < this.firstBlockVar; j++)
+				if (this.offsets[i][j] != null)
+					bases[i] += this.offsets[i][j][digits[j]];
+		
+		Hypercube<V, U> scratch = this.newScratch();
+		for (long block = from; block < to; block++) {
+			
+			this.walkBlock(block, bases, scratch);
+			
+			// Move on to the next block, incrementing the values of the variables not in the block like an odometer
+			for (int j = this.firstBlockVar - 1; j >= 0; j--) {
+				final int digit = digits[j];
+				final int next = (digit + 1 == this.outDoms[j].length ? 0 : digit + 1);
+				digits[j] = next;
+				for (int i = 0; i < nbrInputs; i++) {
+					final long[] offs = this.offsets[i][j];
+					if (offs != null)
+						bases[i] += offs[next] - offs[digit];
+				}
+				
+				if (next != 0) // no carry over to the previous variable
+					break;
+			}
+		}
+	}
+	
+	/** A task that walks through a range of blocks, splitting it into two sub-tasks if it is too large */
+	private class Task extends RecursiveAction {
+		
+		/** Used for serialization */
+		private static final long serialVersionUID = -2797562640233491571L;
+		
+		/** The index of the first block */
+		private final long from;
+		
+		/** The index of the block following the last block */
+		private final long to;
+		
+		/** The maximum number of blocks walked through without splitting the range */
+		private final long grain;
+		
+		/** Constructor
+		 * @param from 		the index of the first block
+		 * @param to 		the index of the block following the last block
+		 * @param grain 	the maximum number of blocks walked through without splitting the range
+		 */
+		private Task (long from, long to, long grain) {
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+		
+		/** @see java.util.concurrent.RecursiveAction#compute() */
+		@Override
+		protected void compute() {
+			
+			if (this.to - this.from <= this.grain)
+				walk(this.from, this.to);
+			
+			else {
+				final long middle = (this.from + this.to) >>> 1;
+				invokeAll(new Task (this.from, middle, this.grain), new Task (middle, this.to, this.grain));
+			}
+		}
+	}
+
+}
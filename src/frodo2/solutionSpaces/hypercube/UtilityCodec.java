@@ -0,0 +1,419 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.AddableReal;
+
+/** A compact binary encoding of the utility arrays of primitive-backed hypercubes
+ *
+ * Each array is written in one of three formats, whichever is the smallest:
+ * - DENSE: all utilities, one after the other;
+ * - DEFAULT: a default utility (0 or the infeasible utility, whichever is the most frequent),
+ *   followed by the indexes and values of the utilities that differ from it;
+ * - RUNS: the lengths and values of the runs of consecutive equal utilities.
+ *
+ * Arrays of boxed utilities (such as the non-default utilities of a SparseHypercube) are written in the same formats 
+ * when they are all AddableIntegers or all AddableReals, and as objects otherwise. 
+ *
+ * The number of bytes saved compared to the DENSE format is accumulated per thread, and can be retrieved
+ * by the MsgSizeMonitor after it has serialized a message.
+ * @author Thomas Leaute
+ * @see frodo2.communication.MsgSizeMonitor
+ */
+public final class UtilityCodec {
+	
+	/** The format in which all utilities are written one after the other */
+	private static final byte DENSE = 0;
+	
+	/** The format in which only the utilities that differ from a default utility are written */
+	private static final byte DEFAULT = 1;
+	
+	/** The run-length encoding format */
+	private static final byte RUNS = 2;
+	
+	/** The tag of boxed utilities that are all AddableIntegers, written as ints */
+	private static final byte INTS = 0;
+	
+	/** The tag of boxed utilities that are all AddableReals, written as doubles */
+	private static final byte DOUBLES = 1;
+	
+	/** The tag of boxed utilities written as objects */
+	private static final byte OBJECTS = 2;
+	
+	/** For each thread, the number of bytes saved since the last call to takeBytesSaved() */
+	private static final ThreadLocal<long[]> bytesSaved = new ThreadLocal<long[]> () {
+		@Override
+		protected long[] initialValue() {
+			return new long [1];
+		}
+	};
+	
+	/** Private constructor to prevent instantiation */
+	private UtilityCodec () { }
+	
+	/** Returns and resets the number of bytes saved by the current thread
+	 * @return the number of bytes saved compared to writing all utilities, since the last call to this method by the same thread
+	 */
+	public static long takeBytesSaved () {
+		long[] saved = bytesSaved.get();
+		final long out = saved[0];
+		saved[0] = 0;
+		return out;
+	}
+	
+	/** Writes an array of int utilities
+	 * @param out 			the output stream
+	 * @param utils 		the utilities
+	 * @param length 		the number of utilities to write
+	 * @param infeasible 	the int representing the infeasible utility
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	static void writeInts (ObjectOutput out, final int[] utils, final int length, final int infeasible) throws IOException {
+		
+		// Count the runs, and the utilities equal to each candidate default utility
+		int nbrRuns = (length == 0 ? 0 : 1);
+		int nbrZeros = 0, nbrInfeasible = 0;
+		for (int i = 0; i < length; i++) {
+			final int util = utils[i];
+			if (util == 0)
+				nbrZeros++;
+			else if (util == infeasible)
+				nbrInfeasible++;
+			if (i > 0 && util != utils[i - 1])
+				nbrRuns++;
+		}
+		final int defaultUtil = (nbrZeros >= nbrInfeasible ? 0 : infeasible);
+		final int nbrExceptions = length - Math.max(nbrZeros, nbrInfeasible);
+		
+		final long denseSize = 4L * length;
+		final long defaultSize = 8 + 8L * nbrExceptions;
+		final long runsSize = 4 + 8L * nbrRuns;
+		
+		if (denseSize <= defaultSize && denseSize <= runsSize) {
+			out.writeByte(DENSE);
+			for (int i = 0; i < length; i++)
+				out.writeInt(utils[i]);
+			bytesSaved.get()[0] -= 1;
+		
+		} else if (defaultSize <= runsSize) {
+			out.writeByte(DEFAULT);
+			out.writeInt(defaultUtil);
+			out.writeInt(nbrExceptions);
+			for (int i = 0; i < length; i++) {
+				if (utils[i] != defaultUtil) {
+					out.writeInt(i);
+					out.writeInt(utils[i]);
+				}
+			}
+			bytesSaved.get()[0] += denseSize - defaultSize - 1;
+		
+		} else {
+			out.writeByte(RUNS);
+			out.writeInt(nbrRuns);
+			for (int i = 0; i < length; ) {
+				final int util = utils[i];
+				int end = i + 1;
+				while (end < length && utils[end] == util)
+					end++;
+				out.writeInt(end - i);
+				out.writeInt(util);
+				i = end;
+			}
+			bytesSaved.get()[0] += denseSize - runsSize - 1;
+		}
+	}
+	
+	/** Reads an array of int utilities written by writeInts()
+	 * @param in 		the input stream
+	 * @param length 	the number of utilities
+	 * @return the utilities
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	static int[] readInts (ObjectInput in, final int length) throws IOException {
+		
+		int[] utils = new int [length];
+		
+		switch (in.readByte()) {
+		
+		case DENSE:
+			for (int i = 0; i < length; i++)
+				utils[i] = in.readInt();
+			break;
+		
+		case DEFAULT:
+			final int defaultUtil = in.readInt();
+			if (defaultUtil != 0)
+				Arrays.fill(utils, defaultUtil);
+			for (int n = in.readInt(); n > 0; n--) {
+				final int index = in.readInt();
+				utils[index] = in.readInt();
+			}
+			break;
+		
+		case RUNS:
+			for (int n = in.readInt(), i = 0; n > 0; n--) {
+				final int end = i + in.readInt();
+				Arrays.fill(utils, i, end, in.readInt());
+				i = end;
+			}
+			break;
+		
+		default:
+			throw new IOException ("Unknown utility array format");
+		}
+		
+		return utils;
+	}
+	
+	/** The number of utilities in each of the blocks in which off-heap utilities are written */
+	private static final int OFF_HEAP_BLOCK_SIZE = 1 << 20;
+	
+	/** Writes off-heap int utilities, as consecutive blocks each written by writeInts(ObjectOutput, int[], int, int)
+	 * @param out 			the output stream
+	 * @param utils 		the utilities
+	 * @param infeasible 	the int representing the infeasible utility
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	static void writeInts (ObjectOutput out, OffHeapIntArray utils, final int infeasible) throws IOException {
+		
+		final long length = utils.length();
+		int[] block = new int [(int) Math.min(length, OFF_HEAP_BLOCK_SIZE)];
+		for (long start = 0; start < length; start += OFF_HEAP_BLOCK_SIZE) {
+			final int blockLength = (int) Math.min(length - start, OFF_HEAP_BLOCK_SIZE);
+			utils.get(start, block, 0, blockLength);
+			writeInts(out, block, blockLength, infeasible);
+		}
+	}
+	
+	/** Reads off-heap int utilities written by writeInts(ObjectOutput, OffHeapIntArray, int)
+	 * @param in 		the input stream
+	 * @param length 	the number of utilities
+	 * @return the utilities
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	static OffHeapIntArray readInts (ObjectInput in, final long length) throws IOException {
+		
+		OffHeapIntArray utils = new OffHeapIntArray (length);
+		for (long start = 0; start < length; start += OFF_HEAP_BLOCK_SIZE) {
+			final int blockLength = (int) Math.min(length - start, OFF_HEAP_BLOCK_SIZE);
+			utils.put(start, readInts(in, blockLength), 0, blockLength);
+		}
+		
+		return utils;
+	}
+	
+	/** Writes an array of double utilities
+	 * @param out 			the output stream
+	 * @param utils 		the utilities
+	 * @param length 		the number of utilities to write
+	 * @param infeasible 	the double representing the infeasible utility
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	static void writeDoubles (ObjectOutput out, final double[] utils, final int length, final double infeasible) throws IOException {
+		
+		// Count the runs, and the utilities equal to each candidate default utility
+		int nbrRuns = (length == 0 ? 0 : 1);
+		int nbrZeros = 0, nbrInfeasible = 0;
+		for (int i = 0; i < length; i++) {
+			final double util = utils[i];
+			if (util == 0.0)
+				nbrZeros++;
+			else if (util == infeasible)
+				nbrInfeasible++;
+			if (i > 0 && util != utils[i - 1])
+				nbrRuns++;
+		}
+		final double defaultUtil = (nbrZeros >= nbrInfeasible ? 0.0 : infeasible);
+		final int nbrExceptions = length - Math.max(nbrZeros, nbrInfeasible);
+		
+		final long denseSize = 8L * length;
+		final long defaultSize = 12 + 12L * nbrExceptions;
+		final long runsSize = 4 + 12L * nbrRuns;
+		
+		if (denseSize <= defaultSize && denseSize <= runsSize) {
+			out.writeByte(DENSE);
+			for (int i = 0; i < length; i++)
+				out.writeDouble(utils[i]);
+			bytesSaved.get()[0] -= 1;
+		
+		} else if (defaultSize <= runsSize) {
+			out.writeByte(DEFAULT);
+			out.writeDouble(defaultUtil);
+			out.writeInt(nbrExceptions);
+			for (int i = 0; i < length; i++) {
+				if (utils[i] != defaultUtil) {
+					out.writeInt(i);
+					out.writeDouble(utils[i]);
+				}
+			}
+			bytesSaved.get()[0] += denseSize - defaultSize - 1;
+		
+		} else {
+			out.writeByte(RUNS);
+			out.writeInt(nbrRuns);
+			for (int i = 0; i < length; ) {
+				final double util = utils[i];
+				int end = i + 1;
+				while (end < length && utils[end] == util)
+					end++;
+				out.writeInt(end - i);
+				out.writeDouble(util);
+				i = end;
+			}
+			bytesSaved.get()[0] += denseSize - runsSize - 1;
+		}
+	}
+	
+	/** Reads an array of double utilities written by writeDoubles()
+	 * @param in 		the input stream
+	 * @param length 	the number of utilities
+	 * @return the utilities
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	static double[] readDoubles (ObjectInput in, final int length) throws IOException {
+		
+		double[] utils = new double [length];
+		
+		switch (in.readByte()) {
+		
+		case DENSE:
+			for (int i = 0; i < length; i++)
+				utils[i] = in.readDouble();
+			break;
+		
+		case DEFAULT:
+			final double defaultUtil = in.readDouble();
+			if (defaultUtil != 0.0)
+				Arrays.fill(utils, defaultUtil);
+			for (int n = in.readInt(); n > 0; n--) {
+				final int index = in.readInt();
+				utils[index] = in.readDouble();
+			}
+			break;
+		
+		case RUNS:
+			for (int n = in.readInt(), i = 0; n > 0; n--) {
+				final int end = i + in.readInt();
+				Arrays.fill(utils, i, end, in.readDouble());
+				i = end;
+			}
+			break;
+		
+		default:
+			throw new IOException ("Unknown utility array format");
+		}
+		
+		return utils;
+	}
+	
+	/** Writes an array of boxed utilities, as ints or doubles if they are all AddableIntegers or all AddableReals
+	 * @param out 			the output stream
+	 * @param utils 		the utilities
+	 * @param length 		the number of utilities to write
+	 * @param infeasible 	the infeasible utility; may be \c null
+	 * @throws IOException 	if an I/O error occurs
+	 */
+	static void writeUtilities (ObjectOutput out, final Addable<?>[] utils, final int length, final Addable<?> infeasible) throws IOException {
+		
+		boolean ints = true, doubles = true;
+		for (int i = 0; i < length && (ints || doubles); i++) {
+			final Addable<?> util = utils[i];
+			if (util == null) 
+				ints = doubles = false;
+			ints = ints && (util.getClass() == AddableInteger.class 
+					|| util == AddableInteger.PlusInfinity.PLUS_INF || util == AddableInteger.MinInfinity.MIN_INF);
+			doubles = doubles && (util.getClass() == AddableReal.class 
+					|| util == AddableReal.PlusInfinity.PLUS_INF || util == AddableReal.MinInfinity.MIN_INF);
+		}
+		
+		if (ints) {
+			out.writeByte(INTS);
+			int[] values = new int [length];
+			for (int i = 0; i < length; i++) 
+				values[i] = utils[i].intValue();
+			writeInts(out, values, length, (infeasible == null ? 0 : infeasible.intValue()));
+			
+		} else if (doubles) {
+			out.writeByte(DOUBLES);
+			double[] values = new double [length];
+			for (int i = 0; i < length; i++) 
+				values[i] = utils[i].doubleValue();
+			writeDoubles(out, values, length, (infeasible == null ? 0.0 : infeasible.doubleValue()));
+			
+		} else {
+			out.writeByte(OBJECTS);
+			for (int i = 0; i < length; i++) 
+				out.writeObject(utils[i]);
+		}
+	}
+	
+	/** Reads an array of boxed utilities written by writeUtilities()
+	 * @param in 		the input stream
+	 * @param length 	the number of utilities
+	 * @return the utilities
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	if the class of a utility written as an object is unknown
+	 */
+	static Addable<?>[] readUtilities (ObjectInput in, final int length) throws IOException, ClassNotFoundException {
+		
+		switch (in.readByte()) {
+		
+		case INTS:
+			int[] ints = readInts(in, length);
+			AddableInteger[] intUtils = new AddableInteger [length];
+			for (int i = 0; i < length; i++) {
+				final int util = ints[i];
+				intUtils[i] = (util == Integer.MAX_VALUE ? AddableInteger.PlusInfinity.PLUS_INF : 
+					util == Integer.MIN_VALUE ? AddableInteger.MinInfinity.MIN_INF : new AddableInteger (util));
+			}
+			return intUtils;
+		
+		case DOUBLES:
+			double[] doubles = readDoubles(in, length);
+			AddableReal[] realUtils = new AddableReal [length];
+			for (int i = 0; i < length; i++) {
+				final double util = doubles[i];
+				realUtils[i] = (util == Double.POSITIVE_INFINITY ? AddableReal.PlusInfinity.PLUS_INF : 
+					util == Double.NEGATIVE_INFINITY ? AddableReal.MinInfinity.MIN_INF : new AddableReal (util));
+			}
+			return realUtils;
+		
+		case OBJECTS:
+			Addable<?>[] utils = new Addable<?> [length];
+			for (int i = 0; i < length; i++) 
+				utils[i] = (Addable<?>) in.readObject();
+			return utils;
+		
+		default:
+			throw new IOException ("Unknown utility type");
+		}
+	}
+
+}
@@ -38,6 +38,9 @@ public class AllTestsHypercube {
 		suite.addTest(HypercubeTest.suite());
 		suite.addTest(HypercubeIterTest.suite());
 		suite.addTest(HypercubeIterBestFirstTest.suite());
+		suite.addTest(PrimitiveHypercubeTest.suite());
+		suite.addTest(OffHeapHypercubeTest.suite());
+		suite.addTest(SparseHypercubeTest.suite());
 		//$JUnit-END$
 		return suite;
 	}
@@ -44,6 +44,7 @@ import frodo2.solutionSpaces.BasicUtilitySolutionSpace.Iterator;
 import frodo2.solutionSpaces.UtilitySolutionSpace;
 import frodo2.solutionSpaces.UtilitySolutionSpace.ProjOutput;
 import frodo2.solutionSpaces.hypercube.BasicHypercube;
+import frodo2.solutionSpaces.hypercube.BasicHypercubeIter;
 import frodo2.solutionSpaces.hypercube.Hypercube;
 import frodo2.solutionSpaces.hypercube.ScalarBasicHypercube;
 import frodo2.solutionSpaces.hypercube.ScalarHypercube;
@@ -139,6 +140,10 @@ public class HypercubeTest extends TestCase {
 		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testEquivalentRandom"), 1000));
 		testSuite.addTest(suiteTmp);
 		
+		suiteTmp = new TestSuite ("Tests the access to utilities by the indexes of the variables' values");
+		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testGetUtilityIndexesRandom"), 1000));
+		testSuite.addTest(suiteTmp);
+		
 		suiteTmp = new TestSuite ("Tests for the method testJoinRandom");
 		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testJoinRandom"), 1000));
 		testSuite.addTest(suiteTmp);
@@ -147,6 +152,14 @@ public class HypercubeTest extends TestCase {
 		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testApplyJoinRandom"), 1000));
 		testSuite.addTest(suiteTmp);
 		
+		suiteTmp = new TestSuite ("Tests for the method testResolveJoinRandom");
+		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testResolveJoinRandom"), 1000));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests for the method testLazyJoinRandom");
+		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testLazyJoinRandom"), 1000));
+		testSuite.addTest(suiteTmp);
+		
 		suiteTmp = new TestSuite ("Tests for the method testProjectionRandom");
 		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testProjectionRandom"), 1000));
 		testSuite.addTest(suiteTmp);
@@ -163,6 +176,14 @@ public class HypercubeTest extends TestCase {
 		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testProjOutputRandom"), 50000));
 		testSuite.addTest(suiteTmp);
 		
+		suiteTmp = new TestSuite ("Tests for the method testJoinAndProjectRandom");
+		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testJoinAndProjectRandom"), 1000));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests for the method testParallelRandom");
+		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testParallelRandom"), 100));
+		testSuite.addTest(suiteTmp);
+		
 		suiteTmp = new TestSuite ("Tests for the method testProjOutputRandom2");
 		suiteTmp.addTest(new RepeatedTest (new HypercubeTest ("testProjOutputRandom2"), 1000));
 		testSuite.addTest(suiteTmp);
@@ -272,6 +293,55 @@ public class HypercubeTest extends TestCase {
 		assertTrue (h1.equivalent(h1.changeVariablesOrder(newOrder2)));
 	}
 
+	/** Tests getUtility(int[]) and getUtility(V[]) against the iterator, on domains that are ranges of integers and on domains that are not */
+	public void testGetUtilityIndexesRandom() {
+		
+		Hypercube< AddableInteger, AddableInteger > h1 = random_hypercube();
+		AddableInteger infeasibleUtil = (inf == Infinity.PLUS_INFINITY ? AddableInteger.PlusInfinity.PLUS_INF : AddableInteger.MinInfinity.MIN_INF);
+		if (Math.random() < 0.5) 
+			h1 = PrimitiveHypercubeTest.toPrimitive(h1, infeasibleUtil);
+		
+		// Build a copy of h1 in which all values are doubled, such that no domain is a range of consecutive integers
+		String[] vars = h1.getVariables();
+		AddableInteger[][] doms = h1.getDomains();
+		AddableInteger[][] doms2 = new AddableInteger [doms.length][];
+		for (int i = 0; i < doms.length; i++) {
+			doms2[i] = new AddableInteger [doms[i].length];
+			for (int j = 0; j < doms[i].length; j++) 
+				doms2[i][j] = new AddableInteger (2 * doms[i][j].intValue());
+		}
+		AddableInteger[] utils = new AddableInteger [(int) h1.getNumberOfSolutions()];
+		for (int i = 0; i < utils.length; i++) 
+			utils[i] = h1.getUtility(i);
+		Hypercube< AddableInteger, AddableInteger > h2 = new Hypercube< AddableInteger, AddableInteger > (vars, doms2, utils, infeasibleUtil);
+		
+		AddableInteger[] values2 = new AddableInteger [vars.length];
+		BasicHypercubeIter< AddableInteger, AddableInteger > iter = (BasicHypercubeIter< AddableInteger, AddableInteger >) h1.iterator();
+		for (long i = 0; iter.hasNext(); i++) {
+			AddableInteger util = iter.nextUtility();
+			assertEquals (h1.getUtility(i), util);
+			assertEquals (util, h1.getUtility(iter.getCurrentValueIndexes()));
+			assertEquals (util, h2.getUtility(iter.getCurrentValueIndexes()));
+			
+			AddableInteger[] values = iter.getCurrentSolution();
+			assertEquals (util, h1.getUtility(values));
+			for (int j = 0; j < values.length; j++) 
+				values2[j] = new AddableInteger (2 * values[j].intValue());
+			assertEquals (util, h2.getUtility(values2));
+		}
+		
+		// Values outside of the domains
+		int var = (int) (vars.length * Math.random());
+		AddableInteger[] values = h1.iterator().nextSolution().clone();
+		values[var] = new AddableInteger (doms[var].length);
+		assertEquals (infeasibleUtil, h1.getUtility(values));
+		values[var] = new AddableInteger (-1);
+		assertEquals (infeasibleUtil, h1.getUtility(values));
+		for (int j = 0; j < values.length; j++) 
+			values2[j] = new AddableInteger (2 * values[j].intValue() + 1);
+		assertEquals (infeasibleUtil, h2.getUtility(values2));
+	}
+
 	/**This method creates random number of hypercubes and then first join the hypercubes with one call of the join method.
 	 * then join the hypercube two by two and compare the two results.
 	 */
@@ -342,6 +412,79 @@ public class HypercubeTest extends TestCase {
 		assertTrue(h3.equivalent(h4));
 	}
 	
+	/** Tests that resolving a join, which uses the stride-based join, gives the same result as iterating over the lazy join */
+	@SuppressWarnings("unchecked")
+	public void testResolveJoinRandom() {
+		
+		AddableInteger infeasibleUtil = (inf == Infinity.PLUS_INFINITY ? AddableInteger.PlusInfinity.PLUS_INF : AddableInteger.MinInfinity.MIN_INF);
+		
+		// Randomly mix boxed and primitive hypercubes
+		Hypercube< AddableInteger, AddableInteger > h1 = random_hypercube();
+		int number_of_hypercubes = 1 + (int) (Math.random() * 4);
+		Hypercube< AddableInteger, AddableInteger >[] hypercubes = (Hypercube< AddableInteger, AddableInteger >[]) new Hypercube<?, ?> [number_of_hypercubes];
+		for (int i = 0; i < number_of_hypercubes; i++) {
+			hypercubes[i] = random_hypercube();
+			if (Math.random() < 0.5) 
+				hypercubes[i] = PrimitiveHypercubeTest.toPrimitive(hypercubes[i], infeasibleUtil);
+		}
+		
+		UtilitySolutionSpace< AddableInteger, AddableInteger > join = h1.join(hypercubes);
+		UtilitySolutionSpace< AddableInteger, AddableInteger > resolved = join.resolve();
+		assertTrue (join + " != " + resolved, resolved.equivalent(join));
+		
+		// Same test with primitive hypercubes only
+		h1 = PrimitiveHypercubeTest.toPrimitive(h1, infeasibleUtil);
+		for (int i = 0; i < number_of_hypercubes; i++) 
+			hypercubes[i] = PrimitiveHypercubeTest.toPrimitive(hypercubes[i], infeasibleUtil);
+		join = h1.join(hypercubes);
+		resolved = join.resolve();
+		assertTrue (join + " != " + resolved, resolved.equivalent(join));
+		
+		// Multiplication is not defined for all infinite utilities
+		if (inf == Infinity.NONE) {
+			join = h1.multiply(hypercubes);
+			resolved = join.resolve();
+			assertTrue (join + " != " + resolved, resolved.equivalent(join));
+		}
+	}
+	
+	/** Tests the iteration over a lazy join mixing mostly infeasible hypercubes and nested lazy joins, 
+	 * whose inputs are checked in an order based on their estimated costs and proportions of infeasible utilities */
+	@SuppressWarnings("unchecked")
+	public void testLazyJoinRandom() {
+		
+		Hypercube< AddableInteger, AddableInteger > h1 = random_hypercube(0.1);
+		int number_of_hypercubes = 1 + (int) (Math.random() * 4);
+		UtilitySolutionSpace< AddableInteger, AddableInteger >[] spaces = (UtilitySolutionSpace< AddableInteger, AddableInteger >[]) new UtilitySolutionSpace<?, ?> [number_of_hypercubes];
+		UtilitySolutionSpace< AddableInteger, AddableInteger >[] resolvedSpaces = (UtilitySolutionSpace< AddableInteger, AddableInteger >[]) new UtilitySolutionSpace<?, ?> [number_of_hypercubes];
+		for (int i = 0; i < number_of_hypercubes; i++) {
+			Hypercube< AddableInteger, AddableInteger > h = random_hypercube(0.9 * Math.random());
+			if (Math.random() < 0.5) { // virtual space
+				spaces[i] = h.join(random_hypercube(0.9 * Math.random()));
+				resolvedSpaces[i] = spaces[i].resolve();
+			} else 
+				spaces[i] = resolvedSpaces[i] = h;
+		}
+		
+		UtilitySolutionSpace< AddableInteger, AddableInteger > join = h1.join(spaces);
+		UtilitySolutionSpace< AddableInteger, AddableInteger > expected = h1.join(resolvedSpaces).resolve();
+		
+		// Iterate over all solutions
+		UtilitySolutionSpace.Iterator< AddableInteger, AddableInteger > iter = join.iterator(expected.getVariables(), expected.getDomains());
+		for (long i = 0; i < expected.getNumberOfSolutions(); i++) 
+			assertEquals (expected.getUtility(i), iter.nextUtility());
+		assertFalse (iter.hasNext());
+		
+		// Skip the infeasible solutions
+		UtilitySolutionSpace.SparseIterator< AddableInteger, AddableInteger > sparseIter = join.sparseIter(expected.getVariables(), expected.getDomains());
+		UtilitySolutionSpace.SparseIterator< AddableInteger, AddableInteger > expectedIter = expected.sparseIter(expected.getVariables(), expected.getDomains());
+		for (AddableInteger util = expectedIter.nextUtility(); util != null; util = expectedIter.nextUtility()) {
+			assertEquals (util, sparseIter.nextUtility());
+			assertTrue (Arrays.equals(expectedIter.getCurrentSolution(), sparseIter.getCurrentSolution()));
+		}
+		assertNull (sparseIter.nextUtility());
+	}
+	
 	/**This method creates two random hypercubes and an array of random variables obtained from the variables of each hypercube.
 	 * then it projects from the two hypercubes the two random arrays of variables and joins the resulting hypercubes. 
 	 * It compares the result obtained with the one obtained if the join operation is done first. 
@@ -434,6 +577,107 @@ public class HypercubeTest extends TestCase {
 		verifyProjection (hypercube, hypercube.project(vars, maximize), vars);
 	}
 	
+	/** Tests the joinAndProject() method on random mixes of boxed and primitive hypercubes */
+	@SuppressWarnings("unchecked")
+	public void testJoinAndProjectRandom () {
+		
+		AddableInteger infeasibleUtil = (inf == Infinity.PLUS_INFINITY ? AddableInteger.PlusInfinity.PLUS_INF : AddableInteger.MinInfinity.MIN_INF);
+		
+		Hypercube< AddableInteger, AddableInteger > h1 = random_hypercube();
+		int number_of_hypercubes = (int) (Math.random() * 4);
+		Hypercube< AddableInteger, AddableInteger >[] hypercubes = (Hypercube< AddableInteger, AddableInteger >[]) new Hypercube<?, ?> [number_of_hypercubes];
+		for (int i = 0; i < number_of_hypercubes; i++) {
+			hypercubes[i] = random_hypercube();
+			if (Math.random() < 0.5) 
+				hypercubes[i] = PrimitiveHypercubeTest.toPrimitive(hypercubes[i], infeasibleUtil);
+		}
+		if (Math.random() < 0.5) 
+			h1 = PrimitiveHypercubeTest.toPrimitive(h1, infeasibleUtil);
+		Hypercube< AddableInteger, AddableInteger > join = (Hypercube< AddableInteger, AddableInteger >) h1.join(hypercubes).resolve();
+		
+		// Randomly choose variables to project
+		ArrayList<String> varsTmp = new ArrayList<String> (join.getNumberOfVariables());
+		for (String var : join.getVariables()) 
+			if (Math.random() > 0.5) 
+				varsTmp.add(var);
+		String[] vars = varsTmp.toArray(new String[0]);
+		
+		UtilitySolutionSpace.ProjOutput<AddableInteger, AddableInteger> projOutput = h1.joinAndProject(hypercubes, vars, maximize);
+		assertTrue (Arrays.asList(vars).equals(Arrays.asList(projOutput.getVariables())));
+		UtilitySolutionSpace<AddableInteger, AddableInteger> expected = join.project(vars, maximize).getSpace();
+		assertTrue (projOutput.getSpace() + " != " + expected, expected.equivalent(projOutput.getSpace()));
+		
+		// Check that the conditional optimal assignments achieve the optimal utilities
+		if (vars.length == 0) 
+			return;
+		HashMap<String, AddableInteger> assignments = new HashMap<String, AddableInteger> ();
+		for (UtilitySolutionSpace.Iterator<AddableInteger, AddableInteger> iter = projOutput.getSpace().iterator(); iter.hasNext(); ) {
+			AddableInteger util = iter.nextUtility();
+			
+			assignments.clear();
+			AddableInteger[] sol = iter.getCurrentSolution();
+			for (int i = 0; sol != null && i < sol.length; i++) 
+				assignments.put(iter.getVariablesOrder()[i], sol[i]);
+			BasicUtilitySolutionSpace< AddableInteger, ArrayList<AddableInteger> > optSols = projOutput.getAssignments();
+			ArrayList<AddableInteger> optSol = (optSols.getNumberOfVariables() == 0 ? optSols.getUtility(0) : optSols.getUtility(assignments));
+			for (int i = 0; i < vars.length; i++) 
+				assignments.put(vars[i], optSol.get(i));
+			
+			assertEquals (util, join.getUtility(assignments));
+		}
+	}
+	
+	/** Tests that joins and projections computed in parallel are the same as when computed sequentially */
+	@SuppressWarnings("unchecked")
+	public void testParallelRandom () {
+		
+		AddableInteger infeasibleUtil = (inf == Infinity.PLUS_INFINITY ? AddableInteger.PlusInfinity.PLUS_INF : AddableInteger.MinInfinity.MIN_INF);
+		
+		// Generate two hypercubes whose join is large enough to be split into many blocks
+		Hypercube< AddableInteger, AddableInteger > h1 = random_hypercube(6, 4, 50, 0, infeasibleUtil);
+		Hypercube< AddableInteger, AddableInteger > h2 = random_hypercube(6, 4, 50, 1 + (int) (Math.random() * 4), infeasibleUtil);
+		if (Math.random() < 0.5) 
+			h1 = PrimitiveHypercubeTest.toPrimitive(h1, infeasibleUtil);
+		if (Math.random() < 0.5) 
+			h2 = PrimitiveHypercubeTest.toPrimitive(h2, infeasibleUtil);
+		Hypercube< AddableInteger, AddableInteger >[] others = (Hypercube< AddableInteger, AddableInteger >[]) new Hypercube<?, ?> [] { h2 };
+		
+		// Randomly choose variables to project
+		ArrayList<String> varsTmp = new ArrayList<String> ();
+		for (String var : h1.join(others).getVariables()) 
+			if (Math.random() < 0.3) 
+				varsTmp.add(var);
+		String[] vars = varsTmp.toArray(new String[0]);
+		
+		// Compute the joins and projections sequentially
+		Hypercube.setParallelThreshold(0);
+		UtilitySolutionSpace< AddableInteger, AddableInteger > join = h1.join(others).resolve();
+		ProjOutput< AddableInteger, AddableInteger > projOutput = h1.joinAndProject(others, vars, maximize);
+		ProjOutput< AddableInteger, AddableInteger > projOutput2 = join.project(vars, maximize);
+		
+		// Compute the joins and projections in parallel
+		UtilitySolutionSpace< AddableInteger, AddableInteger > joinPar;
+		ProjOutput< AddableInteger, AddableInteger > projOutputPar, projOutputPar2;
+		Long previous = Hypercube.setLocalParallelThreshold(1L);
+		try {
+			joinPar = h1.join(others).resolve();
+			projOutputPar = h1.joinAndProject(others, vars, maximize);
+			projOutputPar2 = join.project(vars, maximize);
+		} finally {
+			Hypercube.setLocalParallelThreshold(previous);
+		}
+		
+		// The thread-local setting must not leak into the JVM-wide setting
+		assertNull (previous);
+		assertEquals (0, Hypercube.getParallelThreshold());
+		
+		assertTrue (join.equivalent(joinPar));
+		assertTrue (projOutput.getSpace().equivalent(projOutputPar.getSpace()));
+		assertEquals (projOutput.getAssignments(), projOutputPar.getAssignments());
+		assertTrue (projOutput2.getSpace().equivalent(projOutputPar2.getSpace()));
+		assertEquals (projOutput2.getAssignments(), projOutputPar2.getAssignments());
+	}
+	
 	/** This method tests that the projection method (taking a number of variables) computes the correct optimal assignments 
 	 * @author Thomas Leaute
 	 */
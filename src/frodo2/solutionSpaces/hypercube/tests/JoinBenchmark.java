@@ -0,0 +1,152 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube.tests;
+
+import java.util.ArrayList;
+
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.UtilitySolutionSpace;
+import frodo2.solutionSpaces.hypercube.Hypercube;
+
+/** A micro-benchmark comparing the stride-based join with the iterator-based join
+ *
+ * Each run joins a random set of hypercubes with overlapping scopes, and materializes the join
+ * either by iterating over the lazy join (the iterator-based path) or by resolving it (the stride-based path).
+ * Usage: JoinBenchmark [nbrVars [domSize [nbrSpaces [nbrRuns]]]]
+ * @author Thomas Leaute
+ */
+public class JoinBenchmark {
+	
+	/** The number of warm-up runs, whose times are not reported */
+	private static final int NBR_WARMUP_RUNS = 10;
+	
+	/** Runs the benchmark
+	 * @param args 	[nbrVars [domSize [nbrSpaces [nbrRuns]]]]
+	 */
+	public static void main (String[] args) {
+		
+		final int nbrVars = (args.length > 0 ? Integer.parseInt(args[0]) : 8);
+		final int domSize = (args.length > 1 ? Integer.parseInt(args[1]) : 6);
+		final int nbrSpaces = (args.length > 2 ? Integer.parseInt(args[2]) : 4);
+		final int nbrRuns = (args.length > 3 ? Integer.parseInt(args[3]) : 20);
+		
+		System.out.println("Joining " + nbrSpaces + " hypercubes over " + nbrVars + " variables with domain size " + domSize);
+		
+		for (boolean primitive : new boolean[] { false, true }) {
+			Hypercube<AddableInteger, AddableInteger>[] spaces = randomSpaces(nbrVars, domSize, nbrSpaces, primitive);
+			
+			long iterTime = 0, strideTime = 0;
+			for (int run = - NBR_WARMUP_RUNS; run < nbrRuns; run++) {
+				
+				long start = System.nanoTime();
+				iterJoin(spaces);
+				long time = System.nanoTime() - start;
+				if (run >= 0)
+					iterTime += time;
+				
+				start = System.nanoTime();
+				spaces[0].join(subArray(spaces)).resolve();
+				time = System.nanoTime() - start;
+				if (run >= 0)
+					strideTime += time;
+			}
+			
+			System.out.println((primitive ? "IntHypercube" : "Hypercube") + " inputs: iterator-based join " + (iterTime / nbrRuns / 1000000.0) + " ms, "
+					+ "stride-based join " + (strideTime / nbrRuns / 1000000.0) + " ms");
+		}
+	}
+	
+	/** Materializes the join of the input spaces by iterating over the lazy join, as was done before the stride-based join
+	 * @param spaces 	the spaces to join
+	 * @return the join
+	 */
+	private static Hypercube<AddableInteger, AddableInteger> iterJoin (Hypercube<AddableInteger, AddableInteger>[] spaces) {
+		
+		UtilitySolutionSpace<AddableInteger, AddableInteger> join = spaces[0].join(subArray(spaces));
+		
+		Hypercube<AddableInteger, AddableInteger> out = Hypercube.newHypercube(join.getVariables(), join.getDomains(),
+				AddableInteger.class, (int) join.getNumberOfSolutions(), null, AddableInteger.PlusInfinity.PLUS_INF);
+		int i = 0;
+		for (UtilitySolutionSpace.Iterator<AddableInteger, AddableInteger> iter = join.iterator(); iter.hasNext(); )
+			out.setUtility(i++, iter.nextUtility());
+		
+		return out;
+	}
+	
+	/** @return the input spaces, except the first one
+	 * @param spaces 	the spaces
+	 */
+	@SuppressWarnings("unchecked")
+	private static Hypercube<AddableInteger, AddableInteger>[] subArray (Hypercube<AddableInteger, AddableInteger>[] spaces) {
+		Hypercube<AddableInteger, AddableInteger>[] out = (Hypercube<AddableInteger, AddableInteger>[]) new Hypercube<?, ?> [spaces.length - 1];
+		System.arraycopy(spaces, 1, out, 0, out.length);
+		return out;
+	}
+	
+	/** Creates random hypercubes with overlapping scopes, which together cover all variables
+	 * @param nbrVars 		the total number of variables
+	 * @param domSize 		the domain size
+	 * @param nbrSpaces 	the number of hypercubes (at least 2)
+	 * @param primitive 	whether to create IntHypercubes or boxed Hypercubes
+	 * @return the hypercubes
+	 */
+	@SuppressWarnings("unchecked")
+	private static Hypercube<AddableInteger, AddableInteger>[] randomSpaces (int nbrVars, int domSize, int nbrSpaces, boolean primitive) {
+		
+		AddableInteger[] dom = new AddableInteger [domSize];
+		for (int i = 0; i < domSize; i++)
+			dom[i] = new AddableInteger (i);
+		
+		Hypercube<AddableInteger, AddableInteger>[] spaces = (Hypercube<AddableInteger, AddableInteger>[]) new Hypercube<?, ?> [Math.max(2, nbrSpaces)];
+		for (int s = 0; s < spaces.length; s++) {
+			
+			// The first two spaces cover each half of the variables; the others are random
+			ArrayList<String> vars = new ArrayList<String> ();
+			for (int i = 0; i < nbrVars; i++)
+				if ((s == 0 && i < nbrVars / 2) || (s == 1 && i >= nbrVars / 2) || (s > 1 && Math.random() < 0.5))
+					vars.add("X" + i);
+			if (vars.isEmpty())
+				vars.add("X0");
+			
+			AddableInteger[][] doms = new AddableInteger [vars.size()][];
+			int nbrUtils = 1;
+			for (int i = 0; i < doms.length; i++) {
+				doms[i] = dom;
+				nbrUtils *= domSize;
+			}
+			
+			AddableInteger[] utils = new AddableInteger [nbrUtils];
+			for (int i = 0; i < nbrUtils; i++)
+				utils[i] = new AddableInteger ((int) (100 * Math.random()));
+			
+			String[] varsArray = vars.toArray(new String [vars.size()]);
+			if (primitive)
+				spaces[s] = Hypercube.newHypercube(varsArray, doms, utils, AddableInteger.PlusInfinity.PLUS_INF);
+			else
+				spaces[s] = new Hypercube<AddableInteger, AddableInteger> (varsArray, doms, utils, AddableInteger.PlusInfinity.PLUS_INF);
+		}
+		
+		return spaces;
+	}
+
+}
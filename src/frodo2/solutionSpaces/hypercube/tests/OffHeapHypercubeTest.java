@@ -0,0 +1,336 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.UtilitySolutionSpace;
+import frodo2.solutionSpaces.hypercube.Hypercube;
+import frodo2.solutionSpaces.hypercube.IntHypercube;
+import frodo2.solutionSpaces.hypercube.OffHeapIntArray;
+import frodo2.solutionSpaces.hypercube.OffHeapIntHypercube;
+import frodo2.solutionSpaces.hypercube.PrimitiveHypercube;
+
+import junit.extensions.RepeatedTest;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/** JUnit tests for the OffHeapIntArray and OffHeapIntHypercube classes, which are compared against the boxed Hypercube
+ * @author Thomas Leaute
+ */
+public class OffHeapHypercubeTest extends TestCase {
+	
+	/** Whether to maximize or minimize */
+	private boolean maximize;
+	
+	/** The infeasible utility */
+	private AddableInteger inf;
+	
+	/** Constructor
+	 * @param name 	the name of the test method
+	 */
+	public OffHeapHypercubeTest(String name) {
+		super(name);
+	}
+	
+	/** @return the test suite */
+	public static Test suite() {
+		TestSuite testSuite = new TestSuite ("Tests for the off-heap Hypercube classes");
+		
+		TestSuite suiteTmp = new TestSuite ("Tests the OffHeapIntArray class");
+		suiteTmp.addTest(new RepeatedTest (new OffHeapHypercubeTest ("testArrayRandom"), 100));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests that the factory method picks the right implementation");
+		suiteTmp.addTest(new OffHeapHypercubeTest ("testFactory"));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests that the off-heap threshold can be overridden for the current thread");
+		suiteTmp.addTest(new OffHeapHypercubeTest ("testLocalThreshold"));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests off-heap hypercubes with more than 2^31-1 utilities");
+		suiteTmp.addTest(new OffHeapHypercubeTest ("testLongIndexes"));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests the operations on off-heap hypercubes");
+		suiteTmp.addTest(new RepeatedTest (new OffHeapHypercubeTest ("testOperationsRandom"), 200));
+		testSuite.addTest(suiteTmp);
+		
+		return testSuite;
+	}
+	
+	/** @see junit.framework.TestCase#setUp() */
+	@Override
+	protected void setUp () {
+		this.maximize = Math.random() > 0.5;
+		HypercubeTest.inf = (this.maximize ? HypercubeTest.Infinity.MIN_INFINITY : HypercubeTest.Infinity.PLUS_INFINITY);
+		this.inf = (this.maximize ? AddableInteger.MinInfinity.MIN_INF : AddableInteger.PlusInfinity.PLUS_INF);
+	}
+	
+	/** @see junit.framework.TestCase#tearDown() */
+	@Override
+	protected void tearDown () {
+		HypercubeTest.inf = HypercubeTest.Infinity.NONE;
+		Hypercube.setOffHeapThreshold(0);
+	}
+	
+	/** Tests the OffHeapIntArray class, with small chunks so that ranges span several chunks */
+	public void testArrayRandom () {
+		
+		final int length = 1 + (int) (200 * Math.random());
+		final int chunkSize = 1 + (int) (20 * Math.random());
+		OffHeapIntArray array = new OffHeapIntArray (length, chunkSize);
+		assertEquals (length, array.length());
+		
+		int[] expected = new int [length];
+		for (int i = 0; i < length; i++) {
+			assertEquals (0, array.get(i));
+			array.set(i, expected[i] = (int) (Integer.MAX_VALUE * (2 * Math.random() - 1)));
+		}
+		
+		// Bulk get
+		int from = (int) (length * Math.random());
+		int len = (int) ((length - from) * Math.random());
+		int[] buf = new int [len + 1];
+		array.get(from, buf, 1, len);
+		for (int i = 0; i < len; i++)
+			assertEquals (expected[from + i], buf[i + 1]);
+		
+		// Bulk put
+		for (int i = 0; i < len; i++)
+			buf[i + 1] = expected[from + i] = i;
+		array.put(from, buf, 1, len);
+		for (int i = 0; i < length; i++)
+			assertEquals (expected[i], array.get(i));
+		
+		// Copy to another array with a different chunk size
+		OffHeapIntArray array2 = new OffHeapIntArray (length, 1 + (int) (20 * Math.random()));
+		int to = (int) ((length - len) * Math.random());
+		array.copyTo(from, array2, to, len);
+		for (int i = 0; i < length; i++)
+			assertEquals ((i >= to && i < to + len ? expected[from + i - to] : 0), array2.get(i));
+		
+		array2.fill(42);
+		for (int i = 0; i < length; i++)
+			assertEquals (42, array2.get(i));
+	}
+	
+	/** Tests that the factory method picks the right implementation */
+	public void testFactory () {
+		
+		String[] vars = new String[] { "X", "Y" };
+		AddableInteger[] dom = new AddableInteger[] { new AddableInteger (0), new AddableInteger (1) };
+		AddableInteger[][] doms = new AddableInteger[][] { dom, dom };
+		
+		Hypercube.setOffHeapThreshold(4);
+		Hypercube<AddableInteger, AddableInteger> space = Hypercube.newHypercube(vars, doms, AddableInteger.class, 4, new AddableInteger (3), this.inf);
+		assertTrue (space instanceof OffHeapIntHypercube);
+		assertEquals (new AddableInteger (3), space.getUtility(3));
+		
+		// Outputs below the threshold are stored on the heap
+		assertTrue (space.slice(new AddableInteger[] { dom[0] }) instanceof IntHypercube);
+		assertTrue (space.clone() instanceof OffHeapIntHypercube);
+		
+		Hypercube.setOffHeapThreshold(5);
+		assertTrue (Hypercube.newHypercube(vars, doms, AddableInteger.class, 4, null, this.inf) instanceof IntHypercube);
+		
+		Hypercube.setOffHeapThreshold(0);
+		assertTrue (Hypercube.newHypercube(vars, doms, AddableInteger.class, 4, null, this.inf) instanceof IntHypercube);
+	}
+	
+	/** Tests that the off-heap threshold can be overridden for the current thread
+	 * @throws InterruptedException 	if interrupted while waiting for the other thread
+	 */
+	public void testLocalThreshold () throws InterruptedException {
+		
+		final String[] vars = new String[] { "X", "Y" };
+		AddableInteger[] dom = new AddableInteger[] { new AddableInteger (0), new AddableInteger (1) };
+		final AddableInteger[][] doms = new AddableInteger[][] { dom, dom };
+		
+		assertNull (Hypercube.setLocalOffHeapThreshold(4L));
+		try {
+			assertEquals (4, Hypercube.getOffHeapThreshold());
+			assertTrue (Hypercube.newHypercube(vars, doms, AddableInteger.class, 4, null, this.inf) instanceof OffHeapIntHypercube);
+			
+			// Other threads still use the default setting
+			final Hypercube<?, ?>[] other = new Hypercube<?, ?> [1];
+			Thread thread = new Thread () {
+				public void run () {
+					other[0] = Hypercube.newHypercube(vars, doms, AddableInteger.class, 4, null, inf);
+				}
+			};
+			thread.start();
+			thread.join();
+			assertTrue (other[0] instanceof IntHypercube);
+			
+		} finally {
+			assertEquals (Long.valueOf (4), Hypercube.setLocalOffHeapThreshold(null));
+		}
+		
+		assertEquals (0, Hypercube.getOffHeapThreshold());
+		assertTrue (Hypercube.newHypercube(vars, doms, AddableInteger.class, 4, null, this.inf) instanceof IntHypercube);
+	}
+	
+	/** Tests off-heap hypercubes with more than 2^31-1 utilities, only touching a few of the utilities */
+	public void testLongIndexes () {
+		
+		// Create a hypercube with 2^16 * (2^15 + 1) utilities
+		String[] vars = new String[] { "X", "Y" };
+		AddableInteger[] domX = new AddableInteger [1 << 16];
+		for (int i = 0; i < domX.length; i++) 
+			domX[i] = new AddableInteger (i);
+		AddableInteger[] domY = new AddableInteger [(1 << 15) + 1];
+		for (int i = 0; i < domY.length; i++) 
+			domY[i] = new AddableInteger (i);
+		AddableInteger[][] doms = new AddableInteger[][] { domX, domY };
+		final long nbrUtils = (long) domX.length * domY.length;
+		assertTrue (nbrUtils > Integer.MAX_VALUE);
+		
+		Hypercube.setOffHeapThreshold(Integer.MAX_VALUE);
+		Hypercube<AddableInteger, AddableInteger> space = Hypercube.newHypercube(vars, doms, AddableInteger.class, nbrUtils, null, this.inf);
+		assertTrue (space instanceof OffHeapIntHypercube);
+		assertEquals (nbrUtils, space.getNumberOfSolutions());
+		
+		// Set a few utilities beyond 2^31
+		AddableInteger lastX = domX[domX.length - 1];
+		space.setUtility(new AddableInteger[] { lastX, domY[0] }, new AddableInteger (1));
+		space.setUtility(new AddableInteger[] { lastX, domY[domY.length - 1] }, new AddableInteger (2));
+		space.setUtility(nbrUtils - 2, new AddableInteger (3));
+		assertEquals (new AddableInteger (1), space.getUtility(nbrUtils - domY.length));
+		assertEquals (new AddableInteger (2), space.getUtility(nbrUtils - 1));
+		assertEquals (new AddableInteger (3), space.getUtility(new AddableInteger[] { lastX, domY[domY.length - 2] }));
+		assertNull (space.getUtility(nbrUtils));
+		
+		// Slice X over its last value, which produces a hypercube small enough to be stored on the heap
+		Hypercube<AddableInteger, AddableInteger> slice = space.slice("X", lastX);
+		assertTrue (slice instanceof IntHypercube);
+		assertEquals (domY.length, slice.getNumberOfSolutions());
+		assertEquals (new AddableInteger (1), slice.getUtility(0));
+		assertEquals (new AddableInteger (3), slice.getUtility(domY.length - 2));
+		assertEquals (new AddableInteger (2), slice.getUtility(domY.length - 1));
+		assertEquals (new AddableInteger (0), slice.getUtility(1));
+		
+		// Slice Y over two of its values, keeping the output off the heap
+		Hypercube.setLocalOffHeapThreshold(2L);
+		try {
+			slice = space.slice("Y", new AddableInteger[] { domY[0], domY[domY.length - 1] });
+		} finally {
+			Hypercube.setLocalOffHeapThreshold(null);
+		}
+		assertTrue (slice instanceof OffHeapIntHypercube);
+		assertEquals (2L * domX.length, slice.getNumberOfSolutions());
+		assertEquals (new AddableInteger (1), slice.getUtility(new AddableInteger[] { lastX, domY[0] }));
+		assertEquals (new AddableInteger (2), slice.getUtility(new AddableInteger[] { lastX, domY[domY.length - 1] }));
+		assertEquals (new AddableInteger (0), slice.getUtility(new AddableInteger[] { domX[0], domY[0] }));
+	}
+	
+	/** Converts a boxed hypercube to an off-heap one
+	 * @param boxed the boxed hypercube
+	 * @return the corresponding off-heap hypercube
+	 */
+	private OffHeapIntHypercube<AddableInteger> toOffHeap (Hypercube<AddableInteger, AddableInteger> boxed) {
+		
+		AddableInteger[] utils = new AddableInteger [(int) boxed.getNumberOfSolutions()];
+		for (int i = 0; i < utils.length; i++)
+			utils[i] = boxed.getUtility(i);
+		return new OffHeapIntHypercube<AddableInteger> (boxed.getVariables(), boxed.getDomains(), utils, this.inf);
+	}
+	
+	/** Tests the operations on off-heap hypercubes
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	should never happen
+	 */
+	@SuppressWarnings("unchecked")
+	public void testOperationsRandom () throws IOException, ClassNotFoundException {
+		
+		Hypercube.setOffHeapThreshold(1 + (int) (10 * Math.random()));
+		
+		Hypercube<AddableInteger, AddableInteger> boxed1 = HypercubeTest.random_hypercube(0.2, AddableInteger.class);
+		Hypercube<AddableInteger, AddableInteger> boxed2 = HypercubeTest.random_hypercube(0.2, AddableInteger.class);
+		OffHeapIntHypercube<AddableInteger> off1 = this.toOffHeap(boxed1);
+		OffHeapIntHypercube<AddableInteger> off2 = this.toOffHeap(boxed2);
+		
+		assertEquals (boxed1, off1);
+		assertEquals (off1, off1.clone());
+		assertEquals (boxed1, off1.toBoxed());
+		
+		// Re-ordering
+		String[] vars = boxed1.getVariables();
+		String[] newOrder = new String [vars.length];
+		for (int i = 0; i < vars.length; i++)
+			newOrder[i] = vars[vars.length - 1 - i];
+		assertEquals (boxed1.changeVariablesOrder(newOrder), off1.changeVariablesOrder(newOrder));
+		
+		// Slice the first variable over its first value
+		String[] sliceVars = new String[] { vars[0] };
+		AddableInteger[][] sliceDoms = new AddableInteger[][] { { boxed1.getDomain(0)[0] } };
+		assertEquals (boxed1.slice(sliceVars, sliceDoms), off1.slice(sliceVars, sliceDoms));
+		assertEquals (boxed1.clone().applySlice(sliceVars, sliceDoms), off1.clone().applySlice(sliceVars, sliceDoms));
+		
+		// Augmentation with a new variable
+		String[] augVars = new String[] { "augmented" };
+		AddableInteger[][] augDoms = new AddableInteger[][] { { new AddableInteger (0), new AddableInteger (1) } };
+		assertEquals (boxed1.applyAugment(augVars, augDoms), off1.applyAugment(augVars, augDoms));
+		
+		// Join, with off-heap and on-heap inputs
+		UtilitySolutionSpace<AddableInteger, AddableInteger> expected = boxed1.join(boxed2);
+		assertTrue (expected.equivalent(off1.join(off2).resolve()));
+		UtilitySolutionSpace<AddableInteger, AddableInteger> join = off1.clone().applyJoin(off2);
+		assertTrue (expected.equivalent(join));
+		assertTrue (join.getNumberOfVariables() == 0 || join instanceof PrimitiveHypercube);
+		assertTrue (expected.equivalent(off1.join(PrimitiveHypercubeTest.toPrimitive(boxed2, this.inf)).resolve()));
+		assertTrue (expected.equivalent(off1.join(boxed2)));
+		
+		// Project a random subset of the variables
+		ArrayList<String> varsOut = new ArrayList<String> ();
+		for (String var : vars)
+			if (Math.random() < 0.5)
+				varsOut.add(var);
+		String[] varsOutArray = varsOut.toArray(new String [varsOut.size()]);
+		assertEquals (boxed1.project(varsOutArray, this.maximize).getSpace(), off1.project(varsOutArray, this.maximize).getSpace());
+		assertEquals (boxed1.project(varsOutArray, this.maximize).getSpace(), off1.clone().applyProject(varsOutArray, this.maximize).getSpace());
+		assertEquals (boxed1.projectAll(this.maximize).getSpace(), off1.projectAll(this.maximize).getSpace());
+		
+		// Serialization
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream ();
+		ObjectOutputStream objOut = new ObjectOutputStream (bytesOut);
+		objOut.writeObject(off1);
+		objOut.close();
+		
+		ObjectInputStream objIn = new ObjectInputStream (new ByteArrayInputStream (bytesOut.toByteArray()));
+		Hypercube<AddableInteger, AddableInteger> off3 = (Hypercube<AddableInteger, AddableInteger>) objIn.readObject();
+		objIn.close();
+		
+		assertEquals (OffHeapIntHypercube.class, off3.getClass());
+		assertEquals (off1, off3);
+	}
+
+}
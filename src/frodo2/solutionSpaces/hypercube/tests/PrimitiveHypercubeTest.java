@@ -0,0 +1,528 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.AddableReal;
+import frodo2.solutionSpaces.UtilitySolutionSpace;
+import frodo2.solutionSpaces.UtilitySolutionSpace.ProjOutput;
+import frodo2.solutionSpaces.hypercube.DoubleHypercube;
+import frodo2.solutionSpaces.hypercube.Hypercube;
+import frodo2.solutionSpaces.hypercube.IntHypercube;
+import frodo2.solutionSpaces.hypercube.PrimitiveHypercube;
+import frodo2.solutionSpaces.hypercube.ScalarHypercube;
+import frodo2.solutionSpaces.hypercube.UtilityCodec;
+
+import junit.extensions.RepeatedTest;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/** JUnit tests for the IntHypercube and DoubleHypercube classes, which are compared against the boxed Hypercube
+ * @author Thomas Leaute
+ */
+public class PrimitiveHypercubeTest extends TestCase {
+	
+	/** Whether to maximize or minimize */
+	private boolean maximize;
+	
+	/** Constructor
+	 * @param name 	the name of the test method
+	 */
+	public PrimitiveHypercubeTest(String name) {
+		super(name);
+	}
+	
+	/** @return the test suite */
+	public static Test suite() {
+		TestSuite testSuite = new TestSuite ("Tests for the primitive-backed Hypercube classes");
+		
+		TestSuite suiteTmp = new TestSuite ("Tests that the factory method picks the right implementation");
+		suiteTmp.addTest(new PrimitiveHypercubeTest ("testFactory"));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests the conversion from and to boxed hypercubes");
+		suiteTmp.addTest(new RepeatedTest (new PrimitiveHypercubeTest ("testConversionRandom"), 500));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests changeVariablesOrder");
+		suiteTmp.addTest(new RepeatedTest (new PrimitiveHypercubeTest ("testChangeVariablesOrderRandom"), 500));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests slice");
+		suiteTmp.addTest(new RepeatedTest (new PrimitiveHypercubeTest ("testSliceRandom"), 500));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests join");
+		suiteTmp.addTest(new RepeatedTest (new PrimitiveHypercubeTest ("testJoinRandom"), 500));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests project");
+		suiteTmp.addTest(new RepeatedTest (new PrimitiveHypercubeTest ("testProjectRandom"), 500));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests serialization");
+		suiteTmp.addTest(new RepeatedTest (new PrimitiveHypercubeTest ("testSerializationRandom"), 500));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests the compact serialization of sparse hypercubes");
+		suiteTmp.addTest(new RepeatedTest (new PrimitiveHypercubeTest ("testSerializationSparse"), 200));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests the compact serialization of scalar hypercubes");
+		suiteTmp.addTest(new PrimitiveHypercubeTest ("testSerializationScalar"));
+		testSuite.addTest(suiteTmp);
+		
+		return testSuite;
+	}
+	
+	/** @see junit.framework.TestCase#setUp() */
+	@Override
+	protected void setUp () {
+		this.maximize = Math.random() > 0.5;
+		HypercubeTest.inf = (this.maximize ? HypercubeTest.Infinity.MIN_INFINITY : HypercubeTest.Infinity.PLUS_INFINITY);
+	}
+	
+	/** @see junit.framework.TestCase#tearDown() */
+	@Override
+	protected void tearDown () {
+		HypercubeTest.inf = HypercubeTest.Infinity.NONE;
+	}
+	
+	/** Returns the infeasible utility used by HypercubeTest.random_hypercube()
+	 * @param <U> 		the type used for utility values
+	 * @param utilClass the class used for utility values
+	 * @return -INF if we are maximizing, +INF otherwise
+	 */
+	private < U extends Addable<U> > U infeasible (Class<U> utilClass) {
+		
+		try {
+			U zero = utilClass.getConstructor().newInstance();
+			return (this.maximize ? zero.getMinInfinity() : zero.getPlusInfinity());
+		} catch (Exception e) {
+			fail(e.toString());
+			return null;
+		}
+	}
+	
+	/** Converts a boxed hypercube to a primitive one
+	 * @param <U> 	the type used for utility values
+	 * @param boxed the boxed hypercube
+	 * @param inf 	the infeasible utility
+	 * @return the corresponding primitive hypercube
+	 */
+	static < U extends Addable<U> > PrimitiveHypercube<AddableInteger, U> toPrimitive (Hypercube<AddableInteger, U> boxed, U inf) {
+		
+		@SuppressWarnings("unchecked")
+		U[] utils = (U[]) Array.newInstance(boxed.getClassOfU(), (int) boxed.getNumberOfSolutions());
+		for (int i = 0; i < utils.length; i++)
+			utils[i] = boxed.getUtility(i);
+		Hypercube<AddableInteger, U> out = Hypercube.newHypercube(boxed.getVariables(), boxed.getDomains(), utils, inf);
+		assertTrue (out instanceof PrimitiveHypercube);
+		return (PrimitiveHypercube<AddableInteger, U>) out;
+	}
+	
+	/** @return a random order of the input variables
+	 * @param vars 	the variables
+	 */
+	private static String[] shuffle (String[] vars) {
+		
+		ArrayList<String> tmp = new ArrayList<String> (Arrays.asList(vars));
+		String[] out = new String [vars.length];
+		for (int i = 0; i < out.length; i++)
+			out[i] = tmp.remove((int) (tmp.size() * Math.random()));
+		return out;
+	}
+	
+	/** @return a random subset of the input variables
+	 * @param vars 	the variables
+	 */
+	private static String[] subset (String[] vars) {
+		
+		ArrayList<String> out = new ArrayList<String> ();
+		for (String var : vars)
+			if (Math.random() < 0.5)
+				out.add(var);
+		return out.toArray(new String [out.size()]);
+	}
+	
+	/** Tests that the factory method picks the right implementation */
+	public void testFactory () {
+		
+		String[] vars = new String[] { "X" };
+		AddableInteger[][] doms = new AddableInteger[][] { { new AddableInteger (0), new AddableInteger (1) } };
+		
+		Hypercube<AddableInteger, AddableInteger> intSpace = Hypercube.newHypercube(vars, doms,
+				new AddableInteger[] { new AddableInteger (1), AddableInteger.PlusInfinity.PLUS_INF }, AddableInteger.PlusInfinity.PLUS_INF);
+		assertTrue (intSpace instanceof IntHypercube);
+		assertTrue (intSpace.getUtility(1) == AddableInteger.PlusInfinity.PLUS_INF);
+		
+		Hypercube<AddableInteger, AddableReal> realSpace = Hypercube.newHypercube(vars, doms,
+				new AddableReal[] { AddableReal.MinInfinity.MIN_INF, new AddableReal (2.5) }, AddableReal.MinInfinity.MIN_INF);
+		assertTrue (realSpace instanceof DoubleHypercube);
+		assertTrue (realSpace.getUtility(0) == AddableReal.MinInfinity.MIN_INF);
+		assertEquals (new AddableReal (2.5), realSpace.getUtility(1));
+		
+		// null utilities cannot be stored in primitive arrays
+		Hypercube<AddableInteger, AddableInteger> boxedSpace = Hypercube.newHypercube(vars, doms,
+				new AddableInteger[] { new AddableInteger (1), null }, AddableInteger.PlusInfinity.PLUS_INF);
+		assertFalse (boxedSpace instanceof PrimitiveHypercube);
+		
+		// Pre-filled hypercubes
+		intSpace = Hypercube.newHypercube(vars, doms, AddableInteger.class, 2, new AddableInteger (3), AddableInteger.PlusInfinity.PLUS_INF);
+		assertTrue (intSpace instanceof IntHypercube);
+		assertEquals (new AddableInteger (3), intSpace.getUtility(1));
+	}
+	
+	/** Tests the conversion from and to boxed hypercubes */
+	public void testConversionRandom () {
+		this.testConversionRandom(AddableInteger.class);
+		this.testConversionRandom(AddableReal.class);
+	}
+	
+	/** Tests the conversion from and to boxed hypercubes
+	 * @param <U> 		the type used for utility values
+	 * @param utilClass the class used for utility values
+	 */
+	private < U extends Addable<U> > void testConversionRandom (Class<U> utilClass) {
+		
+		U inf = this.infeasible(utilClass);
+		Hypercube<AddableInteger, U> boxed = HypercubeTest.random_hypercube(0.2, utilClass);
+		PrimitiveHypercube<AddableInteger, U> prim = toPrimitive(boxed, inf);
+		
+		assertEquals (boxed, prim);
+		assertEquals (prim, boxed);
+		assertEquals (prim, prim.clone());
+		assertEquals (boxed, prim.toBoxed());
+		assertFalse (prim.toBoxed() instanceof PrimitiveHypercube);
+		
+		// The infinite utilities must be the singletons
+		for (long i = prim.getNumberOfSolutions() - 1; i >= 0; i--) {
+			U util = prim.getUtility(i);
+			if (util.equals(inf))
+				assertTrue (util == inf);
+		}
+	}
+	
+	/** Tests changeVariablesOrder */
+	public void testChangeVariablesOrderRandom () {
+		this.testChangeVariablesOrderRandom(AddableInteger.class);
+		this.testChangeVariablesOrderRandom(AddableReal.class);
+	}
+	
+	/** Tests changeVariablesOrder
+	 * @param <U> 		the type used for utility values
+	 * @param utilClass the class used for utility values
+	 */
+	private < U extends Addable<U> > void testChangeVariablesOrderRandom (Class<U> utilClass) {
+		
+		Hypercube<AddableInteger, U> boxed = HypercubeTest.random_hypercube(0.2, utilClass);
+		PrimitiveHypercube<AddableInteger, U> prim = toPrimitive(boxed, this.infeasible(utilClass));
+		
+		String[] newOrder = shuffle(boxed.getVariables());
+		UtilitySolutionSpace<AddableInteger, U> reordered = prim.changeVariablesOrder(newOrder);
+		assertTrue (reordered instanceof PrimitiveHypercube);
+		assertEquals (boxed.changeVariablesOrder(newOrder), reordered);
+		
+		prim.applyChangeVariablesOrder(newOrder);
+		assertEquals (reordered, prim);
+	}
+	
+	/** Tests slice */
+	public void testSliceRandom () {
+		this.testSliceRandom(AddableInteger.class);
+		this.testSliceRandom(AddableReal.class);
+	}
+	
+	/** Tests slice
+	 * @param <U> 		the type used for utility values
+	 * @param utilClass the class used for utility values
+	 */
+	private < U extends Addable<U> > void testSliceRandom (Class<U> utilClass) {
+		
+		Hypercube<AddableInteger, U> boxed = HypercubeTest.random_hypercube(0.2, utilClass);
+		PrimitiveHypercube<AddableInteger, U> prim = toPrimitive(boxed, this.infeasible(utilClass));
+		
+		// Slice a random subset of the variables over a random subset of their domains
+		String[] vars = subset(boxed.getVariables());
+		AddableInteger[][] doms = new AddableInteger [vars.length][];
+		for (int i = 0; i < vars.length; i++) {
+			ArrayList<AddableInteger> dom = new ArrayList<AddableInteger> ();
+			for (AddableInteger val : boxed.getDomain(vars[i]))
+				if (dom.isEmpty() || Math.random() < 0.5)
+					dom.add(val);
+			doms[i] = dom.toArray(new AddableInteger [dom.size()]);
+		}
+		
+		assertEquals (boxed.slice(vars, doms), prim.slice(vars, doms));
+		
+		// Slice all variables over a single value
+		vars = boxed.getVariables();
+		AddableInteger[] vals = new AddableInteger [vars.length];
+		for (int i = 0; i < vars.length; i++)
+			vals[i] = boxed.getDomain(i)[0];
+		assertEquals (boxed.slice(vals), prim.slice(vals));
+		assertEquals (boxed.slice(vars, vals), prim.slice(vars, vals));
+	}
+	
+	/** Tests join */
+	public void testJoinRandom () {
+		this.testJoinRandom(AddableInteger.class);
+		this.testJoinRandom(AddableReal.class);
+	}
+	
+	/** Tests join
+	 * @param <U> 		the type used for utility values
+	 * @param utilClass the class used for utility values
+	 */
+	private < U extends Addable<U> > void testJoinRandom (Class<U> utilClass) {
+		
+		Hypercube<AddableInteger, U> boxed1 = HypercubeTest.random_hypercube(0.2, utilClass);
+		Hypercube<AddableInteger, U> boxed2 = HypercubeTest.random_hypercube(0.2, utilClass);
+		PrimitiveHypercube<AddableInteger, U> prim1 = toPrimitive(boxed1, this.infeasible(utilClass));
+		PrimitiveHypercube<AddableInteger, U> prim2 = toPrimitive(boxed2, this.infeasible(utilClass));
+		
+		UtilitySolutionSpace<AddableInteger, U> expected = boxed1.join(boxed2);
+		assertTrue (expected.equivalent(prim1.join(prim2)));
+		assertTrue (expected.equivalent(prim1.join(boxed2)));
+		assertTrue (expected.equivalent(boxed1.join(prim2)));
+		UtilitySolutionSpace<AddableInteger, U> applied = prim1.applyJoin(prim2);
+		assertTrue (expected.equivalent(applied));
+		if (expected.getNumberOfVariables() > 0 && expected != Hypercube.NullHypercube.NULL) // the join should not be boxed
+			assertTrue (applied instanceof PrimitiveHypercube);
+	
+	}
+	
+	/** Tests project */
+	public void testProjectRandom () {
+		this.testProjectRandom(AddableInteger.class);
+		this.testProjectRandom(AddableReal.class);
+	}
+	
+	/** Tests project
+	 * @param <U> 		the type used for utility values
+	 * @param utilClass the class used for utility values
+	 */
+	private < U extends Addable<U> > void testProjectRandom (Class<U> utilClass) {
+		
+		Hypercube<AddableInteger, U> boxed = HypercubeTest.random_hypercube(0.2, utilClass);
+		PrimitiveHypercube<AddableInteger, U> prim = toPrimitive(boxed, this.infeasible(utilClass));
+		
+		// Project a random subset of the variables
+		String[] vars = subset(boxed.getVariables());
+		ProjOutput<AddableInteger, U> expected = boxed.project(vars, this.maximize);
+		ProjOutput<AddableInteger, U> actual = prim.project(vars, this.maximize);
+		assertEquals (expected.getSpace(), actual.getSpace());
+		this.checkAssignments(prim, actual);
+		
+		// Project the last variables
+		int nbrVars = (int) (Math.random() * (boxed.getNumberOfVariables() + 1));
+		expected = boxed.project(nbrVars, this.maximize);
+		actual = prim.project(nbrVars, this.maximize);
+		assertEquals (expected.getSpace(), actual.getSpace());
+		this.checkAssignments(prim, actual);
+		
+		// Project all variables
+		actual = prim.projectAll(this.maximize);
+		assertEquals (boxed.projectAll(this.maximize).getSpace(), actual.getSpace());
+		this.checkAssignments(prim, actual);
+		
+		// Check applyProject
+		PrimitiveHypercube<AddableInteger, U> projected = prim.clone();
+		actual = projected.applyProject(vars, this.maximize);
+		assertEquals (boxed.project(vars, this.maximize).getSpace(), actual.getSpace());
+		if (vars.length > 0 && vars.length < boxed.getNumberOfVariables() && actual.getSpace().getNumberOfSolutions() > 1) // the projection should be in place
+			assertSame (projected, actual.getSpace());
+		this.checkAssignments(prim, actual);
+	}
+	
+	/** Checks that the optimal assignments in the output of a projection are consistent with the optimal utilities
+	 * @param <U> 		the type used for utility values
+	 * @param space 	the space that was projected
+	 * @param proj 		the output of the projection
+	 */
+	private < U extends Addable<U> > void checkAssignments (PrimitiveHypercube<AddableInteger, U> space, ProjOutput<AddableInteger, U> proj) {
+		
+		String[] varsOut = proj.getVariables();
+		UtilitySolutionSpace<AddableInteger, U> projSpace = proj.getSpace();
+		String[] varsKept = projSpace.getVariables();
+		
+		String[] allVars = Arrays.copyOf(varsKept, varsKept.length + varsOut.length);
+		System.arraycopy(varsOut, 0, allVars, varsKept.length, varsOut.length);
+		AddableInteger[] allVals = new AddableInteger [allVars.length];
+		
+		for (UtilitySolutionSpace.Iterator<AddableInteger, U> iter = projSpace.iterator(); iter.hasNext(); ) {
+			AddableInteger[] valsKept = iter.nextSolution();
+			U opt = iter.getCurrentUtility();
+			if (valsKept == null) // scalar space
+				valsKept = new AddableInteger [0];
+			
+			System.arraycopy(valsKept, 0, allVals, 0, valsKept.length);
+			ArrayList<AddableInteger> valsOut = proj.getAssignments().getUtility(varsKept, valsKept);
+			for (int i = 0; i < varsOut.length; i++)
+				allVals[varsKept.length + i] = valsOut.get(i);
+			
+			assertEquals (opt, space.getUtility(allVars, allVals));
+		}
+	}
+	
+	/** Tests serialization
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	should never happen
+	 */
+	public void testSerializationRandom () throws IOException, ClassNotFoundException {
+		this.testSerializationRandom(AddableInteger.class);
+		this.testSerializationRandom(AddableReal.class);
+	}
+	
+	/** Tests serialization
+	 * @param <U> 		the type used for utility values
+	 * @param utilClass the class used for utility values
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	should never happen
+	 */
+	@SuppressWarnings("unchecked")
+	private < U extends Addable<U> > void testSerializationRandom (Class<U> utilClass) throws IOException, ClassNotFoundException {
+		
+		PrimitiveHypercube<AddableInteger, U> prim = toPrimitive(HypercubeTest.random_hypercube(0.2, utilClass), this.infeasible(utilClass));
+		
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream ();
+		ObjectOutputStream objOut = new ObjectOutputStream (bytesOut);
+		objOut.writeObject(prim);
+		objOut.close();
+		
+		ObjectInputStream objIn = new ObjectInputStream (new ByteArrayInputStream (bytesOut.toByteArray()));
+		Hypercube<AddableInteger, U> prim2 = (Hypercube<AddableInteger, U>) objIn.readObject();
+		objIn.close();
+		
+		assertEquals (prim.getClass(), prim2.getClass());
+		assertEquals (prim, prim2);
+	}
+	
+	/** Tests the serialization of hypercubes with mostly infeasible, zero or repeated utilities
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	should never happen
+	 */
+	public void testSerializationSparse () throws IOException, ClassNotFoundException {
+		this.testSerializationSparse(AddableInteger.class);
+		this.testSerializationSparse(AddableReal.class);
+	}
+	
+	/** Tests the serialization of hypercubes with mostly infeasible, zero or repeated utilities
+	 * @param <U> 		the type used for utility values
+	 * @param utilClass the class used for utility values
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	should never happen
+	 */
+	@SuppressWarnings("unchecked")
+	private < U extends Addable<U> > void testSerializationSparse (Class<U> utilClass) throws IOException, ClassNotFoundException {
+		
+		U inf = this.infeasible(utilClass);
+		Hypercube<AddableInteger, U> boxed = HypercubeTest.random_hypercube(0.2, utilClass);
+		final int nbrUtils = (int) boxed.getNumberOfSolutions();
+		
+		// Replace most utilities with the same utility, either in a random pattern or in runs
+		U zero = inf.getZero();
+		U defaultUtil = (Math.random() < 0.5 ? inf : zero);
+		final boolean runs = Math.random() < 0.5;
+		U util = defaultUtil;
+		for (int i = 0; i < nbrUtils; i++) {
+			if (runs) {
+				if (Math.random() < 0.1) 
+					util = (util == defaultUtil ? boxed.getUtility(i) : defaultUtil);
+				boxed.setUtility(i, util);
+			} else if (Math.random() < 0.9) 
+				boxed.setUtility(i, defaultUtil);
+		}
+		PrimitiveHypercube<AddableInteger, U> prim = toPrimitive(boxed, inf);
+		
+		UtilityCodec.takeBytesSaved();
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream ();
+		ObjectOutputStream objOut = new ObjectOutputStream (bytesOut);
+		objOut.writeObject(prim);
+		objOut.close();
+		final long saved = UtilityCodec.takeBytesSaved();
+		if (nbrUtils >= 100) 
+			assertTrue (saved > 0);
+		
+		ObjectInputStream objIn = new ObjectInputStream (new ByteArrayInputStream (bytesOut.toByteArray()));
+		Hypercube<AddableInteger, U> prim2 = (Hypercube<AddableInteger, U>) objIn.readObject();
+		objIn.close();
+		
+		assertEquals (prim.getClass(), prim2.getClass());
+		assertEquals (prim, prim2);
+		assertEquals (boxed, prim2);
+	}
+
+	/** Tests the serialization of scalar hypercubes whose utilities are written as ints or doubles
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	should never happen
+	 */
+	public void testSerializationScalar () throws IOException, ClassNotFoundException {
+		
+		for (AddableInteger util : new AddableInteger[] { new AddableInteger ((int) (Math.random() * 100)), 
+				AddableInteger.PlusInfinity.PLUS_INF, AddableInteger.MinInfinity.MIN_INF }) 
+			this.testSerializationScalar(util, this.infeasible(AddableInteger.class));
+		
+		for (AddableReal util : new AddableReal[] { new AddableReal (Math.random() * 100), 
+				AddableReal.PlusInfinity.PLUS_INF, AddableReal.MinInfinity.MIN_INF }) 
+			this.testSerializationScalar(util, this.infeasible(AddableReal.class));
+	}
+	
+	/** Tests the serialization of a scalar hypercube
+	 * @param <U> 			the type used for utility values
+	 * @param util 			the utility of the scalar hypercube
+	 * @param infeasible 	the infeasible utility
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	should never happen
+	 */
+	@SuppressWarnings("unchecked")
+	private < U extends Addable<U> > void testSerializationScalar (U util, U infeasible) throws IOException, ClassNotFoundException {
+		
+		ScalarHypercube<AddableInteger, U> scalar = new ScalarHypercube<AddableInteger, U> ("scalar", util, infeasible, AddableInteger[].class);
+		
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream ();
+		ObjectOutputStream objOut = new ObjectOutputStream (bytesOut);
+		objOut.writeObject(scalar);
+		objOut.close();
+		
+		ObjectInputStream objIn = new ObjectInputStream (new ByteArrayInputStream (bytesOut.toByteArray()));
+		ScalarHypercube<AddableInteger, U> scalar2 = (ScalarHypercube<AddableInteger, U>) objIn.readObject();
+		objIn.close();
+		
+		assertEquals (scalar, scalar2);
+		assertSame (util.getClass(), scalar2.getUtility(0).getClass());
+		assertEquals ("scalar", scalar2.getName());
+	}
+
+}
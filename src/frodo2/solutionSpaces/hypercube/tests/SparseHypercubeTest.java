@@ -0,0 +1,207 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.hypercube.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.AddableReal;
+import frodo2.solutionSpaces.UtilitySolutionSpace;
+import frodo2.solutionSpaces.UtilitySolutionSpace.SparseIterator;
+import frodo2.solutionSpaces.hypercube.Hypercube;
+import frodo2.solutionSpaces.hypercube.SparseHypercube;
+
+import junit.extensions.RepeatedTest;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/** JUnit tests for the SparseHypercube class, which is compared against the boxed Hypercube
+ * @author Thomas Leaute
+ * @param <U> the type used for utility values
+ */
+public class SparseHypercubeTest < U extends Addable<U> > extends TestCase {
+	
+	/** The class used for utility values */
+	private Class<U> utilClass;
+	
+	/** Whether to maximize or minimize */
+	private boolean maximize;
+	
+	/** The infeasible utility */
+	private U inf;
+	
+	/** Constructor
+	 * @param name 		the name of the test method
+	 * @param utilClass the class used for utility values
+	 */
+	public SparseHypercubeTest(String name, Class<U> utilClass) {
+		super(name);
+		this.utilClass = utilClass;
+	}
+	
+	/** @return the test suite */
+	public static Test suite() {
+		TestSuite testSuite = new TestSuite ("Tests for the SparseHypercube class");
+		
+		TestSuite suiteTmp = new TestSuite ("Tests the operations on sparse hypercubes with AddableInteger utilities");
+		suiteTmp.addTest(new RepeatedTest (new SparseHypercubeTest<AddableInteger> ("testOperationsRandom", AddableInteger.class), 200));
+		testSuite.addTest(suiteTmp);
+		
+		suiteTmp = new TestSuite ("Tests the operations on sparse hypercubes with AddableReal utilities");
+		suiteTmp.addTest(new RepeatedTest (new SparseHypercubeTest<AddableReal> ("testOperationsRandom", AddableReal.class), 200));
+		testSuite.addTest(suiteTmp);
+		
+		return testSuite;
+	}
+	
+	/** @see junit.framework.TestCase#setUp() */
+	@Override
+	protected void setUp () throws Exception {
+		this.maximize = Math.random() > 0.5;
+		HypercubeTest.inf = (this.maximize ? HypercubeTest.Infinity.MIN_INFINITY : HypercubeTest.Infinity.PLUS_INFINITY);
+		U zero = this.utilClass.getDeclaredConstructor().newInstance().getZero();
+		this.inf = (this.maximize ? zero.getMinInfinity() : zero.getPlusInfinity());
+	}
+	
+	/** @see junit.framework.TestCase#tearDown() */
+	@Override
+	protected void tearDown () {
+		HypercubeTest.inf = HypercubeTest.Infinity.NONE;
+	}
+	
+	/** Makes most utilities of a boxed hypercube equal to the default utility, and converts it to a sparse hypercube
+	 * @param boxed 		the boxed hypercube, which is modified
+	 * @param defaultUtil 	the default utility
+	 * @return the corresponding sparse hypercube
+	 */
+	private SparseHypercube<AddableInteger, U> toSparse (Hypercube<AddableInteger, U> boxed, U defaultUtil) {
+		
+		final int nbrUtils = (int) boxed.getNumberOfSolutions();
+		SparseHypercube<AddableInteger, U> sparse = new SparseHypercube<AddableInteger, U> (
+				boxed.getVariables(), boxed.getDomains(), nbrUtils, this.utilClass, defaultUtil, this.inf);
+		
+		for (int i = 0; i < nbrUtils; i++) {
+			if (Math.random() < 0.8) 
+				boxed.setUtility(i, defaultUtil);
+			else 
+				sparse.setUtility(i, boxed.getUtility(i));
+		}
+		
+		return sparse;
+	}
+	
+	/** Tests the operations on sparse hypercubes
+	 * @throws IOException 				if an I/O error occurs
+	 * @throws ClassNotFoundException 	should never happen
+	 */
+	@SuppressWarnings("unchecked")
+	public void testOperationsRandom () throws IOException, ClassNotFoundException {
+		
+		U defaultUtil = (Math.random() < 0.5 ? this.inf : this.inf.getZero());
+		Hypercube<AddableInteger, U> boxed1 = HypercubeTest.random_hypercube(0.2, this.utilClass);
+		Hypercube<AddableInteger, U> boxed2 = HypercubeTest.random_hypercube(0.2, this.utilClass);
+		SparseHypercube<AddableInteger, U> sparse1 = this.toSparse(boxed1, defaultUtil);
+		SparseHypercube<AddableInteger, U> sparse2 = this.toSparse(boxed2, defaultUtil);
+		
+		assertEquals (boxed1, sparse1);
+		assertTrue (sparse1.getNbrStoredUtils() <= boxed1.getNumberOfSolutions());
+		for (long i = boxed1.getNumberOfSolutions() - 1; i >= 0; i--) 
+			if (boxed1.getUtility(i).equals(defaultUtil)) 
+				sparse1.setUtility(i, defaultUtil); // must not add a stored utility
+		int nbrStored = 0;
+		for (long i = boxed1.getNumberOfSolutions() - 1; i >= 0; i--) 
+			if (! boxed1.getUtility(i).equals(defaultUtil)) 
+				nbrStored++;
+		assertEquals (nbrStored, sparse1.getNbrStoredUtils());
+		
+		assertEquals (sparse1, sparse1.clone());
+		assertTrue (sparse1.clone() instanceof SparseHypercube);
+		
+		// Re-ordering
+		String[] vars = boxed1.getVariables();
+		String[] newOrder = new String [vars.length];
+		for (int i = 0; i < vars.length; i++)
+			newOrder[i] = vars[vars.length - 1 - i];
+		assertEquals (boxed1.changeVariablesOrder(newOrder), sparse1.changeVariablesOrder(newOrder));
+		
+		// Slice the first variable over its first value
+		String[] sliceVars = new String[] { vars[0] };
+		AddableInteger[][] sliceDoms = new AddableInteger[][] { { boxed1.getDomain(0)[0] } };
+		assertEquals (boxed1.slice(sliceVars, sliceDoms), sparse1.slice(sliceVars, sliceDoms));
+		
+		// Join, with sparse and boxed inputs
+		UtilitySolutionSpace<AddableInteger, U> expected = boxed1.join(boxed2);
+		assertTrue (expected.equivalent(sparse1.join(sparse2).resolve()));
+		assertTrue (expected.equivalent(sparse1.join(boxed2).resolve()));
+		UtilitySolutionSpace<AddableInteger, U> applied = sparse1.clone().applyJoin(boxed2, Hypercube.union(boxed2.getVariables(), vars));
+		assertTrue (expected.equivalent(applied));
+		assertEquals (defaultUtil.equals(this.inf) && applied.getNumberOfVariables() > 0, applied instanceof SparseHypercube);
+		
+		// Project a random subset of the variables
+		ArrayList<String> varsOut = new ArrayList<String> ();
+		for (String var : vars)
+			if (Math.random() < 0.5)
+				varsOut.add(var);
+		String[] varsOutArray = varsOut.toArray(new String [varsOut.size()]);
+		assertEquals (boxed1.project(varsOutArray, this.maximize).getSpace(), sparse1.project(varsOutArray, this.maximize).getSpace());
+		assertEquals (boxed1.project(varsOutArray, this.maximize).getAssignments(), sparse1.project(varsOutArray, this.maximize).getAssignments());
+		assertEquals (boxed1.projectAll(this.maximize).getSpace(), sparse1.projectAll(this.maximize).getSpace());
+		assertEquals (boxed1.projectAll(this.maximize).getAssignments(), sparse1.projectAll(this.maximize).getAssignments());
+		int nbrProjected = (int) (Math.random() * (vars.length + 1));
+		assertEquals (boxed1.project(nbrProjected, this.maximize).getSpace(), sparse1.project(nbrProjected, this.maximize).getSpace());
+		assertEquals (boxed1.project(nbrProjected, this.maximize).getAssignments(), sparse1.project(nbrProjected, this.maximize).getAssignments());
+		
+		// Sparse iteration
+		SparseIterator<AddableInteger, U> iterExpected = boxed1.sparseIter();
+		SparseIterator<AddableInteger, U> iter = sparse1.sparseIter();
+		for (U util = iterExpected.nextUtility(); util != null; util = iterExpected.nextUtility()) {
+			assertEquals (util, iter.nextUtility());
+			assertEquals (iterExpected.getCurrentSolution().length, iter.getCurrentSolution().length);
+			for (int i = iter.getCurrentSolution().length - 1; i >= 0; i--)
+				assertEquals (iterExpected.getCurrentSolution()[i], iter.getCurrentSolution()[i]);
+		}
+		assertNull (iter.nextUtility());
+		
+		// Serialization
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream ();
+		ObjectOutputStream objOut = new ObjectOutputStream (bytesOut);
+		objOut.writeObject(sparse1);
+		objOut.close();
+		
+		ObjectInputStream objIn = new ObjectInputStream (new ByteArrayInputStream (bytesOut.toByteArray()));
+		Hypercube<AddableInteger, U> sparse3 = (Hypercube<AddableInteger, U>) objIn.readObject();
+		objIn.close();
+		
+		assertEquals (SparseHypercube.class, sparse3.getClass());
+		assertEquals (sparse1, sparse3);
+		assertEquals (defaultUtil, sparse3.getDefaultUtility());
+	}
+
+}
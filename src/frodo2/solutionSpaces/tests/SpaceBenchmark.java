@@ -0,0 +1,317 @@
+/*
+FRODO: a FRamework for Open/Distributed Optimization
+Copyright (C) 2008-2020  Thomas Leaute, Brammert Ottens & Radoslaw Szymanek
+
+FRODO is free software: you can redistribute it and/or modify
+it under the terms of the GNU Affero General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+FRODO is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Affero General Public License for more details.
+
+You should have received a copy of the GNU Affero General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+How to contact the authors: 
+<https://frodo-ai.tech>
+*/
+
+package frodo2.solutionSpaces.tests;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+
+import frodo2.algorithms.test.AllTests;
+import frodo2.benchmarks.vehiclerouting.CordeauToXCSP;
+import frodo2.benchmarks.vehiclerouting.XCSPparserVRP;
+import frodo2.solutionSpaces.Addable;
+import frodo2.solutionSpaces.AddableInteger;
+import frodo2.solutionSpaces.AddableReal;
+import frodo2.solutionSpaces.UtilitySolutionSpace;
+import frodo2.solutionSpaces.JaCoP.JaCoPxcspParser;
+import frodo2.solutionSpaces.crypto.AddableBigInteger;
+import frodo2.solutionSpaces.hypercube.Hypercube;
+import frodo2.solutionSpaces.vehiclerouting.VehicleRoutingSpace;
+import frodo2.solutionSpaces.vehiclerouting.test.VRPtests;
+
+/** A micro-benchmark suite for the operations on solution spaces
+ *
+ * Each operation (join, project, slice, blindProject, expectation, iteratorBestFirst, serialization...) is first run a number
+ * of times to warm up the JIT compiler, and then timed over a number of runs. The hypercube benchmarks are parameterized
+ * by the arity of the spaces, the domain size, the proportion of infeasible utilities, and the class of utilities.
+ * The same operations are then timed on the JaCoPutilSpaces of a random problem, and on the VehicleRoutingSpaces of
+ * a Cordeau benchmark instance. Results are printed as tab-separated lines, one per operation and parameter combination,
+ * such that the outputs of two versions of FRODO can be compared line by line.
+ * Usage: SpaceBenchmark [nbrRuns [maxArity [maxDomSize]]]
+ * @author Thomas Leaute
+ * @see frodo2.solutionSpaces.hypercube.tests.JoinBenchmark
+ */
+public class SpaceBenchmark {
+	
+	/** The number of warm-up runs, whose times are not reported */
+	private static final int NBR_WARMUP_RUNS = 10;
+	
+	/** The proportions of infeasible utilities */
+	private static final double[] SPARSITIES = { 0.0, 0.9 };
+	
+	/** The classes of utilities */
+	private static final Class<?>[] UTIL_CLASSES = { AddableInteger.class, AddableReal.class, AddableBigInteger.class };
+	
+	/** Used to prevent the JIT compiler from optimizing away the results of the timed operations */
+	static volatile Object sink;
+	
+	/** An operation to be timed */
+	private interface Operation {
+		
+		/** Runs the operation
+		 * @return the result of the operation
+		 * @throws Exception 	if the operation fails
+		 */
+		Object run () throws Exception;
+	}
+	
+	/** Runs the benchmarks
+	 * @param args 	[nbrRuns [maxArity [maxDomSize]]]
+	 * @throws Exception 	if a benchmark fails
+	 */
+	@SuppressWarnings("unchecked")
+	public static void main (String[] args) throws Exception {
+		
+		final int nbrRuns = (args.length > 0 ? Integer.parseInt(args[0]) : 20);
+		final int maxArity = (args.length > 1 ? Integer.parseInt(args[1]) : 4);
+		final int maxDomSize = (args.length > 2 ? Integer.parseInt(args[2]) : 8);
+		
+		System.out.println("operation\tspace\tutilities\tarity\tdomSize\tsparsity\tms");
+		
+		for (Class<?> utilClass : UTIL_CLASSES)
+			for (int arity = 2; arity <= maxArity; arity++)
+				for (int domSize = 2; domSize <= maxDomSize; domSize *= 2)
+					for (double sparsity : SPARSITIES)
+						benchHypercubes((Class<AddableInteger>) utilClass, arity, domSize, sparsity, nbrRuns);
+		
+		benchJaCoP(nbrRuns);
+		benchVRP(nbrRuns);
+	}
+	
+	/** Times the operations on hypercubes
+	 * @param <U> 			the class of utilities
+	 * @param utilClass 	the class of utilities
+	 * @param arity 		the number of variables in each input hypercube
+	 * @param domSize 		the domain size
+	 * @param sparsity 		the proportion of infeasible utilities
+	 * @param nbrRuns 		the number of timed runs
+	 * @throws Exception 	if a benchmark fails
+	 */
+	@SuppressWarnings("unchecked")
+	private static < U extends Addable<U> > void benchHypercubes (Class<U> utilClass, final int arity, final int domSize, double sparsity,
+			final int nbrRuns) throws Exception {
+		
+		// Two hypercubes sharing half of their variables
+		final Hypercube<AddableInteger, U> h1 = randomHypercube(utilClass, 0, arity, domSize, sparsity);
+		Hypercube<AddableInteger, U> h2 = randomHypercube(utilClass, arity / 2, arity, domSize, sparsity);
+		final String[] vars = h1.getVariables();
+		final String[] varsOut = new String [arity / 2];
+		System.arraycopy(vars, 0, varsOut, 0, varsOut.length);
+		final AddableInteger val = h1.getDomain(0)[0];
+		
+		String params = h1.getClass().getSimpleName() + "\t" + utilClass.getSimpleName() + "\t" + arity + "\t" + domSize + "\t" + sparsity;
+		
+		print("join", params, time(() -> h1.join(h2).resolve(), nbrRuns));
+		print("project", params, time(() -> h1.project(varsOut, false).getSpace(), nbrRuns));
+		print("slice", params, time(() -> h1.slice(vars[0], val), nbrRuns));
+		print("blindProject", params, time(() -> h1.blindProject(varsOut, false).resolve(), nbrRuns));
+		print("iteratorBestFirst", params, time(() -> iterate(h1.iteratorBestFirst(false)), nbrRuns));
+		print("serialization", params, time(() -> serialize(h1), nbrRuns));
+		
+		// The expectation is only defined for utilities that can represent probabilities
+		if (utilClass == AddableReal.class) {
+			HashMap< String, UtilitySolutionSpace<AddableInteger, U> > distributions = new HashMap< String, UtilitySolutionSpace<AddableInteger, U> > ();
+			U[] probs = (U[]) Array.newInstance(utilClass, domSize);
+			for (int i = 0; i < domSize; i++)
+				probs[i] = h1.getUtility(0).fromString(Double.toString(1.0 / domSize));
+			distributions.put(vars[0], new Hypercube<AddableInteger, U> (new String[] { vars[0] }, new AddableInteger[][] { h1.getDomain(0) },
+					probs, h1.getUtility(0).getPlusInfinity()));
+			print("expectation", params, time(() -> h1.expectation(distributions).resolve(), nbrRuns));
+		}
+	}
+	
+	/** Times the operations on the JaCoPutilSpaces of a random problem
+	 * @param nbrRuns 		the number of timed runs
+	 * @throws Exception 	if a benchmark fails
+	 */
+	@SuppressWarnings("unchecked")
+	private static void benchJaCoP (final int nbrRuns) throws Exception {
+		
+		Document problemDoc = AllTests.createRandProblem(6, 8, 1, false);
+		
+		Element params = new Element ("parser");
+		params.setAttribute("parserClass", JaCoPxcspParser.class.getName());
+		params.setAttribute("displayGraph", "false");
+		params.setAttribute("domClass", AddableInteger.class.getName());
+		params.setAttribute("utilClass", AddableInteger.class.getName());
+		params.setAttribute("DOTrenderer", "");
+		params.setAttribute("countNCCCs", "false");
+		
+		ArrayList< UtilitySolutionSpace<AddableInteger, AddableInteger> > spaces = new ArrayList< UtilitySolutionSpace<AddableInteger, AddableInteger> > (
+				new JaCoPxcspParser<AddableInteger> (problemDoc, params).getSolutionSpaces());
+		
+		// Benchmark the space with the most variables, joined with all other spaces
+		int largest = 0;
+		for (int i = spaces.size() - 1; i > 0; i--)
+			if (spaces.get(i).getNumberOfVariables() > spaces.get(largest).getNumberOfVariables())
+				largest = i;
+		final UtilitySolutionSpace<AddableInteger, AddableInteger> space = spaces.remove(largest);
+		final UtilitySolutionSpace<AddableInteger, AddableInteger>[] others = spaces.toArray((UtilitySolutionSpace<AddableInteger, AddableInteger>[]) new UtilitySolutionSpace<?, ?> [spaces.size()]);
+		final String var = space.getVariable(0);
+		final AddableInteger val = space.getDomain(0)[0];
+		
+		String desc = space.getClass().getSimpleName() + "\tAddableInteger\t" + space.getNumberOfVariables() + "\t" + space.getDomain(0).length + "\t-";
+		
+		print("join", desc, time(() -> iterate(space.join(others).iterator()), nbrRuns));
+		if (space.getNumberOfVariables() > 1) { // the outputs must not be scalar spaces
+			print("project", desc, time(() -> iterate(space.project(var, false).getSpace().iterator()), nbrRuns));
+			print("slice", desc, time(() -> iterate(space.slice(new String[] { var }, new AddableInteger[] { val }).iterator()), nbrRuns));
+		}
+		print("iteratorBestFirst", desc, time(() -> iterate(space.iteratorBestFirst(false)), nbrRuns));
+		print("serialization", desc, time(() -> serialize(space), nbrRuns));
+	}
+	
+	/** Times the operations on the VehicleRoutingSpaces of a Cordeau benchmark instance
+	 * @param nbrRuns 		the number of timed runs
+	 * @throws Exception 	if a benchmark fails
+	 */
+	private static void benchVRP (final int nbrRuns) throws Exception {
+		
+		String filePath = VRPtests.class.getResource("p11").getFile();
+		CordeauToXCSP converter = new CordeauToXCSP (filePath);
+		converter.parse(new BufferedReader (new FileReader (filePath)), 21f, 0);
+		
+		XCSPparserVRP<AddableReal> parser = new XCSPparserVRP<AddableReal> (converter.createXCSP(false, 0, 0));
+		parser.setUtilClass(AddableReal.class);
+		ArrayList< VehicleRoutingSpace<AddableReal> > spaces = new ArrayList< VehicleRoutingSpace<AddableReal> > ();
+		for (UtilitySolutionSpace<AddableInteger, AddableReal> space : parser.getSolutionSpaces())
+			if (space instanceof VehicleRoutingSpace)
+				spaces.add((VehicleRoutingSpace<AddableReal>) space);
+		
+		// Benchmark the largest space
+		VehicleRoutingSpace<AddableReal> largest = spaces.get(0);
+		for (VehicleRoutingSpace<AddableReal> space : spaces)
+			if (space.getNumberOfSolutions() > largest.getNumberOfSolutions())
+				largest = space;
+		final VehicleRoutingSpace<AddableReal> space = largest;
+		
+		String desc = space.getClass().getSimpleName() + "\tAddableReal\t" + space.getNumberOfVariables() + "\t" + space.getDomain(0).length + "\t-";
+		
+		print("project", desc, time(() -> space.projectAll(false), nbrRuns));
+		print("blindProject", desc, time(() -> space.blindProject(space.getVariable(0), false).resolve(), nbrRuns));
+		print("iteratorBestFirst", desc, time(() -> iterate(space.iteratorBestFirst(false)), nbrRuns));
+		print("iterator", desc, time(() -> iterate(space.iterator()), nbrRuns)); // VehicleRoutingSpaces are not serializable
+	}
+	
+	/** Creates a random hypercube over consecutive variables
+	 * @param <U> 			the class of utilities
+	 * @param utilClass 	the class of utilities
+	 * @param firstVar 		the index of the first variable
+	 * @param arity 		the number of variables
+	 * @param domSize 		the domain size
+	 * @param sparsity 		the proportion of infeasible utilities
+	 * @return a random hypercube, backed by a primitive array whenever possible
+	 * @throws Exception 	if the class of utilities cannot be instantiated
+	 */
+	@SuppressWarnings("unchecked")
+	private static < U extends Addable<U> > Hypercube<AddableInteger, U> randomHypercube (Class<U> utilClass, int firstVar, int arity, int domSize,
+			double sparsity) throws Exception {
+		
+		AddableInteger[] dom = new AddableInteger [domSize];
+		for (int i = 0; i < domSize; i++)
+			dom[i] = new AddableInteger (i);
+		
+		String[] vars = new String [arity];
+		AddableInteger[][] doms = new AddableInteger [arity][];
+		int nbrUtils = 1;
+		for (int i = 0; i < arity; i++) {
+			vars[i] = "X" + (firstVar + i);
+			doms[i] = dom;
+			nbrUtils *= domSize;
+		}
+		
+		U zero = utilClass.getConstructor().newInstance().getZero();
+		U inf = zero.getPlusInfinity();
+		U[] utils = (U[]) Array.newInstance(utilClass, nbrUtils);
+		for (int i = 0; i < nbrUtils; i++)
+			utils[i] = (Math.random() < sparsity ? inf : zero.fromInt((int) (100 * Math.random())));
+		
+		return Hypercube.newHypercube(vars, doms, utils, inf);
+	}
+	
+	/** Times an operation
+	 * @param op 			the operation
+	 * @param nbrRuns 		the number of timed runs
+	 * @return the average time of the operation in ms
+	 * @throws Exception 	if the operation fails
+	 */
+	private static double time (Operation op, int nbrRuns) throws Exception {
+		
+		for (int run = 0; run < NBR_WARMUP_RUNS; run++)
+			sink = op.run();
+		
+		final long start = System.nanoTime();
+		for (int run = 0; run < nbrRuns; run++)
+			sink = op.run();
+		return (System.nanoTime() - start) / nbrRuns / 1000000.0;
+	}
+	
+	/** Prints the result of a benchmark
+	 * @param op 		the name of the operation
+	 * @param params 	the tab-separated parameters of the benchmark
+	 * @param time 		the average time in ms
+	 */
+	private static void print (String op, String params, double time) {
+		System.out.println(op + "\t" + params + "\t" + time);
+	}
+	
+	/** Iterates over all solutions
+	 * @param iter 	the iterator
+	 * @return the last utility
+	 */
+	private static Object iterate (UtilitySolutionSpace.Iterator<AddableInteger, ?> iter) {
+		
+		Object util = null;
+		while (iter.hasNext())
+			util = iter.nextUtility();
+		return util;
+	}
+	
+	/** Serializes and deserializes an object
+	 * @param obj 			the object
+	 * @return the deserialized copy
+	 * @throws Exception 	if serialization fails
+	 */
+	private static Object serialize (Object obj) throws Exception {
+		
+		ByteArrayOutputStream bytesOut = new ByteArrayOutputStream ();
+		ObjectOutputStream objOut = new ObjectOutputStream (bytesOut);
+		objOut.writeObject(obj);
+		objOut.close();
+		
+		ObjectInputStream objIn = new ObjectInputStream (new ByteArrayInputStream (bytesOut.toByteArray()));
+		Object out = objIn.readObject();
+		objIn.close();
+		return out;
+	}
+
+}
@@ -37,7 +37,9 @@ import frodo2.solutionSpaces.ProblemInterface;
 import frodo2.solutionSpaces.SolutionSpace;
 import frodo2.solutionSpaces.UtilitySolutionSpace;
 import frodo2.solutionSpaces.hypercube.BasicHypercube;
+import frodo2.solutionSpaces.hypercube.DoubleHypercube;
 import frodo2.solutionSpaces.hypercube.Hypercube;
+import frodo2.solutionSpaces.hypercube.IntHypercube;
 import frodo2.solutionSpaces.hypercube.JoinOutputHypercube;
 import frodo2.solutionSpaces.hypercube.ScalarBasicHypercube;
 import frodo2.solutionSpaces.hypercube.ScalarHypercube;
@@ -428,6 +430,8 @@ public class CompoundSpace < U extends Addable<U> > implements UtilitySolutionSp
 		knownSpaces.add(BasicHypercube.class);
 		knownSpaces.add(ScalarBasicHypercube.class);
 		knownSpaces.add(Hypercube.class);
+		knownSpaces.add(IntHypercube.class);
+		knownSpaces.add(DoubleHypercube.class);
 		knownSpaces.add(Hypercube.NullHypercube.class);
 		knownSpaces.add(ScalarHypercube.class);
 		knownSpaces.add(JoinOutputHypercube.class);
@@ -710,6 +714,14 @@ public class CompoundSpace < U extends Addable<U> > implements UtilitySolutionSp
 		return null;
 	}
 
+	/** 
+	 * @see frodo2.solutionSpaces.UtilitySolutionSpace#joinAndProject(frodo2.solutionSpaces.UtilitySolutionSpace[], java.lang.String[], boolean)
+	 */
+	public frodo2.solutionSpaces.UtilitySolutionSpace.ProjOutput<AddableInteger, U> joinAndProject(
+			UtilitySolutionSpace<AddableInteger, U>[] spaces, String[] varsOut, boolean maximum) {
+		return this.join(spaces).project(varsOut, maximum);
+	}
+
 	/** 
 	 * @see frodo2.solutionSpaces.UtilitySolutionSpace#projectAll(boolean)
 	 */
@@ -40,8 +40,10 @@ import frodo2.solutionSpaces.UtilitySolutionSpaceLimited;
 import frodo2.solutionSpaces.UtilitySolutionSpace.Iterator;
 import frodo2.solutionSpaces.hypercube.BasicHypercube;
 import frodo2.solutionSpaces.hypercube.BlindProjectOutput;
+import frodo2.solutionSpaces.hypercube.DoubleHypercube;
 import frodo2.solutionSpaces.hypercube.ExpectationOutput;
 import frodo2.solutionSpaces.hypercube.Hypercube;
+import frodo2.solutionSpaces.hypercube.IntHypercube;
 import frodo2.solutionSpaces.hypercube.JoinOutputHypercube;
 import frodo2.solutionSpaces.hypercube.ScalarBasicHypercube;
 import frodo2.solutionSpaces.hypercube.ScalarHypercube;
@@ -695,6 +697,8 @@ public class VehicleRoutingSpace < U extends Addable<U> > implements UtilitySolu
 		knownSpaces = new HashSet< Class<?> > ();
 		knownSpaces.add(ScalarHypercube.class);
 		knownSpaces.add(Hypercube.class);
+		knownSpaces.add(IntHypercube.class);
+		knownSpaces.add(DoubleHypercube.class);
 		knownSpaces.add(VehicleRoutingSpace.class);
 	}
 	
@@ -1256,6 +1260,12 @@ public class VehicleRoutingSpace < U extends Addable<U> > implements UtilitySolu
 		return this.project(new String[] {variableName}, maximum);
 	}
 
+	/** @see UtilitySolutionSpace#joinAndProject(UtilitySolutionSpace[], String[], boolean) */
+	public UtilitySolutionSpace.ProjOutput<AddableInteger, U> joinAndProject(
+			UtilitySolutionSpace<AddableInteger, U>[] spaces, String[] varsOut, boolean maximum) {
+		return this.join(spaces).project(varsOut, maximum);
+	}
+
 	/** @see UtilitySolutionSpace#projectAll(boolean) */
 	public ProjOutput<AddableInteger, U> projectAll(final boolean maximum) {
 		